@@ -0,0 +1,77 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.collections.general;
+
+import java.util.HashMap;
+import nl.eriba.mzidentml.identification.objects.general.BestSpectrumEntry;
+
+/**
+ * Defines an index of BestSpectrumEntry objects with the peptide sequence as key.
+ * The index is filled by a single thread and afterwards only claimed by the threads that process the spectra.
+ *
+ * @author vnijenhuis
+ */
+public class BestSpectrumEntryIndex {
+
+    /**
+     * Map with peptide sequence as key and BestSpectrumEntry as value.
+     */
+    private final HashMap<String, BestSpectrumEntry> bestSpectrumMap;
+
+    /**
+     * Creates a new HashMap.
+     */
+    public BestSpectrumEntryIndex() {
+        this.bestSpectrumMap = new HashMap<>();
+    }
+
+    /**
+     * Adds a SpectrumIdentificationItem to the index. The item replaces the current best spectrum of the sequence if it has a higher score.
+     * Items with an equal score do not replace the current entry, so the first item with the highest score is kept.
+     *
+     * @param sequence peptide sequence.
+     * @param spectrumItemId id of the SpectrumIdentificationItem.
+     * @param psmScore peptide score.
+     */
+    public final void addSpectrum(final String sequence, final String spectrumItemId, final double psmScore) {
+        BestSpectrumEntry spectrum = bestSpectrumMap.get(sequence);
+        if (spectrum == null) {
+            bestSpectrumMap.put(sequence, new BestSpectrumEntry(sequence, spectrumItemId, psmScore));
+        } else if (psmScore > spectrum.getScore()) {
+            spectrum.setBestSpectrum(spectrumItemId, psmScore);
+        }
+    }
+
+    /**
+     * Claims the best spectrum of a peptide sequence. Only the SpectrumIdentificationItem with the highest score can claim the entry, and only once.
+     *
+     * @param sequence peptide sequence.
+     * @param spectrumItemId id of the SpectrumIdentificationItem.
+     * @return true if the item is the best spectrum and was not claimed before, otherwise false.
+     */
+    public final Boolean claimBestSpectrum(final String sequence, final String spectrumItemId) {
+        BestSpectrumEntry spectrum = bestSpectrumMap.get(sequence);
+        return spectrum != null && spectrum.getSpectrumItemId().equals(spectrumItemId) && spectrum.claim();
+    }
+
+    /**
+     * Returns the BestSpectrumEntry of a peptide sequence.
+     *
+     * @param sequence peptide sequence.
+     * @return BestSpectrumEntry or null if the sequence is not present.
+     */
+    public final BestSpectrumEntry getBestSpectrum(final String sequence) {
+        return bestSpectrumMap.get(sequence);
+    }
+
+    /**
+     * Returns the amount of peptide sequences in the index.
+     *
+     * @return amount of sequences as Integer.
+     */
+    public final Integer size() {
+        return bestSpectrumMap.size();
+    }
+}
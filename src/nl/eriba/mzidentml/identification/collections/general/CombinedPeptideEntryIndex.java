@@ -0,0 +1,71 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.collections.general;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import nl.eriba.mzidentml.identification.objects.general.CombinedPeptideEntry;
+import nl.eriba.mzidentml.identification.objects.general.ProteinPeptideEntry;
+
+/**
+ * Defines an immutable index of ProteinPeptideEntry objects with the peptide sequence as key.
+ * Accessions and uniqueness are determined once per CombinedPeptideEntry when the index is created.
+ *
+ * @author vnijenhuis
+ */
+public class CombinedPeptideEntryIndex {
+
+    /**
+     * Map with peptide sequence as key and ProteinPeptideEntry as value.
+     */
+    private final Map<String, ProteinPeptideEntry> proteinPeptideEntryMap;
+
+    /**
+     * Creates the index from a collection of CombinedPeptideEntry objects.
+     *
+     * @param combinedPeptideEntryCollection collection of CombinedPeptideEntry objects.
+     */
+    public CombinedPeptideEntryIndex(final CombinedPeptideEntryCollection combinedPeptideEntryCollection) {
+        HashMap<String, ProteinPeptideEntry> entryMap = new HashMap<>(combinedPeptideEntryCollection.getUniquePeptideList().size() * 2);
+        for (CombinedPeptideEntry peptide : combinedPeptideEntryCollection.getUniquePeptideList()) {
+            //Keep the first entry of a sequence.
+            if (!entryMap.containsKey(peptide.getSequence())) {
+                String unique = "N";
+                if (peptide.getAccessionList().size() == 1) {
+                    unique = "Y";
+                }
+                StringBuilder accessions = new StringBuilder();
+                for (String accession : peptide.getAccessionList()) {
+                    if (accessions.length() > 0) {
+                        accessions.append(":");
+                    }
+                    accessions.append(accession);
+                }
+                entryMap.put(peptide.getSequence(), new ProteinPeptideEntry(peptide.getSequence(), accessions.toString(), unique));
+            }
+        }
+        this.proteinPeptideEntryMap = Collections.unmodifiableMap(entryMap);
+    }
+
+    /**
+     * Returns the ProteinPeptideEntry of the given peptide sequence.
+     *
+     * @param sequence peptide sequence.
+     * @return ProteinPeptideEntry or null if the sequence is not present.
+     */
+    public final ProteinPeptideEntry getProteinPeptideEntry(final String sequence) {
+        return proteinPeptideEntryMap.get(sequence);
+    }
+
+    /**
+     * Returns the amount of peptide sequences in the index.
+     *
+     * @return amount of sequences as Integer.
+     */
+    public final Integer size() {
+        return proteinPeptideEntryMap.size();
+    }
+}
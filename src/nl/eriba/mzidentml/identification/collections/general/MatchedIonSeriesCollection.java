@@ -56,21 +56,25 @@ public class MatchedIonSeriesCollection {
     }
     
     /**
-     * Compares peptide sequences with eachother.
+     * Compares peptide sequences with eachother. Equal peptide sequences are compared on peptide score.
      * 
-     * @return Integer value based on the peptide sequences.
+     * @return Integer value based on the peptide sequences and peptide scores.
      */
     static Comparator<MatchedIonSeries> sortOnPeptideSequenceComparator() {
         return new Comparator<MatchedIonSeries>() {
             @Override
             public int compare(MatchedIonSeries o1, MatchedIonSeries o2) {
-                return o1.getPeptideSequence().compareTo(o2.getPeptideSequence());
+                int sequenceComparison = o1.getPeptideSequence().compareTo(o2.getPeptideSequence());
+                if (sequenceComparison != 0) {
+                    return sequenceComparison;
+                }
+                return o1.getPeptideScore().compareTo(o2.getPeptideScore());
             }
         };
     }
 
     /**
-     * Sorts the collection based on peptide sequences.
+     * Sorts the collection based on peptide sequences and peptide scores.
      */
     public final void sortOnPeptideSequence() {
         Collections.sort(this.matchedIonSeriesList, sortOnPeptideSequenceComparator());
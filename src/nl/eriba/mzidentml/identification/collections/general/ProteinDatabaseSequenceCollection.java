@@ -7,6 +7,7 @@ package nl.eriba.mzidentml.identification.collections.general;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import nl.eriba.mzidentml.identification.dataprocessing.database.ProteinSequenceIndex;
 import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
 
 /**
@@ -21,6 +22,11 @@ public class ProteinDatabaseSequenceCollection {
      */
     private final ArrayList<ProteinDatabaseSequence> proteins;
 
+    /**
+     * Index of the protein sequences, or null if the proteins were read from a fasta file without index.
+     */
+    private ProteinSequenceIndex sequenceIndex;
+
     /**
      * Creates a new ArrayList.
      */
@@ -28,6 +34,24 @@ public class ProteinDatabaseSequenceCollection {
         this.proteins = new ArrayList();
     }
 
+    /**
+     * Returns the index of the protein sequences.
+     *
+     * @return ProteinSequenceIndex or null if no index was used.
+     */
+    public final ProteinSequenceIndex getSequenceIndex() {
+        return this.sequenceIndex;
+    }
+
+    /**
+     * Sets the index of the protein sequences.
+     *
+     * @param sequenceIndex ProteinSequenceIndex of the proteins in this collection.
+     */
+    public final void setSequenceIndex(final ProteinSequenceIndex sequenceIndex) {
+        this.sequenceIndex = sequenceIndex;
+    }
+
     /**
      * Adds a ProteinDatabaseSequence object to the ArrayList.
      *
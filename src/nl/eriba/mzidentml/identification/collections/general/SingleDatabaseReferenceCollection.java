@@ -62,7 +62,7 @@ public class SingleDatabaseReferenceCollection {
     }
     
     /**
-     * Compares the protein accession of SingleDatabaseReference objects with each other.
+     * Compares the protein accession ids of SingleDatabaseReference objects with each other. Ids follow the order of the accessions.
      * 
      * @return Integer based on the value of the protein accessions.
      */
@@ -70,7 +70,7 @@ public class SingleDatabaseReferenceCollection {
         return new Comparator<SingleDatabaseReference>() {
             @Override
             public int compare(SingleDatabaseReference o1, SingleDatabaseReference o2) {
-                return o1.getProteinAccession().compareTo(o2.getProteinAccession());
+                return Integer.compare(o1.getProteinAccessionId(), o2.getProteinAccessionId());
             }
         };
     }
@@ -83,7 +83,7 @@ public class SingleDatabaseReferenceCollection {
     }
     
     /**
-     * Compare peptide sequences of SingleDatabaseReferences with eachother.
+     * Compare peptide sequence ids of SingleDatabaseReferences with eachother. Ids follow the order of the sequences.
      * 
      * @return Integer based on the peptide sequences.
      */
@@ -91,7 +91,7 @@ public class SingleDatabaseReferenceCollection {
         return new Comparator<SingleDatabaseReference>() {
             @Override
             public int compare(SingleDatabaseReference o1, SingleDatabaseReference o2) {
-                return o1.getPeptideSequence().compareTo(o2.getPeptideSequence());
+                return Integer.compare(o1.getPeptideSequenceId(), o2.getPeptideSequenceId());
             }
         };
     }
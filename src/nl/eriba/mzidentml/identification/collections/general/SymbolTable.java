@@ -0,0 +1,93 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.collections.general;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Defines an immutable dictionary of String symbols such as peptide references and protein accessions of a single mzid file.
+ * Each distinct symbol gets a dense int id. Ids follow the natural order of the symbols, so comparing ids gives the same order as comparing the
+ * symbols. Every object of the file refers to the same symbol instance.
+ *
+ * @author vnijenhuis
+ */
+public class SymbolTable {
+
+    /**
+     * Sorted symbols. The index of a symbol is its id.
+     */
+    private final String[] symbols;
+
+    /**
+     * Map with symbol as key and id as value.
+     */
+    private final HashMap<String, Integer> symbolIds;
+
+    /**
+     * Creates the dictionary of the given symbols. Duplicate and null symbols are ignored.
+     *
+     * @param symbolList symbols of the mzid file.
+     */
+    public SymbolTable(final Collection<String> symbolList) {
+        HashSet<String> distinctSymbols = new HashSet<>(symbolList);
+        distinctSymbols.remove(null);
+        this.symbols = distinctSymbols.toArray(new String[distinctSymbols.size()]);
+        Arrays.sort(symbols);
+        this.symbolIds = new HashMap<>(symbols.length * 4 / 3 + 1);
+        for (int id = 0; id < symbols.length; id++) {
+            symbolIds.put(symbols[id], id);
+        }
+    }
+
+    /**
+     * Returns the id of a symbol.
+     *
+     * @param symbol symbol as String.
+     * @return id of the symbol, or -1 if the symbol is not present.
+     */
+    public final int getId(final String symbol) {
+        Integer id = symbolIds.get(symbol);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the symbol of an id.
+     *
+     * @param id id of the symbol.
+     * @return symbol as String.
+     */
+    public final String getSymbol(final int id) {
+        return symbols[id];
+    }
+
+    /**
+     * Returns the shared instance of a symbol.
+     *
+     * @param symbol symbol as String.
+     * @return shared instance, or the given String if the symbol is not present.
+     */
+    public final String intern(final String symbol) {
+        int id = getId(symbol);
+        if (id == -1) {
+            return symbol;
+        }
+        return symbols[id];
+    }
+
+    /**
+     * Returns the amount of distinct symbols.
+     *
+     * @return amount of symbols as int.
+     */
+    public final int size() {
+        return symbols.length;
+    }
+}
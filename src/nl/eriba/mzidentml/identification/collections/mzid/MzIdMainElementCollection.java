@@ -4,9 +4,10 @@
  */
 package nl.eriba.mzidentml.identification.collections.mzid;
 
+import java.util.concurrent.Future;
+import nl.eriba.mzidentml.identification.dataprocessing.spectra.SpectrumIdentificationResultStream;
 import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionList;
 import uk.ac.ebi.jmzidml.model.mzidml.SequenceCollection;
-import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationList;
 
 /**
  * Defines the collection of main MzId elements.
@@ -15,55 +16,57 @@ import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationList;
 public class MzIdMainElementCollection {
 
     /**
-     * List of SpectrumIdentificationResult objects.
+     * Stream of SpectrumIdentificationResult objects.
      */
-    private final SpectrumIdentificationList spectrumIdList;
+    private final SpectrumIdentificationResultStream spectrumResultStream;
 
     /**
-     * 
+     * SequenceCollection, which may still be unmarshalled by another thread.
      */
-    private final SequenceCollection sequenceCollection;
+    private final Future<SequenceCollection> sequenceCollection;
 
     /**
-     * 
+     * ProteinDetectionList, which may still be unmarshalled by another thread.
      */
-    private final ProteinDetectionList proteinHypothesisCollection;
+    private final Future<ProteinDetectionList> proteinHypothesisCollection;
 
     /**
+     * Creates the collection of main MzId elements.
      * 
-     * @param spectrumIdList
-     * @param sequenceCollection
-     * @param proteinHypothesisList 
+     * @param spectrumResultStream stream of SpectrumIdentificationResult objects, which should be closed after the last pass.
+     * @param sequenceCollection Future of the SequenceCollection.
+     * @param proteinHypothesisList Future of the ProteinDetectionList, which gives null if the mzid file has no ProteinDetectionList.
      */
-    public MzIdMainElementCollection(SpectrumIdentificationList spectrumIdList, SequenceCollection sequenceCollection, ProteinDetectionList proteinHypothesisList) {
-        this.spectrumIdList = spectrumIdList;
+    public MzIdMainElementCollection(SpectrumIdentificationResultStream spectrumResultStream, Future<SequenceCollection> sequenceCollection, Future<ProteinDetectionList> proteinHypothesisList) {
+        this.spectrumResultStream = spectrumResultStream;
         this.sequenceCollection = sequenceCollection;
         this.proteinHypothesisCollection = proteinHypothesisList;
     }
 
     /**
-     * Gets the list of SpectrumIdentificationResult objects.
+     * Gets the stream of SpectrumIdentificationResult objects.
      * 
-     * @return list of SpectrumIdentificationResult objects.
+     * @return stream of SpectrumIdentificationResult objects.
      */
-    public SpectrumIdentificationList getSpectrumIdentificationList() {
-        return this.spectrumIdList;
+    public SpectrumIdentificationResultStream getSpectrumIdentificationResults() {
+        return this.spectrumResultStream;
     }
 
     /**
-     * Gets the list of ProteinHypothesis objects.
+     * Gets the list of ProteinHypothesis objects. Future.get() waits until the ProteinDetectionList has been unmarshalled.
      * 
-     * @return 
+     * @return Future of the ProteinDetectionList.
      */
-    public ProteinDetectionList getProteinHypothesisCollection() {
+    public Future<ProteinDetectionList> getProteinHypothesisCollection() {
         return this.proteinHypothesisCollection;
     }
 
     /**
+     * Gets the SequenceCollection. Future.get() waits until the SequenceCollection has been unmarshalled.
      * 
-     * @return 
+     * @return Future of the SequenceCollection.
      */
-    public SequenceCollection getSequenceCollection() {
+    public Future<SequenceCollection> getSequenceCollection() {
         return this.sequenceCollection;
     }
 }
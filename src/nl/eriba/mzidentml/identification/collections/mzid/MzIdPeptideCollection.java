@@ -7,10 +7,15 @@ package nl.eriba.mzidentml.identification.collections.mzid;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import nl.eriba.mzidentml.identification.objects.general.PeptideEntry;
 import nl.eriba.mzidentml.identification.objects.mzid.MzIdPeptide;
 
 /**
  * Defines a collection of MzIdPeptide objects.
+ * MzIdPeptide objects are indexed on their peptide sequence and the PeptideEntry of each peptide reference is stored once it has been created.
  *
  * @author vnijenhuis
  */
@@ -21,11 +26,23 @@ public class MzIdPeptideCollection {
      */
     private final ArrayList<MzIdPeptide> peptides;
 
+    /**
+     * HashMap with the peptide sequence as key and the MzIdPeptide objects with this sequence as value.
+     */
+    private final HashMap<String, ArrayList<MzIdPeptide>> peptideSequenceIndex;
+
+    /**
+     * ConcurrentHashMap with the peptide reference as key and the PeptideEntry of this reference as value.
+     */
+    private final ConcurrentHashMap<String, PeptideEntry> peptideEntryMap;
+
     /**
      * ArrayList of MzIdPeptide objects.
      */
     public MzIdPeptideCollection() {
         peptides = new ArrayList<>();
+        peptideSequenceIndex = new HashMap<>();
+        peptideEntryMap = new ConcurrentHashMap<>();
     }
 
     /**
@@ -35,6 +52,13 @@ public class MzIdPeptideCollection {
      */
     public final void addPeptide(final MzIdPeptide peptide) {
         peptides.add(peptide);
+        ArrayList<MzIdPeptide> sequencePeptides = peptideSequenceIndex.get(peptide.getPeptideSequence());
+        if (sequencePeptides == null) {
+            sequencePeptides = new ArrayList<>(1);
+            peptideSequenceIndex.put(peptide.getPeptideSequence(), sequencePeptides);
+        }
+        sequencePeptides.add(peptide);
+        peptideEntryMap.clear();
     }
 
     /**
@@ -43,11 +67,58 @@ public class MzIdPeptideCollection {
      * @param peptide MzIdPeptide object.
      */
     public final void removePeptide(final MzIdPeptide peptide) {
-        peptides.remove(peptide);
+        if (peptide != null && peptides.remove(peptide)) {
+            ArrayList<MzIdPeptide> sequencePeptides = peptideSequenceIndex.get(peptide.getPeptideSequence());
+            sequencePeptides.remove(peptide);
+            if (sequencePeptides.isEmpty()) {
+                peptideSequenceIndex.remove(peptide.getPeptideSequence());
+            }
+            peptideEntryMap.clear();
+        }
+    }
+
+    /**
+     * Returns the MzIdPeptide objects with the given peptide sequence in the order they were added.
+     *
+     * @param peptideSequence plain amino acid sequence.
+     * @return List of MzIdPeptide objects, which is empty if the sequence is not present.
+     */
+    public final List<MzIdPeptide> getPeptidesBySequence(final String peptideSequence) {
+        ArrayList<MzIdPeptide> sequencePeptides = peptideSequenceIndex.get(peptideSequence);
+        if (sequencePeptides == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(sequencePeptides);
+    }
+
+    /**
+     * Returns the stored PeptideEntry of a peptide reference.
+     *
+     * @param peptideReference peptide reference of a SpectrumIdentificationItem.
+     * @return PeptideEntry or null if no entry was stored for this reference.
+     */
+    public final PeptideEntry getPeptideEntry(final String peptideReference) {
+        return peptideEntryMap.get(peptideReference);
+    }
+
+    /**
+     * Stores the PeptideEntry of a peptide reference. If another thread stored an entry first, that entry is kept.
+     *
+     * @param peptideReference peptide reference of a SpectrumIdentificationItem.
+     * @param peptideEntry PeptideEntry of the peptide reference.
+     * @return the PeptideEntry that is stored for this reference.
+     */
+    public final PeptideEntry addPeptideEntry(final String peptideReference, final PeptideEntry peptideEntry) {
+        PeptideEntry storedEntry = peptideEntryMap.putIfAbsent(peptideReference, peptideEntry);
+        if (storedEntry == null) {
+            return peptideEntry;
+        }
+        return storedEntry;
     }
 
     /**
      * Returns an ArrayList of MzIdPeptide objects.
+     * MzIdPeptide objects should be added and removed through this collection to keep the sequence index up to date.
      *
      * @return ArrayList of MzIdPeptide objects.
      */
@@ -0,0 +1,79 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.collections.mzid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import nl.eriba.mzidentml.identification.objects.mzid.MzIdProteinPeptide;
+
+/**
+ * Defines an immutable index of MzIdProteinPeptide objects with the peptide sequence as key.
+ * The index stores the range of each sequence in a collection that is sorted on peptide sequence, so a lookup does not scan the collection.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdProteinPeptideIndex {
+
+    /**
+     * List of MzIdProteinPeptide objects sorted on peptide sequence.
+     */
+    private final List<MzIdProteinPeptide> proteinPeptideList;
+
+    /**
+     * Map with peptide sequence as key and the start and end of its range in the list as value.
+     */
+    private final Map<String, int[]> sequenceRangeMap;
+
+    /**
+     * Creates the index from a collection of MzIdProteinPeptide objects that is sorted on peptide sequence.
+     *
+     * @param proteinPeptideCollection collection of MzIdProteinPeptide objects sorted on peptide sequence.
+     */
+    public MzIdProteinPeptideIndex(final MzIdProteinPeptideCollection proteinPeptideCollection) {
+        ArrayList<MzIdProteinPeptide> proteinPeptides = new ArrayList<>(proteinPeptideCollection.getProteinPeptideList());
+        HashMap<String, int[]> rangeMap = new HashMap<>();
+        int start = 0;
+        while (start < proteinPeptides.size()) {
+            String sequence = proteinPeptides.get(start).getPeptideSequence();
+            int end = start + 1;
+            while (end < proteinPeptides.size() && proteinPeptides.get(end).getPeptideSequence().equals(sequence)) {
+                end++;
+            }
+            //Keep the first range of a sequence.
+            if (!rangeMap.containsKey(sequence)) {
+                rangeMap.put(sequence, new int[]{start, end});
+            }
+            start = end;
+        }
+        this.proteinPeptideList = Collections.unmodifiableList(proteinPeptides);
+        this.sequenceRangeMap = Collections.unmodifiableMap(rangeMap);
+    }
+
+    /**
+     * Returns the MzIdProteinPeptide objects of the given peptide sequence.
+     *
+     * @param sequence peptide sequence.
+     * @return unmodifiable list of MzIdProteinPeptide objects in collection order, empty if the sequence is not present.
+     */
+    public final List<MzIdProteinPeptide> getProteinPeptides(final String sequence) {
+        int[] range = sequenceRangeMap.get(sequence);
+        if (range == null) {
+            return Collections.emptyList();
+        }
+        return proteinPeptideList.subList(range[0], range[1]);
+    }
+
+    /**
+     * Returns the amount of peptide sequences in the index.
+     *
+     * @return amount of sequences as Integer.
+     */
+    public final Integer size() {
+        return sequenceRangeMap.size();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.collections.mzid;
+
+import java.util.HashMap;
+import nl.eriba.mzidentml.identification.collections.general.CombinedDatabaseReferenceCollection;
+import nl.eriba.mzidentml.identification.collections.general.CombinedPeptideEntryIndex;
+
+/**
+ * Defines the collections that are created from the SequenceCollection of a mzid file.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdSequenceElementCollection {
+
+    /**
+     * Collection of MzIdPeptide objects.
+     */
+    private final MzIdPeptideCollection peptides;
+
+    /**
+     * Collection of MzIdPeptideEvidence objects.
+     */
+    private final MzIdPeptideEvidenceCollection evidenceCollection;
+
+    /**
+     * Index of CombinedPeptideEntry objects on peptide sequence.
+     */
+    private final CombinedPeptideEntryIndex combinedPeptideIndex;
+
+    /**
+     * Collection of CombinedDatabaseReference objects.
+     */
+    private final CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection;
+
+    /**
+     * HashMap with peptide sequence as key and spectra count as value.
+     */
+    private final HashMap<String, Integer> spectraCountMap;
+
+    /**
+     * Creates the collection of SequenceCollection elements.
+     *
+     * @param peptides collection of MzIdPeptide objects.
+     * @param evidenceCollection collection of MzIdPeptideEvidence objects.
+     * @param combinedPeptideIndex index of CombinedPeptideEntry objects on peptide sequence.
+     * @param combinedDatabaseReferenceCollection collection of CombinedDatabaseReference objects.
+     * @param spectraCountMap HashMap with peptide sequence as key and spectra count as value.
+     */
+    public MzIdSequenceElementCollection(final MzIdPeptideCollection peptides, final MzIdPeptideEvidenceCollection evidenceCollection,
+            final CombinedPeptideEntryIndex combinedPeptideIndex, final CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection,
+            final HashMap<String, Integer> spectraCountMap) {
+        this.peptides = peptides;
+        this.evidenceCollection = evidenceCollection;
+        this.combinedPeptideIndex = combinedPeptideIndex;
+        this.combinedDatabaseReferenceCollection = combinedDatabaseReferenceCollection;
+        this.spectraCountMap = spectraCountMap;
+    }
+
+    /**
+     * Returns the collection of MzIdPeptide objects.
+     *
+     * @return MzIdPeptideCollection.
+     */
+    public final MzIdPeptideCollection getPeptides() {
+        return peptides;
+    }
+
+    /**
+     * Returns the collection of MzIdPeptideEvidence objects.
+     *
+     * @return MzIdPeptideEvidenceCollection.
+     */
+    public final MzIdPeptideEvidenceCollection getPeptideEvidenceCollection() {
+        return evidenceCollection;
+    }
+
+    /**
+     * Returns the index of CombinedPeptideEntry objects on peptide sequence.
+     *
+     * @return CombinedPeptideEntryIndex.
+     */
+    public final CombinedPeptideEntryIndex getCombinedPeptideIndex() {
+        return combinedPeptideIndex;
+    }
+
+    /**
+     * Returns the collection of CombinedDatabaseReference objects.
+     *
+     * @return CombinedDatabaseReferenceCollection.
+     */
+    public final CombinedDatabaseReferenceCollection getCombinedDatabaseReferenceCollection() {
+        return combinedDatabaseReferenceCollection;
+    }
+
+    /**
+     * Returns the spectra count per peptide sequence.
+     *
+     * @return HashMap with peptide sequence as key and spectra count as value.
+     */
+    public final HashMap<String, Integer> getSpectraCountMap() {
+        return spectraCountMap;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.collections.output;
+
+/**
+ * Cursor over the rows of a DatabaseSearchPsmOutputCollection. The values of the current row are read directly from the columns of the collection,
+ * so rows can be written without creating a DatabaseSearchPsmOutput object per row.
+ *
+ * @author vnijenhuis
+ */
+public class DatabaseSearchPsmCursor {
+
+    /**
+     * Collection of the rows.
+     */
+    private final DatabaseSearchPsmOutputCollection psmCollection;
+
+    /**
+     * Index of the current row.
+     */
+    private int row;
+
+    /**
+     * Creates a cursor positioned before the first row.
+     *
+     * @param psmCollection collection of the rows.
+     */
+    DatabaseSearchPsmCursor(final DatabaseSearchPsmOutputCollection psmCollection) {
+        this.psmCollection = psmCollection;
+        this.row = -1;
+    }
+
+    /**
+     * Moves the cursor to the next row.
+     *
+     * @return false if there are no rows left.
+     */
+    public final boolean next() {
+        if (row + 1 >= psmCollection.getRowCount()) {
+            return false;
+        }
+        row++;
+        return true;
+    }
+
+    /**
+     * Returns the amino acid peptide sequence of the current row.
+     *
+     * @return peptide sequence as String.
+     */
+    public final String getPeptideSequence() {
+        return psmCollection.getPeptideSequence(row);
+    }
+
+    /**
+     * Returns the -10LogP score of the current row.
+     *
+     * @return peptide score as double.
+     */
+    public final double getPeptideScore() {
+        return psmCollection.getPeptideScore(row);
+    }
+
+    /**
+     * Returns the theoretical mass-to-charge ratio of the current row.
+     *
+     * @return theoretical mass-to-charge ratio as double.
+     */
+    public final double getTheoreticalMassToCharge() {
+        return psmCollection.getTheoreticalMassToCharge(row);
+    }
+
+    /**
+     * Returns the length of the peptide sequence of the current row.
+     *
+     * @return sequence length as int.
+     */
+    public final int getSequenceLength() {
+        return psmCollection.getSequenceLength(row);
+    }
+
+    /**
+     * Returns the parts per million of the current row.
+     *
+     * @return parts per million as double.
+     */
+    public final double getPartsPerMillion() {
+        return psmCollection.getPartsPerMillion(row);
+    }
+
+    /**
+     * Returns the calculated mass-to-charge ratio of the current row.
+     *
+     * @return calculated mass-to-charge ratio as double.
+     */
+    public final double getCalculatedMassToCharge() {
+        return psmCollection.getCalculatedMassToCharge(row);
+    }
+
+    /**
+     * Returns the retention time of the current row.
+     *
+     * @return retention time as String.
+     */
+    public final String getRetentionTime() {
+        return psmCollection.getRetentionTime(row);
+    }
+
+    /**
+     * Returns the scan number of the current row.
+     *
+     * @return scan number as String.
+     */
+    public final String getScanNumber() {
+        return psmCollection.getScanNumber(row);
+    }
+
+    /**
+     * Returns the protein accessions of the current row.
+     *
+     * @return protein accessions as String.
+     */
+    public final String getProteinAccession() {
+        return psmCollection.getProteinAccession(row);
+    }
+
+    /**
+     * Returns the post-translational modification of the current row.
+     *
+     * @return post-translational modification as String.
+     */
+    public final String getPostTranslationalModification() {
+        return psmCollection.getPostTranslationalModification(row);
+    }
+
+    /**
+     * Returns the aScore of the current row.
+     *
+     * @return aScore as String.
+     */
+    public final String getAScore() {
+        return psmCollection.getAScore(row);
+    }
+
+    /**
+     * Returns the evidence count of the current row.
+     *
+     * @return evidence count as Integer, or null if the row has no spectra count.
+     */
+    public final Integer getEvidenceCount() {
+        return psmCollection.getEvidenceCount(row);
+    }
+}
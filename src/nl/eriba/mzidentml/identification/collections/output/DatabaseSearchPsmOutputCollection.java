@@ -1,78 +1,552 @@
 /*
  * @author Vikthor Nijenhuis
- * @project Peptide mzIdentML Identfication Module * 
+ * @project Peptide mzIdentML Identfication Module *
  */
 package nl.eriba.mzidentml.identification.collections.output;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import nl.eriba.mzidentml.identification.objects.output.DatabaseSearchPsmOutput;
 
 /**
  * Defines a DatabaseSearchPsmOutputCollection object.
+ * Peptide spectrum matches are stored per column in primitive arrays instead of one DatabaseSearchPsmOutput object per match. Sequences,
+ * accessions, modifications and aScores repeat over many rows and are stored as codes of a dictionary of the collection.
  *
  * @author vnijenhuis
  */
 public class DatabaseSearchPsmOutputCollection {
 
     /**
-     * Creates an ArrayList for DatabaseSearchPsmOutput objects.
+     * Initial amount of rows of the columns.
      */
-    private final ArrayList<DatabaseSearchPsmOutput> databaseSearchPsmEntryList;
+    private static final int INITIAL_CAPACITY = 64;
 
     /**
-     * Creates a new ArrayList.
+     * Amount of rows from which the sort keys are sorted with Arrays.parallelSort.
+     */
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    /**
+     * Evidence count of a row without a spectra count.
+     */
+    private static final int NO_EVIDENCE_COUNT = Integer.MIN_VALUE;
+
+    /**
+     * Amount of rows in the collection.
+     */
+    private int rowCount;
+
+    /**
+     * Dictionary codes of the peptide sequences.
+     */
+    private int[] peptideSequenceCodes;
+
+    /**
+     * The -10LogP scores.
+     */
+    private double[] peptideScores;
+
+    /**
+     * The theoretical mass-to-charge ratios.
+     */
+    private double[] theoreticalMassToCharges;
+
+    /**
+     * The lengths of the peptide sequences.
+     */
+    private int[] sequenceLengths;
+
+    /**
+     * The parts per million values.
+     */
+    private double[] partsPerMillions;
+
+    /**
+     * The calculated mass-to-charge ratios.
+     */
+    private double[] calculatedMassToCharges;
+
+    /**
+     * The retention times.
+     */
+    private String[] retentionTimes;
+
+    /**
+     * The scan numbers.
+     */
+    private String[] scanNumbers;
+
+    /**
+     * Dictionary codes of the protein accessions.
+     */
+    private int[] proteinAccessionCodes;
+
+    /**
+     * Dictionary codes of the post-translational modifications.
+     */
+    private int[] modificationCodes;
+
+    /**
+     * Dictionary codes of the aScores.
+     */
+    private int[] aScoreCodes;
+
+    /**
+     * The evidence counts, or NO_EVIDENCE_COUNT if a row has no spectra count.
+     */
+    private int[] evidenceCounts;
+
+    /**
+     * Strings of the dictionary. The index of a String is its code.
+     */
+    private final ArrayList<String> dictionary;
+
+    /**
+     * Map with dictionary String as key and code as value.
+     */
+    private final HashMap<String, Integer> dictionaryCodes;
+
+    /**
+     * Creates an empty collection.
      */
     public DatabaseSearchPsmOutputCollection() {
-        databaseSearchPsmEntryList = new ArrayList<>();
+        this.rowCount = 0;
+        this.peptideSequenceCodes = new int[INITIAL_CAPACITY];
+        this.peptideScores = new double[INITIAL_CAPACITY];
+        this.theoreticalMassToCharges = new double[INITIAL_CAPACITY];
+        this.sequenceLengths = new int[INITIAL_CAPACITY];
+        this.partsPerMillions = new double[INITIAL_CAPACITY];
+        this.calculatedMassToCharges = new double[INITIAL_CAPACITY];
+        this.retentionTimes = new String[INITIAL_CAPACITY];
+        this.scanNumbers = new String[INITIAL_CAPACITY];
+        this.proteinAccessionCodes = new int[INITIAL_CAPACITY];
+        this.modificationCodes = new int[INITIAL_CAPACITY];
+        this.aScoreCodes = new int[INITIAL_CAPACITY];
+        this.evidenceCounts = new int[INITIAL_CAPACITY];
+        this.dictionary = new ArrayList<>();
+        this.dictionaryCodes = new HashMap<>();
+    }
+
+    /**
+     * Adds a peptide spectrum match to the collection.
+     *
+     * @param sequence The amino acid peptide sequence.
+     * @param peptideScore The -10LogP score value of the sequence.
+     * @param theoreticalMass The theoretical mass-to-charge ratio of the peptide.
+     * @param length The length of the peptide sequence.
+     * @param ppm The parts per million of the peptide.
+     * @param calculatedMass The calculated mass-to-charge ratio of the peptide.
+     * @param retention The retention time of the peptide.
+     * @param scan The scan id number of the peptide.
+     * @param accession The protein accession id of the protein that this peptide belongs to.
+     * @param ptm The post-translational modification for this peptide.
+     * @param aScore The aScore of the post-translational modification for this peptide.
+     * @param evidenceCount MzIdPeptideEvidence count for this peptide, or null if it is not known.
+     */
+    public final void addDatabaseSearchPsmEntry(final String sequence, final double peptideScore, final double theoreticalMass, final int length, final double ppm,
+            final double calculatedMass, final String retention, final String scan, final String accession, final String ptm, final String aScore, final Integer evidenceCount) {
+        ensureCapacity(rowCount + 1);
+        peptideSequenceCodes[rowCount] = encode(sequence);
+        peptideScores[rowCount] = peptideScore;
+        theoreticalMassToCharges[rowCount] = theoreticalMass;
+        sequenceLengths[rowCount] = length;
+        partsPerMillions[rowCount] = ppm;
+        calculatedMassToCharges[rowCount] = calculatedMass;
+        retentionTimes[rowCount] = retention;
+        scanNumbers[rowCount] = scan;
+        proteinAccessionCodes[rowCount] = encode(accession);
+        modificationCodes[rowCount] = encode(ptm);
+        aScoreCodes[rowCount] = encode(aScore);
+        if (evidenceCount == null) {
+            evidenceCounts[rowCount] = NO_EVIDENCE_COUNT;
+        } else {
+            evidenceCounts[rowCount] = evidenceCount;
+        }
+        rowCount++;
     }
 
     /**
-     * Adds a DatabaseSearchPsmOutput object to the ArrayList.
+     * Adds a DatabaseSearchPsmOutput object to the collection.
      *
      * @param databaseSearchEntry DatabaseSearchPsmOutput object.
      */
     public final void addDatabaseSearchPsmEntry(final DatabaseSearchPsmOutput databaseSearchEntry) {
-        databaseSearchPsmEntryList.add(databaseSearchEntry);
+        addDatabaseSearchPsmEntry(databaseSearchEntry.getPeptideSequence(), databaseSearchEntry.getPeptideScore(), databaseSearchEntry.getTheoreticalMassToCharge(),
+                databaseSearchEntry.getSequenceLength(), databaseSearchEntry.getPartsPerMillion(), databaseSearchEntry.getCalculatedMassToCharge(),
+                databaseSearchEntry.getRetentionTime(), databaseSearchEntry.getScanNumber(), databaseSearchEntry.getProteinAccession(),
+                databaseSearchEntry.getPostTranslationalModification(), databaseSearchEntry.getAScore(), databaseSearchEntry.getEvidenceCount());
     }
 
     /**
-     * Removes a DatabaseSearchPsmOutput object from the ArrayList.
+     * Adds all rows of another collection to the end of this collection.
      *
-     * @param databaseSearchEntry DatabaseSearchPsmOutput object.
+     * @param psmCollection DatabaseSearchPsmOutputCollection object.
+     */
+    public final void addDatabaseSearchPsmEntries(final DatabaseSearchPsmOutputCollection psmCollection) {
+        int addedRows = psmCollection.rowCount;
+        ensureCapacity(rowCount + addedRows);
+        //Translate the dictionary of the other collection once instead of each row.
+        int[] codes = new int[psmCollection.dictionary.size()];
+        for (int code = 0; code < codes.length; code++) {
+            codes[code] = encode(psmCollection.dictionary.get(code));
+        }
+        for (int row = 0; row < addedRows; row++) {
+            peptideSequenceCodes[rowCount + row] = codes[psmCollection.peptideSequenceCodes[row]];
+            proteinAccessionCodes[rowCount + row] = codes[psmCollection.proteinAccessionCodes[row]];
+            modificationCodes[rowCount + row] = codes[psmCollection.modificationCodes[row]];
+            aScoreCodes[rowCount + row] = codes[psmCollection.aScoreCodes[row]];
+        }
+        System.arraycopy(psmCollection.peptideScores, 0, peptideScores, rowCount, addedRows);
+        System.arraycopy(psmCollection.theoreticalMassToCharges, 0, theoreticalMassToCharges, rowCount, addedRows);
+        System.arraycopy(psmCollection.sequenceLengths, 0, sequenceLengths, rowCount, addedRows);
+        System.arraycopy(psmCollection.partsPerMillions, 0, partsPerMillions, rowCount, addedRows);
+        System.arraycopy(psmCollection.calculatedMassToCharges, 0, calculatedMassToCharges, rowCount, addedRows);
+        System.arraycopy(psmCollection.retentionTimes, 0, retentionTimes, rowCount, addedRows);
+        System.arraycopy(psmCollection.scanNumbers, 0, scanNumbers, rowCount, addedRows);
+        System.arraycopy(psmCollection.evidenceCounts, 0, evidenceCounts, rowCount, addedRows);
+        rowCount += addedRows;
+    }
+
+    /**
+     * Returns the dictionary code of a String. Strings that are not present are added to the dictionary.
+     *
+     * @param value String value, may be null.
+     * @return dictionary code.
+     */
+    private int encode(final String value) {
+        Integer code = dictionaryCodes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            dictionaryCodes.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Grows the columns to hold at least the given amount of rows.
+     *
+     * @param capacity required amount of rows.
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= peptideScores.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, peptideScores.length * 2);
+        peptideSequenceCodes = Arrays.copyOf(peptideSequenceCodes, newCapacity);
+        peptideScores = Arrays.copyOf(peptideScores, newCapacity);
+        theoreticalMassToCharges = Arrays.copyOf(theoreticalMassToCharges, newCapacity);
+        sequenceLengths = Arrays.copyOf(sequenceLengths, newCapacity);
+        partsPerMillions = Arrays.copyOf(partsPerMillions, newCapacity);
+        calculatedMassToCharges = Arrays.copyOf(calculatedMassToCharges, newCapacity);
+        retentionTimes = Arrays.copyOf(retentionTimes, newCapacity);
+        scanNumbers = Arrays.copyOf(scanNumbers, newCapacity);
+        proteinAccessionCodes = Arrays.copyOf(proteinAccessionCodes, newCapacity);
+        modificationCodes = Arrays.copyOf(modificationCodes, newCapacity);
+        aScoreCodes = Arrays.copyOf(aScoreCodes, newCapacity);
+        evidenceCounts = Arrays.copyOf(evidenceCounts, newCapacity);
+    }
+
+    /**
+     * Returns the amount of rows in the collection.
+     *
+     * @return amount of rows as int.
      */
-    public final void removeDatabaseSearchPsmEntry(final DatabaseSearchPsmOutput databaseSearchEntry) {
-        databaseSearchPsmEntryList.remove(databaseSearchEntry);
+    public final int getRowCount() {
+        return rowCount;
     }
 
     /**
-     * Returns the ArrayList of DatabaseSearchPsmOutput objects.
+     * Returns a cursor over the rows of the collection, positioned before the first row.
      *
-     * @return ArrayList of DatabaseSearchPsmOutput objects.
+     * @return DatabaseSearchPsmCursor object.
      */
-    public final ArrayList<DatabaseSearchPsmOutput> getDatabaseSearchPsmEntryList() {
-        return databaseSearchPsmEntryList;
+    public final DatabaseSearchPsmCursor getRowCursor() {
+        return new DatabaseSearchPsmCursor(this);
     }
-    
+
     /**
-     * Compares the peptide score of DatabaseSearchPsmOutput objects.
-     * 
-     * @return Integer based on the peptide score.
+     * Returns the rows as a read-only list of DatabaseSearchPsmOutput objects. Objects are created when they are accessed.
+     *
+     * @return List of DatabaseSearchPsmOutput objects.
      */
-    static Comparator<DatabaseSearchPsmOutput> getScoreComparator() {
-        return new Comparator<DatabaseSearchPsmOutput>() {
+    public final List<DatabaseSearchPsmOutput> getDatabaseSearchPsmEntryList() {
+        return new AbstractList<DatabaseSearchPsmOutput>() {
+            @Override
+            public DatabaseSearchPsmOutput get(int row) {
+                if (row < 0 || row >= rowCount) {
+                    throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount + " rows.");
+                }
+                return new DatabaseSearchPsmOutput(getPeptideSequence(row), getPeptideScore(row), getTheoreticalMassToCharge(row), getSequenceLength(row),
+                        getPartsPerMillion(row), getCalculatedMassToCharge(row), getRetentionTime(row), getScanNumber(row), getProteinAccession(row),
+                        getPostTranslationalModification(row), getAScore(row), getEvidenceCount(row));
+            }
+
             @Override
-            public int compare(DatabaseSearchPsmOutput o1, DatabaseSearchPsmOutput o2) {
-                return o1.getPeptideScore().compareTo(o2.getPeptideScore());
+            public int size() {
+                return rowCount;
             }
         };
     }
 
     /**
-     * Sorts the collection based on the peptide score.
+     * Returns the peptide sequence of a row.
+     *
+     * @param row index of the row.
+     * @return peptide sequence as String.
+     */
+    final String getPeptideSequence(final int row) {
+        return dictionary.get(peptideSequenceCodes[row]);
+    }
+
+    /**
+     * Returns the -10LogP score of a row.
+     *
+     * @param row index of the row.
+     * @return peptide score as double.
+     */
+    final double getPeptideScore(final int row) {
+        return peptideScores[row];
+    }
+
+    /**
+     * Returns the theoretical mass-to-charge ratio of a row.
+     *
+     * @param row index of the row.
+     * @return theoretical mass-to-charge ratio as double.
+     */
+    final double getTheoreticalMassToCharge(final int row) {
+        return theoreticalMassToCharges[row];
+    }
+
+    /**
+     * Returns the sequence length of a row.
+     *
+     * @param row index of the row.
+     * @return sequence length as int.
+     */
+    final int getSequenceLength(final int row) {
+        return sequenceLengths[row];
+    }
+
+    /**
+     * Returns the parts per million of a row.
+     *
+     * @param row index of the row.
+     * @return parts per million as double.
+     */
+    final double getPartsPerMillion(final int row) {
+        return partsPerMillions[row];
+    }
+
+    /**
+     * Returns the calculated mass-to-charge ratio of a row.
+     *
+     * @param row index of the row.
+     * @return calculated mass-to-charge ratio as double.
+     */
+    final double getCalculatedMassToCharge(final int row) {
+        return calculatedMassToCharges[row];
+    }
+
+    /**
+     * Returns the retention time of a row.
+     *
+     * @param row index of the row.
+     * @return retention time as String.
+     */
+    final String getRetentionTime(final int row) {
+        return retentionTimes[row];
+    }
+
+    /**
+     * Returns the scan number of a row.
+     *
+     * @param row index of the row.
+     * @return scan number as String.
+     */
+    final String getScanNumber(final int row) {
+        return scanNumbers[row];
+    }
+
+    /**
+     * Returns the protein accessions of a row.
+     *
+     * @param row index of the row.
+     * @return protein accessions as String.
+     */
+    final String getProteinAccession(final int row) {
+        return dictionary.get(proteinAccessionCodes[row]);
+    }
+
+    /**
+     * Returns the post-translational modification of a row.
+     *
+     * @param row index of the row.
+     * @return post-translational modification as String.
+     */
+    final String getPostTranslationalModification(final int row) {
+        return dictionary.get(modificationCodes[row]);
+    }
+
+    /**
+     * Returns the aScore of a row.
+     *
+     * @param row index of the row.
+     * @return aScore as String.
+     */
+    final String getAScore(final int row) {
+        return dictionary.get(aScoreCodes[row]);
+    }
+
+    /**
+     * Returns the evidence count of a row.
+     *
+     * @param row index of the row.
+     * @return evidence count as Integer, or null if the row has no spectra count.
+     */
+    final Integer getEvidenceCount(final int row) {
+        if (evidenceCounts[row] == NO_EVIDENCE_COUNT) {
+            return null;
+        }
+        return evidenceCounts[row];
+    }
+
+    /**
+     * Sorts the collection based on the peptide score. Rows with equal scores are sorted on peptide sequence and otherwise keep their order, like
+     * Collections.sort() with Double.compareTo() followed by String.compareTo().
      */
     public final void sortOnPeptideScore() {
-        Collections.sort(this.databaseSearchPsmEntryList, getScoreComparator());
+        //Rows are first ordered on peptide sequence, so the stable score sort below keeps rows with equal scores in sequence order.
+        int[] sequenceOrder = getSequenceOrder();
+        //Scores are mapped to longs that sort in the same order as Double.compareTo(), so a primitive sort can be used.
+        long[] keys = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            long bits = Double.doubleToLongBits(peptideScores[row]);
+            keys[row] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+        long[] sortedKeys = keys.clone();
+        if (rowCount >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(sortedKeys);
+        } else {
+            Arrays.sort(sortedKeys);
+        }
+        //Determine the first position of each distinct key, then place rows in their original order to keep the sort stable.
+        int distinctCount = 0;
+        int[] positions = new int[rowCount];
+        for (int index = 0; index < rowCount; index++) {
+            if (index == 0 || sortedKeys[index] != sortedKeys[distinctCount - 1]) {
+                sortedKeys[distinctCount] = sortedKeys[index];
+                positions[distinctCount] = index;
+                distinctCount++;
+            }
+        }
+        int[] order = new int[rowCount];
+        for (int index = 0; index < rowCount; index++) {
+            int row = sequenceOrder[index];
+            int distinct = Arrays.binarySearch(sortedKeys, 0, distinctCount, keys[row]);
+            order[positions[distinct]++] = row;
+        }
+        peptideSequenceCodes = reorder(peptideSequenceCodes, order);
+        peptideScores = reorder(peptideScores, order);
+        theoreticalMassToCharges = reorder(theoreticalMassToCharges, order);
+        sequenceLengths = reorder(sequenceLengths, order);
+        partsPerMillions = reorder(partsPerMillions, order);
+        calculatedMassToCharges = reorder(calculatedMassToCharges, order);
+        retentionTimes = reorder(retentionTimes, order);
+        scanNumbers = reorder(scanNumbers, order);
+        proteinAccessionCodes = reorder(proteinAccessionCodes, order);
+        modificationCodes = reorder(modificationCodes, order);
+        aScoreCodes = reorder(aScoreCodes, order);
+        evidenceCounts = reorder(evidenceCounts, order);
+    }
+
+    /**
+     * Orders the rows on peptide sequence with a stable counting sort on the rank of each sequence code. A null sequence is placed first.
+     *
+     * @return old row index per position in sequence order.
+     */
+    private int[] getSequenceOrder() {
+        int[] ranks = new int[dictionary.size()];
+        Arrays.fill(ranks, -1);
+        int sequenceCount = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (ranks[peptideSequenceCodes[row]] == -1) {
+                ranks[peptideSequenceCodes[row]] = 0;
+                sequenceCount++;
+            }
+        }
+        String[] sequences = new String[sequenceCount];
+        int sequenceIndex = sequenceCount;
+        for (int code = ranks.length - 1; code >= 0; code--) {
+            if (ranks[code] == 0 && dictionary.get(code) != null) {
+                sequences[--sequenceIndex] = dictionary.get(code);
+            }
+        }
+        Arrays.sort(sequences, sequenceIndex, sequenceCount);
+        int[] offsets = new int[sequenceCount + 1];
+        for (int rank = 0; rank < sequenceCount; rank++) {
+            ranks[dictionaryCodes.get(sequences[rank])] = rank;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            offsets[ranks[peptideSequenceCodes[row]] + 1]++;
+        }
+        for (int rank = 0; rank < sequenceCount; rank++) {
+            offsets[rank + 1] += offsets[rank];
+        }
+        int[] sequenceOrder = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            sequenceOrder[offsets[ranks[peptideSequenceCodes[row]]]++] = row;
+        }
+        return sequenceOrder;
+    }
+
+    /**
+     * Returns a column with its rows in the given order.
+     *
+     * @param column int column.
+     * @param order old row index per new row index.
+     * @return reordered column.
+     */
+    private static int[] reorder(final int[] column, final int[] order) {
+        int[] reordered = new int[Math.max(order.length, INITIAL_CAPACITY)];
+        for (int row = 0; row < order.length; row++) {
+            reordered[row] = column[order[row]];
+        }
+        return reordered;
+    }
+
+    /**
+     * Returns a column with its rows in the given order.
+     *
+     * @param column double column.
+     * @param order old row index per new row index.
+     * @return reordered column.
+     */
+    private static double[] reorder(final double[] column, final int[] order) {
+        double[] reordered = new double[Math.max(order.length, INITIAL_CAPACITY)];
+        for (int row = 0; row < order.length; row++) {
+            reordered[row] = column[order[row]];
+        }
+        return reordered;
+    }
+
+    /**
+     * Returns a column with its rows in the given order.
+     *
+     * @param column String column.
+     * @param order old row index per new row index.
+     * @return reordered column.
+     */
+    private static String[] reorder(final String[] column, final int[] order) {
+        String[] reordered = new String[Math.max(order.length, INITIAL_CAPACITY)];
+        for (int row = 0; row < order.length; row++) {
+            reordered[row] = column[order[row]];
+        }
+        return reordered;
     }
 }
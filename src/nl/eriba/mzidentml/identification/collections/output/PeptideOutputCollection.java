@@ -56,21 +56,25 @@ public class PeptideOutputCollection {
     }
     
     /**
-     * Compares the peptide score of PeptideOutput objects.
+     * Compares the peptide score of PeptideOutput objects. Objects with equal peptide scores are compared on peptide sequence.
      *
-     * @return Integer value based on the peptide score.
+     * @return Integer value based on the peptide score and peptide sequence.
      */
     static Comparator<PeptideOutput> getScoreComparator() {
         return new Comparator<PeptideOutput>() {
             @Override
             public int compare(PeptideOutput o1, PeptideOutput o2) {
-                return o1.getPeptideScore().compareTo(o2.getPeptideScore());
+                int scoreComparison = o1.getPeptideScore().compareTo(o2.getPeptideScore());
+                if (scoreComparison != 0) {
+                    return scoreComparison;
+                }
+                return o1.getPeptideSequence().compareTo(o2.getPeptideSequence());
             }
         };
     }
 
     /**
-     * Sorts the collection based on peptide score.
+     * Sorts the collection based on peptide score and peptide sequence.
      */
     public final void sortOnPeptideScore() {
         Collections.sort(this.psmList, getScoreComparator());
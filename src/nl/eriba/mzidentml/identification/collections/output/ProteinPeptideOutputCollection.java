@@ -56,21 +56,25 @@ public class ProteinPeptideOutputCollection {
     }
     
     /**
-     * Compares the protein group of ProteinPeptideOutput objects.
+     * Compares the protein group of ProteinPeptideOutput objects. Objects with equal protein groups are compared on peptide sequence.
      * 
-     * @return Integer based on the protein group.
+     * @return Integer based on the protein group and peptide sequence.
      */
     static Comparator<ProteinPeptideOutput> getProteinGroupComparator() {
         return new Comparator<ProteinPeptideOutput>() {
             @Override
             public int compare(ProteinPeptideOutput o1, ProteinPeptideOutput o2) {
-                return o1.getProteinGroup().compareTo(o2.getProteinGroup());
+                int groupComparison = o1.getProteinGroup().compareTo(o2.getProteinGroup());
+                if (groupComparison != 0) {
+                    return groupComparison;
+                }
+                return o1.getPeptideSequence().compareTo(o2.getPeptideSequence());
             }
         };
     }
 
     /**
-     * Sorts the collection based on the protein group.
+     * Sorts the collection based on the protein group and peptide sequence.
      */
     public final void sortOnProteinGroup() {
         Collections.sort(this.proteinPeptideEntryList, getProteinGroupComparator());
@@ -1,14 +1,16 @@
 /*
  * @author Vikthor Nijenhuis
- * @project Peptide mzIdentML Identfication Module * 
+ * @project Peptide mzIdentML Identfication Module *
  */
 package nl.eriba.mzidentml.identification.collections.output;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import nl.eriba.mzidentml.identification.objects.output.ScanIdOutput;
 
 /**
  * Defines a collection of ScanIdOutput objects.
+ * Entries are kept in insertion order and indexed on their scan ID, so entries of other datasets can be merged without searching the list.
  *
  * @author vnijenhuis
  */
@@ -20,10 +22,16 @@ public class ScanIdOutputCollection {
     private final ArrayList<ScanIdOutput> scanIdEntryCollection;
 
     /**
-     * Creates a new ArrayList.
+     * HashMap with the scan ID as key and the first ScanIdOutput object with this scan ID as value.
+     */
+    private final HashMap<String, ScanIdOutput> scanIdEntryIndex;
+
+    /**
+     * Creates a new ArrayList and scan ID index.
      */
     public ScanIdOutputCollection() {
         this.scanIdEntryCollection = new ArrayList<>();
+        this.scanIdEntryIndex = new HashMap<>();
     }
 
     /**
@@ -33,6 +41,28 @@ public class ScanIdOutputCollection {
      */
     public final void addScanIdEntry(final ScanIdOutput result) {
         this.scanIdEntryCollection.add(result);
+        this.scanIdEntryIndex.putIfAbsent(result.getScanId(), result);
+    }
+
+    /**
+     * Merges a ScanIdOutput object into the collection.
+     * For the first dataset every entry is added. For other datasets the sequence and score of the current index are set on the existing entry with
+     * the same scan ID, or the entry is added if the scan ID is not present yet.
+     *
+     * @param result target ScanIdOutput object.
+     * @param currentIndex current index of the dataset list.
+     */
+    public final void mergeScanIdEntry(final ScanIdOutput result, final Integer currentIndex) {
+        ScanIdOutput existingEntry = null;
+        if (currentIndex != 0) {
+            existingEntry = this.scanIdEntryIndex.get(result.getScanId());
+        }
+        if (existingEntry == null) {
+            addScanIdEntry(result);
+        } else {
+            existingEntry.setPeptideSequence(currentIndex, result.getPeptideSequenceList().get(currentIndex));
+            existingEntry.setPsmScore(currentIndex, result.getPsmScoreList().get(currentIndex));
+        }
     }
 
     /**
@@ -42,10 +72,31 @@ public class ScanIdOutputCollection {
      */
     public final void removeScanIdEntry(final ScanIdOutput result) {
         this.scanIdEntryCollection.remove(result);
+        if (this.scanIdEntryIndex.get(result.getScanId()) == result) {
+            this.scanIdEntryIndex.remove(result.getScanId());
+            //Index the next entry with the same scan ID if present.
+            for (ScanIdOutput scanIdEntry : this.scanIdEntryCollection) {
+                if (scanIdEntry.getScanId().equals(result.getScanId())) {
+                    this.scanIdEntryIndex.put(scanIdEntry.getScanId(), scanIdEntry);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first ScanIdOutput object with the given scan ID.
+     *
+     * @param scanId scan ID as String.
+     * @return ScanIdOutput object or null if the scan ID is not present.
+     */
+    public final ScanIdOutput getScanIdEntry(final String scanId) {
+        return this.scanIdEntryIndex.get(scanId);
     }
 
     /**
      * Returns a list of ScanIdOutput objects.
+     * Entries should be added through this collection to keep the scan ID index up to date.
      *
      * @return ArrayList of ScanIdOutput objects.
      */
@@ -0,0 +1,189 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.database;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton of peptide sequences, used to find all peptide sequences in a protein sequence with a single pass over the protein.
+ * The automaton is not changed after it has been created and can be used by multiple threads at the same time.
+ *
+ * @author vnijenhuis
+ */
+public class PeptideSequenceAutomaton {
+
+    /**
+     * Index of each character in the alphabet of the peptide sequences. Characters that are not present have index -1.
+     */
+    private final int[] characterIndex;
+
+    /**
+     * Amount of characters in the alphabet of the peptide sequences.
+     */
+    private final int alphabetSize;
+
+    /**
+     * Amount of peptide sequences in the automaton.
+     */
+    private final int sequenceCount;
+
+    /**
+     * Transition table with the next node per node and character. Missing transitions point to the node of the longest matching suffix.
+     */
+    private final int[] transitions;
+
+    /**
+     * Index of the peptide sequence that ends at each node, or -1 if no sequence ends at the node.
+     */
+    private final int[] sequenceAtNode;
+
+    /**
+     * Next node on the suffix chain of each node at which a peptide sequence ends, or -1 if there is none.
+     */
+    private final int[] outputLink;
+
+    /**
+     * Creates the automaton of the given peptide sequences.
+     *
+     * @param peptideSequences distinct peptide sequences. The index of a sequence in this list is used as sequence index.
+     */
+    public PeptideSequenceAutomaton(final List<String> peptideSequences) {
+        this.sequenceCount = peptideSequences.size();
+        this.characterIndex = new int[128];
+        Arrays.fill(characterIndex, -1);
+        int characterCount = 0;
+        int nodeLimit = 1;
+        for (String sequence : peptideSequences) {
+            nodeLimit += sequence.length();
+            for (int i = 0; i < sequence.length(); i++) {
+                char character = sequence.charAt(i);
+                if (character >= 128) {
+                    throw new IllegalArgumentException("Peptide sequence " + sequence + " contains a non-ASCII character.");
+                }
+                if (characterIndex[character] == -1) {
+                    characterIndex[character] = characterCount;
+                    characterCount++;
+                }
+            }
+        }
+        this.alphabetSize = Math.max(characterCount, 1);
+        int[] trieTransitions = new int[nodeLimit * alphabetSize];
+        int[] nodeSequences = new int[nodeLimit];
+        Arrays.fill(nodeSequences, -1);
+        //Node 0 is the root. A transition value of 0 in the trie means that the child node does not exist yet.
+        int nodeCount = 1;
+        for (int sequenceIndex = 0; sequenceIndex < peptideSequences.size(); sequenceIndex++) {
+            String sequence = peptideSequences.get(sequenceIndex);
+            int node = 0;
+            for (int i = 0; i < sequence.length(); i++) {
+                int transition = node * alphabetSize + characterIndex[sequence.charAt(i)];
+                if (trieTransitions[transition] == 0) {
+                    trieTransitions[transition] = nodeCount;
+                    nodeCount++;
+                }
+                node = trieTransitions[transition];
+            }
+            if (nodeSequences[node] == -1) {
+                nodeSequences[node] = sequenceIndex;
+            }
+        }
+        this.transitions = Arrays.copyOf(trieTransitions, nodeCount * alphabetSize);
+        this.sequenceAtNode = Arrays.copyOf(nodeSequences, nodeCount);
+        this.outputLink = new int[nodeCount];
+        createSuffixLinks(nodeCount);
+    }
+
+    /**
+     * Adds the suffix links to the trie by a breadth-first walk, which turns the trie into the complete automaton.
+     *
+     * @param nodeCount amount of nodes in the trie.
+     */
+    private void createSuffixLinks(final int nodeCount) {
+        int[] failure = new int[nodeCount];
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        outputLink[0] = -1;
+        for (int character = 0; character < alphabetSize; character++) {
+            int child = transitions[character];
+            if (child != 0) {
+                failure[child] = 0;
+                outputLink[child] = -1;
+                queue[tail] = child;
+                tail++;
+            }
+        }
+        while (head < tail) {
+            int node = queue[head];
+            head++;
+            for (int character = 0; character < alphabetSize; character++) {
+                int transition = node * alphabetSize + character;
+                int child = transitions[transition];
+                int suffixTransition = transitions[failure[node] * alphabetSize + character];
+                if (child != 0) {
+                    failure[child] = suffixTransition;
+                    if (sequenceAtNode[suffixTransition] != -1) {
+                        outputLink[child] = suffixTransition;
+                    } else {
+                        outputLink[child] = outputLink[suffixTransition];
+                    }
+                    queue[tail] = child;
+                    tail++;
+                } else {
+                    transitions[transition] = suffixTransition;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of peptide sequences in the automaton.
+     *
+     * @return amount of peptide sequences as int.
+     */
+    public final int getSequenceCount() {
+        return sequenceCount;
+    }
+
+    /**
+     * Scans a protein sequence and sets the index of every peptide sequence that occurs in the protein.
+     * Characters that do not occur in any peptide sequence reset the automaton, so no match can span these characters.
+     *
+     * @param residues byte array that contains the protein sequence to scan.
+     * @param offset start of the protein sequence in the array.
+     * @param length length of the protein sequence.
+     * @param foundSequences BitSet with the indices of peptide sequences that were found before. Only updated by this method.
+     * @return amount of peptide sequences that were found for the first time.
+     */
+    public final int scan(final byte[] residues, final int offset, final int length, final BitSet foundSequences) {
+        int newSequences = 0;
+        int node = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte character = residues[i];
+            int index = -1;
+            if (character >= 0) {
+                index = characterIndex[character];
+            }
+            if (index == -1) {
+                node = 0;
+                continue;
+            }
+            node = transitions[node * alphabetSize + index];
+            int outputNode = node;
+            if (sequenceAtNode[outputNode] == -1) {
+                outputNode = outputLink[outputNode];
+            }
+            //Sequences on the suffix chain of a found sequence have been found as well, so the walk stops at the first found sequence.
+            while (outputNode != -1 && !foundSequences.get(sequenceAtNode[outputNode])) {
+                foundSequences.set(sequenceAtNode[outputNode]);
+                newSequences++;
+                outputNode = outputLink[outputNode];
+            }
+        }
+        return newSequences;
+    }
+}
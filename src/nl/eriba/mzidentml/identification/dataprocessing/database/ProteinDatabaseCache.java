@@ -0,0 +1,280 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.database;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import nl.eriba.mzidentml.identification.collections.general.ProteinDatabaseSequenceCollection;
+import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
+
+/**
+ * Cache of protein databases that loads a database file when it is used for the first time.
+ * The cache is kept below a memory budget by removing the least recently used databases. Removed databases are loaded again when needed,
+ * which is fast if the database file has a protein sequence index or a protein database snapshot.
+ * Database files are loaded outside of the lock of the cache, so threads that use another or an already loaded database do not wait for a load.
+ * Threads that need a file that is being loaded wait for that single load.
+ *
+ * @author vnijenhuis
+ */
+public class ProteinDatabaseCache {
+
+    /**
+     * Estimated memory usage of a protein object without its residues and accession characters, in bytes.
+     */
+    private static final long PROTEIN_OVERHEAD = 120;
+
+    /**
+     * LinkedHashMap with database name as key and a list of files as value.
+     */
+    private final LinkedHashMap<String, ArrayList<String>> databaseEntryMap;
+
+    /**
+     * ConcurrentHashMap with database file as key and the task that loads or has loaded its protein collection as value.
+     */
+    private final ConcurrentHashMap<String, FutureTask<ProteinDatabaseSequenceCollection>> databaseLoaders;
+
+    /**
+     * LinkedHashMap in access order with loaded database file as key and the estimated memory usage of its protein collection as value.
+     * Only accessed while holding the lock of the cache.
+     */
+    private final LinkedHashMap<String, Long> databaseSizes;
+
+    /**
+     * Maximum estimated memory usage of all loaded databases in bytes.
+     */
+    private final long memoryBudget;
+
+    /**
+     * Writes a snapshot of each database file that is parsed if true.
+     */
+    private final Boolean writeSnapshots;
+
+    /**
+     * Amount of threads used to load a database file.
+     */
+    private final Integer threads;
+
+    /**
+     * Estimated memory usage of all loaded databases in bytes.
+     */
+    private long usedMemory;
+
+    /**
+     * Creates a protein database cache.
+     *
+     * @param databaseEntryMap LinkedHashMap with database name as key and a list of files as value.
+     * @param memoryBudget maximum estimated memory usage of all loaded databases in bytes.
+     * @param writeSnapshots writes a snapshot of each database file that is parsed if true.
+     * @param threads amount of threads used to load a database file.
+     */
+    public ProteinDatabaseCache(final LinkedHashMap<String, ArrayList<String>> databaseEntryMap, final long memoryBudget, final Boolean writeSnapshots,
+            final Integer threads) {
+        this.databaseEntryMap = databaseEntryMap;
+        this.databaseLoaders = new ConcurrentHashMap<>();
+        this.databaseSizes = new LinkedHashMap<>(16, 0.75f, true);
+        this.memoryBudget = memoryBudget;
+        this.writeSnapshots = writeSnapshots;
+        this.threads = threads;
+        this.usedMemory = 0;
+    }
+
+    /**
+     * Returns the database file of a database name for the given sample.
+     * A database with a single file is used for all samples. Uniprot would be one such database.
+     *
+     * @param databaseName name of the database.
+     * @param sampleIndex index of the sample.
+     * @return database file or null if the database has no file for this sample.
+     */
+    public final String getDatabaseFile(final String databaseName, final int sampleIndex) {
+        ArrayList<String> files = databaseEntryMap.get(databaseName);
+        if (files == null || files.isEmpty()) {
+            return null;
+        } else if (files.size() == 1) {
+            return files.get(0);
+        } else if (sampleIndex < files.size()) {
+            return files.get(sampleIndex);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the protein collection of a database for the given sample and loads the database file if it is not loaded yet.
+     * The file is loaded by the calling thread, unless another thread is already loading it.
+     *
+     * @param databaseName name of the database.
+     * @param sampleIndex index of the sample.
+     * @return ProteinDatabaseSequenceCollection or null if the database has no file for this sample.
+     * @throws InterruptedException process was interrupted while waiting for another thread that loads the database file.
+     * @throws ExecutionException could not load the database file.
+     */
+    public final ProteinDatabaseSequenceCollection getProteinDatabase(final String databaseName, final int sampleIndex) throws InterruptedException, ExecutionException {
+        String file = getDatabaseFile(databaseName, sampleIndex);
+        if (file == null) {
+            return null;
+        }
+        FutureTask<ProteinDatabaseSequenceCollection> loader = getDatabaseLoader(file, threads, null);
+        //Does nothing if the file has been loaded or is being loaded by another thread.
+        loader.run();
+        HashSet<String> currentFiles = new HashSet<>();
+        currentFiles.add(file);
+        return getLoadedDatabase(file, loader, currentFiles);
+    }
+
+    /**
+     * Returns the protein collections of several databases for the given sample. Database files that are not loaded yet are loaded concurrently.
+     * The returned databases are not removed from the cache by this call, so the memory budget can be exceeded while they are loaded.
+     *
+     * @param databaseNames names of the databases.
+     * @param sampleIndex index of the sample.
+     * @return LinkedHashMap with database name as key and ProteinDatabaseSequenceCollection as value. Databases without a file for this sample are left out.
+     * @throws InterruptedException process was interrupted while loading a database file.
+     * @throws ExecutionException could not load a database file.
+     */
+    public final LinkedHashMap<String, ProteinDatabaseSequenceCollection> getProteinDatabases(final ArrayList<String> databaseNames, final int sampleIndex)
+            throws InterruptedException, ExecutionException {
+        LinkedHashMap<String, String> databaseFiles = new LinkedHashMap<>();
+        int missingFiles = 0;
+        for (String databaseName : databaseNames) {
+            String file = getDatabaseFile(databaseName, sampleIndex);
+            if (file != null) {
+                if (!databaseFiles.containsValue(file) && !databaseLoaders.containsKey(file)) {
+                    missingFiles++;
+                }
+                databaseFiles.put(databaseName, file);
+            }
+        }
+        //Only the loaders created by this call are run here. Files that are loaded by other threads are waited for.
+        Integer fileThreads = ProteinSequenceDatabaseMap.getFileThreads(threads, missingFiles);
+        ArrayList<FutureTask<ProteinDatabaseSequenceCollection>> createdLoaders = new ArrayList<>();
+        LinkedHashMap<String, FutureTask<ProteinDatabaseSequenceCollection>> loaders = new LinkedHashMap<>();
+        for (String file : databaseFiles.values()) {
+            if (!loaders.containsKey(file)) {
+                loaders.put(file, getDatabaseLoader(file, fileThreads, createdLoaders));
+            }
+        }
+        ProteinSequenceDatabaseMap.loadDatabaseFiles(createdLoaders, threads);
+        HashSet<String> currentFiles = new HashSet<>(loaders.keySet());
+        LinkedHashMap<String, ProteinDatabaseSequenceCollection> proteinDatabases = new LinkedHashMap<>();
+        for (Map.Entry<String, String> databaseFile : databaseFiles.entrySet()) {
+            FutureTask<ProteinDatabaseSequenceCollection> loader = loaders.get(databaseFile.getValue());
+            //Runs loaders that were created but not started by another thread that was interrupted.
+            loader.run();
+            proteinDatabases.put(databaseFile.getKey(), getLoadedDatabase(databaseFile.getValue(), loader, currentFiles));
+        }
+        return proteinDatabases;
+    }
+
+    /**
+     * Returns the loader of a database file and creates it if the file is not loaded or being loaded.
+     *
+     * @param file database file.
+     * @param fileThreads amount of threads used to read the database file if a loader is created.
+     * @param createdLoaders list that a created loader is added to, or null.
+     * @return FutureTask that loads or has loaded the protein collection of the file.
+     */
+    private FutureTask<ProteinDatabaseSequenceCollection> getDatabaseLoader(final String file, final Integer fileThreads,
+            final ArrayList<FutureTask<ProteinDatabaseSequenceCollection>> createdLoaders) {
+        return databaseLoaders.computeIfAbsent(file, new Function<String, FutureTask<ProteinDatabaseSequenceCollection>>() {
+            @Override
+            public FutureTask<ProteinDatabaseSequenceCollection> apply(String databaseFile) {
+                FutureTask<ProteinDatabaseSequenceCollection> loader = new FutureTask<>(new ProteinSequenceDatabaseMap(databaseFile, fileThreads, writeSnapshots));
+                if (createdLoaders != null) {
+                    createdLoaders.add(loader);
+                }
+                return loader;
+            }
+        });
+    }
+
+    /**
+     * Waits for the loader of a database file and adds the loaded database to the bookkeeping of the cache.
+     * A loader that failed is removed, so the file is loaded again on the next request.
+     *
+     * @param file database file.
+     * @param loader loader of the database file.
+     * @param currentFiles database files that are currently used and are not removed from the cache.
+     * @return protein collection of the database file.
+     * @throws InterruptedException process was interrupted while waiting for the loader.
+     * @throws ExecutionException could not load the database file.
+     */
+    private ProteinDatabaseSequenceCollection getLoadedDatabase(final String file, final FutureTask<ProteinDatabaseSequenceCollection> loader, final Set<String> currentFiles)
+            throws InterruptedException, ExecutionException {
+        ProteinDatabaseSequenceCollection proteins;
+        try {
+            proteins = loader.get();
+        } catch (ExecutionException e) {
+            databaseLoaders.remove(file, loader);
+            throw e;
+        }
+        synchronized (this) {
+            //Accessing the size marks the database as recently used.
+            if (databaseSizes.get(file) != null) {
+                evictDatabases(currentFiles);
+                return proteins;
+            }
+        }
+        //The first thread that uses a loaded database estimates its size outside of the lock.
+        long size = estimateMemoryUsage(proteins);
+        synchronized (this) {
+            if (databaseLoaders.get(file) == loader && !databaseSizes.containsKey(file)) {
+                databaseSizes.put(file, size);
+                usedMemory += size;
+            }
+            evictDatabases(currentFiles);
+        }
+        return proteins;
+    }
+
+    /**
+     * Removes the least recently used databases until the memory usage is below the budget. The given databases and databases that are still being
+     * loaded are never removed. Threads that still use a removed protein collection keep it until they are done.
+     *
+     * @param currentFiles database files that are currently used.
+     */
+    private void evictDatabases(final Set<String> currentFiles) {
+        Iterator<Map.Entry<String, Long>> iterator = databaseSizes.entrySet().iterator();
+        while (usedMemory > memoryBudget && iterator.hasNext()) {
+            Map.Entry<String, Long> databaseSize = iterator.next();
+            if (!currentFiles.contains(databaseSize.getKey())) {
+                iterator.remove();
+                databaseLoaders.remove(databaseSize.getKey());
+                usedMemory -= databaseSize.getValue();
+                System.out.println("Removed " + databaseSize.getKey() + " from the protein database cache.");
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory usage of a protein collection.
+     *
+     * @param proteins protein collection.
+     * @return estimated memory usage in bytes.
+     */
+    private long estimateMemoryUsage(final ProteinDatabaseSequenceCollection proteins) {
+        long size = 0;
+        for (ProteinDatabaseSequence protein : proteins.getProteinCollection()) {
+            size += PROTEIN_OVERHEAD + protein.getSequenceLength() + protein.getProteinAccession().length() * 2;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated memory usage of all loaded databases.
+     *
+     * @return estimated memory usage in bytes.
+     */
+    public final synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+}
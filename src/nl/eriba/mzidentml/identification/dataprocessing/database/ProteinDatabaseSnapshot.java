@@ -0,0 +1,147 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import nl.eriba.mzidentml.identification.collections.general.ProteinDatabaseSequenceCollection;
+import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
+
+/**
+ * Binary snapshot of the proteins of a protein database fasta file. The snapshot file is written next to the fasta file and contains the
+ * accession, length and mass of each protein followed by all residues, so it can be loaded without parsing the fasta file.
+ *
+ * @author vnijenhuis
+ */
+public class ProteinDatabaseSnapshot {
+
+    /**
+     * Extension of the snapshot file.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".pds";
+
+    /**
+     * Identifier at the start of each snapshot file.
+     */
+    private static final long MAGIC_NUMBER = 0x4d5a494450445331L;
+
+    /**
+     * Version of the snapshot file format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Minimum size of the residue arrays that the protein sequences are read into.
+     */
+    private static final int RESIDUE_CHUNK_SIZE = 1 << 26;
+
+    /**
+     * Returns the path of the snapshot file of a fasta file.
+     *
+     * @param database path to the fasta file.
+     * @return path to the snapshot file.
+     */
+    public static String getSnapshotFile(final String database) {
+        return database + SNAPSHOT_EXTENSION;
+    }
+
+    /**
+     * Checks if a fasta file has a snapshot file that is at least as new as the fasta file.
+     *
+     * @param database path to the fasta file.
+     * @return true if an up to date snapshot file exists, otherwise false.
+     */
+    public static boolean hasSnapshot(final String database) {
+        File snapshotFile = new File(getSnapshotFile(database));
+        return snapshotFile.isFile() && snapshotFile.lastModified() >= new File(database).lastModified();
+    }
+
+    /**
+     * Writes the proteins of a fasta file to its snapshot file. The file is written under a temporary name and renamed when it is complete.
+     *
+     * @param database path to the fasta file.
+     * @param proteins protein collection of the fasta file.
+     * @throws IOException the snapshot file could not be written.
+     */
+    public static void writeSnapshot(final String database, final ProteinDatabaseSequenceCollection proteins) throws IOException {
+        ArrayList<ProteinDatabaseSequence> proteinList = proteins.getProteinCollection();
+        File snapshotFile = new File(getSnapshotFile(database));
+        File temporaryFile = new File(snapshotFile.getPath() + ".tmp");
+        long residueCount = 0;
+        for (ProteinDatabaseSequence protein : proteinList) {
+            residueCount += protein.getSequenceLength();
+        }
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+            output.writeLong(MAGIC_NUMBER);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(proteinList.size());
+            output.writeLong(residueCount);
+            for (ProteinDatabaseSequence protein : proteinList) {
+                output.writeUTF(protein.getProteinAccession());
+                output.writeInt(protein.getSequenceLength());
+                output.writeDouble(protein.getAverageMass());
+            }
+            for (ProteinDatabaseSequence protein : proteinList) {
+                output.write(protein.getResidues(), protein.getResidueOffset(), protein.getSequenceLength());
+            }
+        }
+        Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Created protein database snapshot " + snapshotFile.getPath() + " for " + proteinList.size() + " proteins.");
+    }
+
+    /**
+     * Adds the proteins of the snapshot file of a fasta file to a protein collection, in the order they were written.
+     * The residues are read in large chunks and each protein is a view of one of these chunks.
+     *
+     * @param database path to the fasta file.
+     * @param proteins protein collection.
+     * @return returns the collection of proteins.
+     * @throws IOException the snapshot file could not be read or is not a valid snapshot file.
+     */
+    public static ProteinDatabaseSequenceCollection readSnapshot(final String database, final ProteinDatabaseSequenceCollection proteins) throws IOException {
+        String snapshotFile = getSnapshotFile(database);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+            if (input.readLong() != MAGIC_NUMBER || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("File " + snapshotFile + " is not a valid protein database snapshot.");
+            }
+            int proteinCount = input.readInt();
+            long remainingResidues = input.readLong();
+            String[] accessions = new String[proteinCount];
+            int[] lengths = new int[proteinCount];
+            double[] masses = new double[proteinCount];
+            for (int i = 0; i < proteinCount; i++) {
+                accessions[i] = input.readUTF();
+                lengths[i] = input.readInt();
+                masses[i] = input.readDouble();
+            }
+            byte[] residueChunk = new byte[0];
+            int chunkPosition = 0;
+            for (int i = 0; i < proteinCount; i++) {
+                if (chunkPosition + lengths[i] > residueChunk.length) {
+                    //The start of the protein that was already read is moved to the new chunk.
+                    int readResidues = residueChunk.length - chunkPosition;
+                    byte[] newChunk = new byte[(int) Math.min(readResidues + remainingResidues, Math.max(RESIDUE_CHUNK_SIZE, lengths[i]))];
+                    System.arraycopy(residueChunk, chunkPosition, newChunk, 0, readResidues);
+                    input.readFully(newChunk, readResidues, newChunk.length - readResidues);
+                    remainingResidues -= newChunk.length - readResidues;
+                    residueChunk = newChunk;
+                    chunkPosition = 0;
+                }
+                proteins.addProtein(new ProteinDatabaseSequence(residueChunk, chunkPosition, lengths[i], accessions[i], masses[i]));
+                chunkPosition += lengths[i];
+            }
+        }
+        return proteins;
+    }
+}
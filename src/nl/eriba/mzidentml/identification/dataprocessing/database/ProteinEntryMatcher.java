@@ -4,200 +4,204 @@
  */
 package nl.eriba.mzidentml.identification.dataprocessing.database;
 
-import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import nl.eriba.mzidentml.identification.collections.general.CombinedDatabaseReferenceCollection;
+import nl.eriba.mzidentml.identification.collections.general.ProteinDatabaseSequenceCollection;
 import nl.eriba.mzidentml.identification.collections.mzid.MzIdProteinDetectionHypothesisCollection;
 import nl.eriba.mzidentml.identification.collections.output.ProteinOutputCollection;
 import nl.eriba.mzidentml.identification.objects.general.CombinedDatabaseReference;
+import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
 import nl.eriba.mzidentml.identification.objects.mzid.MzIdProteinDetectionHypothesis;
 import nl.eriba.mzidentml.identification.objects.output.ProteinOutput;
 import nl.eriba.mzidentml.tools.CalculationTools;
 
 /**
+ * Creates protein output by joining CombinedDatabaseReference objects to protein detection hypotheses and, if a protein database is given,
+ * to the database sequences on protein accession. The references are divided into partitions that are matched by multiple threads.
  *
- * @author Vikthor
+ * @author vnijenhuis
  */
-public class ProteinEntryMatcher implements Callable {
+public class ProteinEntryMatcher implements Callable<ArrayList<ProteinOutput>> {
+
     /**
-     * 
+     * Suffix of the accession of decoy proteins.
      */
-    private final ProteinOutputCollection proteinEntryCollection;
-    
+    private static final String REVERSED_SUFFIX = "_REVERSED";
+
     /**
-     * 
+     * Partition of the database references that is matched by the call function.
      */
-    private final CombinedDatabaseReference databaseReference;
-    
+    private final List<CombinedDatabaseReference> databaseReferences;
+
     /**
-     * 
+     * HashMap with protein accession as key and the first passing protein detection hypothesis with this accession as value.
      */
-    private final HashMap<Character, MzIdProteinDetectionHypothesisCollection> proteinHypothesisCollectionMap;
+    private final HashMap<String, MzIdProteinDetectionHypothesis> proteinHypothesisMap;
 
+    /**
+     * HashMap with protein accession as key and the first database sequence with this accession as value, or null without protein database.
+     */
+    private final HashMap<String, ProteinDatabaseSequence> databaseSequenceMap;
 
     /**
-     * 
-     * @param databaseReference
-     * @param proteinEntryCollection 
+     * Creates a protein entry matcher for a partition of the database references.
+     *
+     * @param databaseReferences partition of the database references.
+     * @param proteinHypothesisMap HashMap with protein accession as key and protein detection hypothesis as value.
+     * @param databaseSequenceMap HashMap with protein accession as key and database sequence as value, or null without protein database.
      */
-    public ProteinEntryMatcher(final CombinedDatabaseReference databaseReference, ProteinOutputCollection proteinEntryCollection, final HashMap<Character, MzIdProteinDetectionHypothesisCollection> proteinHypothesisCollectionMap) {
-        this.proteinEntryCollection = proteinEntryCollection;
-        this.databaseReference = databaseReference;
-        this.proteinHypothesisCollectionMap = proteinHypothesisCollectionMap;
+    public ProteinEntryMatcher(final List<CombinedDatabaseReference> databaseReferences, final HashMap<String, MzIdProteinDetectionHypothesis> proteinHypothesisMap,
+            final HashMap<String, ProteinDatabaseSequence> databaseSequenceMap) {
+        this.databaseReferences = databaseReferences;
+        this.proteinHypothesisMap = proteinHypothesisMap;
+        this.databaseSequenceMap = databaseSequenceMap;
     }
 
     /**
-     * 
-     * @return
-     * @throws Exception 
+     * Call function which matches the partition of database references.
+     *
+     * @return returns a list of ProteinOutput objects in the order of the database references.
      */
     @Override
-    public Object call() throws Exception {
-        ArrayList<Object> collection = new ArrayList<>();
+    public ArrayList<ProteinOutput> call() {
+        ArrayList<ProteinOutput> proteinEntries = new ArrayList<>();
         CalculationTools tools = new CalculationTools();
-        char charAt = databaseReference.getProteinAccession().charAt(0);
-        if (proteinHypothesisCollectionMap.keySet().contains(charAt)) {
-            MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection = proteinHypothesisCollectionMap.get(charAt);
-            if (!proteinHypothesisCollectionMap.isEmpty()) {
-                outerLoop: for (MzIdProteinDetectionHypothesis proteinHypothesis: proteinHypothesisCollection.getProteinDetectionHypothesisList()) {
-                    if (databaseReference.getProteinAccession().equals(proteinHypothesis.getProteinAccession())) {
-                        Integer proteinLength = Collections.max(databaseReference.getEvidenceIdList());
-                        Double proteinCoverage = tools.calculateProteinCoverage(databaseReference.getStartIndexList(), databaseReference.getEndIndexList(), proteinLength);
-                        //Average protein mass is not available in the mzid file. Requires a database of protein sequences to acquire information.
-                        Double averageMass = 0.0;
-                        tools.roundDouble(averageMass, 2);
-                        String proteinAccession = databaseReference.getProteinAccession();
-                        String description = databaseReference.getProteinDescription();
-                        Integer peptideCount = databaseReference.getTotalPeptideCount();
-                        Integer uniquePeptideCount = databaseReference.getUniquePeptideCount();
-                        String score = proteinHypothesis.getCvParamList().get(0).getValue();
-                        Double proteinScore = Double.parseDouble(score);
-                        Integer proteinGroup = proteinHypothesis.getProteinGroup();
-                        String proteinId = proteinHypothesis.getProteinId();
-                        String postTranslationalModification = "";
-                        for (String modification: databaseReference.getPostTranslationalModifications()) {
-                            if (postTranslationalModification.isEmpty()) {
-                                postTranslationalModification += modification;
-                            } else { 
-                                postTranslationalModification += ":" + modification;
-                            }
-                        }
-                        ProteinOutput proteinEntry = new ProteinOutput(proteinGroup, proteinId, proteinAccession, proteinScore, proteinCoverage, peptideCount, uniquePeptideCount, postTranslationalModification, averageMass, description);
-                        proteinEntryCollection.addProteinEntry(proteinEntry);
-                        // collection.add(protein);
-                        if (databaseReference.getProteinAccession().contains("ADIDVSGPK")) {
-                            System.out.println(proteinEntry.toString());
-                        }
-                        break outerLoop;
-                    }
+        for (CombinedDatabaseReference databaseReference : databaseReferences) {
+            MzIdProteinDetectionHypothesis proteinHypothesis = proteinHypothesisMap.get(databaseReference.getProteinAccession());
+            if (proteinHypothesis == null) {
+                continue;
+            }
+            Integer proteinLength;
+            Double averageMass;
+            if (databaseSequenceMap != null) {
+                ProteinDatabaseSequence databaseSequence = getDatabaseSequence(proteinHypothesis.getProteinAccession());
+                if (databaseSequence == null) {
+                    continue;
+                }
+                proteinLength = databaseSequence.getSequenceLength();
+                averageMass = databaseSequence.getAverageMass();
+            } else {
+                proteinLength = Collections.max(databaseReference.getEvidenceIdList());
+                //Average protein mass is not available in the mzid file. Requires a database of protein sequences to acquire information.
+                averageMass = 0.0;
+            }
+            Double proteinCoverage = tools.calculateProteinCoverage(databaseReference.getStartIndexList(), databaseReference.getEndIndexList(), proteinLength);
+            String proteinAccession = databaseReference.getProteinAccession();
+            String description = databaseReference.getProteinDescription();
+            Integer peptideCount = databaseReference.getTotalPeptideCount();
+            Integer uniquePeptideCount = databaseReference.getUniquePeptideCount();
+            Double proteinScore = Double.parseDouble(proteinHypothesis.getCvParamList().get(0).getValue());
+            Integer proteinGroup = proteinHypothesis.getProteinGroup();
+            String proteinId = proteinHypothesis.getProteinId();
+            StringBuilder postTranslationalModification = new StringBuilder();
+            for (String modification : databaseReference.getPostTranslationalModifications()) {
+                if (postTranslationalModification.length() > 0) {
+                    postTranslationalModification.append(":");
                 }
+                postTranslationalModification.append(modification);
             }
+            proteinEntries.add(new ProteinOutput(proteinGroup, proteinId, proteinAccession, proteinScore, proteinCoverage, peptideCount, uniquePeptideCount,
+                    postTranslationalModification.toString(), averageMass, description));
         }
-        collection.add(proteinEntryCollection);
-        return collection;
+        return proteinEntries;
     }
 
     /**
-     * 
-     * @param proteinHypothesisCollection
-     * @param combinedDatabaseReferenceCollection
-     * @param threads
-     * @return
-     * @throws InterruptedException
-     * @throws ExecutionException 
+     * Returns the database sequence of a hypothesis accession. A decoy accession also matches the database sequence of its target accession,
+     * which is preferred because it comes first in accession order.
+     *
+     * @param proteinAccession protein accession of the hypothesis.
+     * @return ProteinDatabaseSequence or null if the accession is not present in the database.
      */
-    public final ProteinOutputCollection createProteinEntryCollection(MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection, final CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection, final Integer threads) throws InterruptedException, ExecutionException, IOException {
-        MzIdProteinDetectionHypothesisCollection filteredCollection = new MzIdProteinDetectionHypothesisCollection();
-        MzIdProteinDetectionHypothesisCollection reversedCollection = new MzIdProteinDetectionHypothesisCollection();
-        CombinedDatabaseReferenceCollection reversedReferenceCollection = new CombinedDatabaseReferenceCollection();
-        CombinedDatabaseReferenceCollection filteredReferenceCollection = new CombinedDatabaseReferenceCollection();
-        for (MzIdProteinDetectionHypothesis hypothesisEntry: proteinHypothesisCollection.getProteinDetectionHypothesisList()) {
-            if (hypothesisEntry.isPassThreshold()) {
-                if (hypothesisEntry.getProteinAccession().contains("_REVERSED")) {
-                    reversedCollection.addProteinDetectionHypothesis(hypothesisEntry);
-                } else {
-                    filteredCollection.addProteinDetectionHypothesis(hypothesisEntry);
-                }
-            }
-        }
-        for (CombinedDatabaseReference reference: combinedDatabaseReferenceCollection.getDatabaseReferenceList()) {
-            if (reference.getProteinAccession().contains("_REVERSED")) {
-                reversedReferenceCollection.addDatabaseReference(reference);
-            } else {
-                filteredReferenceCollection.addDatabaseReference(reference);
+    private ProteinDatabaseSequence getDatabaseSequence(final String proteinAccession) {
+        if (proteinAccession.endsWith(REVERSED_SUFFIX)) {
+            ProteinDatabaseSequence targetSequence = databaseSequenceMap.get(proteinAccession.substring(0, proteinAccession.length() - REVERSED_SUFFIX.length()));
+            if (targetSequence != null) {
+                return targetSequence;
             }
         }
-        ProteinOutputCollection finalProteinOutputCollection = new ProteinOutputCollection();
-        finalProteinOutputCollection = matchReferencesToDatabase(finalProteinOutputCollection, reversedCollection, reversedReferenceCollection, threads);
-        finalProteinOutputCollection = matchReferencesToDatabase(finalProteinOutputCollection, filteredCollection, filteredReferenceCollection, threads);
-        return finalProteinOutputCollection;
+        return databaseSequenceMap.get(proteinAccession);
     }
 
     /**
-     * Matches the ProteinHypothesisCollection and CombinedDatabaseReferenceCollection to acquire protein data without database matching.
+     * Creates the protein output of the protein detection hypotheses that pass the threshold.
+     * Decoy references are listed before target references and both are sorted on accession, after which the output is sorted on protein group.
      *
-     * @param proteinEntryCollection collection of ProteinEntry objects.
-     * @param proteinHypothesisCollection collection of ProteinHypothesis objects.
+     * @param proteinDatabase protein database or null if no protein database is used.
+     * @param proteinHypothesisCollection collection of protein detection hypotheses.
      * @param combinedDatabaseReferenceCollection collection of CombinedDatabaseReference objects.
      * @param threads amount of threads used for multithreading purpose.
-     * @return updated collection of ProteinEntry objects.
-     * @throws InterruptedException
-     * @throws ExecutionException 
+     * @return collection of ProteinOutput objects.
+     * @throws InterruptedException process was interrupted.
+     * @throws ExecutionException could not execute the process.
      */
-    public final ProteinOutputCollection matchReferencesToDatabase(ProteinOutputCollection proteinEntryCollection, MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection,
-            CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection, final Integer threads) throws InterruptedException, ExecutionException, IOException {
-        proteinHypothesisCollection.sortOnProteinAccession();
-        combinedDatabaseReferenceCollection.sortOnAccession();
+    public final ProteinOutputCollection createProteinEntryCollection(final ProteinDatabaseSequenceCollection proteinDatabase,
+            final MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection, final CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection,
+            final Integer threads) throws InterruptedException, ExecutionException {
+        HashMap<String, MzIdProteinDetectionHypothesis> hypothesisMap = new HashMap<>();
+        for (MzIdProteinDetectionHypothesis proteinHypothesis : proteinHypothesisCollection.getProteinDetectionHypothesisList()) {
+            if (proteinHypothesis.isPassThreshold()) {
+                hypothesisMap.putIfAbsent(proteinHypothesis.getProteinAccession(), proteinHypothesis);
+            }
+        }
+        HashMap<String, ProteinDatabaseSequence> sequenceMap = null;
+        if (proteinDatabase != null) {
+            sequenceMap = new HashMap<>();
+            for (ProteinDatabaseSequence databaseSequence : proteinDatabase.getProteinCollection()) {
+                sequenceMap.putIfAbsent(databaseSequence.getProteinAccession(), databaseSequence);
+            }
+        }
+        ArrayList<CombinedDatabaseReference> references = new ArrayList<>(combinedDatabaseReferenceCollection.getDatabaseReferenceList());
+        Collections.sort(references, getDecoyFirstComparator());
+        ProteinOutputCollection proteinEntryCollection = new ProteinOutputCollection();
         ExecutorService executor = Executors.newFixedThreadPool(threads);
-        HashMap<Character, MzIdProteinDetectionHypothesisCollection> proteinHypothesisMap = createProteinHypothesisMap(proteinHypothesisCollection);
-        int count = 0;
-        for (CombinedDatabaseReference combinedDatabaseReference: combinedDatabaseReferenceCollection.getDatabaseReferenceList()) {
-            count++;
-            Callable<ArrayList<Object> > callable = new ProteinEntryMatcher(combinedDatabaseReference, proteinEntryCollection, proteinHypothesisMap);
-            Future<ArrayList<Object>> future = executor.submit(callable);
-            if (!future.get().isEmpty()) {
-                proteinEntryCollection = (ProteinOutputCollection) future.get().get(0);
+        try {
+            ArrayDeque<Future<ArrayList<ProteinOutput>>> futures = new ArrayDeque<>();
+            int partitionSize = Math.max(1, (references.size() + threads - 1) / threads);
+            for (int start = 0; start < references.size(); start += partitionSize) {
+                List<CombinedDatabaseReference> partition = references.subList(start, Math.min(start + partitionSize, references.size()));
+                futures.add(executor.submit(new ProteinEntryMatcher(partition, hypothesisMap, sequenceMap)));
             }
-            if (count % 2000 == 0) {
-                System.out.println("Processed " + count + " of " + combinedDatabaseReferenceCollection.getDatabaseReferenceList().size() + " database references.");
+            while (!futures.isEmpty()) {
+                for (ProteinOutput proteinEntry : futures.poll().get()) {
+                    proteinEntryCollection.addProteinEntry(proteinEntry);
+                }
             }
+        } finally {
+            executor.shutdown();
         }
-        executor.shutdown();
+        System.out.println("Matched " + proteinEntryCollection.getProteinEntryList().size() + " of " + references.size() + " database references.");
         proteinEntryCollection.sortOnProteinGroup();
         return proteinEntryCollection;
     }
 
     /**
-     * 
-     * @return 
+     * Sorts decoy references before target references and both on protein accession.
+     *
+     * @return sorted references.
      */
-    private HashMap<Character, MzIdProteinDetectionHypothesisCollection> createProteinHypothesisMap(MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection) {
-        HashMap<Character, MzIdProteinDetectionHypothesisCollection> proteinHypothesisMap = new HashMap<>();
-        for (MzIdProteinDetectionHypothesis proteinHypothesis: proteinHypothesisCollection.getProteinDetectionHypothesisList()) {
-            Boolean newEntry = true;
-            if (!proteinHypothesisMap.isEmpty()) {
-                for (Map.Entry<Character, MzIdProteinDetectionHypothesisCollection> y: proteinHypothesisMap.entrySet()) {
-                    if (y.getKey() == proteinHypothesis.getProteinAccession().charAt(0)) {
-                        y.getValue().addProteinDetectionHypothesis(proteinHypothesis);
-                        newEntry = false;
-                        break;
-                    }
+    private static Comparator<CombinedDatabaseReference> getDecoyFirstComparator() {
+        return new Comparator<CombinedDatabaseReference>() {
+            @Override
+            public int compare(CombinedDatabaseReference o1, CombinedDatabaseReference o2) {
+                Boolean target1 = !o1.getProteinAccession().contains(REVERSED_SUFFIX);
+                Boolean target2 = !o2.getProteinAccession().contains(REVERSED_SUFFIX);
+                int order = target1.compareTo(target2);
+                if (order == 0) {
+                    order = o1.getProteinAccession().compareTo(o2.getProteinAccession());
                 }
+                return order;
             }
-            if (newEntry) {
-                MzIdProteinDetectionHypothesisCollection newHypothesisCollection = new MzIdProteinDetectionHypothesisCollection();
-                newHypothesisCollection.addProteinDetectionHypothesis(proteinHypothesis);
-                proteinHypothesisMap.put(proteinHypothesis.getProteinAccession().charAt(0), newHypothesisCollection);
-            }
-        }
-        return proteinHypothesisMap;
+        };
     }
 }
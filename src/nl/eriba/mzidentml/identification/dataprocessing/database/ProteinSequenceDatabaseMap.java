@@ -4,47 +4,193 @@
  */
 package nl.eriba.mzidentml.identification.dataprocessing.database;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import nl.eriba.mzidentml.identification.collections.general.ProteinDatabaseSequenceCollection;
 import nl.eriba.mzidentml.identification.filereader.ProteinFileReader;
 
 /**
- * Creates a HashMap of protein database fasta files.
+ * Loads the proteins of protein database fasta files. Multiple database files are loaded concurrently.
  *
  * @author vnijenhuis
  */
-public class ProteinSequenceDatabaseMap {
+public class ProteinSequenceDatabaseMap implements Callable<ProteinDatabaseSequenceCollection> {
 
     /**
-     * Reads a HashMap of database files and creates protein collections of the given files.
+     * Database file that is loaded by the call function.
+     */
+    private final String file;
+
+    /**
+     * Amount of threads used to read the database file.
+     */
+    private final Integer fileThreads;
+
+    /**
+     * Writes a snapshot of the database file after it has been parsed if true.
+     */
+    private final Boolean writeSnapshot;
+
+    /**
+     * Creates a protein sequence database map.
+     */
+    public ProteinSequenceDatabaseMap() {
+        this(null, null, false);
+    }
+
+    /**
+     * Creates a loader for a single database file.
+     *
+     * @param file database file.
+     * @param fileThreads amount of threads used to read the database file.
+     * @param writeSnapshot writes a ProteinDatabaseSnapshot of the database file after it has been parsed if true.
+     */
+    public ProteinSequenceDatabaseMap(final String file, final Integer fileThreads, final Boolean writeSnapshot) {
+        this.file = file;
+        this.fileThreads = fileThreads;
+        this.writeSnapshot = writeSnapshot;
+    }
+
+    /**
+     * Runs loaders of database files concurrently and waits until all of them are done. Each loader keeps its own result or failure.
+     * Loaders that were not started because the process was interrupted can still be run later.
+     *
+     * @param loaders FutureTasks that each load one database file, created with getFileThreads threads per file.
+     * @param threads amount of threads used to load the database files.
+     * @throws InterruptedException process was interrupted.
+     */
+    public static void loadDatabaseFiles(final ArrayList<FutureTask<ProteinDatabaseSequenceCollection>> loaders, final Integer threads) throws InterruptedException {
+        if (loaders.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(getConcurrentFiles(threads, loaders.size()));
+        try {
+            for (FutureTask<ProteinDatabaseSequenceCollection> loader : loaders) {
+                executor.execute(loader);
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the amount of threads used per file when database files are loaded at the same time.
+     *
+     * @param threads amount of threads used to load the database files.
+     * @param fileCount amount of database files that are loaded at the same time.
+     * @return amount of threads per file.
+     */
+    public static Integer getFileThreads(final Integer threads, final int fileCount) {
+        return Math.max(1, threads / getConcurrentFiles(threads, fileCount));
+    }
+
+    /**
+     * Returns the amount of database files that are loaded at the same time.
+     *
+     * @param threads amount of threads used to load the database files.
+     * @param fileCount amount of database files.
+     * @return amount of concurrently loaded files.
+     */
+    private static int getConcurrentFiles(final Integer threads, final int fileCount) {
+        return Math.max(1, Math.min(threads, fileCount));
+    }
+
+    /**
+     * Call function which loads the proteins of the database file.
+     *
+     * @return returns the collection of proteins of the database file.
+     */
+    @Override
+    public ProteinDatabaseSequenceCollection call() {
+        ProteinDatabaseSequenceCollection proteins = new ProteinDatabaseSequenceCollection();
+        //Use the protein sequence index or snapshot if present, otherwise read the fasta file.
+        if (!loadProteinSequenceIndex(file, proteins) && !loadProteinDatabaseSnapshot(file, proteins)) {
+            ProteinFileReader proteinReader = new ProteinFileReader();
+            proteinReader.createCollection(file, proteins, fileThreads);
+            if (writeSnapshot) {
+                try {
+                    ProteinDatabaseSnapshot.writeSnapshot(file, proteins);
+                } catch (IOException ex) {
+                    System.out.println("Could not write protein database snapshot of " + file + ". Error: " + ex.getMessage());
+                }
+            }
+        }
+        return proteins;
+    }
+
+    /**
+     * Loads the proteins of a database file from its protein database snapshot.
+     *
+     * @param databaseFile database file.
+     * @param proteins protein collection.
+     * @return true if the proteins were loaded from the snapshot, false if no valid snapshot is present.
+     */
+    private boolean loadProteinDatabaseSnapshot(final String databaseFile, final ProteinDatabaseSequenceCollection proteins) {
+        if (!ProteinDatabaseSnapshot.hasSnapshot(databaseFile)) {
+            return false;
+        }
+        try {
+            System.out.println("Loading database proteins from " + ProteinDatabaseSnapshot.getSnapshotFile(databaseFile));
+            ProteinDatabaseSnapshot.readSnapshot(databaseFile, proteins);
+            System.out.println("Loaded " + proteins.getProteinCollection().size() + " proteins from " + ProteinDatabaseSnapshot.getSnapshotFile(databaseFile));
+            return true;
+        } catch (IOException ex) {
+            System.out.println("Could not read protein database snapshot of " + databaseFile + ", reading the database file instead. Error: " + ex.getMessage());
+            proteins.getProteinCollection().clear();
+            return false;
+        }
+    }
+
+    /**
+     * Loads the proteins of a database file from its protein sequence index.
+     *
+     * @param databaseFile database file.
+     * @param proteins protein collection.
+     * @return true if the proteins were loaded from the index, false if no valid index is present.
+     */
+    private boolean loadProteinSequenceIndex(final String databaseFile, final ProteinDatabaseSequenceCollection proteins) {
+        if (!ProteinSequenceIndex.hasIndex(databaseFile)) {
+            return false;
+        }
+        try {
+            System.out.println("Loading database proteins from " + ProteinSequenceIndex.getIndexFile(databaseFile));
+            ProteinSequenceIndex sequenceIndex = new ProteinSequenceIndex(ProteinSequenceIndex.getIndexFile(databaseFile));
+            sequenceIndex.createCollection(proteins);
+            proteins.setSequenceIndex(sequenceIndex);
+            System.out.println("Loaded " + proteins.getProteinCollection().size() + " proteins from " + ProteinSequenceIndex.getIndexFile(databaseFile));
+            return true;
+        } catch (IOException ex) {
+            System.out.println("Could not read protein sequence index of " + databaseFile + ", reading the database file instead. Error: " + ex.getMessage());
+            proteins.getProteinCollection().clear();
+            return false;
+        }
+    }
+
+    /**
+     * Creates a protein sequence index for each database file that does not have an up to date index.
      *
      * @param databaseEntryMap HashMap with database index as key and a list of files as value.
-     * @return HashMap with database index as Key and a HashMap as value. This HashMap has sample name as key and a
-     * ProteinDatabaseSequenceCollection as value.
-     */
-    public final HashMap<String, HashMap<Integer, ProteinDatabaseSequenceCollection>> createProteinSequenceDatabaseMap(
-            LinkedHashMap<String, ArrayList<String>> databaseEntryMap) {
-        ProteinFileReader proteinReader = new ProteinFileReader();
-        //Gather files for each index.
-        HashMap<String, HashMap<Integer, ProteinDatabaseSequenceCollection>> databaseMap = new HashMap<>();
+     * @param threads amount of threads used to read each database file.
+     * @throws IOException could not write an index file.
+     */
+    public final void createProteinSequenceIndices(final LinkedHashMap<String, ArrayList<String>> databaseEntryMap, final Integer threads) throws IOException {
         for (Map.Entry<String, ArrayList<String>> entryMap : databaseEntryMap.entrySet()) {
-            Integer currentIndex = 0;
-            //Set value to -1 for single databases. These databases are matched to all samples. Uniprot would be one such database.
-            if (entryMap.getValue().size() == 1) {
-                currentIndex = -1;
-            }
-            HashMap<Integer, ProteinDatabaseSequenceCollection> proteinList = new HashMap<>();
-            for (String file : entryMap.getValue()) {
-                ProteinDatabaseSequenceCollection proteins = new ProteinDatabaseSequenceCollection();
-                proteinReader.createCollection(file, proteins);
-                proteinList.put(currentIndex, proteins);
-                currentIndex++;
+            for (String databaseFile : entryMap.getValue()) {
+                if (ProteinSequenceIndex.hasIndex(databaseFile)) {
+                    System.out.println("Protein sequence index of " + databaseFile + " is up to date.");
+                } else {
+                    ProteinSequenceIndex.createIndex(databaseFile, threads);
+                }
             }
-            databaseMap.put(entryMap.getKey(), proteinList);
         }
-        return databaseMap;
     }
 }
@@ -0,0 +1,423 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.database;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import nl.eriba.mzidentml.identification.collections.general.ProteinDatabaseSequenceCollection;
+import nl.eriba.mzidentml.identification.filereader.ProteinFileReader;
+import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
+
+/**
+ * On-disk FM-index of a protein database fasta file. The index file is written next to the fasta file and is memory-mapped when it is used.
+ * It answers peptide containment queries in O(peptide length) and stores the proteins, so the fasta file does not have to be parsed again.
+ *
+ * @author vnijenhuis
+ */
+public class ProteinSequenceIndex {
+
+    /**
+     * Extension of the index file.
+     */
+    public static final String INDEX_EXTENSION = ".fmi";
+
+    /**
+     * Identifier at the start of each index file.
+     */
+    private static final long MAGIC_NUMBER = 0x4d5a49444641494dL;
+
+    /**
+     * Version of the index file format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the header of the index file in bytes.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Amount of symbol codes: 0 for the end of the text, 1 for protein borders and other characters, and 2 to 27 for the residues A to Z.
+     */
+    private static final int ALPHABET_SIZE = 28;
+
+    /**
+     * Amount of BWT positions between two stored symbol counts.
+     */
+    private static final int SAMPLE_RATE = 64;
+
+    /**
+     * Maximum size of a single memory-mapped segment. Multiple of the sizes of all stored values.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Minimum size of the residue arrays that the protein sequences are copied to.
+     */
+    private static final int RESIDUE_CHUNK_SIZE = 1 << 26;
+
+    /**
+     * Amount of proteins in the index.
+     */
+    private final int proteinCount;
+
+    /**
+     * Length of the indexed text, including the end of text symbol.
+     */
+    private final int textLength;
+
+    /**
+     * Amount of symbols in the text that are smaller than each symbol code.
+     */
+    private final int[] symbolCounts;
+
+    /**
+     * Memory-mapped protein table with accession, start, length and mass of each protein.
+     */
+    private final ByteBuffer[] proteinTable;
+
+    /**
+     * Memory-mapped protein sequences, separated by a newline.
+     */
+    private final ByteBuffer[] proteinText;
+
+    /**
+     * Memory-mapped symbol counts of the BWT at every SAMPLE_RATE positions.
+     */
+    private final ByteBuffer[] sampledCounts;
+
+    /**
+     * Memory-mapped Burrows-Wheeler transform of the text, one symbol code per byte.
+     */
+    private final ByteBuffer[] burrowsWheelerTransform;
+
+    /**
+     * Opens and memory-maps an index file.
+     *
+     * @param indexFile path to the index file.
+     * @throws IOException the index file could not be read or is not a valid index file.
+     */
+    public ProteinSequenceIndex(final String indexFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "r"); FileChannel channel = file.getChannel()) {
+            if (file.readLong() != MAGIC_NUMBER || file.readInt() != FORMAT_VERSION) {
+                throw new IOException("File " + indexFile + " is not a valid protein sequence index.");
+            }
+            proteinCount = file.readInt();
+            textLength = file.readInt();
+            file.readInt();
+            long proteinTableOffset = file.readLong();
+            long textOffset = file.readLong();
+            long sampledCountOffset = file.readLong();
+            long transformOffset = file.readLong();
+            long fileEnd = file.readLong();
+            symbolCounts = new int[ALPHABET_SIZE + 1];
+            for (int i = 0; i < symbolCounts.length; i++) {
+                symbolCounts[i] = file.readInt();
+            }
+            proteinTable = mapSection(channel, proteinTableOffset, textOffset);
+            proteinText = mapSection(channel, textOffset, sampledCountOffset);
+            sampledCounts = mapSection(channel, sampledCountOffset, transformOffset);
+            burrowsWheelerTransform = mapSection(channel, transformOffset, fileEnd);
+        }
+    }
+
+    /**
+     * Memory-maps a section of the index file in segments of at most SEGMENT_SIZE bytes.
+     *
+     * @param channel file channel of the index file.
+     * @param start start of the section in bytes.
+     * @param end end of the section in bytes.
+     * @return memory-mapped segments of the section.
+     * @throws IOException the section could not be mapped.
+     */
+    private static ByteBuffer[] mapSection(final FileChannel channel, final long start, final long end) throws IOException {
+        int segmentCount = (int) ((end - start + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        ByteBuffer[] segments = new ByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long segmentStart = start + i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, Math.min(SEGMENT_SIZE, end - segmentStart));
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the byte at the given position of a memory-mapped section.
+     *
+     * @param section memory-mapped segments.
+     * @param position position in the section.
+     * @return byte at the position.
+     */
+    private static byte getByte(final ByteBuffer[] section, final long position) {
+        return section[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Returns the int at the given position of a memory-mapped section. Ints never span two segments.
+     *
+     * @param section memory-mapped segments.
+     * @param position position in the section.
+     * @return int at the position.
+     */
+    private static int getInt(final ByteBuffer[] section, final long position) {
+        return section[(int) (position / SEGMENT_SIZE)].getInt((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Copies bytes from a memory-mapped section. The bytes may span multiple segments.
+     *
+     * @param section memory-mapped segments.
+     * @param position position in the section.
+     * @param target array to copy the bytes to.
+     */
+    private static void getBytes(final ByteBuffer[] section, final long position, final byte[] target) {
+        int copied = 0;
+        while (copied < target.length) {
+            long current = position + copied;
+            ByteBuffer segment = section[(int) (current / SEGMENT_SIZE)].duplicate();
+            segment.position((int) (current % SEGMENT_SIZE));
+            int amount = Math.min(target.length - copied, segment.remaining());
+            segment.get(target, copied, amount);
+            copied += amount;
+        }
+    }
+
+    /**
+     * Returns the symbol code of a residue.
+     *
+     * @param residue amino acid character.
+     * @return code between 2 and 27 for the residues A to Z, otherwise 1.
+     */
+    private static int getSymbolCode(final int residue) {
+        if (residue >= 'A' && residue <= 'Z') {
+            return residue - 'A' + 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Counts the occurrences of a symbol in the first positions of the BWT.
+     *
+     * @param symbol symbol code.
+     * @param position amount of BWT positions to count.
+     * @return amount of occurrences.
+     */
+    private int countOccurrences(final int symbol, final int position) {
+        int sample = position / SAMPLE_RATE;
+        int count = getInt(sampledCounts, ((long) sample * ALPHABET_SIZE + symbol) * 4);
+        for (long i = (long) sample * SAMPLE_RATE; i < position; i++) {
+            if (getByte(burrowsWheelerTransform, i) == symbol) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks if a peptide sequence occurs in any protein of the index with a backward search on the FM-index.
+     *
+     * @param peptideSequence peptide amino acid sequence.
+     * @return true if the peptide occurs in at least one protein, otherwise false.
+     */
+    public final boolean containsPeptide(final String peptideSequence) {
+        if (peptideSequence.isEmpty()) {
+            return true;
+        }
+        int start = 0;
+        int end = textLength;
+        for (int i = peptideSequence.length() - 1; i >= 0; i--) {
+            int symbol = getSymbolCode(peptideSequence.charAt(i));
+            if (symbol == 1) {
+                return false;
+            }
+            start = symbolCounts[symbol] + countOccurrences(symbol, start);
+            end = symbolCounts[symbol] + countOccurrences(symbol, end);
+            if (start >= end) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the amount of proteins in the index.
+     *
+     * @return amount of proteins as int.
+     */
+    public final int getProteinCount() {
+        return proteinCount;
+    }
+
+    /**
+     * Adds the proteins of the index to a protein collection, in the same order as ProteinFileReader.createCollection() returns them.
+     * The protein text is copied in large chunks and each protein is a view of one of these chunks.
+     *
+     * @param proteins protein collection.
+     * @return returns the collection of proteins.
+     */
+    public final ProteinDatabaseSequenceCollection createCollection(final ProteinDatabaseSequenceCollection proteins) {
+        long position = 0;
+        //The protein table has variable length entries, so values are copied as bytes.
+        byte[] values = new byte[20];
+        ByteBuffer valueBuffer = ByteBuffer.wrap(values);
+        byte[] residueChunk = new byte[0];
+        long chunkStart = 0;
+        long textEnd = 0;
+        for (ByteBuffer segment : proteinText) {
+            textEnd += segment.capacity();
+        }
+        for (int i = 0; i < proteinCount; i++) {
+            byte[] lengthBytes = new byte[4];
+            getBytes(proteinTable, position, lengthBytes);
+            byte[] accession = new byte[ByteBuffer.wrap(lengthBytes).getInt()];
+            getBytes(proteinTable, position + 4, accession);
+            position += 4 + accession.length;
+            getBytes(proteinTable, position, values);
+            position += values.length;
+            long start = valueBuffer.getLong(0);
+            int length = valueBuffer.getInt(8);
+            double mass = valueBuffer.getDouble(12);
+            if (start + length > chunkStart + residueChunk.length) {
+                chunkStart = start;
+                residueChunk = new byte[(int) Math.min(textEnd - start, Math.max(RESIDUE_CHUNK_SIZE, length))];
+                getBytes(proteinText, start, residueChunk);
+            }
+            proteins.addProtein(new ProteinDatabaseSequence(residueChunk, (int) (start - chunkStart), length, new String(accession, StandardCharsets.UTF_8), mass));
+        }
+        return proteins;
+    }
+
+    /**
+     * Returns the path of the index file of a fasta file.
+     *
+     * @param database path to the fasta file.
+     * @return path to the index file.
+     */
+    public static String getIndexFile(final String database) {
+        return database + INDEX_EXTENSION;
+    }
+
+    /**
+     * Checks if a fasta file has an index file that is at least as new as the fasta file.
+     *
+     * @param database path to the fasta file.
+     * @return true if an up to date index file exists, otherwise false.
+     */
+    public static boolean hasIndex(final String database) {
+        File indexFile = new File(getIndexFile(database));
+        return indexFile.isFile() && indexFile.lastModified() >= new File(database).lastModified();
+    }
+
+    /**
+     * Reads a fasta file and writes its FM-index next to the fasta file.
+     *
+     * @param database path to the fasta file.
+     * @param threads amount of threads used to read the fasta file.
+     * @throws IOException the index file could not be written.
+     */
+    public static void createIndex(final String database, final Integer threads) throws IOException {
+        ProteinFileReader proteinReader = new ProteinFileReader();
+        ProteinDatabaseSequenceCollection proteins = proteinReader.createCollection(database, new ProteinDatabaseSequenceCollection(), threads);
+        ArrayList<ProteinDatabaseSequence> proteinList = proteins.getProteinCollection();
+        System.out.println("Creating protein sequence index for " + database);
+        //The text contains all protein sequences separated by a newline and ends with the end of text symbol.
+        long residueCount = 0;
+        for (ProteinDatabaseSequence protein : proteinList) {
+            residueCount += protein.getSequenceLength() + 1;
+        }
+        if (residueCount + 1 > Integer.MAX_VALUE - 8) {
+            throw new IOException("Database " + database + " contains too many residues to create an index.");
+        }
+        int length = (int) residueCount + 1;
+        int[] text = new int[length];
+        byte[] proteinText = new byte[length - 1];
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        DataOutputStream table = new DataOutputStream(tableBytes);
+        int position = 0;
+        for (ProteinDatabaseSequence protein : proteinList) {
+            byte[] residues = protein.getResidues();
+            int offset = protein.getResidueOffset();
+            byte[] accession = protein.getProteinAccession().getBytes(StandardCharsets.UTF_8);
+            table.writeInt(accession.length);
+            table.write(accession);
+            table.writeLong(position);
+            table.writeInt(protein.getSequenceLength());
+            table.writeDouble(protein.getAverageMass());
+            for (int i = offset; i < offset + protein.getSequenceLength(); i++) {
+                proteinText[position] = residues[i];
+                text[position] = getSymbolCode(residues[i]);
+                position++;
+            }
+            proteinText[position] = '\n';
+            text[position] = 1;
+            position++;
+        }
+        text[position] = 0;
+        table.flush();
+        SuffixArrayBuilder builder = new SuffixArrayBuilder();
+        int[] suffixArray = builder.createSuffixArray(text, ALPHABET_SIZE);
+        //Create the BWT and the symbol counts.
+        byte[] transform = new byte[length];
+        int[] counts = new int[ALPHABET_SIZE + 1];
+        for (int i = 0; i < length; i++) {
+            if (suffixArray[i] == 0) {
+                transform[i] = 0;
+            } else {
+                transform[i] = (byte) text[suffixArray[i] - 1];
+            }
+            counts[text[i] + 1]++;
+        }
+        for (int i = 1; i < counts.length; i++) {
+            counts[i] += counts[i - 1];
+        }
+        suffixArray = null;
+        text = null;
+        long proteinTableOffset = HEADER_SIZE + (ALPHABET_SIZE + 1) * 4;
+        long textOffset = proteinTableOffset + tableBytes.size();
+        long sampledCountOffset = textOffset + proteinText.length;
+        long sampleCount = length / SAMPLE_RATE + 1;
+        long transformOffset = sampledCountOffset + sampleCount * ALPHABET_SIZE * 4;
+        long fileEnd = transformOffset + length;
+        File indexFile = new File(getIndexFile(database));
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16))) {
+            output.writeLong(MAGIC_NUMBER);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(proteinList.size());
+            output.writeInt(length);
+            output.writeInt(SAMPLE_RATE);
+            output.writeLong(proteinTableOffset);
+            output.writeLong(textOffset);
+            output.writeLong(sampledCountOffset);
+            output.writeLong(transformOffset);
+            output.writeLong(fileEnd);
+            for (int count : counts) {
+                output.writeInt(count);
+            }
+            tableBytes.writeTo(output);
+            output.write(proteinText);
+            int[] occurrences = new int[ALPHABET_SIZE];
+            for (int i = 0; i <= length; i++) {
+                if (i % SAMPLE_RATE == 0) {
+                    for (int occurrence : occurrences) {
+                        output.writeInt(occurrence);
+                    }
+                }
+                if (i < length) {
+                    occurrences[transform[i]]++;
+                }
+            }
+            output.write(transform);
+        }
+        System.out.println("Created protein sequence index " + indexFile.getPath() + " for " + proteinList.size() + " proteins.");
+    }
+}
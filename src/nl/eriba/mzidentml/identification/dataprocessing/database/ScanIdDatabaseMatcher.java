@@ -8,8 +8,11 @@ import nl.eriba.mzidentml.identification.collections.general.ProteinDatabaseSequ
 import nl.eriba.mzidentml.identification.collections.output.ScanIdOutputCollection;
 import nl.eriba.mzidentml.identification.objects.output.ScanIdOutput;
 import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
-import nl.eriba.peptide.identification.boyer.Boyer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -18,45 +21,31 @@ import java.util.concurrent.Future;
 
 /**
  * Uses multi-threading to allow for a faster collection matching.
+ * All flagged peptide sequences are combined into one PeptideSequenceAutomaton, which is used to scan each protein of the database once.
  *
  * @author vnijenhuis
  */
-public class ScanIdDatabaseMatcher implements Callable {
+public class ScanIdDatabaseMatcher implements Callable<BitSet> {
 
     /**
-     * Collection of proteins.
+     * Automaton of all peptide sequences that are matched to the database.
      */
-    private final ProteinDatabaseSequenceCollection proteins;
+    private final PeptideSequenceAutomaton automaton;
 
     /**
-     * Current index of the sequence array list.
+     * Part of the protein database that is scanned by this thread.
      */
-    private final String databaseName;
-
-    /**
-     * Single ScanIdOutput object that is being processed.
-     */
-    private final ScanIdOutput scanObject;
-
-    /**
-     * Collection of ScanIdOutput objects.
-     */
-    private final ScanIdOutputCollection collection;
+    private final List<ProteinDatabaseSequence> proteins;
 
     /**
      * Multi-tread database matcher.
      *
-     * @param scanObject
-     * @param finalScans
-     * @param databaseName
-     * @param proteins
+     * @param automaton automaton of the peptide sequences.
+     * @param proteins part of the protein database that is scanned by this thread.
      */
-    public ScanIdDatabaseMatcher(final ScanIdOutput scanObject, ScanIdOutputCollection finalScans, final String databaseName,
-            final ProteinDatabaseSequenceCollection proteins) {
-        this.collection = finalScans;
-        this.scanObject = scanObject;
+    public ScanIdDatabaseMatcher(final PeptideSequenceAutomaton automaton, final List<ProteinDatabaseSequence> proteins) {
+        this.automaton = automaton;
         this.proteins = proteins;
-        this.databaseName = databaseName;
     }
 
     /**
@@ -73,35 +62,87 @@ public class ScanIdDatabaseMatcher implements Callable {
     public ScanIdOutputCollection matchSequencesToDatabase(final ScanIdOutputCollection scanCollection, final String databaseName,
             final ProteinDatabaseSequenceCollection proteins, final Integer threads)
             throws InterruptedException, ExecutionException {
-        ScanIdOutputCollection finalScans = new ScanIdOutputCollection();
-        //Creates a new execution service and sets the amount of threads to use. (if available)
-        ExecutorService executor = Executors.newFixedThreadPool(threads);
         System.out.println("Matching scan IDs from sample " + databaseName + " to the corresponding protein database");
+        //Gather the distinct peptide sequences of all scans. Mass changes such as (+15.99) are removed from the sequence.
+        HashMap<String, Integer> sequenceIndexMap = new HashMap<>();
+        ArrayList<String> peptideSequences = new ArrayList<>();
+        for (ScanIdOutput scanObject : scanCollection.getScanIdEntryList()) {
+            for (String sequence : scanObject.getPeptideSequenceList()) {
+                if (!sequence.isEmpty()) {
+                    String peptideSequence = sequence.replaceAll("\\(\\+[0-9]+\\.[0-9]+\\)", "");
+                    if (!sequenceIndexMap.containsKey(peptideSequence)) {
+                        sequenceIndexMap.put(peptideSequence, peptideSequences.size());
+                        peptideSequences.add(peptideSequence);
+                    }
+                }
+            }
+        }
+        BitSet foundSequences = findPeptideSequences(peptideSequences, proteins.getProteinCollection(), proteins.getSequenceIndex(), threads);
+        System.out.println("Found " + foundSequences.cardinality() + " of " + peptideSequences.size() + " peptide sequences in the protein database.");
+        ScanIdOutputCollection finalScans = new ScanIdOutputCollection();
         int count = 0;
-        for (ScanIdOutput scanId : scanCollection.getScanIdEntryList()) {
+        for (ScanIdOutput scanObject : scanCollection.getScanIdEntryList()) {
             count++;
-            Callable<ScanIdOutputCollection> callable = new ScanIdDatabaseMatcher(scanId, finalScans, databaseName, proteins);
-            //Submits callable to an available thread.
-            Future<ScanIdOutputCollection> future = executor.submit(callable);
-            //Adds the output to finalPeptides.
-            finalScans = future.get();
-            if (count % 2000 == 0) {
-                System.out.println("Matched " + count + " ScanId objects to the corresponding protein database.");
-            }
+            addDatabaseFlags(scanObject, databaseName, sequenceIndexMap, foundSequences);
+            finalScans.addScanIdEntry(scanObject);
         }
         System.out.println("Matched " + count + " ScanId objects to the corresponding protein database.");
+        return finalScans;
+    }
+
+    /**
+     * Scans the protein database once with an automaton of the given peptide sequences. The database is divided over the available threads.
+     * If the database has a protein sequence index, the index is queried instead.
+     *
+     * @param peptideSequences distinct peptide sequences.
+     * @param proteins list of proteins.
+     * @param sequenceIndex index of the protein sequences, or null if the database has no index.
+     * @param threads amount of threads used.
+     * @return BitSet with the indices of the peptide sequences that are present in the protein database.
+     * @throws InterruptedException process was interrupted.
+     * @throws ExecutionException could not execute the call function.
+     */
+    private BitSet findPeptideSequences(final ArrayList<String> peptideSequences, final ArrayList<ProteinDatabaseSequence> proteins, final ProteinSequenceIndex sequenceIndex, final Integer threads)
+            throws InterruptedException, ExecutionException {
+        BitSet foundSequences = new BitSet(peptideSequences.size());
+        if (peptideSequences.isEmpty() || proteins.isEmpty()) {
+            return foundSequences;
+        }
+        //Query the protein sequence index if present. Each query takes O(peptide length).
+        if (sequenceIndex != null) {
+            for (int i = 0; i < peptideSequences.size(); i++) {
+                if (sequenceIndex.containsPeptide(peptideSequences.get(i))) {
+                    foundSequences.set(i);
+                }
+            }
+            return foundSequences;
+        }
+        PeptideSequenceAutomaton peptideAutomaton = new PeptideSequenceAutomaton(peptideSequences);
+        //Creates a new execution service and sets the amount of threads to use. (if available)
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<BitSet>> futures = new ArrayDeque<>();
+        Integer partSize = (proteins.size() + threads - 1) / threads;
+        for (int start = 0; start < proteins.size(); start += partSize) {
+            Callable<BitSet> callable = new ScanIdDatabaseMatcher(peptideAutomaton, proteins.subList(start, Math.min(start + partSize, proteins.size())));
+            futures.add(executor.submit(callable));
+        }
+        while (!futures.isEmpty()) {
+            foundSequences.or(futures.poll().get());
+        }
         //Shutdown command for the pool to prevent the script from running infinitely.
         executor.shutdown();
-        return finalScans;
+        return foundSequences;
     }
 
     /**
-     * Call function which matches the protein and peptide collections.
+     * Adds the present or absent flag of the given database to each peptide sequence of the ScanIdOutput object.
      *
-     * @return returns a peptide collection with peptides that did NOT match to the protein database.
+     * @param scanObject ScanIdOutput object.
+     * @param databaseName name of the protein database.
+     * @param sequenceIndexMap HashMap with the peptide sequence as key and the sequence index as value.
+     * @param foundSequences BitSet with the indices of the peptide sequences that are present in the protein database.
      */
-    @Override
-    public Object call() {
+    private void addDatabaseFlags(final ScanIdOutput scanObject, final String databaseName, final HashMap<String, Integer> sequenceIndexMap, final BitSet foundSequences) {
         //Gather sequence from ScanID object.
         ArrayList<String> sequeceList = scanObject.getPeptideSequenceList();
         for (int currentIndex = 0; currentIndex < sequeceList.size(); currentIndex++) {
@@ -112,25 +153,17 @@ public class ScanIdDatabaseMatcher implements Callable {
                     scanObject.addDatabaseFlag(currentIndex, ":" + databaseName + "_absent");
                 }
             } else {
-                boolean match = false;
                 String sequence = sequeceList.get(currentIndex);
                 sequence = sequence.replaceAll("\\(\\+[0-9]+\\.[0-9]+\\)", "");
-                //Use the Boyer algorithm to quickly find peptide sequences in larger protein targets.
-                Boyer peptideSequence = new Boyer(sequence);
-                for (ProteinDatabaseSequence protein : proteins.getProteinCollection()) {
-                    //If a match is found, set the flag to present.
-                    if (peptideSequence.searchPattern(protein.getProteinSequence())) {
-                        if (scanObject.getDatabaseFlag(currentIndex).isEmpty()) {
-                            scanObject.addDatabaseFlag(currentIndex, databaseName + "_present");
-                        } else {
-                            scanObject.addDatabaseFlag(currentIndex, ":" + databaseName + "_present");
-                        }
-                        match = true;
-                        break;
+                //If a match is found, set the flag to present.
+                if (foundSequences.get(sequenceIndexMap.get(sequence))) {
+                    if (scanObject.getDatabaseFlag(currentIndex).isEmpty()) {
+                        scanObject.addDatabaseFlag(currentIndex, databaseName + "_present");
+                    } else {
+                        scanObject.addDatabaseFlag(currentIndex, ":" + databaseName + "_present");
                     }
-                }
-                //If no match was found, set the flag to absent.
-                if (!match) {
+                } else {
+                    //If no match was found, set the flag to absent.
                     if (scanObject.getDatabaseFlag(currentIndex).isEmpty()) {
                         scanObject.addDatabaseFlag(currentIndex, databaseName + "_absent");
                     } else {
@@ -140,8 +173,24 @@ public class ScanIdDatabaseMatcher implements Callable {
                 }
             }
         }
-        //Adds updates ScanId object to the ScanIdCollection.
-        collection.addScanIdEntry(scanObject);
-        return collection;
+    }
+
+    /**
+     * Call function which scans a part of the protein database for the peptide sequences of the automaton.
+     *
+     * @return returns a BitSet with the indices of the peptide sequences that were found in this part of the database.
+     */
+    @Override
+    public BitSet call() {
+        BitSet foundSequences = new BitSet(automaton.getSequenceCount());
+        int foundCount = 0;
+        for (ProteinDatabaseSequence protein : proteins) {
+            foundCount += automaton.scan(protein.getResidues(), protein.getResidueOffset(), protein.getSequenceLength(), foundSequences);
+            //Stop when all peptide sequences have been found.
+            if (foundCount == automaton.getSequenceCount()) {
+                break;
+            }
+        }
+        return foundSequences;
     }
 }
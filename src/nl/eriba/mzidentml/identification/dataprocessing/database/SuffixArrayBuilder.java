@@ -0,0 +1,202 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.database;
+
+import java.util.Arrays;
+
+/**
+ * Creates suffix arrays with the SA-IS algorithm of Nong, Zhang and Chan (2009), which runs in linear time.
+ *
+ * @author vnijenhuis
+ */
+public class SuffixArrayBuilder {
+
+    /**
+     * Creates the suffix array of the given text.
+     * The last value of the text has to be 0 and should not occur anywhere else in the text. All other values have to be between 1 and alphabetSize - 1.
+     *
+     * @param text text as array of symbol codes.
+     * @param alphabetSize amount of different symbol codes.
+     * @return suffix array with the start position of each suffix in lexicographical order.
+     */
+    public final int[] createSuffixArray(final int[] text, final int alphabetSize) {
+        int[] suffixArray = new int[text.length];
+        createSuffixArray(text, suffixArray, text.length, alphabetSize);
+        return suffixArray;
+    }
+
+    /**
+     * Recursive SA-IS step that sorts the suffixes of the first n symbols of the text.
+     *
+     * @param text text as array of symbol codes, ending with a unique 0.
+     * @param suffixArray array of at least n values to store the suffix array in.
+     * @param n length of the text.
+     * @param alphabetSize amount of different symbol codes.
+     */
+    private void createSuffixArray(final int[] text, final int[] suffixArray, final int n, final int alphabetSize) {
+        if (n == 1) {
+            suffixArray[0] = 0;
+            return;
+        }
+        //Classify each suffix as S-type (true) or L-type (false).
+        boolean[] types = new boolean[n];
+        types[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            types[i] = text[i] < text[i + 1] || (text[i] == text[i + 1] && types[i + 1]);
+        }
+        int[] buckets = new int[alphabetSize];
+        //Stage 1: sort the LMS substrings by inducing from their unsorted positions.
+        getBuckets(text, buckets, n, true);
+        Arrays.fill(suffixArray, 0, n, -1);
+        for (int i = 1; i < n; i++) {
+            if (isLeftMostS(types, i)) {
+                buckets[text[i]]--;
+                suffixArray[buckets[text[i]]] = i;
+            }
+        }
+        induceLTypes(text, suffixArray, types, buckets, n);
+        induceSTypes(text, suffixArray, types, buckets, n);
+        //Move the sorted LMS substrings to the start of the suffix array.
+        int lmsCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLeftMostS(types, suffixArray[i])) {
+                suffixArray[lmsCount] = suffixArray[i];
+                lmsCount++;
+            }
+        }
+        //Name the LMS substrings. Equal substrings get the same name.
+        Arrays.fill(suffixArray, lmsCount, n, -1);
+        int name = 0;
+        int previous = -1;
+        for (int i = 0; i < lmsCount; i++) {
+            int position = suffixArray[i];
+            boolean different = false;
+            for (int d = 0; d < n; d++) {
+                if (previous == -1 || text[position + d] != text[previous + d] || types[position + d] != types[previous + d]) {
+                    different = true;
+                    break;
+                } else if (d > 0 && (isLeftMostS(types, position + d) || isLeftMostS(types, previous + d))) {
+                    break;
+                }
+            }
+            if (different) {
+                name++;
+                previous = position;
+            }
+            suffixArray[lmsCount + position / 2] = name - 1;
+        }
+        int[] reducedText = new int[lmsCount];
+        for (int i = n - 1, j = lmsCount - 1; i >= lmsCount; i--) {
+            if (suffixArray[i] >= 0) {
+                reducedText[j] = suffixArray[i];
+                j--;
+            }
+        }
+        //Stage 2: sort the suffixes of the reduced text, recursively if names are not unique.
+        int[] reducedSuffixArray = new int[lmsCount];
+        if (name < lmsCount) {
+            createSuffixArray(reducedText, reducedSuffixArray, lmsCount, name);
+        } else {
+            for (int i = 0; i < lmsCount; i++) {
+                reducedSuffixArray[reducedText[i]] = i;
+            }
+        }
+        //Stage 3: induce the suffix array from the sorted LMS suffixes.
+        for (int i = 1, j = 0; i < n; i++) {
+            if (isLeftMostS(types, i)) {
+                reducedText[j] = i;
+                j++;
+            }
+        }
+        for (int i = 0; i < lmsCount; i++) {
+            suffixArray[i] = reducedText[reducedSuffixArray[i]];
+        }
+        Arrays.fill(suffixArray, lmsCount, n, -1);
+        getBuckets(text, buckets, n, true);
+        for (int i = lmsCount - 1; i >= 0; i--) {
+            int position = suffixArray[i];
+            suffixArray[i] = -1;
+            buckets[text[position]]--;
+            suffixArray[buckets[text[position]]] = position;
+        }
+        induceLTypes(text, suffixArray, types, buckets, n);
+        induceSTypes(text, suffixArray, types, buckets, n);
+    }
+
+    /**
+     * Checks if the suffix at the given position is a left-most S-type suffix.
+     *
+     * @param types suffix types.
+     * @param position position in the text.
+     * @return true if the suffix is S-type and the previous suffix is L-type.
+     */
+    private boolean isLeftMostS(final boolean[] types, final int position) {
+        return position > 0 && types[position] && !types[position - 1];
+    }
+
+    /**
+     * Determines the start or end of the bucket of each symbol.
+     *
+     * @param text text as array of symbol codes.
+     * @param buckets array to store the bucket positions in.
+     * @param n length of the text.
+     * @param bucketEnd true for the end of each bucket, false for the start.
+     */
+    private void getBuckets(final int[] text, final int[] buckets, final int n, final boolean bucketEnd) {
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < n; i++) {
+            buckets[text[i]]++;
+        }
+        int sum = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            sum += buckets[i];
+            if (bucketEnd) {
+                buckets[i] = sum;
+            } else {
+                buckets[i] = sum - buckets[i];
+            }
+        }
+    }
+
+    /**
+     * Places the L-type suffixes in the suffix array.
+     *
+     * @param text text as array of symbol codes.
+     * @param suffixArray partially filled suffix array.
+     * @param types suffix types.
+     * @param buckets array to store the bucket positions in.
+     * @param n length of the text.
+     */
+    private void induceLTypes(final int[] text, final int[] suffixArray, final boolean[] types, final int[] buckets, final int n) {
+        getBuckets(text, buckets, n, false);
+        for (int i = 0; i < n; i++) {
+            int position = suffixArray[i] - 1;
+            if (position >= 0 && !types[position]) {
+                suffixArray[buckets[text[position]]] = position;
+                buckets[text[position]]++;
+            }
+        }
+    }
+
+    /**
+     * Places the S-type suffixes in the suffix array.
+     *
+     * @param text text as array of symbol codes.
+     * @param suffixArray partially filled suffix array.
+     * @param types suffix types.
+     * @param buckets array to store the bucket positions in.
+     * @param n length of the text.
+     */
+    private void induceSTypes(final int[] text, final int[] suffixArray, final boolean[] types, final int[] buckets, final int n) {
+        getBuckets(text, buckets, n, true);
+        for (int i = n - 1; i >= 0; i--) {
+            int position = suffixArray[i] - 1;
+            if (position >= 0 && types[position]) {
+                buckets[text[position]]--;
+                suffixArray[buckets[text[position]]] = position;
+            }
+        }
+    }
+}
@@ -4,7 +4,9 @@
  */
 package nl.eriba.mzidentml.identification.dataprocessing.spectra;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -23,12 +25,17 @@ import nl.eriba.mzidentml.identification.objects.mzid.MzIdDatabaseSequence;
  * Creates a CombineDatabaseReferenceCollection by combining information of SingleDatabaseReference objects.
  * @author vnijenhuis
  */
-public class CombineDatabaseReferenceInformation implements Callable {
+public class CombineDatabaseReferenceInformation implements Callable<CombinedDatabaseReference> {
 
     /**
-     * Collection of MzIdDatabaseSequence objects.
+     * HashMap with the protein accession as key and the first MzIdDatabaseSequence with this accession as value.
      */
-    private final MzIdDatabaseSequenceCollection databaseSequenceCollection;
+    private final HashMap<String, MzIdDatabaseSequence> accessionMap;
+
+    /**
+     * HashMap with the reversed protein accession as key and the first MzIdDatabaseSequence with this reversed accession as value.
+     */
+    private final HashMap<String, MzIdDatabaseSequence> reversedAccessionMap;
 
     /**
      * CombinedDatabaseReference object.
@@ -37,49 +44,42 @@ public class CombineDatabaseReferenceInformation implements Callable {
 
     /**
      * 
-     * @param databaseSequenceCollection collection of MzIdDatabaseSequence objects.
+     * @param accessionMap HashMap of MzIdDatabaseSequence objects with the protein accession as key.
+     * @param reversedAccessionMap HashMap of MzIdDatabaseSequence objects with the reversed protein accession as key.
      * @param databaseReference CombinedDatabaseReference object.
      */
-     public CombineDatabaseReferenceInformation(MzIdDatabaseSequenceCollection databaseSequenceCollection, CombinedDatabaseReference databaseReference) {
-         this.databaseSequenceCollection = databaseSequenceCollection;
+     public CombineDatabaseReferenceInformation(HashMap<String, MzIdDatabaseSequence> accessionMap, HashMap<String, MzIdDatabaseSequence> reversedAccessionMap, CombinedDatabaseReference databaseReference) {
+         this.accessionMap = accessionMap;
+         this.reversedAccessionMap = reversedAccessionMap;
          this.reference = databaseReference;
      }
 
      /**
-      * Matches the reference accession to the database sequence collection.
+      * Matches the reference accession to the database sequence accessions and sets the protein description.
+      * The accession maps are only read, so references can be matched by multiple threads at the same time.
       * 
-      * @return updated reference and database sequence collection.
+      * @return updated reference.
       */
     @Override
-    public Object call() {
-        ArrayList<Object> objectList = new ArrayList<>();
-        ArrayList<MzIdDatabaseSequence> databaseSequenceList = new ArrayList<>();
-        for (int i = 0; i < databaseSequenceCollection.getDatabaseSequenceList().size() - 1; i++) {
-            MzIdDatabaseSequence databaseSequence = databaseSequenceCollection.getDatabaseSequenceList().get(i);
-            if (reference.getProteinAccession().equals(databaseSequence.getProteinAccession())) {
-                if (databaseSequence.getProteinDescription() == null || databaseSequence.getProteinDescription().isEmpty()) {
-                    reference.setProteinDescription("Missing");
-                } else {
-                    reference.setProteinDescription(databaseSequence.getProteinDescription());
-                }
-                databaseSequenceList.add(databaseSequence);
-                break;
-            } else if (reference.getProteinAccession().equals(databaseSequence.getReversedProteinAccession())) {
-                if (databaseSequence.getReversedProteinDescription()== null || databaseSequence.getProteinDescription().isEmpty()) {
+    public CombinedDatabaseReference call() {
+        MzIdDatabaseSequence databaseSequence = accessionMap.get(reference.getProteinAccession());
+        if (databaseSequence != null) {
+            if (databaseSequence.getProteinDescription() == null || databaseSequence.getProteinDescription().isEmpty()) {
+                reference.setProteinDescription("Missing");
+            } else {
+                reference.setProteinDescription(databaseSequence.getProteinDescription());
+            }
+        } else {
+            databaseSequence = reversedAccessionMap.get(reference.getProteinAccession());
+            if (databaseSequence != null) {
+                if (databaseSequence.getReversedProteinDescription() == null || databaseSequence.getReversedProteinDescription().isEmpty()) {
                     reference.setProteinDescription("Missing");
                 } else {
                     reference.setProteinDescription(databaseSequence.getReversedProteinDescription());
                 }
-                databaseSequenceList.add(databaseSequence);
-                break;
             }
         }
-        for (MzIdDatabaseSequence sequence: databaseSequenceList) {
-            databaseSequenceCollection.getDatabaseSequenceList().remove(sequence);
-        }
-        objectList.add(reference);
-        objectList.add(databaseSequenceCollection);
-        return objectList;
+        return reference;
     }
 
     /**
@@ -99,14 +99,23 @@ public class CombineDatabaseReferenceInformation implements Callable {
         sequenceDatabaseReferenceCollection.sortOnProteinAccession();
         //Match peptides with unique accession to the list of references.
         combinedReferenceCollection.sortOnAccession();
+        //Index the database sequences once on accession and reversed accession. The first entry of an accession is used.
+        HashMap<String, MzIdDatabaseSequence> sequenceAccessionMap = new HashMap<>();
+        HashMap<String, MzIdDatabaseSequence> sequenceReversedAccessionMap = new HashMap<>();
+        for (MzIdDatabaseSequence databaseSequence: databaseSequenceCollection.getDatabaseSequenceList()) {
+            sequenceAccessionMap.putIfAbsent(databaseSequence.getProteinAccession(), databaseSequence);
+            sequenceReversedAccessionMap.putIfAbsent(databaseSequence.getReversedProteinAccession(), databaseSequence);
+        }
         ExecutorService executor = Executors.newFixedThreadPool(threads);
-        CombinedDatabaseReferenceCollection updatedDatabaseReferenceCollection = new CombinedDatabaseReferenceCollection();
+        //Submit all references before waiting on the results. Results are collected in submission order.
+        ArrayDeque<Future<CombinedDatabaseReference>> futures = new ArrayDeque<>();
         for (CombinedDatabaseReference databaseReference: combinedReferenceCollection.getDatabaseReferenceList()) {
-            Callable<ArrayList<Object>> callable = new CombineDatabaseReferenceInformation(databaseSequenceCollection, databaseReference);
-            Future<ArrayList<Object>> future = executor.submit(callable);
-            CombinedDatabaseReference combinedReference = (CombinedDatabaseReference) future.get().get(0);
-            databaseSequenceCollection = (MzIdDatabaseSequenceCollection) future.get().get(1);
-            updatedDatabaseReferenceCollection.addDatabaseReference(combinedReference);
+            Callable<CombinedDatabaseReference> callable = new CombineDatabaseReferenceInformation(sequenceAccessionMap, sequenceReversedAccessionMap, databaseReference);
+            futures.add(executor.submit(callable));
+        }
+        CombinedDatabaseReferenceCollection updatedDatabaseReferenceCollection = new CombinedDatabaseReferenceCollection();
+        while (!futures.isEmpty()) {
+            updatedDatabaseReferenceCollection.addDatabaseReference(futures.poll().get());
         }
         executor.shutdown();
         updatedDatabaseReferenceCollection = addUniquePeptideCount(uniquePeptides, updatedDatabaseReferenceCollection);
@@ -151,6 +160,7 @@ public class CombineDatabaseReferenceInformation implements Callable {
     private CombinedDatabaseReferenceCollection createCombinedReferenceCollection(SingleDatabaseReferenceCollection sequenceDatabaseReferenceCollection) {
         sequenceDatabaseReferenceCollection.sortOnProteinAccession();
         ArrayList<String> sequenceList = new ArrayList<>();
+        ArrayList<Integer> sequenceIdList = new ArrayList<>();
         ArrayList<Integer> startList = new ArrayList<>();
         ArrayList<Integer> endList = new ArrayList<>();
         ArrayList<String> preList = new ArrayList<>();
@@ -158,22 +168,24 @@ public class CombineDatabaseReferenceInformation implements Callable {
         ArrayList<String> modificationList = new ArrayList<>();
         ArrayList<Integer> evidenceList = new ArrayList<>();
         String firstAccession = sequenceDatabaseReferenceCollection.getDatabaseSequenceReferenceList().get(0).getProteinAccession();
+        int firstAccessionId = sequenceDatabaseReferenceCollection.getDatabaseSequenceReferenceList().get(0).getProteinAccessionId();
         CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection = new CombinedDatabaseReferenceCollection();
         Integer collectionSize = sequenceDatabaseReferenceCollection.getDatabaseSequenceReferenceList().size() - 1;
         for (int index = 0; index < collectionSize - 1; index++) {
             SingleDatabaseReference databaseReference = sequenceDatabaseReferenceCollection.getDatabaseSequenceReferenceList().get(index);
-            String accession = databaseReference.getProteinAccession();
-            if (accession.equals(firstAccession)) {
+            //Accessions and sequences are compared on their SymbolTable ids.
+            if (databaseReference.getProteinAccessionId() == firstAccessionId) {
                 Boolean newEntry = true;
                 //Check for duplicates. Allows for easier calculations of protein coverage.
-                if (sequenceList.contains(databaseReference.getPeptideSequence())) {
-                    int matchIndex = sequenceList.indexOf(databaseReference.getPeptideSequence());
+                int matchIndex = sequenceIdList.indexOf(databaseReference.getPeptideSequenceId());
+                if (matchIndex != -1) {
                     if (startList.get(matchIndex).equals(databaseReference.getStartIndex()) && endList.get(matchIndex).equals(databaseReference.getEndIndex())) {
                         newEntry = false;
                     }
                 }
                 if (newEntry) {
                     sequenceList.add(databaseReference.getPeptideSequence());
+                    sequenceIdList.add(databaseReference.getPeptideSequenceId());
                     startList.add(databaseReference.getStartIndex());
                     endList.add(databaseReference.getEndIndex());
                     preList.add(databaseReference.getPreAminoAcid());
@@ -187,8 +199,10 @@ public class CombineDatabaseReferenceInformation implements Callable {
             } else {
                 CombinedDatabaseReference newReference = new CombinedDatabaseReference(firstAccession, evidenceList, sequenceList, startList, endList, preList, postList, modificationList);
                 combinedDatabaseReferenceCollection.addDatabaseReference(newReference);
-                firstAccession = accession;
+                firstAccession = databaseReference.getProteinAccession();
+                firstAccessionId = databaseReference.getProteinAccessionId();
                 sequenceList = new ArrayList<>();
+                sequenceIdList = new ArrayList<>();
                 startList = new ArrayList<>();
                 endList = new ArrayList<>();
                 preList = new ArrayList<>();
@@ -196,6 +210,7 @@ public class CombineDatabaseReferenceInformation implements Callable {
                 modificationList = new ArrayList<>();
                 evidenceList = new ArrayList<>();
                 sequenceList.add(databaseReference.getPeptideSequence());
+                sequenceIdList.add(databaseReference.getPeptideSequenceId());
                 startList.add(databaseReference.getStartIndex());
                 endList.add(databaseReference.getEndIndex());
                 preList.add(databaseReference.getPreAminoAcid());
@@ -0,0 +1,91 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import uk.ac.ebi.jmzidml.model.mzidml.FragmentArray;
+
+/**
+ * FragmentArray of which the values are kept as encoded bytes of a mzid content snapshot until they are used.
+ * Fragment values are only needed for the best spectrum of each peptide, so most arrays are never decoded.
+ *
+ * @author vnijenhuis
+ */
+public class EncodedFragmentArray extends FragmentArray {
+
+    /**
+     * Big-endian float values of the array.
+     */
+    private final ByteBuffer encodedValues;
+
+    /**
+     * Amount of values in the array.
+     */
+    private final int valueCount;
+
+    /**
+     * Tests if the values have been added to the value list of the FragmentArray.
+     */
+    private boolean decoded;
+
+    /**
+     * Creates a FragmentArray of encoded values.
+     *
+     * @param encodedValues big-endian float values from position 0.
+     * @param valueCount amount of values.
+     */
+    public EncodedFragmentArray(final ByteBuffer encodedValues, final int valueCount) {
+        this.encodedValues = encodedValues;
+        this.valueCount = valueCount;
+        this.decoded = false;
+    }
+
+    /**
+     * Decodes the values into a new array. The encoded values are not changed, so this can be called by multiple threads.
+     *
+     * @return float array of the values.
+     */
+    public final float[] decodeValues() {
+        float[] values = new float[valueCount];
+        encodedValues.duplicate().asFloatBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Returns the values as a list. The values are decoded into the list the first time it is requested.
+     *
+     * @return List of Float values.
+     */
+    @Override
+    public synchronized List<Float> getValues() {
+        List<Float> values = super.getValues();
+        if (!decoded) {
+            for (float value : decodeValues()) {
+                values.add(value);
+            }
+            decoded = true;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values of a FragmentArray as float array. Encoded values are decoded directly into the array.
+     *
+     * @param fragmentArray FragmentArray object.
+     * @return float array of the values.
+     */
+    public static float[] getValueArray(final FragmentArray fragmentArray) {
+        if (fragmentArray instanceof EncodedFragmentArray) {
+            return ((EncodedFragmentArray) fragmentArray).decodeValues();
+        }
+        List<Float> valueList = fragmentArray.getValues();
+        float[] values = new float[valueList.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = valueList.get(i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,818 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.DBSequence;
+import uk.ac.ebi.jmzidml.model.mzidml.Fragmentation;
+import uk.ac.ebi.jmzidml.model.mzidml.IonType;
+import uk.ac.ebi.jmzidml.model.mzidml.Modification;
+import uk.ac.ebi.jmzidml.model.mzidml.Peptide;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideEvidence;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideHypothesis;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinAmbiguityGroup;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionHypothesis;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionList;
+import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabase;
+import uk.ac.ebi.jmzidml.model.mzidml.SequenceCollection;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItem;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItemRef;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationResult;
+import uk.ac.ebi.jmzidml.model.mzidml.SubstitutionModification;
+
+/**
+ * Binary columnar snapshot of the mzid content that is used by the identification. The snapshot file is written next to the mzid file and stores
+ * every used field of the SpectrumIdentificationResult, SequenceCollection and ProteinDetectionList elements in its own column. Other fields of the
+ * mzid file are not stored.
+ * A snapshot is only used if the size, modification time and CRC32 checksum of the mzid file match the values stored in the snapshot. The checksum
+ * is only calculated if the size and modification time match, and is not calculated again when a snapshot is opened directly after it was written.
+ * The objects are restored as jmzidml objects, so the snapshot can be used instead of the unmarshaller without changing the identification.
+ * The snapshot file stays open for the passes over its results and should be closed after the last pass.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdContentSnapshot implements Closeable {
+
+    /**
+     * Extension of the snapshot file.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".mzc";
+
+    /**
+     * Identifier at the start of each snapshot file.
+     */
+    static final long MAGIC_NUMBER = 0x4d5a4944434f4c31L;
+
+    /**
+     * Version of the snapshot file format.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Column with the spectrum ID of each SpectrumIdentificationResult.
+     */
+    static final int RESULT_SPECTRUM_ID = 0;
+
+    /**
+     * Column with the amount of SpectrumIdentificationItems of each SpectrumIdentificationResult.
+     */
+    static final int RESULT_ITEM_COUNT = 1;
+
+    /**
+     * Column with the id of each SpectrumIdentificationItem.
+     */
+    static final int ITEM_ID = 2;
+
+    /**
+     * Column with the pass threshold value of each SpectrumIdentificationItem.
+     */
+    static final int ITEM_PASS_THRESHOLD = 3;
+
+    /**
+     * Column with the peptide reference of each SpectrumIdentificationItem.
+     */
+    static final int ITEM_PEPTIDE_REF = 4;
+
+    /**
+     * Column with the calculated mass to charge value of each SpectrumIdentificationItem.
+     */
+    static final int ITEM_CALCULATED_MASS_TO_CHARGE = 5;
+
+    /**
+     * Column with the experimental mass to charge value of each SpectrumIdentificationItem.
+     */
+    static final int ITEM_EXPERIMENTAL_MASS_TO_CHARGE = 6;
+
+    /**
+     * Column with the amount of IonTypes of each SpectrumIdentificationItem, or -1 if the item has no Fragmentation.
+     */
+    static final int ITEM_ION_TYPE_COUNT = 7;
+
+    /**
+     * Column with the amount of indices of each IonType.
+     */
+    static final int ION_INDEX_COUNT = 8;
+
+    /**
+     * Column with the indices of the IonTypes.
+     */
+    static final int ION_INDEX = 9;
+
+    /**
+     * Column with the amount of FragmentArrays of each IonType.
+     */
+    static final int ION_ARRAY_COUNT = 10;
+
+    /**
+     * Column with the amount of values of each FragmentArray.
+     */
+    static final int ION_ARRAY_VALUE_COUNT = 11;
+
+    /**
+     * Column with the values of the FragmentArrays.
+     */
+    static final int ION_ARRAY_VALUE = 12;
+
+    /**
+     * First of the four columns with the amount, name, accession and value of the CvParams of the spectrum identification elements.
+     */
+    static final int SPECTRUM_PARAM = 13;
+
+    /**
+     * Column with the id of each DBSequence.
+     */
+    static final int DATABASE_SEQUENCE_ID = 17;
+
+    /**
+     * Column with the accession of each DBSequence.
+     */
+    static final int DATABASE_SEQUENCE_ACCESSION = 18;
+
+    /**
+     * Column with the search database reference of each DBSequence.
+     */
+    static final int DATABASE_SEQUENCE_DATABASE_REF = 19;
+
+    /**
+     * Column with the id of each Peptide.
+     */
+    static final int PEPTIDE_ID = 20;
+
+    /**
+     * Column with the sequence of each Peptide.
+     */
+    static final int PEPTIDE_SEQUENCE = 21;
+
+    /**
+     * Column with the amount of Modifications of each Peptide.
+     */
+    static final int PEPTIDE_MODIFICATION_COUNT = 22;
+
+    /**
+     * Column with the location of each Modification.
+     */
+    static final int MODIFICATION_LOCATION = 23;
+
+    /**
+     * Column with the monoisotopic mass delta of each Modification.
+     */
+    static final int MODIFICATION_MASS_DELTA = 24;
+
+    /**
+     * Column with the amount of residues of each Modification.
+     */
+    static final int MODIFICATION_RESIDUE_COUNT = 25;
+
+    /**
+     * Column with the residues of the Modifications.
+     */
+    static final int MODIFICATION_RESIDUE = 26;
+
+    /**
+     * Column with the amount of SubstitutionModifications of each Peptide.
+     */
+    static final int PEPTIDE_SUBSTITUTION_COUNT = 27;
+
+    /**
+     * Column with the location of each SubstitutionModification.
+     */
+    static final int SUBSTITUTION_LOCATION = 28;
+
+    /**
+     * Column with the monoisotopic mass delta of each SubstitutionModification.
+     */
+    static final int SUBSTITUTION_MASS_DELTA = 29;
+
+    /**
+     * Column with the original residue of each SubstitutionModification.
+     */
+    static final int SUBSTITUTION_ORIGINAL_RESIDUE = 30;
+
+    /**
+     * Column with the replacement residue of each SubstitutionModification.
+     */
+    static final int SUBSTITUTION_REPLACEMENT_RESIDUE = 31;
+
+    /**
+     * Column with the id of each PeptideEvidence.
+     */
+    static final int EVIDENCE_ID = 32;
+
+    /**
+     * Column with the decoy value of each PeptideEvidence.
+     */
+    static final int EVIDENCE_DECOY = 33;
+
+    /**
+     * Column with the DBSequence reference of each PeptideEvidence.
+     */
+    static final int EVIDENCE_DATABASE_SEQUENCE_REF = 34;
+
+    /**
+     * Column with the start position of each PeptideEvidence.
+     */
+    static final int EVIDENCE_START = 35;
+
+    /**
+     * Column with the end position of each PeptideEvidence.
+     */
+    static final int EVIDENCE_END = 36;
+
+    /**
+     * Column with the pre residue of each PeptideEvidence.
+     */
+    static final int EVIDENCE_PRE = 37;
+
+    /**
+     * Column with the post residue of each PeptideEvidence.
+     */
+    static final int EVIDENCE_POST = 38;
+
+    /**
+     * Column with the peptide reference of each PeptideEvidence.
+     */
+    static final int EVIDENCE_PEPTIDE_REF = 39;
+
+    /**
+     * Column with the id of each ProteinAmbiguityGroup.
+     */
+    static final int GROUP_ID = 40;
+
+    /**
+     * Column with the amount of ProteinDetectionHypotheses of each ProteinAmbiguityGroup.
+     */
+    static final int GROUP_HYPOTHESIS_COUNT = 41;
+
+    /**
+     * Column with the id of each ProteinDetectionHypothesis.
+     */
+    static final int HYPOTHESIS_ID = 42;
+
+    /**
+     * Column with the DBSequence reference of each ProteinDetectionHypothesis.
+     */
+    static final int HYPOTHESIS_DATABASE_SEQUENCE_REF = 43;
+
+    /**
+     * Column with the pass threshold value of each ProteinDetectionHypothesis.
+     */
+    static final int HYPOTHESIS_PASS_THRESHOLD = 44;
+
+    /**
+     * Column with the amount of PeptideHypotheses of each ProteinDetectionHypothesis.
+     */
+    static final int HYPOTHESIS_PEPTIDE_COUNT = 45;
+
+    /**
+     * Column with the PeptideEvidence reference of each PeptideHypothesis.
+     */
+    static final int PEPTIDE_HYPOTHESIS_EVIDENCE_REF = 46;
+
+    /**
+     * Column with the amount of SpectrumIdentificationItem references of each PeptideHypothesis.
+     */
+    static final int PEPTIDE_HYPOTHESIS_ITEM_COUNT = 47;
+
+    /**
+     * Column with the SpectrumIdentificationItem references of the PeptideHypotheses.
+     */
+    static final int PEPTIDE_HYPOTHESIS_ITEM_REF = 48;
+
+    /**
+     * First of the four columns with the amount, name, accession and value of the CvParams of the sequence and protein detection elements.
+     */
+    static final int SEQUENCE_PARAM = 49;
+
+    /**
+     * Amount of columns in the snapshot file.
+     */
+    static final int COLUMN_COUNT = 53;
+
+    /**
+     * Path to the snapshot file.
+     */
+    private final String snapshotFile;
+
+    /**
+     * Channel of the snapshot file, shared by all passes over the results.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Amount of SpectrumIdentificationResults in the snapshot.
+     */
+    private final int resultCount;
+
+    /**
+     * Position of each column in the snapshot file.
+     */
+    private final long[] columnOffsets;
+
+    /**
+     * Length of each column in bytes.
+     */
+    private final long[] columnLengths;
+
+    /**
+     * Restored SequenceCollection.
+     */
+    private final SequenceCollection sequenceCollection;
+
+    /**
+     * Restored ProteinDetectionList, or null if the mzid file has no ProteinDetectionList.
+     */
+    private final ProteinDetectionList proteinDetectionList;
+
+    /**
+     * Peptides of the SequenceCollection with their id as key, used to restore the peptide references of the SpectrumIdentificationItems.
+     */
+    private final HashMap<String, Peptide> peptideMap;
+
+    /**
+     * Opens a snapshot file and restores its SequenceCollection and ProteinDetectionList.
+     *
+     * @param snapshotFile path to the snapshot file.
+     * @param input input of the snapshot file, positioned after the checksum of the header.
+     * @throws IOException the snapshot file could not be read.
+     */
+    private MzIdContentSnapshot(final String snapshotFile, final DataInputStream input) throws IOException {
+        this.snapshotFile = snapshotFile;
+        this.resultCount = input.readInt();
+        int databaseSequenceCount = input.readInt();
+        int peptideCount = input.readInt();
+        int evidenceCount = input.readInt();
+        int groupCount = input.readInt();
+        if (input.readInt() != COLUMN_COUNT) {
+            throw new IOException("File " + snapshotFile + " has an unexpected amount of columns.");
+        }
+        this.columnOffsets = new long[COLUMN_COUNT];
+        this.columnLengths = new long[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            columnOffsets[i] = input.readLong();
+            columnLengths[i] = input.readLong();
+        }
+        this.peptideMap = new HashMap<>();
+        this.channel = FileChannel.open(new File(snapshotFile).toPath(), StandardOpenOption.READ);
+        try {
+            SnapshotColumnReader[] columns = openColumns();
+            this.sequenceCollection = readSequenceCollection(columns, databaseSequenceCount, peptideCount, evidenceCount);
+            this.proteinDetectionList = readProteinDetectionList(columns, groupCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the path of the snapshot file of a mzid file.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @return path to the snapshot file.
+     */
+    public static String getSnapshotFile(final String mzIdFile) {
+        return mzIdFile + SNAPSHOT_EXTENSION;
+    }
+
+    /**
+     * Calculates the CRC32 checksum of a file.
+     *
+     * @param file target file.
+     * @return checksum as long.
+     * @throws IOException the file could not be read.
+     */
+    static long calculateChecksum(final File file) throws IOException {
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Opens the snapshot of a mzid file if it exists and matches the size, modification time and checksum of the mzid file.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @return MzIdContentSnapshot object, or null if there is no up to date snapshot.
+     * @throws IOException the snapshot file could not be read.
+     */
+    public static MzIdContentSnapshot readSnapshot(final String mzIdFile) throws IOException {
+        return readSnapshot(mzIdFile, null);
+    }
+
+    /**
+     * Opens the snapshot of a mzid file if it exists and matches the size, modification time and checksum of the mzid file.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @param checksum known checksum of the mzid file, or null to calculate the checksum.
+     * @return MzIdContentSnapshot object, or null if there is no up to date snapshot.
+     * @throws IOException the snapshot file could not be read.
+     */
+    static MzIdContentSnapshot readSnapshot(final String mzIdFile, final Long checksum) throws IOException {
+        String snapshotFile = getSnapshotFile(mzIdFile);
+        File mzIdentMLFile = new File(mzIdFile);
+        if (!new File(snapshotFile).isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+            if (input.readLong() != MAGIC_NUMBER || input.readInt() != FORMAT_VERSION) {
+                System.out.println("File " + snapshotFile + " is not a valid mzid content snapshot and is ignored.");
+                return null;
+            }
+            //The checksum is only calculated if the size and modification time match.
+            if (input.readLong() != mzIdentMLFile.length() || input.readLong() != mzIdentMLFile.lastModified()
+                    || input.readLong() != (checksum != null ? checksum : calculateChecksum(mzIdentMLFile))) {
+                System.out.println("Mzid content snapshot " + snapshotFile + " does not match " + mzIdFile + " and is ignored.");
+                return null;
+            }
+            return new MzIdContentSnapshot(snapshotFile, input);
+        }
+    }
+
+    /**
+     * Creates a reader for each column of the snapshot file.
+     *
+     * @return array of column readers, indexed by column.
+     */
+    private SnapshotColumnReader[] openColumns() {
+        SnapshotColumnReader[] columns = new SnapshotColumnReader[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            columns[i] = new SnapshotColumnReader(channel, columnOffsets[i], columnLengths[i]);
+        }
+        return columns;
+    }
+
+    /**
+     * Reads CvParams from a block of param columns.
+     *
+     * @param columns column readers.
+     * @param paramColumn first column of the block of param columns.
+     * @param params list to add the CvParams to.
+     * @throws IOException the snapshot file could not be read.
+     */
+    private void readParams(final SnapshotColumnReader[] columns, final int paramColumn, final List<CvParam> params) throws IOException {
+        int paramCount = columns[paramColumn].readInt();
+        for (int i = 0; i < paramCount; i++) {
+            params.add(readParam(columns, paramColumn));
+        }
+    }
+
+    /**
+     * Reads a single CvParam from a block of param columns. The amount column is not read.
+     *
+     * @param columns column readers.
+     * @param paramColumn first column of the block of param columns.
+     * @return CvParam object.
+     * @throws IOException the snapshot file could not be read.
+     */
+    private CvParam readParam(final SnapshotColumnReader[] columns, final int paramColumn) throws IOException {
+        CvParam param = new CvParam();
+        param.setName(columns[paramColumn + 1].readString());
+        param.setAccession(columns[paramColumn + 2].readString());
+        param.setValue(columns[paramColumn + 3].readString());
+        return param;
+    }
+
+    /**
+     * Restores the SequenceCollection.
+     *
+     * @param columns column readers.
+     * @param databaseSequenceCount amount of DBSequences.
+     * @param peptideCount amount of Peptides.
+     * @param evidenceCount amount of PeptideEvidences.
+     * @return SequenceCollection object.
+     * @throws IOException the snapshot file could not be read.
+     */
+    private SequenceCollection readSequenceCollection(final SnapshotColumnReader[] columns, final int databaseSequenceCount, final int peptideCount, final int evidenceCount) throws IOException {
+        SequenceCollection sequences = new SequenceCollection();
+        HashMap<String, SearchDatabase> searchDatabaseMap = new HashMap<>();
+        for (int i = 0; i < databaseSequenceCount; i++) {
+            DBSequence databaseSequence = new DBSequence();
+            databaseSequence.setId(columns[DATABASE_SEQUENCE_ID].readString());
+            databaseSequence.setAccession(columns[DATABASE_SEQUENCE_ACCESSION].readString());
+            String searchDatabaseRef = columns[DATABASE_SEQUENCE_DATABASE_REF].readString();
+            if (searchDatabaseRef != null) {
+                SearchDatabase searchDatabase = searchDatabaseMap.get(searchDatabaseRef);
+                if (searchDatabase == null) {
+                    searchDatabase = new SearchDatabase();
+                    searchDatabase.setId(searchDatabaseRef);
+                    searchDatabaseMap.put(searchDatabaseRef, searchDatabase);
+                }
+                databaseSequence.setSearchDatabase(searchDatabase);
+            }
+            readParams(columns, SEQUENCE_PARAM, databaseSequence.getCvParam());
+            sequences.getDBSequence().add(databaseSequence);
+        }
+        for (int i = 0; i < peptideCount; i++) {
+            Peptide peptide = new Peptide();
+            peptide.setId(columns[PEPTIDE_ID].readString());
+            peptide.setPeptideSequence(columns[PEPTIDE_SEQUENCE].readString());
+            int modificationCount = columns[PEPTIDE_MODIFICATION_COUNT].readInt();
+            for (int j = 0; j < modificationCount; j++) {
+                Modification modification = new Modification();
+                modification.setLocation(columns[MODIFICATION_LOCATION].readNullableInteger());
+                modification.setMonoisotopicMassDelta(columns[MODIFICATION_MASS_DELTA].readNullableDouble());
+                int residueCount = columns[MODIFICATION_RESIDUE_COUNT].readInt();
+                for (int k = 0; k < residueCount; k++) {
+                    modification.getResidues().add(columns[MODIFICATION_RESIDUE].readString());
+                }
+                readParams(columns, SEQUENCE_PARAM, modification.getCvParam());
+                peptide.getModification().add(modification);
+            }
+            int substitutionCount = columns[PEPTIDE_SUBSTITUTION_COUNT].readInt();
+            for (int j = 0; j < substitutionCount; j++) {
+                SubstitutionModification substitution = new SubstitutionModification();
+                substitution.setLocation(columns[SUBSTITUTION_LOCATION].readNullableInteger());
+                substitution.setMonoisotopicMassDelta(columns[SUBSTITUTION_MASS_DELTA].readNullableDouble());
+                substitution.setOriginalResidue(columns[SUBSTITUTION_ORIGINAL_RESIDUE].readString());
+                substitution.setReplacementResidue(columns[SUBSTITUTION_REPLACEMENT_RESIDUE].readString());
+                peptide.getSubstitutionModification().add(substitution);
+            }
+            sequences.getPeptide().add(peptide);
+            peptideMap.put(peptide.getId(), peptide);
+        }
+        HashMap<String, DBSequence> databaseSequenceMap = new HashMap<>();
+        for (DBSequence databaseSequence : sequences.getDBSequence()) {
+            databaseSequenceMap.put(databaseSequence.getId(), databaseSequence);
+        }
+        for (int i = 0; i < evidenceCount; i++) {
+            PeptideEvidence evidence = new PeptideEvidence();
+            evidence.setId(columns[EVIDENCE_ID].readString());
+            evidence.setIsDecoy(columns[EVIDENCE_DECOY].readBoolean());
+            String databaseSequenceRef = columns[EVIDENCE_DATABASE_SEQUENCE_REF].readString();
+            if (databaseSequenceRef != null) {
+                evidence.setDBSequence(getDatabaseSequence(databaseSequenceMap, databaseSequenceRef));
+            }
+            evidence.setStart(columns[EVIDENCE_START].readNullableInteger());
+            evidence.setEnd(columns[EVIDENCE_END].readNullableInteger());
+            evidence.setPre(columns[EVIDENCE_PRE].readString());
+            evidence.setPost(columns[EVIDENCE_POST].readString());
+            String peptideRef = columns[EVIDENCE_PEPTIDE_REF].readString();
+            if (peptideRef != null) {
+                evidence.setPeptide(getPeptide(peptideRef));
+            }
+            sequences.getPeptideEvidence().add(evidence);
+        }
+        return sequences;
+    }
+
+    /**
+     * Restores the ProteinDetectionList.
+     *
+     * @param columns column readers.
+     * @param groupCount amount of ProteinAmbiguityGroups, or -1 if the mzid file has no ProteinDetectionList.
+     * @return ProteinDetectionList object or null.
+     * @throws IOException the snapshot file could not be read.
+     */
+    private ProteinDetectionList readProteinDetectionList(final SnapshotColumnReader[] columns, final int groupCount) throws IOException {
+        if (groupCount < 0) {
+            return null;
+        }
+        HashMap<String, DBSequence> databaseSequenceMap = new HashMap<>();
+        for (DBSequence databaseSequence : sequenceCollection.getDBSequence()) {
+            databaseSequenceMap.put(databaseSequence.getId(), databaseSequence);
+        }
+        HashMap<String, PeptideEvidence> evidenceMap = new HashMap<>();
+        for (PeptideEvidence evidence : sequenceCollection.getPeptideEvidence()) {
+            evidenceMap.put(evidence.getId(), evidence);
+        }
+        HashMap<String, SpectrumIdentificationItem> itemMap = new HashMap<>();
+        ProteinDetectionList proteinList = new ProteinDetectionList();
+        for (int i = 0; i < groupCount; i++) {
+            ProteinAmbiguityGroup group = new ProteinAmbiguityGroup();
+            group.setId(columns[GROUP_ID].readString());
+            readParams(columns, SEQUENCE_PARAM, group.getCvParam());
+            int hypothesisCount = columns[GROUP_HYPOTHESIS_COUNT].readInt();
+            for (int j = 0; j < hypothesisCount; j++) {
+                ProteinDetectionHypothesis proteinHypothesis = new ProteinDetectionHypothesis();
+                proteinHypothesis.setId(columns[HYPOTHESIS_ID].readString());
+                String databaseSequenceRef = columns[HYPOTHESIS_DATABASE_SEQUENCE_REF].readString();
+                if (databaseSequenceRef != null) {
+                    proteinHypothesis.setDBSequence(getDatabaseSequence(databaseSequenceMap, databaseSequenceRef));
+                }
+                proteinHypothesis.setPassThreshold(columns[HYPOTHESIS_PASS_THRESHOLD].readBoolean());
+                int peptideCount = columns[HYPOTHESIS_PEPTIDE_COUNT].readInt();
+                for (int k = 0; k < peptideCount; k++) {
+                    PeptideHypothesis peptideHypothesis = new PeptideHypothesis();
+                    String evidenceRef = columns[PEPTIDE_HYPOTHESIS_EVIDENCE_REF].readString();
+                    if (evidenceRef != null) {
+                        PeptideEvidence evidence = evidenceMap.get(evidenceRef);
+                        if (evidence == null) {
+                            evidence = new PeptideEvidence();
+                            evidence.setId(evidenceRef);
+                        }
+                        peptideHypothesis.setPeptideEvidence(evidence);
+                    }
+                    int itemCount = columns[PEPTIDE_HYPOTHESIS_ITEM_COUNT].readInt();
+                    for (int l = 0; l < itemCount; l++) {
+                        String itemRef = columns[PEPTIDE_HYPOTHESIS_ITEM_REF].readString();
+                        //Items are only referenced by id, so a single item object is kept per id.
+                        SpectrumIdentificationItem item = itemMap.get(itemRef);
+                        if (item == null) {
+                            item = new SpectrumIdentificationItem();
+                            item.setId(itemRef);
+                            itemMap.put(itemRef, item);
+                        }
+                        SpectrumIdentificationItemRef spectrumItemRef = new SpectrumIdentificationItemRef();
+                        spectrumItemRef.setSpectrumIdentificationItem(item);
+                        peptideHypothesis.getSpectrumIdentificationItemRef().add(spectrumItemRef);
+                    }
+                    proteinHypothesis.getPeptideHypothesis().add(peptideHypothesis);
+                }
+                group.getProteinDetectionHypothesis().add(proteinHypothesis);
+            }
+            proteinList.getProteinAmbiguityGroup().add(group);
+        }
+        return proteinList;
+    }
+
+    /**
+     * Returns the DBSequence with the given id, or a DBSequence that only has the id if the SequenceCollection has no DBSequence with this id.
+     *
+     * @param databaseSequenceMap DBSequences with their id as key.
+     * @param id id of the DBSequence.
+     * @return DBSequence object.
+     */
+    private DBSequence getDatabaseSequence(final HashMap<String, DBSequence> databaseSequenceMap, final String id) {
+        DBSequence databaseSequence = databaseSequenceMap.get(id);
+        if (databaseSequence == null) {
+            databaseSequence = new DBSequence();
+            databaseSequence.setId(id);
+            databaseSequenceMap.put(id, databaseSequence);
+        }
+        return databaseSequence;
+    }
+
+    /**
+     * Returns the Peptide with the given id, or a Peptide that only has the id if the SequenceCollection has no Peptide with this id.
+     *
+     * @param id id of the Peptide.
+     * @return Peptide object.
+     */
+    private Peptide getPeptide(final String id) {
+        Peptide peptide = peptideMap.get(id);
+        if (peptide == null) {
+            peptide = new Peptide();
+            peptide.setId(id);
+        }
+        return peptide;
+    }
+
+    /**
+     * Returns the amount of SpectrumIdentificationResults in the snapshot.
+     *
+     * @return amount of SpectrumIdentificationResults as int.
+     */
+    public final int getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * Returns the restored SequenceCollection.
+     *
+     * @return SequenceCollection object.
+     */
+    public final SequenceCollection getSequenceCollection() {
+        return sequenceCollection;
+    }
+
+    /**
+     * Returns the restored ProteinDetectionList.
+     *
+     * @return ProteinDetectionList object, or null if the mzid file has no ProteinDetectionList.
+     */
+    public final ProteinDetectionList getProteinDetectionList() {
+        return proteinDetectionList;
+    }
+
+    /**
+     * Starts a new pass over the SpectrumIdentificationResults of the snapshot. Results are restored one by one when the iterator is advanced.
+     * Passes share the channel of the snapshot file, so a pass that is not completed does not leave a file open.
+     *
+     * @return iterator of SpectrumIdentificationResult objects.
+     */
+    public final Iterator<SpectrumIdentificationResult> resultIterator() {
+        final SnapshotColumnReader[] columns = openColumns();
+        return new Iterator<SpectrumIdentificationResult>() {
+            private int remainingResults = resultCount;
+
+            @Override
+            public boolean hasNext() {
+                return remainingResults > 0;
+            }
+
+            @Override
+            public SpectrumIdentificationResult next() {
+                if (remainingResults == 0) {
+                    throw new NoSuchElementException();
+                }
+                remainingResults--;
+                try {
+                    return readResult(columns);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Restores the next SpectrumIdentificationResult.
+     *
+     * @param columns column readers of the current pass.
+     * @return SpectrumIdentificationResult object.
+     * @throws IOException the snapshot file could not be read.
+     */
+    private SpectrumIdentificationResult readResult(final SnapshotColumnReader[] columns) throws IOException {
+        SpectrumIdentificationResult result = new SpectrumIdentificationResult();
+        result.setSpectrumID(columns[RESULT_SPECTRUM_ID].readString());
+        readParams(columns, SPECTRUM_PARAM, result.getCvParam());
+        int itemCount = columns[RESULT_ITEM_COUNT].readInt();
+        for (int i = 0; i < itemCount; i++) {
+            SpectrumIdentificationItem item = new SpectrumIdentificationItem();
+            item.setId(columns[ITEM_ID].readString());
+            item.setPassThreshold(columns[ITEM_PASS_THRESHOLD].readBoolean());
+            String peptideRef = columns[ITEM_PEPTIDE_REF].readString();
+            if (peptideRef != null) {
+                item.setPeptide(getPeptide(peptideRef));
+            }
+            Double calculatedMassToCharge = columns[ITEM_CALCULATED_MASS_TO_CHARGE].readNullableDouble();
+            if (calculatedMassToCharge != null) {
+                item.setCalculatedMassToCharge(calculatedMassToCharge);
+            }
+            Double experimentalMassToCharge = columns[ITEM_EXPERIMENTAL_MASS_TO_CHARGE].readNullableDouble();
+            if (experimentalMassToCharge != null) {
+                item.setExperimentalMassToCharge(experimentalMassToCharge);
+            }
+            readParams(columns, SPECTRUM_PARAM, item.getCvParam());
+            int ionTypeCount = columns[ITEM_ION_TYPE_COUNT].readInt();
+            if (ionTypeCount >= 0) {
+                Fragmentation fragmentation = new Fragmentation();
+                for (int j = 0; j < ionTypeCount; j++) {
+                    fragmentation.getIonType().add(readIonType(columns));
+                }
+                item.setFragmentation(fragmentation);
+            }
+            result.getSpectrumIdentificationItem().add(item);
+        }
+        return result;
+    }
+
+    /**
+     * Restores the next IonType.
+     *
+     * @param columns column readers of the current pass.
+     * @return IonType object.
+     * @throws IOException the snapshot file could not be read.
+     */
+    private IonType readIonType(final SnapshotColumnReader[] columns) throws IOException {
+        IonType ionType = new IonType();
+        //The single CvParam of an IonType is stored as a list of zero or one params.
+        if (columns[SPECTRUM_PARAM].readInt() > 0) {
+            ionType.setCvParam(readParam(columns, SPECTRUM_PARAM));
+        }
+        int indexCount = columns[ION_INDEX_COUNT].readInt();
+        List<Integer> indices = ionType.getIndex();
+        for (int i = 0; i < indexCount; i++) {
+            indices.add(columns[ION_INDEX].readInt());
+        }
+        int arrayCount = columns[ION_ARRAY_COUNT].readInt();
+        //Fragment values are kept encoded and are only decoded when they are used.
+        for (int i = 0; i < arrayCount; i++) {
+            int valueCount = columns[ION_ARRAY_VALUE_COUNT].readInt();
+            ionType.getFragmentArray().add(new EncodedFragmentArray(columns[ION_ARRAY_VALUE].readSlice(valueCount * 4), valueCount));
+        }
+        return ionType;
+    }
+
+    /**
+     * Closes the snapshot file.
+     *
+     * @throws IOException the snapshot file could not be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.DBSequence;
+import uk.ac.ebi.jmzidml.model.mzidml.FragmentArray;
+import uk.ac.ebi.jmzidml.model.mzidml.IonType;
+import uk.ac.ebi.jmzidml.model.mzidml.Modification;
+import uk.ac.ebi.jmzidml.model.mzidml.Peptide;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideEvidence;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideHypothesis;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinAmbiguityGroup;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionHypothesis;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionList;
+import uk.ac.ebi.jmzidml.model.mzidml.SequenceCollection;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItem;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItemRef;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationResult;
+import uk.ac.ebi.jmzidml.model.mzidml.SubstitutionModification;
+
+/**
+ * Writes the mzid content snapshot of a mzid file while its SpectrumIdentificationResults are unmarshalled for the first time.
+ * The SequenceCollection and ProteinDetectionList are written when the snapshot is finished, so they can be unmarshalled concurrently.
+ * Each column is written to its own temporary file. The columns are combined into the snapshot file when all results have been added.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdContentSnapshotWriter {
+
+    /**
+     * Path to the mzid file.
+     */
+    private final String mzIdFile;
+
+    /**
+     * Path to the snapshot file.
+     */
+    private final String snapshotFile;
+
+    /**
+     * Size of the mzid file in bytes.
+     */
+    private final long fileSize;
+
+    /**
+     * Modification time of the mzid file.
+     */
+    private final long lastModified;
+
+    /**
+     * CRC32 checksum of the mzid file.
+     */
+    private final long checksum;
+
+    /**
+     * SequenceCollection of the mzid file, which may still be unmarshalled by another thread.
+     */
+    private final Future<SequenceCollection> sequenceCollection;
+
+    /**
+     * ProteinDetectionList of the mzid file, which may still be unmarshalled by another thread.
+     */
+    private final Future<ProteinDetectionList> proteinDetectionList;
+
+    /**
+     * Temporary files of the columns.
+     */
+    private final File[] columnFiles;
+
+    /**
+     * Outputs of the temporary column files.
+     */
+    private final DataOutputStream[] columns;
+
+    /**
+     * Amount of SpectrumIdentificationResults that have been added.
+     */
+    private int resultCount;
+
+    /**
+     * Creates the temporary column files. The SequenceCollection and ProteinDetectionList are written when the snapshot is finished.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @param sequenceCollection SequenceCollection of the mzid file.
+     * @param proteinDetectionList ProteinDetectionList of the mzid file, which is null if the file has no ProteinDetectionList.
+     * @throws IOException the column files could not be created.
+     */
+    public MzIdContentSnapshotWriter(final String mzIdFile, final Future<SequenceCollection> sequenceCollection, final Future<ProteinDetectionList> proteinDetectionList) throws IOException {
+        File mzIdentMLFile = new File(mzIdFile);
+        this.mzIdFile = mzIdFile;
+        this.snapshotFile = MzIdContentSnapshot.getSnapshotFile(mzIdFile);
+        this.fileSize = mzIdentMLFile.length();
+        this.lastModified = mzIdentMLFile.lastModified();
+        this.checksum = MzIdContentSnapshot.calculateChecksum(mzIdentMLFile);
+        this.sequenceCollection = sequenceCollection;
+        this.proteinDetectionList = proteinDetectionList;
+        this.columnFiles = new File[MzIdContentSnapshot.COLUMN_COUNT];
+        this.columns = new DataOutputStream[MzIdContentSnapshot.COLUMN_COUNT];
+        this.resultCount = 0;
+        try {
+            for (int i = 0; i < MzIdContentSnapshot.COLUMN_COUNT; i++) {
+                columnFiles[i] = new File(snapshotFile + ".tmp" + i);
+                columns[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(columnFiles[i]), 1 << 16));
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the path of the mzid file that the snapshot is written for.
+     *
+     * @return path to the mzid file.
+     */
+    public final String getMzIdFile() {
+        return mzIdFile;
+    }
+
+    /**
+     * Returns the CRC32 checksum of the mzid file that is stored in the snapshot.
+     *
+     * @return checksum as long.
+     */
+    public final long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Writes a UTF-8 String value that can be null.
+     *
+     * @param column target column.
+     * @param value String value or null.
+     * @throws IOException the column file could not be written.
+     */
+    private void writeString(final int column, final String value) throws IOException {
+        if (value == null) {
+            columns[column].writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            columns[column].writeInt(bytes.length);
+            columns[column].write(bytes);
+        }
+    }
+
+    /**
+     * Writes an int value.
+     *
+     * @param column target column.
+     * @param value int value.
+     * @throws IOException the column file could not be written.
+     */
+    private void writeInt(final int column, final int value) throws IOException {
+        columns[column].writeInt(value);
+    }
+
+    /**
+     * Writes a boolean value.
+     *
+     * @param column target column.
+     * @param value boolean value.
+     * @throws IOException the column file could not be written.
+     */
+    private void writeBoolean(final int column, final boolean value) throws IOException {
+        columns[column].writeBoolean(value);
+    }
+
+    /**
+     * Writes an Integer value that can be null.
+     *
+     * @param column target column.
+     * @param value Integer value or null.
+     * @throws IOException the column file could not be written.
+     */
+    private void writeNullableInteger(final int column, final Integer value) throws IOException {
+        columns[column].writeBoolean(value != null);
+        if (value != null) {
+            columns[column].writeInt(value);
+        }
+    }
+
+    /**
+     * Writes a Double value that can be null.
+     *
+     * @param column target column.
+     * @param value Double value or null.
+     * @throws IOException the column file could not be written.
+     */
+    private void writeNullableDouble(final int column, final Double value) throws IOException {
+        columns[column].writeBoolean(value != null);
+        if (value != null) {
+            columns[column].writeDouble(value);
+        }
+    }
+
+    /**
+     * Writes the amount, names, accessions and values of a list of CvParams to a block of param columns.
+     *
+     * @param paramColumn first column of the block of param columns.
+     * @param params list of CvParams.
+     * @throws IOException the column files could not be written.
+     */
+    private void writeParams(final int paramColumn, final List<CvParam> params) throws IOException {
+        writeInt(paramColumn, params.size());
+        for (CvParam param : params) {
+            writeParam(paramColumn, param);
+        }
+    }
+
+    /**
+     * Writes the name, accession and value of a single CvParam to a block of param columns. The amount column is not written.
+     *
+     * @param paramColumn first column of the block of param columns.
+     * @param param CvParam object.
+     * @throws IOException the column files could not be written.
+     */
+    private void writeParam(final int paramColumn, final CvParam param) throws IOException {
+        writeString(paramColumn + 1, param.getName());
+        writeString(paramColumn + 2, param.getAccession());
+        writeString(paramColumn + 3, param.getValue());
+    }
+
+    /**
+     * Writes the DBSequences, Peptides and PeptideEvidences of the SequenceCollection.
+     *
+     * @param sequenceCollection SequenceCollection of the mzid file.
+     * @throws IOException the column files could not be written.
+     */
+    private void writeSequenceCollection(final SequenceCollection sequenceCollection) throws IOException {
+        for (DBSequence databaseSequence : sequenceCollection.getDBSequence()) {
+            writeString(MzIdContentSnapshot.DATABASE_SEQUENCE_ID, databaseSequence.getId());
+            writeString(MzIdContentSnapshot.DATABASE_SEQUENCE_ACCESSION, databaseSequence.getAccession());
+            writeString(MzIdContentSnapshot.DATABASE_SEQUENCE_DATABASE_REF, databaseSequence.getSearchDatabaseRef());
+            writeParams(MzIdContentSnapshot.SEQUENCE_PARAM, databaseSequence.getCvParam());
+        }
+        for (Peptide peptide : sequenceCollection.getPeptide()) {
+            writeString(MzIdContentSnapshot.PEPTIDE_ID, peptide.getId());
+            writeString(MzIdContentSnapshot.PEPTIDE_SEQUENCE, peptide.getPeptideSequence());
+            writeInt(MzIdContentSnapshot.PEPTIDE_MODIFICATION_COUNT, peptide.getModification().size());
+            for (Modification modification : peptide.getModification()) {
+                writeNullableInteger(MzIdContentSnapshot.MODIFICATION_LOCATION, modification.getLocation());
+                writeNullableDouble(MzIdContentSnapshot.MODIFICATION_MASS_DELTA, modification.getMonoisotopicMassDelta());
+                writeInt(MzIdContentSnapshot.MODIFICATION_RESIDUE_COUNT, modification.getResidues().size());
+                for (String residue : modification.getResidues()) {
+                    writeString(MzIdContentSnapshot.MODIFICATION_RESIDUE, residue);
+                }
+                writeParams(MzIdContentSnapshot.SEQUENCE_PARAM, modification.getCvParam());
+            }
+            writeInt(MzIdContentSnapshot.PEPTIDE_SUBSTITUTION_COUNT, peptide.getSubstitutionModification().size());
+            for (SubstitutionModification substitution : peptide.getSubstitutionModification()) {
+                writeNullableInteger(MzIdContentSnapshot.SUBSTITUTION_LOCATION, substitution.getLocation());
+                writeNullableDouble(MzIdContentSnapshot.SUBSTITUTION_MASS_DELTA, substitution.getMonoisotopicMassDelta());
+                writeString(MzIdContentSnapshot.SUBSTITUTION_ORIGINAL_RESIDUE, substitution.getOriginalResidue());
+                writeString(MzIdContentSnapshot.SUBSTITUTION_REPLACEMENT_RESIDUE, substitution.getReplacementResidue());
+            }
+        }
+        for (PeptideEvidence evidence : sequenceCollection.getPeptideEvidence()) {
+            writeString(MzIdContentSnapshot.EVIDENCE_ID, evidence.getId());
+            writeBoolean(MzIdContentSnapshot.EVIDENCE_DECOY, evidence.isIsDecoy());
+            writeString(MzIdContentSnapshot.EVIDENCE_DATABASE_SEQUENCE_REF, evidence.getDBSequenceRef());
+            writeNullableInteger(MzIdContentSnapshot.EVIDENCE_START, evidence.getStart());
+            writeNullableInteger(MzIdContentSnapshot.EVIDENCE_END, evidence.getEnd());
+            writeString(MzIdContentSnapshot.EVIDENCE_PRE, evidence.getPre());
+            writeString(MzIdContentSnapshot.EVIDENCE_POST, evidence.getPost());
+            writeString(MzIdContentSnapshot.EVIDENCE_PEPTIDE_REF, evidence.getPeptideRef());
+        }
+    }
+
+    /**
+     * Writes the ProteinAmbiguityGroups of the ProteinDetectionList.
+     *
+     * @param proteinDetectionList ProteinDetectionList of the mzid file.
+     * @throws IOException the column files could not be written.
+     */
+    private void writeProteinDetectionList(final ProteinDetectionList proteinDetectionList) throws IOException {
+        for (ProteinAmbiguityGroup group : proteinDetectionList.getProteinAmbiguityGroup()) {
+            writeString(MzIdContentSnapshot.GROUP_ID, group.getId());
+            writeParams(MzIdContentSnapshot.SEQUENCE_PARAM, group.getCvParam());
+            writeInt(MzIdContentSnapshot.GROUP_HYPOTHESIS_COUNT, group.getProteinDetectionHypothesis().size());
+            for (ProteinDetectionHypothesis proteinHypothesis : group.getProteinDetectionHypothesis()) {
+                writeString(MzIdContentSnapshot.HYPOTHESIS_ID, proteinHypothesis.getId());
+                writeString(MzIdContentSnapshot.HYPOTHESIS_DATABASE_SEQUENCE_REF, proteinHypothesis.getDBSequenceRef());
+                writeBoolean(MzIdContentSnapshot.HYPOTHESIS_PASS_THRESHOLD, proteinHypothesis.isPassThreshold());
+                writeInt(MzIdContentSnapshot.HYPOTHESIS_PEPTIDE_COUNT, proteinHypothesis.getPeptideHypothesis().size());
+                for (PeptideHypothesis peptideHypothesis : proteinHypothesis.getPeptideHypothesis()) {
+                    writeString(MzIdContentSnapshot.PEPTIDE_HYPOTHESIS_EVIDENCE_REF, peptideHypothesis.getPeptideEvidenceRef());
+                    writeInt(MzIdContentSnapshot.PEPTIDE_HYPOTHESIS_ITEM_COUNT, peptideHypothesis.getSpectrumIdentificationItemRef().size());
+                    for (SpectrumIdentificationItemRef itemRef : peptideHypothesis.getSpectrumIdentificationItemRef()) {
+                        writeString(MzIdContentSnapshot.PEPTIDE_HYPOTHESIS_ITEM_REF, itemRef.getSpectrumIdentificationItemRef());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a SpectrumIdentificationResult to the snapshot. Results are restored in the order in which they were added.
+     *
+     * @param result SpectrumIdentificationResult object.
+     * @throws IOException the column files could not be written.
+     */
+    public final void addResult(final SpectrumIdentificationResult result) throws IOException {
+        writeString(MzIdContentSnapshot.RESULT_SPECTRUM_ID, result.getSpectrumID());
+        writeParams(MzIdContentSnapshot.SPECTRUM_PARAM, result.getCvParam());
+        writeInt(MzIdContentSnapshot.RESULT_ITEM_COUNT, result.getSpectrumIdentificationItem().size());
+        for (SpectrumIdentificationItem item : result.getSpectrumIdentificationItem()) {
+            writeString(MzIdContentSnapshot.ITEM_ID, item.getId());
+            writeBoolean(MzIdContentSnapshot.ITEM_PASS_THRESHOLD, item.isPassThreshold());
+            writeString(MzIdContentSnapshot.ITEM_PEPTIDE_REF, item.getPeptideRef());
+            writeNullableDouble(MzIdContentSnapshot.ITEM_CALCULATED_MASS_TO_CHARGE, item.getCalculatedMassToCharge());
+            writeNullableDouble(MzIdContentSnapshot.ITEM_EXPERIMENTAL_MASS_TO_CHARGE, item.getExperimentalMassToCharge());
+            writeParams(MzIdContentSnapshot.SPECTRUM_PARAM, item.getCvParam());
+            if (item.getFragmentation() == null) {
+                writeInt(MzIdContentSnapshot.ITEM_ION_TYPE_COUNT, -1);
+            } else {
+                List<IonType> ionTypes = item.getFragmentation().getIonType();
+                writeInt(MzIdContentSnapshot.ITEM_ION_TYPE_COUNT, ionTypes.size());
+                for (IonType ionType : ionTypes) {
+                    writeIonType(ionType);
+                }
+            }
+        }
+        resultCount++;
+    }
+
+    /**
+     * Writes the CvParam, indices and FragmentArrays of an IonType.
+     *
+     * @param ionType IonType object.
+     * @throws IOException the column files could not be written.
+     */
+    private void writeIonType(final IonType ionType) throws IOException {
+        if (ionType.getCvParam() == null) {
+            writeInt(MzIdContentSnapshot.SPECTRUM_PARAM, 0);
+        } else {
+            writeInt(MzIdContentSnapshot.SPECTRUM_PARAM, 1);
+            writeParam(MzIdContentSnapshot.SPECTRUM_PARAM, ionType.getCvParam());
+        }
+        writeInt(MzIdContentSnapshot.ION_INDEX_COUNT, ionType.getIndex().size());
+        for (Integer index : ionType.getIndex()) {
+            writeInt(MzIdContentSnapshot.ION_INDEX, index);
+        }
+        writeInt(MzIdContentSnapshot.ION_ARRAY_COUNT, ionType.getFragmentArray().size());
+        for (FragmentArray fragmentArray : ionType.getFragmentArray()) {
+            List<Float> values = fragmentArray.getValues();
+            writeInt(MzIdContentSnapshot.ION_ARRAY_VALUE_COUNT, values.size());
+            for (Float value : values) {
+                columns[MzIdContentSnapshot.ION_ARRAY_VALUE].writeFloat(value);
+            }
+        }
+    }
+
+    /**
+     * Writes the SequenceCollection and ProteinDetectionList and combines the column files into the snapshot file.
+     * The snapshot file is replaced at once, so an incomplete snapshot is never read.
+     *
+     * @throws IOException the snapshot file could not be written.
+     */
+    public final void finish() throws IOException {
+        File tempFile = new File(snapshotFile + ".tmp");
+        try {
+            SequenceCollection sequences;
+            ProteinDetectionList proteinList;
+            try {
+                sequences = sequenceCollection.get();
+                proteinList = proteinDetectionList.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the mzid sections.");
+            } catch (ExecutionException e) {
+                throw new IOException("Could not unmarshal the mzid sections.", e.getCause());
+            }
+            writeSequenceCollection(sequences);
+            if (proteinList != null) {
+                writeProteinDetectionList(proteinList);
+            }
+            for (DataOutputStream column : columns) {
+                column.close();
+            }
+            //Header: identification of the mzid file, element counts and the position and length of each column.
+            long headerLength = 8 + 4 + 8 + 8 + 8 + 4 * 6 + MzIdContentSnapshot.COLUMN_COUNT * 16;
+            try (DataOutputStream header = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                header.writeLong(MzIdContentSnapshot.MAGIC_NUMBER);
+                header.writeInt(MzIdContentSnapshot.FORMAT_VERSION);
+                header.writeLong(fileSize);
+                header.writeLong(lastModified);
+                header.writeLong(checksum);
+                header.writeInt(resultCount);
+                header.writeInt(sequences.getDBSequence().size());
+                header.writeInt(sequences.getPeptide().size());
+                header.writeInt(sequences.getPeptideEvidence().size());
+                //A group count of -1 marks a mzid file without ProteinDetectionList.
+                header.writeInt(proteinList == null ? -1 : proteinList.getProteinAmbiguityGroup().size());
+                header.writeInt(MzIdContentSnapshot.COLUMN_COUNT);
+                long offset = headerLength;
+                for (File columnFile : columnFiles) {
+                    header.writeLong(offset);
+                    header.writeLong(columnFile.length());
+                    offset += columnFile.length();
+                }
+            }
+            try (FileChannel output = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (File columnFile : columnFiles) {
+                    try (FileChannel input = FileChannel.open(columnFile.toPath(), StandardOpenOption.READ)) {
+                        long position = 0;
+                        long size = input.size();
+                        while (position < size) {
+                            position += input.transferTo(position, size - position, output);
+                        }
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), new File(snapshotFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Wrote mzid content snapshot " + snapshotFile);
+        } finally {
+            tempFile.delete();
+            deleteColumnFiles();
+        }
+    }
+
+    /**
+     * Stops writing the snapshot and removes the column files.
+     */
+    public final void abort() {
+        for (DataOutputStream column : columns) {
+            if (column != null) {
+                try {
+                    column.close();
+                } catch (IOException e) {
+                    System.out.println("Could not close mzid content snapshot column of " + mzIdFile + ". Error: " + e.getMessage());
+                }
+            }
+        }
+        deleteColumnFiles();
+    }
+
+    /**
+     * Removes the temporary column files.
+     */
+    private void deleteColumnFiles() {
+        for (File columnFile : columnFiles) {
+            if (columnFile != null) {
+                columnFile.delete();
+            }
+        }
+    }
+}
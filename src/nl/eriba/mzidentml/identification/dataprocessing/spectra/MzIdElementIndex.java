@@ -0,0 +1,296 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.ebi.jmzidml.MzIdentMLElement;
+
+/**
+ * Byte offsets of the SpectrumIdentificationResult, Peptide, PeptideEvidence, DBSequence and ProteinAmbiguityGroup elements of a mzid file by id,
+ * and of the SequenceCollection and ProteinDetectionList sections. The index is stored in a sidecar file next to the mzid file and is used by the
+ * MzIdRandomAccessReader to read single elements or sections without unmarshalling the whole file.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdElementIndex {
+
+    /**
+     * Extension of the index file.
+     */
+    public static final String INDEX_EXTENSION = ".mzi";
+
+    /**
+     * Identifier at the start of each index file.
+     */
+    private static final long MAGIC_NUMBER = 0x4d5a4944454c4d31L;
+
+    /**
+     * Version of the index file format.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Elements that are indexed.
+     */
+    static final MzIdentMLElement[] INDEXED_ELEMENTS = {MzIdentMLElement.SpectrumIdentificationResult, MzIdentMLElement.Peptide,
+        MzIdentMLElement.PeptideEvidence, MzIdentMLElement.DBSequence, MzIdentMLElement.ProteinAmbiguityGroup};
+
+    /**
+     * Sections that are indexed. A mzid file contains each section at most once.
+     */
+    static final MzIdentMLElement[] INDEXED_SECTIONS = {MzIdentMLElement.SequenceCollection, MzIdentMLElement.ProteinDetectionList};
+
+    /**
+     * Default namespace of the mzid file, or an empty String if the file has no default namespace.
+     */
+    private final String namespace;
+
+    /**
+     * Start and end offset of each element by id, per indexed element.
+     */
+    private final EnumMap<MzIdentMLElement, HashMap<String, long[]>> elementOffsets;
+
+    /**
+     * Start and end offset of each indexed section that is present in the mzid file.
+     */
+    private final EnumMap<MzIdentMLElement, long[]> sectionOffsets;
+
+    /**
+     * Creates an index of a mzid file.
+     *
+     * @param namespace default namespace of the mzid file.
+     * @param elementOffsets start and end offset of each element by id, per indexed element.
+     * @param sectionOffsets start and end offset of each indexed section that is present in the mzid file.
+     */
+    public MzIdElementIndex(final String namespace, final EnumMap<MzIdentMLElement, HashMap<String, long[]>> elementOffsets,
+            final EnumMap<MzIdentMLElement, long[]> sectionOffsets) {
+        this.namespace = namespace;
+        this.elementOffsets = elementOffsets;
+        this.sectionOffsets = sectionOffsets;
+    }
+
+    /**
+     * Returns the path of the index file of a mzid file.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @return path to the index file.
+     */
+    public static String getIndexFile(final String mzIdFile) {
+        return mzIdFile + INDEX_EXTENSION;
+    }
+
+    /**
+     * Tests if the mzid file has an index file that matches the current size and modification time of the mzid file.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @return true if the mzid file has an up to date index file.
+     */
+    public static boolean hasIndex(final String mzIdFile) {
+        File indexFile = new File(getIndexFile(mzIdFile));
+        if (!indexFile.isFile()) {
+            return false;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 64))) {
+            return isCurrentHeader(input, new File(mzIdFile));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads and tests the header of an index file.
+     *
+     * @param input input of the index file.
+     * @param mzIdentMLFile mzid file.
+     * @return true if the header is valid and matches the size and modification time of the mzid file.
+     * @throws IOException the index file could not be read.
+     */
+    private static boolean isCurrentHeader(final DataInputStream input, final File mzIdentMLFile) throws IOException {
+        return input.readLong() == MAGIC_NUMBER && input.readInt() == FORMAT_VERSION
+                && input.readLong() == mzIdentMLFile.length() && input.readLong() == mzIdentMLFile.lastModified();
+    }
+
+    /**
+     * Scans a mzid file for the indexed elements and writes the index file next to the mzid file.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @return MzIdElementIndex of the mzid file.
+     * @throws IOException the mzid file could not be read or the index file could not be written.
+     */
+    public static MzIdElementIndex createIndex(final String mzIdFile) throws IOException {
+        System.out.println("Creating element index for " + mzIdFile);
+        MzIdElementIndex index = new MzIdElementIndexBuilder(mzIdFile).buildIndex();
+        index.writeIndex(mzIdFile);
+        return index;
+    }
+
+    /**
+     * Reads the index file of a mzid file.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @return MzIdElementIndex object, or null if the mzid file has no up to date index file.
+     * @throws IOException the index file could not be read.
+     */
+    public static MzIdElementIndex readIndex(final String mzIdFile) throws IOException {
+        File indexFile = new File(getIndexFile(mzIdFile));
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+            if (!isCurrentHeader(input, new File(mzIdFile))) {
+                return null;
+            }
+            String namespace = input.readUTF();
+            EnumMap<MzIdentMLElement, HashMap<String, long[]>> elementOffsets = new EnumMap<>(MzIdentMLElement.class);
+            int elementCount = input.readInt();
+            for (int i = 0; i < elementCount; i++) {
+                MzIdentMLElement element = MzIdentMLElement.valueOf(input.readUTF());
+                int idCount = input.readInt();
+                HashMap<String, long[]> offsets = new HashMap<>(idCount * 4 / 3 + 1);
+                for (int j = 0; j < idCount; j++) {
+                    String id = input.readUTF();
+                    long start = input.readLong();
+                    long end = input.readLong();
+                    offsets.put(id, new long[]{start, end});
+                }
+                elementOffsets.put(element, offsets);
+            }
+            EnumMap<MzIdentMLElement, long[]> sectionOffsets = new EnumMap<>(MzIdentMLElement.class);
+            int sectionCount = input.readInt();
+            for (int i = 0; i < sectionCount; i++) {
+                MzIdentMLElement section = MzIdentMLElement.valueOf(input.readUTF());
+                long start = input.readLong();
+                long end = input.readLong();
+                sectionOffsets.put(section, new long[]{start, end});
+            }
+            return new MzIdElementIndex(namespace, elementOffsets, sectionOffsets);
+        }
+    }
+
+    /**
+     * Writes the index file next to the mzid file. The index file is replaced at once, so an incomplete index is never read.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @throws IOException the index file could not be written.
+     */
+    public final void writeIndex(final String mzIdFile) throws IOException {
+        File mzIdentMLFile = new File(mzIdFile);
+        File tempFile = new File(getIndexFile(mzIdFile) + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+                output.writeLong(MAGIC_NUMBER);
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(mzIdentMLFile.length());
+                output.writeLong(mzIdentMLFile.lastModified());
+                output.writeUTF(namespace);
+                output.writeInt(elementOffsets.size());
+                for (Map.Entry<MzIdentMLElement, HashMap<String, long[]>> element : elementOffsets.entrySet()) {
+                    output.writeUTF(element.getKey().name());
+                    output.writeInt(element.getValue().size());
+                    for (Map.Entry<String, long[]> offsets : element.getValue().entrySet()) {
+                        output.writeUTF(offsets.getKey());
+                        output.writeLong(offsets.getValue()[0]);
+                        output.writeLong(offsets.getValue()[1]);
+                    }
+                }
+                output.writeInt(sectionOffsets.size());
+                for (Map.Entry<MzIdentMLElement, long[]> section : sectionOffsets.entrySet()) {
+                    output.writeUTF(section.getKey().name());
+                    output.writeLong(section.getValue()[0]);
+                    output.writeLong(section.getValue()[1]);
+                }
+            }
+            Files.move(tempFile.toPath(), new File(getIndexFile(mzIdFile)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Returns the default namespace of the mzid file.
+     *
+     * @return namespace as String, or an empty String if the file has no default namespace.
+     */
+    public final String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns the start and end offset of an element.
+     *
+     * @param element indexed element.
+     * @param id id of the element.
+     * @return array with the offset of the first byte and the offset after the last byte of the element, or null if the id is not indexed.
+     */
+    public final long[] getElementOffsets(final MzIdentMLElement element, final String id) {
+        HashMap<String, long[]> offsets = elementOffsets.get(element);
+        if (offsets == null) {
+            return null;
+        }
+        return offsets.get(id);
+    }
+
+    /**
+     * Returns the start and end offset of all elements of an indexed element in the order in which they appear in the mzid file.
+     *
+     * @param element indexed element.
+     * @return array with the offset of the first byte and the offset after the last byte of each element.
+     */
+    public final long[][] getElementOffsetsInFileOrder(final MzIdentMLElement element) {
+        HashMap<String, long[]> offsets = elementOffsets.get(element);
+        if (offsets == null) {
+            return new long[0][];
+        }
+        long[][] orderedOffsets = offsets.values().toArray(new long[offsets.size()][]);
+        Arrays.sort(orderedOffsets, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] o1, long[] o2) {
+                return Long.compare(o1[0], o2[0]);
+            }
+        });
+        return orderedOffsets;
+    }
+
+    /**
+     * Returns the start and end offset of an indexed section.
+     *
+     * @param section indexed section.
+     * @return array with the offset of the first byte and the offset after the last byte of the section, or null if the mzid file does not contain
+     * the section.
+     */
+    public final long[] getSectionOffsets(final MzIdentMLElement section) {
+        return sectionOffsets.get(section);
+    }
+
+    /**
+     * Returns the ids of an indexed element.
+     *
+     * @param element indexed element.
+     * @return Set of ids.
+     */
+    public final Set<String> getElementIds(final MzIdentMLElement element) {
+        HashMap<String, long[]> offsets = elementOffsets.get(element);
+        if (offsets == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(offsets.keySet());
+    }
+}
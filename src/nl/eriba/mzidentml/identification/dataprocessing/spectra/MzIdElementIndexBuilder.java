@@ -0,0 +1,452 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import uk.ac.ebi.jmzidml.MzIdentMLElement;
+
+/**
+ * Creates a MzIdElementIndex by scanning the tags of a mzid file in a single pass. Elements are not unmarshalled, only the id attribute
+ * and the byte offsets of the indexed elements are stored.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdElementIndexBuilder {
+
+    /**
+     * Name of the root element of a mzid file.
+     */
+    private static final byte[] ROOT_NAME = "MzIdentML".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Name of the id attribute.
+     */
+    private static final byte[] ID_NAME = "id".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Name of the default namespace attribute.
+     */
+    private static final byte[] NAMESPACE_NAME = "xmlns".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Path to the mzid file.
+     */
+    private final String mzIdFile;
+
+    /**
+     * Tag names of the indexed elements, in the order of MzIdElementIndex.INDEXED_ELEMENTS.
+     */
+    private final byte[][] elementNames;
+
+    /**
+     * Tag names of the indexed sections, in the order of MzIdElementIndex.INDEXED_SECTIONS.
+     */
+    private final byte[][] sectionNames;
+
+    /**
+     * Buffer with bytes of the mzid file.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Position of the next byte in the buffer.
+     */
+    private int bufferPosition;
+
+    /**
+     * Amount of bytes in the buffer.
+     */
+    private int bufferLength;
+
+    /**
+     * Offset in the mzid file of the next byte.
+     */
+    private long position;
+
+    /**
+     * Buffer with the name of the current tag or attribute.
+     */
+    private byte[] nameBuffer;
+
+    /**
+     * Length of the name in the name buffer.
+     */
+    private int nameLength;
+
+    /**
+     * Position after the namespace prefix of the name in the name buffer.
+     */
+    private int localNameStart;
+
+    /**
+     * Buffer with the value of the current attribute.
+     */
+    private byte[] valueBuffer;
+
+    /**
+     * Length of the value in the value buffer.
+     */
+    private int valueLength;
+
+    /**
+     * Creates the builder of an index.
+     *
+     * @param mzIdFile path to the mzid file.
+     */
+    public MzIdElementIndexBuilder(final String mzIdFile) {
+        this.mzIdFile = mzIdFile;
+        this.elementNames = new byte[MzIdElementIndex.INDEXED_ELEMENTS.length][];
+        for (int i = 0; i < elementNames.length; i++) {
+            elementNames[i] = MzIdElementIndex.INDEXED_ELEMENTS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        this.sectionNames = new byte[MzIdElementIndex.INDEXED_SECTIONS.length][];
+        for (int i = 0; i < sectionNames.length; i++) {
+            sectionNames[i] = MzIdElementIndex.INDEXED_SECTIONS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        this.buffer = new byte[1 << 20];
+        this.nameBuffer = new byte[64];
+        this.valueBuffer = new byte[64];
+    }
+
+    /**
+     * Scans the mzid file and creates the index.
+     *
+     * @return MzIdElementIndex of the mzid file.
+     * @throws IOException the mzid file could not be read or contains an indexed element without id.
+     */
+    public final MzIdElementIndex buildIndex() throws IOException {
+        EnumMap<MzIdentMLElement, HashMap<String, long[]>> elementOffsets = new EnumMap<>(MzIdentMLElement.class);
+        for (MzIdentMLElement element : MzIdElementIndex.INDEXED_ELEMENTS) {
+            elementOffsets.put(element, new HashMap<String, long[]>());
+        }
+        EnumMap<MzIdentMLElement, long[]> sectionOffsets = new EnumMap<>(MzIdentMLElement.class);
+        String namespace = "";
+        //Indexed elements are not nested, so only one indexed element can be open at a time.
+        int openElement = -1;
+        String openId = null;
+        long openStart = 0;
+        //Sections contain indexed elements, so they are tracked separately. Only the first occurrence of a section is indexed.
+        int openSection = -1;
+        long sectionStart = 0;
+        try (InputStream input = new FileInputStream(mzIdFile)) {
+            int value;
+            while ((value = read(input)) != -1) {
+                if (value != '<') {
+                    continue;
+                }
+                long tagStart = position - 1;
+                value = read(input);
+                if (value == '/') {
+                    readName(input, -1);
+                    skipTag(input);
+                    if (openElement >= 0 && isLocalName(elementNames[openElement])) {
+                        elementOffsets.get(MzIdElementIndex.INDEXED_ELEMENTS[openElement]).put(openId, new long[]{openStart, position});
+                        openElement = -1;
+                    } else if (openSection >= 0 && isLocalName(sectionNames[openSection])) {
+                        sectionOffsets.put(MzIdElementIndex.INDEXED_SECTIONS[openSection], new long[]{sectionStart, position});
+                        openSection = -1;
+                    }
+                } else if (value == '!') {
+                    skipDeclaration(input);
+                } else if (value == '?') {
+                    skipUntil(input, "?>");
+                } else if (value != -1) {
+                    readName(input, value);
+                    int element = getIndexedElement();
+                    int section = getIndexedSection();
+                    if (element >= 0 && openElement < 0) {
+                        String id = null;
+                        int attribute;
+                        while ((attribute = readAttribute(input)) == 0) {
+                            if (isName(ID_NAME)) {
+                                id = new String(valueBuffer, 0, valueLength, StandardCharsets.UTF_8);
+                            }
+                        }
+                        if (id == null) {
+                            throw new IOException("Element " + MzIdElementIndex.INDEXED_ELEMENTS[element] + " at position " + tagStart + " of " + mzIdFile + " has no id.");
+                        }
+                        if (attribute == '/') {
+                            elementOffsets.get(MzIdElementIndex.INDEXED_ELEMENTS[element]).put(id, new long[]{tagStart, position});
+                        } else {
+                            openElement = element;
+                            openId = id;
+                            openStart = tagStart;
+                        }
+                    } else if (section >= 0 && openSection < 0 && !sectionOffsets.containsKey(MzIdElementIndex.INDEXED_SECTIONS[section])) {
+                        if (readAttributes(input) == '/') {
+                            sectionOffsets.put(MzIdElementIndex.INDEXED_SECTIONS[section], new long[]{tagStart, position});
+                        } else {
+                            openSection = section;
+                            sectionStart = tagStart;
+                        }
+                    } else if (isLocalName(ROOT_NAME)) {
+                        while (readAttribute(input) == 0) {
+                            if (isName(NAMESPACE_NAME)) {
+                                namespace = new String(valueBuffer, 0, valueLength, StandardCharsets.UTF_8);
+                            }
+                        }
+                    } else {
+                        skipTag(input);
+                    }
+                }
+            }
+        }
+        return new MzIdElementIndex(namespace, elementOffsets, sectionOffsets);
+    }
+
+    /**
+     * Reads the next byte of the mzid file.
+     *
+     * @param input input of the mzid file.
+     * @return byte value from 0 to 255, or -1 at the end of the file.
+     * @throws IOException the mzid file could not be read.
+     */
+    private int read(final InputStream input) throws IOException {
+        if (bufferPosition == bufferLength) {
+            bufferLength = input.read(buffer);
+            bufferPosition = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        position++;
+        return buffer[bufferPosition++] & 0xff;
+    }
+
+    /**
+     * Moves back one byte. Only valid directly after a byte has been read.
+     */
+    private void unread() {
+        bufferPosition--;
+        position--;
+    }
+
+    /**
+     * Tests if a byte is XML whitespace.
+     *
+     * @param value byte value.
+     * @return true if the byte is whitespace.
+     */
+    private static boolean isWhitespace(final int value) {
+        return value == ' ' || value == '\n' || value == '\r' || value == '\t';
+    }
+
+    /**
+     * Reads a tag or attribute name into the name buffer. The byte after the name is not consumed.
+     *
+     * @param input input of the mzid file.
+     * @param first first byte of the name, or -1 if the first byte has not been read yet.
+     * @throws IOException the mzid file could not be read.
+     */
+    private void readName(final InputStream input, final int first) throws IOException {
+        nameLength = 0;
+        localNameStart = 0;
+        int value = first == -1 ? read(input) : first;
+        while (value != -1 && !isWhitespace(value) && value != '>' && value != '/' && value != '=') {
+            if (nameLength == nameBuffer.length) {
+                nameBuffer = Arrays.copyOf(nameBuffer, nameLength * 2);
+            }
+            if (value == ':') {
+                localNameStart = nameLength + 1;
+            }
+            nameBuffer[nameLength++] = (byte) value;
+            value = read(input);
+        }
+        if (value != -1) {
+            unread();
+        }
+    }
+
+    /**
+     * Tests if the full name in the name buffer, including a namespace prefix, equals the given name.
+     *
+     * @param name name as bytes.
+     * @return true if the names are equal.
+     */
+    private boolean isName(final byte[] name) {
+        return localNameStart == 0 && isLocalName(name);
+    }
+
+    /**
+     * Tests if the local name in the name buffer equals the given name.
+     *
+     * @param name name as bytes.
+     * @return true if the names are equal.
+     */
+    private boolean isLocalName(final byte[] name) {
+        if (nameLength - localNameStart != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (nameBuffer[localNameStart + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the indexed element of the tag name in the name buffer.
+     *
+     * @return index in MzIdElementIndex.INDEXED_ELEMENTS, or -1 if the element is not indexed.
+     */
+    private int getIndexedElement() {
+        for (int i = 0; i < elementNames.length; i++) {
+            if (isLocalName(elementNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the indexed section of the tag name in the name buffer.
+     *
+     * @return index in MzIdElementIndex.INDEXED_SECTIONS, or -1 if the section is not indexed.
+     */
+    private int getIndexedSection() {
+        for (int i = 0; i < sectionNames.length; i++) {
+            if (isLocalName(sectionNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the remaining attributes of a start tag.
+     *
+     * @param input input of the mzid file.
+     * @return '/' if the tag is self-closing, otherwise '>'.
+     * @throws IOException the mzid file could not be read or the tag is not valid.
+     */
+    private int readAttributes(final InputStream input) throws IOException {
+        int attribute;
+        while ((attribute = readAttribute(input)) == 0) {
+            //Attributes of sections are not indexed.
+        }
+        return attribute;
+    }
+
+    /**
+     * Reads the next attribute of a start tag into the name and value buffers.
+     *
+     * @param input input of the mzid file.
+     * @return 0 if an attribute was read, '/' if the tag is self-closing and has ended, or '>' if the tag has ended.
+     * @throws IOException the mzid file could not be read or the tag is not valid.
+     */
+    private int readAttribute(final InputStream input) throws IOException {
+        int value = read(input);
+        while (isWhitespace(value)) {
+            value = read(input);
+        }
+        if (value == '>') {
+            return '>';
+        }
+        if (value == '/') {
+            skipTag(input);
+            return '/';
+        }
+        if (value == -1) {
+            throw new IOException("Unexpected end of " + mzIdFile + " at position " + position + ".");
+        }
+        readName(input, value);
+        value = read(input);
+        while (isWhitespace(value)) {
+            value = read(input);
+        }
+        if (value != '=') {
+            throw new IOException("Invalid attribute in " + mzIdFile + " at position " + position + ".");
+        }
+        value = read(input);
+        while (isWhitespace(value)) {
+            value = read(input);
+        }
+        if (value != '"' && value != '\'') {
+            throw new IOException("Invalid attribute value in " + mzIdFile + " at position " + position + ".");
+        }
+        int quote = value;
+        valueLength = 0;
+        while ((value = read(input)) != quote) {
+            if (value == -1) {
+                throw new IOException("Unexpected end of " + mzIdFile + " at position " + position + ".");
+            }
+            if (valueLength == valueBuffer.length) {
+                valueBuffer = Arrays.copyOf(valueBuffer, valueLength * 2);
+            }
+            valueBuffer[valueLength++] = (byte) value;
+        }
+        return 0;
+    }
+
+    /**
+     * Skips the rest of a tag. A '>' inside an attribute value does not end the tag.
+     *
+     * @param input input of the mzid file.
+     * @throws IOException the mzid file could not be read.
+     */
+    private void skipTag(final InputStream input) throws IOException {
+        int quote = -1;
+        int value;
+        while ((value = read(input)) != -1) {
+            if (quote != -1) {
+                if (value == quote) {
+                    quote = -1;
+                }
+            } else if (value == '"' || value == '\'') {
+                quote = value;
+            } else if (value == '>') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips a comment, CDATA section or document type declaration.
+     *
+     * @param input input of the mzid file.
+     * @throws IOException the mzid file could not be read.
+     */
+    private void skipDeclaration(final InputStream input) throws IOException {
+        int value = read(input);
+        if (value == '-') {
+            read(input);
+            skipUntil(input, "-->");
+        } else if (value == '[') {
+            skipUntil(input, "]]>");
+        } else if (value != -1) {
+            skipTag(input);
+        }
+    }
+
+    /**
+     * Skips bytes until the end of the given terminator.
+     *
+     * @param input input of the mzid file.
+     * @param terminator ASCII terminator.
+     * @throws IOException the mzid file could not be read.
+     */
+    private void skipUntil(final InputStream input, final String terminator) throws IOException {
+        int matched = 0;
+        int value;
+        while (matched < terminator.length() && (value = read(input)) != -1) {
+            if (value == terminator.charAt(matched)) {
+                matched++;
+            } else if (value != terminator.charAt(0)) {
+                matched = 0;
+            } else if (matched < 2 || terminator.charAt(1) != value) {
+                //Terminators like "-->" and "]]>" stay matched on a repeated first character.
+                matched = 1;
+            }
+        }
+    }
+}
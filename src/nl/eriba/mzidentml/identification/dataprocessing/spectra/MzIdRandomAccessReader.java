@@ -0,0 +1,361 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+import uk.ac.ebi.jmzidml.MzIdentMLElement;
+import uk.ac.ebi.jmzidml.model.mzidml.DBSequence;
+import uk.ac.ebi.jmzidml.model.mzidml.Peptide;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideEvidence;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinAmbiguityGroup;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationResult;
+
+/**
+ * Reads single elements and sections of a mzid file. The MzIdElementIndex gives the byte offsets of an element or section, so only the bytes
+ * of that element or section are read and unmarshalled. References to other elements are not resolved, only their ids are available.
+ * Reads use positional reads on the channel, so each reader has its own JAXB unmarshallers but the channel is not moved.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdRandomAccessReader implements Closeable {
+
+    /**
+     * Element index of the mzid file.
+     */
+    private final MzIdElementIndex index;
+
+    /**
+     * Channel of the mzid file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Amount of bytes at the start of a section that are read to insert the namespace declaration.
+     */
+    private static final int SECTION_HEAD_SIZE = 4096;
+
+    /**
+     * JAXB contexts of the unmarshalled element classes.
+     */
+    private final HashMap<Class<?>, JAXBContext> contexts;
+
+    /**
+     * Opens a mzid file for random access.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @param index element index of the mzid file.
+     * @throws IOException the mzid file could not be opened.
+     */
+    public MzIdRandomAccessReader(final String mzIdFile, final MzIdElementIndex index) throws IOException {
+        this.index = index;
+        this.channel = FileChannel.open(new File(mzIdFile).toPath(), StandardOpenOption.READ);
+        this.contexts = new HashMap<>();
+    }
+
+    /**
+     * Returns the element index of the mzid file.
+     *
+     * @return MzIdElementIndex object.
+     */
+    public final MzIdElementIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Reads the xml of a single element. The default namespace of the mzid file is declared on the element, so it can be unmarshalled on its own.
+     *
+     * @param element indexed element.
+     * @param id id of the element.
+     * @return xml of the element as bytes, or null if the id is not indexed.
+     * @throws IOException the mzid file could not be read.
+     */
+    public final byte[] readElementXml(final MzIdentMLElement element, final String id) throws IOException {
+        long[] offsets = index.getElementOffsets(element, id);
+        if (offsets == null) {
+            return null;
+        }
+        return insertNamespace(readBytes(offsets[0], offsets[1], element + " " + id));
+    }
+
+    /**
+     * Reads a range of bytes of the mzid file.
+     *
+     * @param start offset of the first byte.
+     * @param end offset after the last byte.
+     * @param description description of the range for error messages.
+     * @return bytes of the range.
+     * @throws IOException the mzid file could not be read.
+     */
+    private byte[] readBytes(final long start, final long end, final String description) throws IOException {
+        ByteBuffer xml = ByteBuffer.allocate((int) (end - start));
+        long position = start;
+        while (xml.hasRemaining()) {
+            int read = channel.read(xml, position);
+            if (read == -1) {
+                throw new IOException("Element " + description + " ends after the end of the mzid file. The element index is not up to date.");
+            }
+            position += read;
+        }
+        return xml.array();
+    }
+
+    /**
+     * Declares the default namespace of the mzid file on the first tag of a range of xml, so it can be unmarshalled on its own.
+     *
+     * @param bytes xml that starts with a start tag.
+     * @return xml with the namespace declaration.
+     */
+    private byte[] insertNamespace(final byte[] bytes) {
+        if (index.getNamespace().isEmpty()) {
+            return bytes;
+        }
+        //Insert the namespace declaration directly after the tag name.
+        int nameEnd = 1;
+        while (nameEnd < bytes.length && bytes[nameEnd] != ' ' && bytes[nameEnd] != '\t' && bytes[nameEnd] != '\r' && bytes[nameEnd] != '\n'
+                && bytes[nameEnd] != '>' && bytes[nameEnd] != '/') {
+            nameEnd++;
+        }
+        byte[] declaration = (" xmlns=\"" + index.getNamespace() + "\"").getBytes(StandardCharsets.UTF_8);
+        byte[] namespacedXml = new byte[bytes.length + declaration.length];
+        System.arraycopy(bytes, 0, namespacedXml, 0, nameEnd);
+        System.arraycopy(declaration, 0, namespacedXml, nameEnd, declaration.length);
+        System.arraycopy(bytes, nameEnd, namespacedXml, nameEnd + declaration.length, bytes.length - nameEnd);
+        return namespacedXml;
+    }
+
+    /**
+     * Returns the JAXB context of an element class. Creating a context is expensive, so contexts are shared by all unmarshallers of this reader.
+     *
+     * @param elementClass class of the element.
+     * @return JAXBContext of the class.
+     * @throws JAXBException the context could not be created.
+     */
+    private synchronized JAXBContext getContext(final Class<?> elementClass) throws JAXBException {
+        JAXBContext context = contexts.get(elementClass);
+        if (context == null) {
+            context = JAXBContext.newInstance(elementClass);
+            contexts.put(elementClass, context);
+        }
+        return context;
+    }
+
+    /**
+     * Reads and unmarshals a single element.
+     *
+     * @param <T> class of the element.
+     * @param element indexed element.
+     * @param id id of the element.
+     * @param elementClass class of the element.
+     * @return unmarshalled element, or null if the id is not indexed.
+     * @throws IOException the mzid file could not be read or the element could not be unmarshalled.
+     */
+    public final synchronized <T> T unmarshalElement(final MzIdentMLElement element, final String id, final Class<T> elementClass) throws IOException {
+        byte[] xml = readElementXml(element, id);
+        if (xml == null) {
+            return null;
+        }
+        try {
+            Unmarshaller unmarshaller = getContext(elementClass).createUnmarshaller();
+            return unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(xml)), elementClass).getValue();
+        } catch (JAXBException e) {
+            throw new IOException("Could not unmarshal element " + element + " " + id + ". Error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads and unmarshals a complete section. The section is streamed from the mzid file, so only the unmarshalled section is kept in memory.
+     *
+     * @param <T> class of the section.
+     * @param section indexed section.
+     * @param sectionClass class of the section.
+     * @return unmarshalled section, or null if the mzid file does not contain the section.
+     * @throws IOException the mzid file could not be read or the section could not be unmarshalled.
+     */
+    public final <T> T unmarshalSection(final MzIdentMLElement section, final Class<T> sectionClass) throws IOException {
+        long[] offsets = index.getSectionOffsets(section);
+        if (offsets == null) {
+            return null;
+        }
+        long headEnd = Math.min(offsets[1], offsets[0] + SECTION_HEAD_SIZE);
+        byte[] head = insertNamespace(readBytes(offsets[0], headEnd, section.name()));
+        InputStream xml = new SequenceInputStream(new ByteArrayInputStream(head), new ChannelRangeInputStream(headEnd, offsets[1]));
+        try {
+            Unmarshaller unmarshaller = getContext(sectionClass).createUnmarshaller();
+            return unmarshaller.unmarshal(new StreamSource(xml), sectionClass).getValue();
+        } catch (JAXBException e) {
+            throw new IOException("Could not unmarshal section " + section + ". Error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts a pass over all elements of an indexed element in the order in which they appear in the mzid file.
+     * Elements are read and unmarshalled one at a time when the iterator is advanced. The pass uses a single unmarshaller of its own.
+     *
+     * @param <T> class of the element.
+     * @param element indexed element.
+     * @param elementClass class of the element.
+     * @return iterator of the unmarshalled elements.
+     */
+    public final <T> Iterator<T> elementIterator(final MzIdentMLElement element, final Class<T> elementClass) {
+        final long[][] offsets = index.getElementOffsetsInFileOrder(element);
+        return new Iterator<T>() {
+            private int nextElement = 0;
+            private Unmarshaller unmarshaller;
+
+            @Override
+            public boolean hasNext() {
+                return nextElement < offsets.length;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long[] elementOffsets = offsets[nextElement++];
+                try {
+                    byte[] xml = insertNamespace(readBytes(elementOffsets[0], elementOffsets[1], element.name()));
+                    if (unmarshaller == null) {
+                        unmarshaller = getContext(elementClass).createUnmarshaller();
+                    }
+                    return unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(xml)), elementClass).getValue();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (JAXBException e) {
+                    throw new UncheckedIOException(new IOException("Could not unmarshal element " + element + " at position " + elementOffsets[0]
+                            + ". Error: " + e.getMessage(), e));
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads a single SpectrumIdentificationResult.
+     *
+     * @param id id of the SpectrumIdentificationResult.
+     * @return SpectrumIdentificationResult object, or null if the id is not indexed.
+     * @throws IOException the element could not be read.
+     */
+    public final SpectrumIdentificationResult getSpectrumIdentificationResult(final String id) throws IOException {
+        return unmarshalElement(MzIdentMLElement.SpectrumIdentificationResult, id, SpectrumIdentificationResult.class);
+    }
+
+    /**
+     * Reads a single Peptide.
+     *
+     * @param id id of the Peptide.
+     * @return Peptide object, or null if the id is not indexed.
+     * @throws IOException the element could not be read.
+     */
+    public final Peptide getPeptide(final String id) throws IOException {
+        return unmarshalElement(MzIdentMLElement.Peptide, id, Peptide.class);
+    }
+
+    /**
+     * Reads a single PeptideEvidence.
+     *
+     * @param id id of the PeptideEvidence.
+     * @return PeptideEvidence object, or null if the id is not indexed.
+     * @throws IOException the element could not be read.
+     */
+    public final PeptideEvidence getPeptideEvidence(final String id) throws IOException {
+        return unmarshalElement(MzIdentMLElement.PeptideEvidence, id, PeptideEvidence.class);
+    }
+
+    /**
+     * Reads a single DBSequence.
+     *
+     * @param id id of the DBSequence.
+     * @return DBSequence object, or null if the id is not indexed.
+     * @throws IOException the element could not be read.
+     */
+    public final DBSequence getDBSequence(final String id) throws IOException {
+        return unmarshalElement(MzIdentMLElement.DBSequence, id, DBSequence.class);
+    }
+
+    /**
+     * Reads a single ProteinAmbiguityGroup.
+     *
+     * @param id id of the ProteinAmbiguityGroup.
+     * @return ProteinAmbiguityGroup object, or null if the id is not indexed.
+     * @throws IOException the element could not be read.
+     */
+    public final ProteinAmbiguityGroup getProteinAmbiguityGroup(final String id) throws IOException {
+        return unmarshalElement(MzIdentMLElement.ProteinAmbiguityGroup, id, ProteinAmbiguityGroup.class);
+    }
+
+    /**
+     * Closes the mzid file.
+     *
+     * @throws IOException the mzid file could not be closed.
+     */
+    @Override
+    public final void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Input stream of a range of bytes of the mzid file that uses positional reads, so the channel can be shared by several streams.
+     */
+    private class ChannelRangeInputStream extends InputStream {
+
+        /**
+         * Offset of the next byte.
+         */
+        private long position;
+
+        /**
+         * Offset after the last byte.
+         */
+        private final long end;
+
+        /**
+         * Creates a stream of a range of bytes.
+         *
+         * @param start offset of the first byte.
+         * @param end offset after the last byte.
+         */
+        ChannelRangeInputStream(final long start, final long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] value = new byte[1];
+            return read(value, 0, 1) == -1 ? -1 : value[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)), position);
+            if (read == -1) {
+                throw new IOException("Section ends after the end of the mzid file. The element index is not up to date.");
+            }
+            position += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import uk.ac.ebi.jmzidml.MzIdentMLElement;
+import uk.ac.ebi.jmzidml.model.mzidml.MzIdentMLObject;
+
+/**
+ * Unmarshals a single top-level section of a mzid file with its own reader.
+ * The section is read from its offsets in the shared element index, so the mzid file is not indexed again. JAXB unmarshallers are not thread safe,
+ * so every section task opens its own MzIdRandomAccessReader instead of sharing one between threads.
+ *
+ * @author vnijenhuis
+ * @param <T> class of the section.
+ */
+public class MzIdSectionUnmarshaller<T extends MzIdentMLObject> implements Callable<T> {
+
+    /**
+     * Path to the mzid file.
+     */
+    private final String mzIdFile;
+
+    /**
+     * Element index of the mzid file.
+     */
+    private final MzIdElementIndex index;
+
+    /**
+     * Indexed section that is unmarshalled.
+     */
+    private final MzIdentMLElement section;
+
+    /**
+     * Class of the section that is unmarshalled.
+     */
+    private final Class<T> sectionClass;
+
+    /**
+     * Creates the unmarshaller of a single section.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @param index element index of the mzid file.
+     * @param section indexed section that is unmarshalled.
+     * @param sectionClass class of the section that is unmarshalled.
+     */
+    public MzIdSectionUnmarshaller(final String mzIdFile, final MzIdElementIndex index, final MzIdentMLElement section, final Class<T> sectionClass) {
+        this.mzIdFile = mzIdFile;
+        this.index = index;
+        this.section = section;
+        this.sectionClass = sectionClass;
+    }
+
+    /**
+     * Call function that unmarshals the section.
+     *
+     * @return unmarshalled section, or null if the mzid file does not contain the section.
+     * @throws IOException the mzid file could not be read or the section could not be unmarshalled.
+     */
+    @Override
+    public T call() throws IOException {
+        System.out.println("Collecting info from mzid parameter <" + sectionClass.getSimpleName() + ">");
+        T unmarshalledSection;
+        try (MzIdRandomAccessReader reader = new MzIdRandomAccessReader(mzIdFile, index)) {
+            unmarshalledSection = reader.unmarshalSection(section, sectionClass);
+        }
+        System.out.println("Collected info from mzid parameter <" + sectionClass.getSimpleName() + ">");
+        return unmarshalledSection;
+    }
+}
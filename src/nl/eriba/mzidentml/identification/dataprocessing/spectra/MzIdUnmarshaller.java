@@ -1,17 +1,21 @@
 /*
  * @author Vikthor Nijenhuis
- * @project Peptide mzIdentML Identfication Module * 
+ * @project Peptide mzIdentML Identfication Module *
  */
 package nl.eriba.mzidentml.identification.dataprocessing.spectra;
 
 import nl.eriba.mzidentml.identification.collections.mzid.MzIdMainElementCollection;
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import uk.ac.ebi.jmzidml.MzIdentMLElement;
 import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionList;
 import uk.ac.ebi.jmzidml.model.mzidml.SequenceCollection;
-import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationList;
-import uk.ac.ebi.jmzidml.xml.io.MzIdentMLUnmarshaller;
 
 /**
  * Unmarshalling class for the mzid format.
@@ -21,21 +25,93 @@ public class MzIdUnmarshaller {
 
     /**
      * Unmarshals the .mzid file and adds the used mzid data to a single collection.
+     * SpectrumIdentificationResult elements are not unmarshalled here, but streamed one at a time by the returned collection.
      * @param mzIdFile xml file with the .mzid extension.
      * @return collection of unmarshalled mzid elements and/or classes.
+     * @throws IOException the mzid file could not be read or the index file could not be written.
      */
-    public final MzIdMainElementCollection unmarshalMzIdFile(final String mzIdFile) {
-        File mzIdentMLFile = new File(mzIdFile);
+    public final MzIdMainElementCollection unmarshalMzIdFile(final String mzIdFile) throws IOException {
+        return unmarshalMzIdFile(mzIdFile, false);
+    }
+
+    /**
+     * Unmarshals the .mzid file and adds the used mzid data to a single collection.
+     * SpectrumIdentificationResult elements are not unmarshalled here, but streamed one at a time by the returned collection.
+     * The mzid file is indexed once; the SequenceCollection, ProteinDetectionList and SpectrumIdentificationResults are then read from their
+     * indexed offsets by their own readers. The SequenceCollection and ProteinDetectionList are unmarshalled concurrently and can be collected
+     * from the returned collection once they are ready.
+     * If the mzid file has an up to date content snapshot, the data is read from the snapshot instead of the mzid file.
+     * @param mzIdFile xml file with the .mzid extension.
+     * @param writeSnapshot writes a content snapshot of the mzid file during the first pass over its SpectrumIdentificationResults if true.
+     * @return collection of unmarshalled mzid elements and/or classes.
+     * @throws IOException the mzid file could not be read or the index file could not be written.
+     */
+    public final MzIdMainElementCollection unmarshalMzIdFile(final String mzIdFile, final Boolean writeSnapshot) throws IOException {
         System.out.println("Reading given file: " + mzIdFile);
-        //Unmarshaller that transforms storage data format to a memory format
-        MzIdentMLUnmarshaller unmarshaller = new MzIdentMLUnmarshaller(mzIdentMLFile);
-        System.out.println("Collecting info from mzid parameter <SpectrumIdentificationList>");
-        SpectrumIdentificationList spectrumIdList = unmarshaller.unmarshal(MzIdentMLElement.SpectrumIdentificationList);
-        System.out.println("Collecting info from mzid parameter <SequenceCollection>");
-        SequenceCollection sequenceCollection = unmarshaller.unmarshal(SequenceCollection.class);
-        System.out.println("Collecting info from mzid parameter <ProteinDetectionList>");
-        ProteinDetectionList proteinHypothesisList = unmarshaller.unmarshal(MzIdentMLElement.ProteinDetectionList);
-        MzIdMainElementCollection unmarshalCollection = new MzIdMainElementCollection(spectrumIdList, sequenceCollection, proteinHypothesisList);
+        MzIdContentSnapshot snapshot = null;
+        try {
+            snapshot = MzIdContentSnapshot.readSnapshot(mzIdFile);
+        } catch (IOException e) {
+            System.out.println("Could not read mzid content snapshot of " + mzIdFile + ". Error: " + e.getMessage());
+        }
+        if (snapshot != null) {
+            System.out.println("Collecting mzid data from snapshot " + MzIdContentSnapshot.getSnapshotFile(mzIdFile));
+            return new MzIdMainElementCollection(new SpectrumIdentificationResultStream(snapshot), CompletableFuture.completedFuture(snapshot.getSequenceCollection()),
+                    CompletableFuture.completedFuture(snapshot.getProteinDetectionList()));
+        }
+        MzIdElementIndex index = MzIdElementIndex.readIndex(mzIdFile);
+        if (index == null) {
+            index = MzIdElementIndex.createIndex(mzIdFile);
+        }
+        //The SequenceCollection and ProteinDetectionList are unmarshalled by their own thread and reader while the SpectrumIdentificationResults are streamed.
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<SequenceCollection> sequenceCollection = executor.submit(new MzIdSectionUnmarshaller<>(mzIdFile, index,
+                MzIdentMLElement.SequenceCollection, SequenceCollection.class));
+        Future<ProteinDetectionList> proteinHypothesisList = executor.submit(new MzIdSectionUnmarshaller<>(mzIdFile, index,
+                MzIdentMLElement.ProteinDetectionList, ProteinDetectionList.class));
+        executor.shutdown();
+        MzIdContentSnapshotWriter snapshotWriter = null;
+        if (writeSnapshot) {
+            try {
+                snapshotWriter = new MzIdContentSnapshotWriter(mzIdFile, sequenceCollection, proteinHypothesisList);
+            } catch (IOException e) {
+                System.out.println("Could not write mzid content snapshot of " + mzIdFile + ". Error: " + e.getMessage());
+            }
+        }
+        //Reader that transforms storage data format to a memory format, only used by the calling thread.
+        SpectrumIdentificationResultStream spectrumResultStream = new SpectrumIdentificationResultStream(new MzIdRandomAccessReader(mzIdFile, index), snapshotWriter);
+        MzIdMainElementCollection unmarshalCollection = new MzIdMainElementCollection(spectrumResultStream, sequenceCollection, proteinHypothesisList);
         return unmarshalCollection;
     }
+
+    /**
+     * Opens a mzid file for random access to single elements by id. The element index of the mzid file is created first if it is missing or out of date.
+     * @param mzIdFile xml file with the .mzid extension.
+     * @return MzIdRandomAccessReader of the mzid file, which should be closed after use.
+     * @throws IOException the mzid file could not be read or the index file could not be written.
+     */
+    public final MzIdRandomAccessReader openRandomAccessReader(final String mzIdFile) throws IOException {
+        MzIdElementIndex index = MzIdElementIndex.readIndex(mzIdFile);
+        if (index == null) {
+            index = MzIdElementIndex.createIndex(mzIdFile);
+        }
+        return new MzIdRandomAccessReader(mzIdFile, index);
+    }
+
+    /**
+     * Creates an element index for each mzid file that does not have an up to date index.
+     * @param mzidEntryMap LinkedHashMap with database as key and ArrayList of mzid files as value.
+     * @throws IOException could not read a mzid file or write an index file.
+     */
+    public final void createElementIndices(final LinkedHashMap<String, ArrayList<String>> mzidEntryMap) throws IOException {
+        for (Map.Entry<String, ArrayList<String>> entryMap : mzidEntryMap.entrySet()) {
+            for (String mzIdFile : entryMap.getValue()) {
+                if (MzIdElementIndex.hasIndex(mzIdFile)) {
+                    System.out.println("Element index of " + mzIdFile + " is up to date.");
+                } else {
+                    MzIdElementIndex.createIndex(mzIdFile);
+                }
+            }
+        }
+    }
 }
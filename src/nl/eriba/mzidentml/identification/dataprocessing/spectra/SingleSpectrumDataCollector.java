@@ -101,12 +101,28 @@ public class SingleSpectrumDataCollector {
 
     /**
      * Gathers the most important data from MzIdPeptide objects depending on the given peptide sequence.
+     * The PeptideEntry is created once per peptide sequence and reused for every following spectrum of this sequence.
      *
      * @param peptideCollection collection of MzIdPeptide objects.
      * @param peptideSequence current peptide sequence.
      * @return PeptideEntry containing post-translational modification, aScore and the modified peptide sequence.
      */
     public final PeptideEntry getPeptideCollectionData(final MzIdPeptideCollection peptideCollection, final String peptideSequence) {
+        PeptideEntry peptideEntry = peptideCollection.getPeptideEntry(peptideSequence);
+        if (peptideEntry == null) {
+            peptideEntry = peptideCollection.addPeptideEntry(peptideSequence, createPeptideEntry(peptideCollection, peptideSequence));
+        }
+        return peptideEntry;
+    }
+
+    /**
+     * Creates a PeptideEntry from the MzIdPeptide objects that match the given peptide sequence.
+     *
+     * @param peptideCollection collection of MzIdPeptide objects.
+     * @param peptideSequence current peptide sequence.
+     * @return PeptideEntry containing post-translational modification, aScore and the modified peptide sequence.
+     */
+    private PeptideEntry createPeptideEntry(final MzIdPeptideCollection peptideCollection, final String peptideSequence) {
         String postTranslationalModification = "";
         String aScore = "";
         String modifiedPeptideSequence;
@@ -118,7 +134,7 @@ public class SingleSpectrumDataCollector {
         }
         //The modification increases the sequence length through the added mass change value. This integer is used to put modifications at the right index.
         Integer locationShift = 0;
-        for (MzIdPeptide peptide : peptideCollection.getPeptides()) {
+        for (MzIdPeptide peptide : peptideCollection.getPeptidesBySequence(modifiedPeptideSequence)) {
             if (peptide.getPeptideSequence().equals(modifiedPeptideSequence)) {
                 ArrayList<Integer> locations = new ArrayList<>();
                 for (MzIdModification modification : peptide.getModifications()) {
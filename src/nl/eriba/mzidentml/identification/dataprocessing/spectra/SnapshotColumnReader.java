@@ -0,0 +1,178 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values of a single column of a mzid content snapshot from start to end.
+ * The column is memory-mapped in windows, so columns larger than the maximum size of a mapped buffer can be read as well.
+ *
+ * @author vnijenhuis
+ */
+public class SnapshotColumnReader {
+
+    /**
+     * Maximum size of a mapped window of the column.
+     */
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    /**
+     * Channel of the snapshot file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Position in the snapshot file after the last byte of the column.
+     */
+    private final long columnEnd;
+
+    /**
+     * Position in the snapshot file of the first byte of the current window.
+     */
+    private long windowStart;
+
+    /**
+     * Current mapped window of the column.
+     */
+    private ByteBuffer window;
+
+    /**
+     * Buffer that the bytes of a string are copied to before decoding.
+     */
+    private byte[] stringBuffer;
+
+    /**
+     * Creates a reader of a column. Nothing is mapped until the first value is read.
+     *
+     * @param channel channel of the snapshot file.
+     * @param columnStart position in the snapshot file of the first byte of the column.
+     * @param columnLength length of the column in bytes.
+     */
+    public SnapshotColumnReader(final FileChannel channel, final long columnStart, final long columnLength) {
+        this.channel = channel;
+        this.columnEnd = columnStart + columnLength;
+        this.windowStart = columnStart;
+        this.window = ByteBuffer.allocate(0);
+        this.stringBuffer = new byte[256];
+    }
+
+    /**
+     * Maps the next window of the column if less than the given amount of bytes remains in the current window.
+     *
+     * @param bytes amount of bytes that are read next.
+     * @throws IOException the column ends before the given amount of bytes.
+     */
+    private void ensureAvailable(final int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        long position = windowStart + window.position();
+        long size = Math.min(Math.max(WINDOW_SIZE, bytes), columnEnd - position);
+        if (size < bytes) {
+            throw new IOException("Mzid content snapshot column ends at position " + position + " while " + bytes + " more bytes were expected.");
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        windowStart = position;
+    }
+
+    /**
+     * Reads an int value.
+     *
+     * @return int value.
+     * @throws IOException the column has no values left.
+     */
+    public final int readInt() throws IOException {
+        ensureAvailable(4);
+        return window.getInt();
+    }
+
+    /**
+     * Reads a float value.
+     *
+     * @return float value.
+     * @throws IOException the column has no values left.
+     */
+    public final float readFloat() throws IOException {
+        ensureAvailable(4);
+        return window.getFloat();
+    }
+
+    /**
+     * Reads a boolean value.
+     *
+     * @return boolean value.
+     * @throws IOException the column has no values left.
+     */
+    public final boolean readBoolean() throws IOException {
+        ensureAvailable(1);
+        return window.get() != 0;
+    }
+
+    /**
+     * Reads an Integer value that can be null.
+     *
+     * @return Integer value or null.
+     * @throws IOException the column has no values left.
+     */
+    public final Integer readNullableInteger() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        return readInt();
+    }
+
+    /**
+     * Reads a Double value that can be null.
+     *
+     * @return Double value or null.
+     * @throws IOException the column has no values left.
+     */
+    public final Double readNullableDouble() throws IOException {
+        if (!readBoolean()) {
+            return null;
+        }
+        ensureAvailable(8);
+        return window.getDouble();
+    }
+
+    /**
+     * Reads a UTF-8 String value that can be null.
+     *
+     * @return String value or null.
+     * @throws IOException the column has no values left.
+     */
+    public final String readString() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        ensureAvailable(length);
+        if (stringBuffer.length < length) {
+            stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+        }
+        window.get(stringBuffer, 0, length);
+        return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the next bytes of the column without decoding them. The returned buffer shares the mapped window, which stays valid after
+     * the channel of the snapshot file has been closed.
+     *
+     * @param length amount of bytes.
+     * @return read-only ByteBuffer with the bytes from position 0 to the given length.
+     * @throws IOException the column has less bytes left than the given length.
+     */
+    public final ByteBuffer readSlice(final int length) throws IOException {
+        ensureAvailable(length);
+        ByteBuffer slice = window.slice();
+        slice.limit(length);
+        window.position(window.position() + length);
+        return slice.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import uk.ac.ebi.jmzidml.MzIdentMLElement;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationResult;
+
+/**
+ * Streams SpectrumIdentificationResult objects from a mzid file one element at a time.
+ * Each call to iterator() starts a new pass over the file, so only the results that are being processed are kept in memory.
+ * Results are read from the mzid content snapshot if there is one. Otherwise the snapshot can be written during the first pass over the mzid file,
+ * after which the next passes read the snapshot. The stream should be closed after the last pass.
+ *
+ * @author vnijenhuis
+ */
+public class SpectrumIdentificationResultStream implements Iterable<SpectrumIdentificationResult>, Closeable {
+
+    /**
+     * Reader of the mzid file that is being streamed, or null if the results are read from a snapshot.
+     */
+    private final MzIdRandomAccessReader reader;
+
+    /**
+     * Writer of the snapshot that is written during the first pass, or null if no snapshot is written.
+     */
+    private MzIdContentSnapshotWriter snapshotWriter;
+
+    /**
+     * Writer of the snapshot while the first pass is running, or null if no snapshot is being written.
+     */
+    private MzIdContentSnapshotWriter activeWriter;
+
+    /**
+     * Snapshot that the results are read from, or null if the results are read from the mzid file.
+     */
+    private MzIdContentSnapshot snapshot;
+
+    /**
+     * Creates a stream of SpectrumIdentificationResult objects.
+     *
+     * @param reader random access reader of the mzid file.
+     */
+    public SpectrumIdentificationResultStream(final MzIdRandomAccessReader reader) {
+        this(reader, null);
+    }
+
+    /**
+     * Creates a stream of SpectrumIdentificationResult objects that writes a snapshot during the first pass over the mzid file.
+     *
+     * @param reader random access reader of the mzid file.
+     * @param snapshotWriter writer of the snapshot or null.
+     */
+    public SpectrumIdentificationResultStream(final MzIdRandomAccessReader reader, final MzIdContentSnapshotWriter snapshotWriter) {
+        this.reader = reader;
+        this.snapshotWriter = snapshotWriter;
+        this.snapshot = null;
+    }
+
+    /**
+     * Creates a stream of SpectrumIdentificationResult objects that are read from a snapshot.
+     *
+     * @param snapshot mzid content snapshot.
+     */
+    public SpectrumIdentificationResultStream(final MzIdContentSnapshot snapshot) {
+        this.reader = null;
+        this.snapshotWriter = null;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Starts a new pass over the SpectrumIdentificationResult elements of the mzid file.
+     * Elements are unmarshalled one by one from their indexed file position in file order when the iterator is advanced, or restored from the snapshot.
+     *
+     * @return iterator of SpectrumIdentificationResult objects.
+     */
+    @Override
+    public final synchronized Iterator<SpectrumIdentificationResult> iterator() {
+        if (snapshot != null) {
+            return snapshot.resultIterator();
+        }
+        final Iterator<SpectrumIdentificationResult> results = reader.elementIterator(MzIdentMLElement.SpectrumIdentificationResult, SpectrumIdentificationResult.class);
+        if (snapshotWriter == null) {
+            return results;
+        }
+        //Only the first pass writes the snapshot. A pass that was not completed leaves an incomplete snapshot, so it is discarded.
+        final MzIdContentSnapshotWriter writer = snapshotWriter;
+        snapshotWriter = null;
+        activeWriter = writer;
+        return new Iterator<SpectrumIdentificationResult>() {
+            private boolean writing = true;
+
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = results.hasNext();
+                if (!hasNext && writing) {
+                    writing = false;
+                    finishSnapshot(writer);
+                }
+                return hasNext;
+            }
+
+            @Override
+            public SpectrumIdentificationResult next() {
+                SpectrumIdentificationResult result = results.next();
+                if (writing) {
+                    try {
+                        writer.addResult(result);
+                    } catch (IOException e) {
+                        System.out.println("Could not write mzid content snapshot of " + writer.getMzIdFile() + ". Error: " + e.getMessage());
+                        writing = false;
+                        abortSnapshot(writer);
+                    }
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Writes the snapshot file after the first pass and opens it for the next passes.
+     * The checksum of the mzid file was calculated by the writer, so it is not calculated again.
+     *
+     * @param writer writer of the snapshot.
+     */
+    private synchronized void finishSnapshot(final MzIdContentSnapshotWriter writer) {
+        activeWriter = null;
+        try {
+            writer.finish();
+            snapshot = MzIdContentSnapshot.readSnapshot(writer.getMzIdFile(), writer.getChecksum());
+        } catch (IOException e) {
+            System.out.println("Could not write mzid content snapshot of " + writer.getMzIdFile() + ". Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Discards the snapshot of a first pass that could not be completed.
+     *
+     * @param writer writer of the snapshot.
+     */
+    private synchronized void abortSnapshot(final MzIdContentSnapshotWriter writer) {
+        if (activeWriter == writer) {
+            activeWriter = null;
+            writer.abort();
+        }
+    }
+
+    /**
+     * Returns the amount of SpectrumIdentificationResult elements in the mzid file without unmarshalling them.
+     *
+     * @return amount of SpectrumIdentificationResult elements as Integer.
+     */
+    public final synchronized Integer getResultCount() {
+        if (snapshot != null) {
+            return snapshot.getResultCount();
+        }
+        return reader.getIndex().getElementIds(MzIdentMLElement.SpectrumIdentificationResult).size();
+    }
+
+    /**
+     * Closes the mzid file and the snapshot file. A snapshot of a first pass that was cancelled or failed is discarded.
+     *
+     * @throws IOException the mzid file or the snapshot file could not be closed.
+     */
+    @Override
+    public final synchronized void close() throws IOException {
+        if (activeWriter != null) {
+            abortSnapshot(activeWriter);
+        }
+        //The first pass was never started.
+        if (snapshotWriter != null) {
+            snapshotWriter.abort();
+            snapshotWriter = null;
+        }
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+}
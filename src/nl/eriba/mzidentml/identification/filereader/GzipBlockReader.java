@@ -0,0 +1,202 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.filereader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a gzip file into blocks of bytes, which are put on a queue in file order.
+ * BGZF files consist of many small gzip members with their compressed size in the header. The members of these files are grouped and
+ * decompressed by multiple threads. Other gzip files can only be decompressed in order and are decompressed by the thread of this reader.
+ * An empty block is put on the queue after the last block.
+ *
+ * @author vnijenhuis
+ */
+public class GzipBlockReader implements Callable<Integer> {
+
+    /**
+     * Size of the decompressed blocks in bytes.
+     */
+    private static final int BLOCK_SIZE = 1 << 22;
+
+    /**
+     * Path to the gzip file.
+     */
+    private final String file;
+
+    /**
+     * Queue that receives the decompressed blocks.
+     */
+    private final BlockingQueue<Future<byte[]>> blockQueue;
+
+    /**
+     * Executor used to decompress the members of BGZF files.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a gzip block reader.
+     *
+     * @param file path to the gzip file.
+     * @param blockQueue queue that receives the decompressed blocks. Should be bounded to limit memory usage.
+     * @param executor executor used to decompress the members of BGZF files.
+     */
+    public GzipBlockReader(final String file, final BlockingQueue<Future<byte[]>> blockQueue, final ExecutorService executor) {
+        this.file = file;
+        this.blockQueue = blockQueue;
+        this.executor = executor;
+    }
+
+    /**
+     * Call function which decompresses the file.
+     *
+     * @return returns the amount of blocks that were put on the queue.
+     * @throws IOException could not read the file.
+     * @throws InterruptedException process was interrupted.
+     */
+    @Override
+    public Integer call() throws IOException, InterruptedException {
+        Integer blockCount = 0;
+        try {
+            if (isBgzfFile()) {
+                blockCount = readBgzfFile();
+            } else {
+                blockCount = readGzipFile();
+            }
+        } finally {
+            blockQueue.put(CompletableFuture.completedFuture(new byte[0]));
+        }
+        return blockCount;
+    }
+
+    /**
+     * Checks if the first member of the file has a BGZF header.
+     *
+     * @return true if the file is a BGZF file, otherwise false.
+     * @throws IOException could not read the file.
+     */
+    private boolean isBgzfFile() throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return getBgzfMemberSize(input) > 0;
+        } catch (EOFException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the header of a gzip member and returns the total member size of the BGZF extra field.
+     * Reads the header up to and including the extra field.
+     *
+     * @param input stream positioned at the start of a gzip member.
+     * @return size of the member in bytes, or -1 if the member has no BGZF extra field.
+     * @throws IOException could not read the file.
+     */
+    private int getBgzfMemberSize(final DataInputStream input) throws IOException {
+        byte[] header = new byte[12];
+        input.readFully(header);
+        if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || (header[3] & 4) == 0) {
+            return -1;
+        }
+        byte[] extra = new byte[(header[10] & 0xff) | (header[11] & 0xff) << 8];
+        input.readFully(extra);
+        int position = 0;
+        while (position + 4 <= extra.length) {
+            int subfieldLength = (extra[position + 2] & 0xff) | (extra[position + 3] & 0xff) << 8;
+            if (extra[position] == 'B' && extra[position + 1] == 'C' && subfieldLength == 2 && position + 6 <= extra.length) {
+                return ((extra[position + 4] & 0xff) | (extra[position + 5] & 0xff) << 8) + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Decompresses a gzip file on the current thread.
+     *
+     * @return amount of blocks that were put on the queue.
+     * @throws IOException could not read the file.
+     * @throws InterruptedException process was interrupted.
+     */
+    private Integer readGzipFile() throws IOException, InterruptedException {
+        Integer blockCount = 0;
+        try (InputStream input = new GZIPInputStream(new FileInputStream(file), 1 << 16)) {
+            byte[] block = new byte[BLOCK_SIZE];
+            int size = 0;
+            int read;
+            while ((read = input.read(block, size, block.length - size)) != -1) {
+                size += read;
+                if (size == block.length) {
+                    blockQueue.put(CompletableFuture.completedFuture(block));
+                    blockCount++;
+                    block = new byte[BLOCK_SIZE];
+                    size = 0;
+                }
+            }
+            if (size > 0) {
+                blockQueue.put(CompletableFuture.completedFuture(Arrays.copyOf(block, size)));
+                blockCount++;
+            }
+        }
+        return blockCount;
+    }
+
+    /**
+     * Reads the members of a BGZF file and decompresses groups of members with multiple threads.
+     *
+     * @return amount of blocks that were put on the queue.
+     * @throws IOException could not read the file or a member is not a BGZF member.
+     * @throws InterruptedException process was interrupted.
+     */
+    private Integer readBgzfFile() throws IOException, InterruptedException {
+        Integer blockCount = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            ByteArrayOutputStream members = new ByteArrayOutputStream(BLOCK_SIZE);
+            int outputSize = 0;
+            while (true) {
+                //A member is at most 64KB, so the member can be read again from the mark.
+                input.mark(1 << 17);
+                if (input.read() == -1) {
+                    break;
+                }
+                input.reset();
+                int memberSize = getBgzfMemberSize(input);
+                if (memberSize <= 0) {
+                    throw new IOException("File " + file + " contains a gzip member without BGZF header.");
+                }
+                input.reset();
+                byte[] member = new byte[memberSize];
+                input.readFully(member);
+                members.write(member);
+                outputSize += (member[memberSize - 4] & 0xff) | (member[memberSize - 3] & 0xff) << 8
+                        | (member[memberSize - 2] & 0xff) << 16 | (member[memberSize - 1] & 0xff) << 24;
+                if (outputSize >= BLOCK_SIZE) {
+                    blockQueue.put(executor.submit(new GzipMemberInflater(members.toByteArray(), outputSize)));
+                    blockCount++;
+                    members.reset();
+                    outputSize = 0;
+                }
+            }
+            //The BGZF end of file member is empty, so only groups with output are added.
+            if (outputSize > 0) {
+                blockQueue.put(executor.submit(new GzipMemberInflater(members.toByteArray(), outputSize)));
+                blockCount++;
+            }
+        }
+        return blockCount;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.filereader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a group of complete gzip members, such as a group of BGZF blocks.
+ *
+ * @author vnijenhuis
+ */
+public class GzipMemberInflater implements Callable<byte[]> {
+
+    /**
+     * Compressed gzip members.
+     */
+    private final byte[] members;
+
+    /**
+     * Total decompressed size of the members in bytes.
+     */
+    private final int outputSize;
+
+    /**
+     * Creates a gzip member inflater.
+     *
+     * @param members compressed gzip members.
+     * @param outputSize total decompressed size of the members, as given by their ISIZE fields.
+     */
+    public GzipMemberInflater(final byte[] members, final int outputSize) {
+        this.members = members;
+        this.outputSize = outputSize;
+    }
+
+    /**
+     * Call function which decompresses the members. The checksum of each member is verified by the GZIPInputStream.
+     *
+     * @return returns the decompressed bytes.
+     * @throws IOException the members are not valid or do not match the given size.
+     */
+    @Override
+    public byte[] call() throws IOException {
+        byte[] output = new byte[outputSize];
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(members), 1 << 16)) {
+            int size = 0;
+            int read;
+            while (size < outputSize && (read = input.read(output, size, outputSize - size)) != -1) {
+                size += read;
+            }
+            if (size != outputSize || input.read() != -1) {
+                throw new IOException("Decompressed size of the gzip members does not match their ISIZE fields.");
+            }
+        }
+        return output;
+    }
+}
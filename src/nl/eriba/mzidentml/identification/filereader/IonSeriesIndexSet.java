@@ -0,0 +1,75 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.filereader;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.TreeSet;
+
+/**
+ * Set of the sequence indices that are covered by the ion fragments of an ion serie.
+ * Indices inside the sequence are stored in a BitSet. A b ion index can be larger than the sequence length, which gives a negative sequence index.
+ * These indices are kept separately, so they still count towards the size of the ion serie and are part of the index list.
+ *
+ * @author vnijenhuis
+ */
+class IonSeriesIndexSet {
+
+    /**
+     * Indices from 0 to the sequence length.
+     */
+    private final BitSet indices;
+
+    /**
+     * Negative indices.
+     */
+    private final TreeSet<Integer> negativeIndices;
+
+    /**
+     * Creates an empty set of indices.
+     *
+     * @param sequenceLength length of the peptide sequence.
+     */
+    IonSeriesIndexSet(final int sequenceLength) {
+        this.indices = new BitSet(sequenceLength + 1);
+        this.negativeIndices = new TreeSet<>();
+    }
+
+    /**
+     * Adds an index to the set.
+     *
+     * @param index sequence index.
+     */
+    final void add(final int index) {
+        if (index < 0) {
+            negativeIndices.add(index);
+        } else {
+            indices.set(index);
+        }
+    }
+
+    /**
+     * Returns the amount of indices in the set.
+     *
+     * @return amount of indices as int.
+     */
+    final int size() {
+        return indices.cardinality() + negativeIndices.size();
+    }
+
+    /**
+     * Creates a sorted list of the indices in the set.
+     *
+     * @return ArrayList of indices in ascending order.
+     */
+    final ArrayList<Integer> toIndexList() {
+        ArrayList<Integer> indexList = new ArrayList<>(size());
+        indexList.addAll(negativeIndices);
+        for (int index = indices.nextSetBit(0); index >= 0; index = indices.nextSetBit(index + 1)) {
+            indexList.add(index);
+        }
+        return indexList;
+    }
+}
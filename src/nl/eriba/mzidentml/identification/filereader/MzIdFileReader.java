@@ -5,8 +5,8 @@
 package nl.eriba.mzidentml.identification.filereader;
 
 import nl.eriba.mzidentml.identification.collections.mzid.MzIdProteinPeptideCollection;
+import nl.eriba.mzidentml.identification.collections.mzid.MzIdProteinPeptideIndex;
 import nl.eriba.mzidentml.identification.collections.output.DatabaseSearchPsmOutputCollection;
-import nl.eriba.mzidentml.identification.collections.mzid.MzIdDatabaseSequenceCollection;
 import nl.eriba.mzidentml.identification.collections.output.ScanIdOutputCollection;
 import nl.eriba.mzidentml.identification.collections.mzid.MzIdPeptideCollection;
 import nl.eriba.mzidentml.identification.collections.output.PeptideOutputCollection;
@@ -14,41 +14,34 @@ import nl.eriba.mzidentml.identification.collections.mzid.MzIdPeptideEvidenceCol
 import nl.eriba.mzidentml.identification.collections.mzid.MzIdProteinDetectionHypothesisCollection;
 import nl.eriba.mzidentml.identification.collections.output.ProteinPeptideOutputCollection;
 import nl.eriba.mzidentml.identification.collections.mzid.MzIdMainElementCollection;
-import nl.eriba.mzidentml.identification.collections.general.CombinedPeptideEntryCollection;
-import nl.eriba.mzidentml.identification.dataprocessing.sorting.SortSpectrumResultBySequence;
-import nl.eriba.mzidentml.identification.dataprocessing.sorting.SortPeptideEvidenceCollectionOnSequence;
+import nl.eriba.mzidentml.identification.collections.mzid.MzIdSequenceElementCollection;
+import nl.eriba.mzidentml.identification.collections.general.BestSpectrumEntryIndex;
+import nl.eriba.mzidentml.identification.collections.general.CombinedPeptideEntryIndex;
+import nl.eriba.mzidentml.identification.dataprocessing.spectra.EncodedFragmentArray;
 import nl.eriba.mzidentml.identification.dataprocessing.spectra.MzIdUnmarshaller;
 import nl.eriba.mzidentml.identification.dataprocessing.spectra.SingleSpectrumDataCollector;
-import nl.eriba.mzidentml.identification.objects.output.DatabaseSearchPsmOutput;
+import nl.eriba.mzidentml.identification.dataprocessing.spectra.SpectrumIdentificationResultStream;
+import nl.eriba.mzidentml.identification.writer.csv.MzIdStreamingOutput;
 import nl.eriba.mzidentml.identification.objects.mzid.MzIdCvParam;
-import nl.eriba.mzidentml.identification.objects.mzid.MzIdDatabaseSequence;
-import nl.eriba.mzidentml.identification.objects.mzid.MzIdModification;
 import nl.eriba.mzidentml.identification.objects.mzid.MzIdPeptide;
 import nl.eriba.mzidentml.identification.objects.mzid.MzIdPeptideEvidence;
 import nl.eriba.mzidentml.identification.objects.mzid.MzIdProteinDetectionHypothesis;
-import nl.eriba.mzidentml.identification.objects.mzid.MzIdSubstituteModification;
 import nl.eriba.mzidentml.identification.objects.output.PeptideOutput;
 import nl.eriba.mzidentml.identification.objects.output.ProteinPeptideOutput;
 import nl.eriba.mzidentml.identification.objects.output.ScanIdOutput;
+import nl.eriba.mzidentml.identification.objects.general.FragmentIonTypeMap;
 import nl.eriba.mzidentml.identification.objects.general.MatchedIonSeries;
 import nl.eriba.mzidentml.identification.objects.general.ProteinPeptideEntry;
-import nl.eriba.mzidentml.identification.objects.mzid.MzIdIonFragment;
 import nl.eriba.mzidentml.identification.objects.general.PeptideEntry;
-import nl.eriba.mzidentml.identification.objects.general.BestSpectrumEntry;
 import nl.eriba.mzidentml.identification.objects.general.SpectrumIdentificationItemEntry;
 import nl.eriba.mzidentml.identification.objects.general.SpectrumIdentificationResultEntry;
 import nl.eriba.mzidentml.identification.collections.general.CombinedDatabaseReferenceCollection;
-import nl.eriba.mzidentml.identification.collections.general.SingleDatabaseReferenceCollection;
-import nl.eriba.mzidentml.identification.objects.general.SingleDatabaseReference;
 import nl.eriba.mzidentml.identification.objects.general.CombinedPeptideEntry;
 import nl.eriba.mzidentml.tools.CalculationTools;
 import uk.ac.ebi.jmzidml.model.mzidml.PeptideEvidence;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItem;
-import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationList;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationResult;
 import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
-import uk.ac.ebi.jmzidml.model.mzidml.DBSequence;
-import uk.ac.ebi.jmzidml.model.mzidml.Modification;
 import uk.ac.ebi.jmzidml.model.mzidml.Peptide;
 import uk.ac.ebi.jmzidml.model.mzidml.PeptideHypothesis;
 import uk.ac.ebi.jmzidml.model.mzidml.ProteinAmbiguityGroup;
@@ -56,22 +49,22 @@ import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionHypothesis;
 import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionList;
 import uk.ac.ebi.jmzidml.model.mzidml.SequenceCollection;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItemRef;
-import uk.ac.ebi.jmzidml.model.mzidml.SubstitutionModification;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 import nl.eriba.mzidentml.identification.collections.general.MatchedIonSeriesCollection;
-import nl.eriba.mzidentml.identification.dataprocessing.spectra.CombineDatabaseReferenceInformation;
 import nl.eriba.mzidentml.identification.objects.mzid.MzIdProteinPeptide;
-import uk.ac.ebi.jmzidml.model.mzidml.FragmentArray;
 import uk.ac.ebi.jmzidml.model.mzidml.IonType;
 
 /**
@@ -79,7 +72,7 @@ import uk.ac.ebi.jmzidml.model.mzidml.IonType;
  *
  * @author vnijenhuis
  */
-public class MzIdFileReader implements Callable {
+public class MzIdFileReader implements Callable<ArrayList<Object>> {
 
     /**
      * Collection of ScanID objects.
@@ -97,9 +90,19 @@ public class MzIdFileReader implements Callable {
     private final Integer maximumIndex;
 
     /**
-     * Object that contains SpectrumIdentificationResult parameter data from the mzid file.
+     * Amount of SpectrumIdentificationResult objects that are processed by a single thread.
      */
-    private final SpectrumIdentificationResult spectrumResultItem;
+    private static final int SPECTRUM_BATCH_SIZE = 500;
+
+    /**
+     * Map of fragment ion CV accessions and their ion type, shared by all batches.
+     */
+    private static final FragmentIonTypeMap ION_TYPE_MAP = new FragmentIonTypeMap();
+
+    /**
+     * Batch of SpectrumIdentificationResult objects from the mzid file that is processed by this thread.
+     */
+    private final ArrayList<SpectrumIdentificationResult> spectrumResultBatch;
 
     /**
      * Collection of MzIdPeptide objects.
@@ -117,9 +120,9 @@ public class MzIdFileReader implements Callable {
     private final HashMap<String, Integer> spectrumCountMap;
 
     /**
-     * Collection of MzIdProteinDetectionHypothesis objects.
+     * Index of MzIdProteinPeptide objects per peptide sequence.
      */
-    private final MzIdProteinPeptideCollection proteinPeptideCollection;
+    private final MzIdProteinPeptideIndex proteinPeptideIndex;
 
     /**
      * Intensity threshold used to filter low intensity peaks.
@@ -127,60 +130,103 @@ public class MzIdFileReader implements Callable {
     private final Double intensityThreshold;
 
     /**
-     * Map of sequences and the corresponding higest scoring sequence.
+     * Index of sequences and the corresponding higest scoring spectrum.
      */
-    private final ArrayList<BestSpectrumEntry> bestSpectrumList;
+    private final BestSpectrumEntryIndex bestSpectrumIndex;
 
     /**
-     * Collection of CombinedPeptideEntry objects.
+     * Index of ProteinPeptideEntry objects per peptide sequence, created from the CombinedPeptideEntry objects.
      */
-    private final CombinedPeptideEntryCollection combinedPeptideEntryCollection;
+    private final CombinedPeptideEntryIndex combinedPeptideEntryIndex;
 
     /**
      * Contains a set of tools designed for calculation purposes.
      */
     private CalculationTools toolSet;
-    
+
+    /**
+     * Peptide spectrum matches created from the batch of this thread.
+     */
+    private final DatabaseSearchPsmOutputCollection batchPsmCollection;
+
     /**
-     * SpectrumIdentificationItem parameter from the mzid file.
+     * PeptideOutput objects created from the batch of this thread.
      */
-    private final SpectrumIdentificationItem spectrumIdItem;
+    private final PeptideOutputCollection batchPeptideCollection;
+
+    /**
+     * MatchedIonSeries objects created from the batch of this thread.
+     */
+    private final MatchedIonSeriesCollection batchIonSeriesCollection;
+
+    /**
+     * ProteinPeptideOutput objects created from the batch of this thread.
+     */
+    private final ProteinPeptideOutputCollection batchProteinPeptideCollection;
 
     /**
      * mzid format file reader.
      *
-     * @param spectrumResultItem SpectrumIdentificationResult parameter from the mzid file.
-     * @param spectrumIdItem SpectrumIdentificationItem parameter from the mzid file.
+     * @param spectrumResultBatch batch of SpectrumIdentificationResult parameters from the mzid file.
      * @param peptideCollection collection of MzIdPeptid objects.
-     * @param combinedProteinPeptideCollection collection of MzIdCombinedProteinPeptide objects.
-     * @param collection ScanIdCollection to store ScanID objects.
-     * @param combinedPeptideEntryCollection collection of CombinedPeptideEntry objects.
+     * @param proteinPeptideIndex index of MzIdProteinPeptide objects per peptide sequence.
+     * @param collection ScanIdCollection to store the ScanID objects of this batch.
+     * @param combinedPeptideEntryIndex index of ProteinPeptideEntry objects per peptide sequence.
      * @param spectraCountMap HashMap containing the amount of spectra per peptide sequence.
      * @param inputNumbers input numbers that determin which data should be processed.
-     * @param bestSpectrumList list with the highest spectrum score per peptide sequence.
+     * @param bestSpectrumIndex index with the highest spectrum score per peptide sequence.
      * @param maximumIndex maximum index of the dataset list.
      * @param currentIndex current index of the dataset list.
      * @param intensityThreshold standard or user specified intensity threshold value.
      */
-    public MzIdFileReader(final SpectrumIdentificationResult spectrumResultItem, final SpectrumIdentificationItem spectrumIdItem, final MzIdPeptideCollection peptideCollection, MzIdProteinPeptideCollection combinedProteinPeptideCollection,
-            final ScanIdOutputCollection collection, final CombinedPeptideEntryCollection combinedPeptideEntryCollection, final HashMap<String, Integer> spectraCountMap, ArrayList<BestSpectrumEntry> bestSpectrumList,
+    public MzIdFileReader(final ArrayList<SpectrumIdentificationResult> spectrumResultBatch, final MzIdPeptideCollection peptideCollection, final MzIdProteinPeptideIndex proteinPeptideIndex,
+            final ScanIdOutputCollection collection, final CombinedPeptideEntryIndex combinedPeptideEntryIndex, final HashMap<String, Integer> spectraCountMap, final BestSpectrumEntryIndex bestSpectrumIndex,
             final ArrayList<Integer> inputNumbers, final Integer currentIndex, final Integer maximumIndex, Double intensityThreshold) {
-        this.spectrumIdItem = spectrumIdItem;
-        this.spectrumResultItem = spectrumResultItem;
+        this.spectrumResultBatch = spectrumResultBatch;
         this.peptideCollection = peptideCollection;
         this.scanCollection = collection;
         this.spectrumCountMap = spectraCountMap;
         this.currentIndex = currentIndex;
         this.maximumIndex = maximumIndex;
         this.numbers = inputNumbers;
-        this.proteinPeptideCollection = combinedProteinPeptideCollection;
-        this.combinedPeptideEntryCollection = combinedPeptideEntryCollection;
+        this.proteinPeptideIndex = proteinPeptideIndex;
+        this.combinedPeptideEntryIndex = combinedPeptideEntryIndex;
         this.intensityThreshold = intensityThreshold;
-        this.bestSpectrumList = bestSpectrumList;
+        this.bestSpectrumIndex = bestSpectrumIndex;
+        this.batchPsmCollection = new DatabaseSearchPsmOutputCollection();
+        this.batchPeptideCollection = new PeptideOutputCollection();
+        this.batchIonSeriesCollection = new MatchedIonSeriesCollection();
+        this.batchProteinPeptideCollection = new ProteinPeptideOutputCollection();
+    }
+
+    /**
+     * Collects mzid data by storing the data into a collection of ScanID objects.
+     * The readers of the batches are created by this function, so no MzIdFileReader has to be created to call it.
+     *
+     * @param mzidFile file to read the data from.
+     * @param inputNumbers input numbers that determin which data should be processed.
+     * @param scanIdEntryCollection collection of ScanIdEntry objets.
+     * @param currentIndex current index of the dataset list.
+     * @param totalIndex total index of the dataset index.
+     * @param threads amount of threads used for the program.
+     * @param intensityThreshold standard or user specified intensity threshold value.
+     * @return returns a collection of ScanID objects.
+     * @throws IOException the mzid file could not be read or its index file could not be written.
+     * @throws InterruptedException process was interrupted by another process.
+     * @throws ExecutionException an error was encountered which prevents the execution.
+     */
+    public static ArrayList<Object> collectPeptideShakerScanIDs(final String mzidFile,ScanIdOutputCollection scanIdEntryCollection, final ArrayList<Integer> inputNumbers,
+            final Integer currentIndex, final Integer totalIndex, final Integer threads, final Double intensityThreshold) throws IOException, InterruptedException, ExecutionException {
+        return collectPeptideShakerScanIDs(mzidFile, scanIdEntryCollection, inputNumbers, currentIndex, totalIndex, threads, intensityThreshold, null, false,
+                new SpectrumPipelineSettings(threads));
     }
 
     /**
      * Collects mzid data by storing the data into a collection of ScanID objects.
+     * If streaming output is given, the DB search psm, peptide, ion series and protein-peptide output of each batch is passed to the streaming
+     * writers instead of being collected, and the returned collections of this output are empty.
+     * Spectrum results are read by a separate thread while earlier batches are processed and merged, see SpectrumBatchProducer.
+     * The readers of the batches are created by this function, so no MzIdFileReader has to be created to call it.
      *
      * @param mzidFile file to read the data from.
      * @param inputNumbers input numbers that determin which data should be processed.
@@ -189,137 +235,208 @@ public class MzIdFileReader implements Callable {
      * @param totalIndex total index of the dataset index.
      * @param threads amount of threads used for the program.
      * @param intensityThreshold standard or user specified intensity threshold value.
+     * @param streamingOutput writers of the output files, or null to collect all output in memory.
+     * @param writeSnapshot writes a content snapshot of the mzid file that is used instead of the mzid file in following runs if true.
+     * @param pipelineSettings worker count and queue size of the spectrum processing stages.
      * @return returns a collection of ScanID objects.
+     * @throws IOException the mzid file could not be read or its index file could not be written.
      * @throws InterruptedException process was interrupted by another process.
      * @throws ExecutionException an error was encountered which prevents the execution.
      */
-    public ArrayList<Object> collectPeptideShakerScanIDs(final String mzidFile,ScanIdOutputCollection scanIdEntryCollection, final ArrayList<Integer> inputNumbers,
-            final Integer currentIndex, final Integer totalIndex, final Integer threads, final Double intensityThreshold) throws InterruptedException, ExecutionException {
+    public static ArrayList<Object> collectPeptideShakerScanIDs(final String mzidFile,ScanIdOutputCollection scanIdEntryCollection, final ArrayList<Integer> inputNumbers,
+            final Integer currentIndex, final Integer totalIndex, final Integer threads, final Double intensityThreshold, final MzIdStreamingOutput streamingOutput,
+            final Boolean writeSnapshot, final SpectrumPipelineSettings pipelineSettings) throws IOException, InterruptedException, ExecutionException {
         System.out.println("Reading " + mzidFile);
         MzIdUnmarshaller unmarshalMzIdFile = new MzIdUnmarshaller();
-        MzIdMainElementCollection unmarshalCollection = unmarshalMzIdFile.unmarshalMzIdFile(mzidFile);
+        MzIdMainElementCollection unmarshalCollection = unmarshalMzIdFile.unmarshalMzIdFile(mzidFile, writeSnapshot);
         //Unmarshaller that transforms storage data format to a memory format
         DatabaseSearchPsmOutputCollection searchPsmEntryCollection = new DatabaseSearchPsmOutputCollection();
         ProteinPeptideOutputCollection proteinPeptideEntryCollection = new ProteinPeptideOutputCollection();
         PeptideOutputCollection peptideOutputCollection = new PeptideOutputCollection();
         MatchedIonSeriesCollection matchedIonSeriesCollection = new MatchedIonSeriesCollection();
-        //Get spectrum identification data
-        SpectrumIdentificationList spectrumIdList = unmarshalCollection.getSpectrumIdentificationList();
-        //Remove low threshold entries.
-        ArrayList<BestSpectrumEntry> generateBestSpectrumList = generateBestSpectrumList(spectrumIdList);
-        //Get sequence data
-        SequenceCollection sequenceCollection = unmarshalCollection.getSequenceCollection();
-        //Get peptide data
-        MzIdPeptideCollection peptides = createPeptideCollection(sequenceCollection.getPeptide());
-        //Get peptide evidence data
-        List<PeptideEvidence> peptideEvidenceList = sequenceCollection.getPeptideEvidence();
-        MzIdPeptideEvidenceCollection evidenceCollection = createPeptideEvidenceCollection(peptideEvidenceList);
-        //Group data of database sequence objects into different collections
-        MzIdDatabaseSequenceCollection dbSequenceCollection = createDatabaseSequenceCollection(sequenceCollection.getDBSequence());
-        //Create SingleDatabaseReference objects that are used to create the CombinedPeptidEntry and CombinedDatabaseReference collections.
-        SingleDatabaseReferenceCollection singleDatabaseReferenceCollection = createSingleDatabaseReferenceCollection(peptideEvidenceList, peptides);
-        CombinedPeptideEntryCollection combinedPeptides = createCombinedPeptideCollection(singleDatabaseReferenceCollection);
-        //Combined SingleDatabaseReference objects to represent all unique protein hits per peptide sequence.
-        CombineDatabaseReferenceInformation combineInformation = new CombineDatabaseReferenceInformation(null, null);
-        CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection = combineInformation.combineDatabaseReferenceData(singleDatabaseReferenceCollection, dbSequenceCollection, combinedPeptides, threads);
-        //Create map with spectra counts per sequence
-        HashMap<String, Integer> spectraCountMap = determineSpectraCounts(peptideEvidenceList);
-        //Get protein hypothesis data
-        ProteinDetectionList proteinHypothesisList = unmarshalCollection.getProteinHypothesisCollection();
-        MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection = createProteinHypothesisCollection(proteinHypothesisList);
-        MzIdProteinPeptideCollection mzidProteinPeptideCollection = combineProteinHypothesisWithPeptideEvidence(evidenceCollection, proteinHypothesisCollection);
-        //Remove hits that didn't pass the initial threshold and hits that are tagged as a decoy sequence.
-        mzidProteinPeptideCollection = removeLowThresholdSequences(mzidProteinPeptideCollection);
-        mzidProteinPeptideCollection = removeDecoySequences(mzidProteinPeptideCollection);
-        mzidProteinPeptideCollection.sortOnPeptideSequence();
-        //Filter evidence collection based on evidences present in protein hypotheses
-        Collections.sort(spectrumIdList.getSpectrumIdentificationResult(), new SortSpectrumResultBySequence());
-        ExecutorService executor = Executors.newFixedThreadPool(threads);
-        Integer count = 0;
-        System.out.println("Starting identification of spectrum results.");
-        for (SpectrumIdentificationResult spectrumIdResult : spectrumIdList.getSpectrumIdentificationResult()) {
-            count++;
-            for (SpectrumIdentificationItem spectrumIdentificationItem: spectrumIdResult.getSpectrumIdentificationItem()) {
-                //Test if the initial threshold is passed.
-                if (spectrumIdentificationItem.isPassThreshold()) {
-                    Callable<ArrayList<Object>> callable = new MzIdFileReader(spectrumIdResult, spectrumIdentificationItem, peptides, mzidProteinPeptideCollection, scanIdEntryCollection, combinedPeptides,  spectraCountMap, generateBestSpectrumList, inputNumbers, currentIndex, totalIndex, intensityThreshold);
-                    //Collects the output from the call function
-                    Future<ArrayList<Object>> future = executor.submit(callable);
-                    scanIdEntryCollection = (ScanIdOutputCollection) future.get().get(0);
-                    for (Integer number : numbers) {
-                        //Add data to respective collection if number is present.
-                        if (number != null) {
-                            switch (number) {
-                                case 1:
-                                    //Gathers DatabaseSearchPsm objects to define peptide spectrum match data.
-                                    DatabaseSearchPsmOutputCollection psmObjects = (DatabaseSearchPsmOutputCollection) future.get().get(1);
-                                    for (DatabaseSearchPsmOutput object : psmObjects.getDatabaseSearchPsmEntryList()) {
-                                        searchPsmEntryCollection.addDatabaseSearchPsmEntry(object);
-                                    }
-                                    break;
-                                case 2:
-                                    //Gathers PeptideOutput objects to define peptide data.
-                                    PeptideOutputCollection peptideObjects = (PeptideOutputCollection) future.get().get(2);
-                                    for (PeptideOutput object : peptideObjects.getPeptideEntryList()) {
-                                        peptideOutputCollection.addPeptideEntry(object);
-                                    }
-                                    //Gathers MatchedIonSeries objects to define the ion series and quality of the best spectrum matches.
-                                    MatchedIonSeriesCollection matchedIonSeries = (MatchedIonSeriesCollection) future.get().get(3);
-                                    for (MatchedIonSeries ionSeries: matchedIonSeries.getMatchedIonSeriesList()) {
-                                        matchedIonSeriesCollection.addMatchedIonSeries(ionSeries);
-                                    }
-                                    break;
-                                case 3:
-                                    //Gathers ProteinPeptideOutput objects to define protein-peptide data.
-                                    ProteinPeptideOutputCollection proteinPeptideObjects = (ProteinPeptideOutputCollection) future.get().get(4);
-                                    mzidProteinPeptideCollection = (MzIdProteinPeptideCollection) future.get().get(5);
-                                    for (ProteinPeptideOutput object : proteinPeptideObjects.getProteinPeptideEntryList()) {
-                                        proteinPeptideEntryCollection.addProteinPeptideEntry(object);
-                                    }
-                                    break;
-                                default:
-                                    break;
-                            }
-                        }
-                    }
+        //Get spectrum identification data. Results are streamed from the file, so every loop over the stream is a new pass.
+        SpectrumIdentificationResultStream spectrumResults = unmarshalCollection.getSpectrumIdentificationResults();
+        ExecutorService executor = Executors.newFixedThreadPool(pipelineSettings.getEnrichmentThreads());
+        try {
+            //Create the collections that only depend on the SequenceCollection as soon as it has been unmarshalled.
+            Callable<MzIdSequenceElementCollection> sequenceCallable = new MzIdSequenceCollectionReader(unmarshalCollection.getSequenceCollection(), threads);
+            Future<MzIdSequenceElementCollection> sequenceFuture = executor.submit(sequenceCallable);
+            //Remove low threshold entries.
+            BestSpectrumEntryIndex bestSpectrumIndex = generateBestSpectrumIndex(spectrumResults);
+            //Get protein hypothesis data
+            ProteinDetectionList proteinHypothesisList = unmarshalCollection.getProteinHypothesisCollection().get();
+            MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection = createProteinHypothesisCollection(proteinHypothesisList);
+            //Get sequence data
+            MzIdSequenceElementCollection sequenceOutput = sequenceFuture.get();
+            MzIdPeptideCollection peptides = sequenceOutput.getPeptides();
+            MzIdPeptideEvidenceCollection evidenceCollection = sequenceOutput.getPeptideEvidenceCollection();
+            CombinedPeptideEntryIndex combinedPeptideIndex = sequenceOutput.getCombinedPeptideIndex();
+            CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection = sequenceOutput.getCombinedDatabaseReferenceCollection();
+            HashMap<String, Integer> spectraCountMap = sequenceOutput.getSpectraCountMap();
+            MzIdProteinPeptideCollection mzidProteinPeptideCollection = combineProteinHypothesisWithPeptideEvidence(evidenceCollection, proteinHypothesisCollection);
+            //Remove hits that didn't pass the initial threshold and hits that are tagged as a decoy sequence.
+            mzidProteinPeptideCollection = removeLowThresholdSequences(mzidProteinPeptideCollection);
+            mzidProteinPeptideCollection = removeDecoySequences(mzidProteinPeptideCollection);
+            mzidProteinPeptideCollection.sortOnPeptideSequence();
+            if (streamingOutput != null) {
+                streamingOutput.start();
+            }
+            //Batches are merged in the order they were read, which keeps the output independent of thread scheduling.
+            MzIdProteinPeptideIndex proteinPeptideIndex = new MzIdProteinPeptideIndex(mzidProteinPeptideCollection);
+            MzIdFileReader batchReaderTemplate = new MzIdFileReader(null, peptides, proteinPeptideIndex, null, combinedPeptideIndex, spectraCountMap, bestSpectrumIndex, inputNumbers, currentIndex, totalIndex, intensityThreshold);
+            BlockingQueue<Future<ArrayList<Object>>> batchQueue = new ArrayBlockingQueue<>(pipelineSettings.getBatchQueueSize());
+            Future<ArrayList<Object>> endOfBatches = CompletableFuture.completedFuture(null);
+            ExecutorService parseExecutor = Executors.newSingleThreadExecutor();
+            Future<Integer> parseFuture = null;
+            Integer count = 0;
+            try {
+                System.out.println("Starting identification of " + spectrumResults.getResultCount() + " spectrum results.");
+                parseFuture = parseExecutor.submit(new SpectrumBatchProducer(spectrumResults, batchReaderTemplate, SPECTRUM_BATCH_SIZE, executor, batchQueue, endOfBatches));
+                Future<ArrayList<Object>> batchFuture;
+                while ((batchFuture = batchQueue.take()) != endOfBatches) {
+                    mergeBatchOutput(batchFuture.get(), inputNumbers, currentIndex, scanIdEntryCollection, searchPsmEntryCollection, peptideOutputCollection, matchedIonSeriesCollection,
+                            proteinPeptideEntryCollection, streamingOutput);
+                }
+                count = parseFuture.get();
+            } finally {
+                //Stops the parsing stage if the output stage failed.
+                if (parseFuture != null) {
+                    parseFuture.cancel(true);
+                }
+                parseExecutor.shutdown();
+                //Writers are always finished, otherwise their threads keep waiting for output.
+                if (streamingOutput != null) {
+                    streamingOutput.finish();
                 }
             }
-            if (count % 2000 == 0) {
-                System.out.println("Matched data for " + count + " entries.");
+            System.out.println("Matched data for " + count + " entries.");
+            //Sort collections 
+            System.out.println("Sorting collections...");
+            searchPsmEntryCollection.sortOnPeptideScore();
+            proteinPeptideEntryCollection.sortOnProteinGroup();
+            peptideOutputCollection.sortOnPeptideScore();   
+            matchedIonSeriesCollection.sortOnPeptideSequence();
+            combinedDatabaseReferenceCollection.sortOnAccession();
+            //Add collections to list.
+            ArrayList<Object> collections = new ArrayList<>();
+            collections.add(scanIdEntryCollection);
+            collections.add(searchPsmEntryCollection);
+            collections.add(peptideOutputCollection);
+            collections.add(matchedIonSeriesCollection);
+            collections.add(proteinPeptideEntryCollection);
+            collections.add(proteinHypothesisCollection);
+            collections.add(combinedDatabaseReferenceCollection);
+            return collections;
+        } finally {
+            //All enrichment tasks have finished after a successful run. After a failure the tasks that are still running are stopped.
+            executor.shutdownNow();
+            spectrumResults.close();
+        }
+    }
+
+    /**
+     * Creates the reader of a single batch that shares the collections of this reader.
+     *
+     * @param spectrumResultBatch batch of SpectrumIdentificationResult objects.
+     * @return MzIdFileReader that processes the batch.
+     */
+    public final MzIdFileReader createBatchReader(final ArrayList<SpectrumIdentificationResult> spectrumResultBatch) {
+        return new MzIdFileReader(spectrumResultBatch, peptideCollection, proteinPeptideIndex, new ScanIdOutputCollection(), combinedPeptideEntryIndex, spectrumCountMap, bestSpectrumIndex,
+                numbers, currentIndex, maximumIndex, intensityThreshold);
+    }
+
+    /**
+     * Adds the output of a processed batch to the collections of the mzid file.
+     *
+     * @param batchOutput collections returned by the call function of a single batch.
+     * @param inputNumbers input numbers that determin which data should be processed.
+     * @param currentIndex current index of the dataset list.
+     * @param scanIdEntryCollection collection of ScanIdOutput objects.
+     * @param searchPsmEntryCollection collection of peptide spectrum matches.
+     * @param peptideOutputCollection collection of PeptideOutput objects.
+     * @param matchedIonSeriesCollection collection of MatchedIonSeries objects.
+     * @param proteinPeptideEntryCollection collection of ProteinPeptideOutput objects.
+     * @param streamingOutput writers that the output is passed to instead of the collections, or null.
+     * @throws InterruptedException process was interrupted while waiting for a streaming writer.
+     */
+    private static void mergeBatchOutput(final ArrayList<Object> batchOutput, final ArrayList<Integer> inputNumbers, final Integer currentIndex, final ScanIdOutputCollection scanIdEntryCollection, final DatabaseSearchPsmOutputCollection searchPsmEntryCollection,
+            final PeptideOutputCollection peptideOutputCollection, final MatchedIonSeriesCollection matchedIonSeriesCollection, final ProteinPeptideOutputCollection proteinPeptideEntryCollection,
+            final MzIdStreamingOutput streamingOutput) throws InterruptedException {
+        ScanIdOutputCollection batchScanCollection = (ScanIdOutputCollection) batchOutput.get(0);
+        for (ScanIdOutput scanObject : batchScanCollection.getScanIdEntryList()) {
+            scanIdEntryCollection.mergeScanIdEntry(scanObject, currentIndex);
+        }
+        if (streamingOutput != null) {
+            streamingOutput.addBatchOutput(batchOutput);
+            return;
+        }
+        for (Integer number : inputNumbers) {
+            //Add data to respective collection if number is present.
+            if (number != null) {
+                switch (number) {
+                    case 1:
+                        //Gathers DatabaseSearchPsm objects to define peptide spectrum match data.
+                        DatabaseSearchPsmOutputCollection psmObjects = (DatabaseSearchPsmOutputCollection) batchOutput.get(1);
+                        searchPsmEntryCollection.addDatabaseSearchPsmEntries(psmObjects);
+                        break;
+                    case 2:
+                        //Gathers PeptideOutput objects to define peptide data.
+                        PeptideOutputCollection peptideObjects = (PeptideOutputCollection) batchOutput.get(2);
+                        peptideOutputCollection.getPeptideEntryList().addAll(peptideObjects.getPeptideEntryList());
+                        //Gathers MatchedIonSeries objects to define the ion series and quality of the best spectrum matches.
+                        MatchedIonSeriesCollection matchedIonSeries = (MatchedIonSeriesCollection) batchOutput.get(3);
+                        matchedIonSeriesCollection.getMatchedIonSeriesList().addAll(matchedIonSeries.getMatchedIonSeriesList());
+                        break;
+                    case 3:
+                        //Gathers ProteinPeptideOutput objects to define protein-peptide data.
+                        ProteinPeptideOutputCollection proteinPeptideObjects = (ProteinPeptideOutputCollection) batchOutput.get(4);
+                        proteinPeptideEntryCollection.getProteinPeptideEntryList().addAll(proteinPeptideObjects.getProteinPeptideEntryList());
+                        break;
+                    default:
+                        break;
+                }
             }
         }
-        System.out.println("Matched data for " + count + " entries.");
-        //Sort collections 
-        System.out.println("Sorting collections...");
-        searchPsmEntryCollection.sortOnPeptideScore();
-        proteinPeptideEntryCollection.sortOnProteinGroup();
-        peptideOutputCollection.sortOnPeptideScore();   
-        combinedDatabaseReferenceCollection.sortOnAccession();
-        //Add collections to list.
-        ArrayList<Object> collections = new ArrayList<>();
-        collections.add(scanIdEntryCollection);
-        collections.add(searchPsmEntryCollection);
-        collections.add(peptideOutputCollection);
-        collections.add(matchedIonSeriesCollection);
-        collections.add(proteinPeptideEntryCollection);
-        collections.add(proteinHypothesisCollection);
-        collections.add(combinedDatabaseReferenceCollection);
-        //Shutdown executor to remove the created threadpool.
-        executor.shutdown();
-        return collections;
     }
 
     /**
-     * Call function that is used by a thread to process SpectrumIdentificationResult objects.
+     * Call function that is used by a thread to process a batch of SpectrumIdentificationResult objects.
+     * Output is stored in collections of this thread and only shared data that is read-only is accessed.
      *
-     * @return return ScanIdCollection with added/updated ScanID object.
+     * @return return list of collections with the output of this batch.
      * @throws java.lang.InterruptedException process was interrupted.
      * @throws java.util.concurrent.ExecutionException any exception encountered during execution.
      */
     @Override
-    public Object call() throws InterruptedException, ExecutionException {
+    public ArrayList<Object> call() throws InterruptedException, ExecutionException {
         //Call class that can gather data from single spectra.
         SingleSpectrumDataCollector collector = new SingleSpectrumDataCollector();
+        toolSet = new CalculationTools();
+        for (SpectrumIdentificationResult spectrumResultItem : spectrumResultBatch) {
+            for (SpectrumIdentificationItem spectrumIdItem : spectrumResultItem.getSpectrumIdentificationItem()) {
+                //Test if the initial threshold is passed.
+                if (spectrumIdItem.isPassThreshold()) {
+                    processSpectrumIdentificationItem(collector, spectrumResultItem, spectrumIdItem);
+                }
+            }
+        }
+        ArrayList<Object> collectionList = new ArrayList<>();
+        collectionList.add(scanCollection);
+        collectionList.add(batchPsmCollection);
+        collectionList.add(batchPeptideCollection);
+        collectionList.add(batchIonSeriesCollection);
+        collectionList.add(batchProteinPeptideCollection);
+        return collectionList;
+    }
+
+    /**
+     * Processes a single SpectrumIdentificationItem and adds the output to the collections of this thread.
+     *
+     * @param collector class that gathers data from single spectra.
+     * @param spectrumResultItem SpectrumIdentificationResult parameter from the mzid file.
+     * @param spectrumIdItem SpectrumIdentificationItem parameter from the mzid file.
+     */
+    private void processSpectrumIdentificationItem(final SingleSpectrumDataCollector collector, final SpectrumIdentificationResult spectrumResultItem, final SpectrumIdentificationItem spectrumIdItem) {
         //Gather data from SpectrumIdentificationItem.
         SpectrumIdentificationItemEntry spectrumItemData = collector.getSpectrumIdentificationItemData(spectrumResultItem, spectrumIdItem);
         String sequence = spectrumItemData.getPeptideSequence();
@@ -331,28 +448,19 @@ public class MzIdFileReader implements Callable {
         Integer length = spectrumItemData.getSequenceLength();
         //Gather data from SpectrumIdentificationResult item.
         SpectrumIdentificationResultEntry resultItemData = collector.getSpectrumIdentificationResultData(spectrumResultItem);
-//        Integer index = resultItemData.getIndex();
         String retentionTime = resultItemData.getRetentionTime();
         String scanNumber = resultItemData.getScanNumber();
         String scanId = resultItemData.getScanId();
-//        String scanID = resultItemData.getScanID();
         Double partsPerMillion = ((calculatedMassToCharge - experimentalMassToCharge) / calculatedMassToCharge) * 1000000;
-        toolSet = new CalculationTools();
         partsPerMillion = toolSet.roundDouble(partsPerMillion, 2);
         //Gther data from Peptide item.
         PeptideEntry peptideData = collector.getPeptideCollectionData(peptideCollection, sequence);
         String aScore = peptideData.getAScore();
         String modifiedSequence = peptideData.getModifiedSequence();
         String postTranslationalModification = peptideData.getPostTranslationalModification();
-        //Create lists for each object.
-        ArrayList<Object> collectionList = new ArrayList<>();
-        ProteinPeptideOutputCollection proteinPeptideList = new ProteinPeptideOutputCollection();
-        DatabaseSearchPsmOutputCollection databaseSearchPsmList = new DatabaseSearchPsmOutputCollection();
-        PeptideOutputCollection peptideOutputCollection = new PeptideOutputCollection();
-        MatchedIonSeriesCollection matchedIonSeriesCollection = new MatchedIonSeriesCollection();
-        //Adds ScanID entry to the scanCollection
+        //Adds ScanID entry to the scan collection of this batch.
         if (numbers.contains(1)) {
-            addEntryToScanCollection(scanId, sequence, peptideScore);
+            scanCollection.addScanIdEntry(createScanIdEntry(scanId, sequence, peptideScore));
         }
         //If one of the file numbers corresponds to
         ProteinPeptideEntry proteinPeptideData = matchProteinPeptideData(sequence);
@@ -361,269 +469,44 @@ public class MzIdFileReader implements Callable {
         //Match sequence to protein peptide data.
         Integer spectraCount = spectrumCountMap.get(sequence);
         if (numbers.contains(2)) {
-            DatabaseSearchPsmOutput dbsObject = new DatabaseSearchPsmOutput(modifiedSequence, peptideScore, theoreticalMassToCharge, length, partsPerMillion, calculatedMassToCharge, retentionTime, scanNumber, accessions, postTranslationalModification, aScore, spectraCount);
-            databaseSearchPsmList.addDatabaseSearchPsmEntry(dbsObject);
-        }
-        Double highestScore = 0.0;
-        for (BestSpectrumEntry spectrum : bestSpectrumList) {
-            if (spectrum.getSequence().equals(sequence) && !spectrum.getFlag()) {
-                highestScore = spectrum.getScore();
-                spectrum.setFlag(true);
-                break;
-            }
+            batchPsmCollection.addDatabaseSearchPsmEntry(modifiedSequence, peptideScore, theoreticalMassToCharge, length, partsPerMillion, calculatedMassToCharge, retentionTime, scanNumber, accessions, postTranslationalModification, aScore, spectraCount);
         }
+        Boolean isBestSpectrum = bestSpectrumIndex.claimBestSpectrum(sequence, spectrumIdItem.getId());
         if (numbers.contains(3)) {
-            if (Objects.equals(peptideScore, highestScore)) {
+            if (isBestSpectrum) {
                 MatchedIonSeries matchedIonSeries = createFragmentIndexList(spectrumResultItem, spectrumIdItem, intensityThreshold, sequence, peptideScore, accessions);
-                matchedIonSeriesCollection.getMatchedIonSeriesList().add(matchedIonSeries);
+                batchIonSeriesCollection.addMatchedIonSeries(matchedIonSeries);
                 // 0 not complete coverage of sequence, 1 = y-ion coverage, 2 = b-ion coverage 3 = combined ion coverage
                 PeptideOutput peptideObject = new PeptideOutput(modifiedSequence, peptideScore, theoreticalMassToCharge, length, partsPerMillion, calculatedMassToCharge, retentionTime, scanNumber, accessions, spectraCount, postTranslationalModification, aScore);
-                peptideOutputCollection.addPeptideEntry(peptideObject);
+                batchPeptideCollection.addPeptideEntry(peptideObject);
             }
         }
         if (numbers.contains(4)) {
-            if (Objects.equals(peptideScore, highestScore)) {
-                ArrayList<MzIdProteinPeptide> removeableEvidence = new ArrayList<>();
-                Boolean allowMismatch = false;
-                for (MzIdProteinPeptide proteinPeptide: proteinPeptideCollection.getProteinPeptideList()) {
-                    if (proteinPeptide.getPeptideSequence().equals(sequence)) {
-                        removeableEvidence.add(proteinPeptide);
-                        Integer start = proteinPeptide.getStartIndex();
-                        Integer end = proteinPeptide.getEndIndex();
-                        String pre = proteinPeptide.getPreAminoAcid();
-                        String post = proteinPeptide.getPostAminoAcid();
-                        Integer proteinGroup = proteinPeptide.getProteinGroup();
-                        String proteinId = proteinPeptide.getProteinId();
-                        String finalSequence = "";
-                        if (finalSequence.isEmpty()) {
-                            if (!pre.matches("[A-Z]")) {
-                                finalSequence = modifiedSequence + "." + post;
-                            } else if (!post.matches("[A-Z]")) {
-                                finalSequence = pre + "." + modifiedSequence;
-                            } else {
-                                finalSequence = pre + "." + modifiedSequence + "." + post;
-                            }
+            if (isBestSpectrum) {
+                //The index is shared between threads and is immutable. The best spectrum is found once per sequence, so entries are never matched twice.
+                for (MzIdProteinPeptide proteinPeptide: proteinPeptideIndex.getProteinPeptides(sequence)) {
+                    Integer start = proteinPeptide.getStartIndex();
+                    Integer end = proteinPeptide.getEndIndex();
+                    String pre = proteinPeptide.getPreAminoAcid();
+                    String post = proteinPeptide.getPostAminoAcid();
+                    Integer proteinGroup = proteinPeptide.getProteinGroup();
+                    String proteinId = proteinPeptide.getProteinId();
+                    String finalSequence = "";
+                    if (finalSequence.isEmpty()) {
+                        if (!pre.matches("[A-Z]")) {
+                            finalSequence = modifiedSequence + "." + post;
+                        } else if (!post.matches("[A-Z]")) {
+                            finalSequence = pre + "." + modifiedSequence;
+                        } else {
+                            finalSequence = pre + "." + modifiedSequence + "." + post;
                         }
-                        String accession = proteinPeptide.getProteinAccession();
-                        ProteinPeptideOutput proteinPeptideObject = new ProteinPeptideOutput(proteinGroup, proteinId, accession, finalSequence, unique, peptideScore, theoreticalMassToCharge, calculatedMassToCharge, length, partsPerMillion, retentionTime, scanNumber, spectraCount, start, end, postTranslationalModification, aScore);
-                        proteinPeptideList.addProteinPeptideEntry(proteinPeptideObject);
-                        allowMismatch = true;
-                    } else if (allowMismatch) {
-                       break;
                     }
-                }
-                for (MzIdProteinPeptide entry: removeableEvidence) {
-                    proteinPeptideCollection.removeProteinPeptide(entry);
+                    String accession = proteinPeptide.getProteinAccession();
+                    ProteinPeptideOutput proteinPeptideObject = new ProteinPeptideOutput(proteinGroup, proteinId, accession, finalSequence, unique, peptideScore, theoreticalMassToCharge, calculatedMassToCharge, length, partsPerMillion, retentionTime, scanNumber, spectraCount, start, end, postTranslationalModification, aScore);
+                    batchProteinPeptideCollection.addProteinPeptideEntry(proteinPeptideObject);
                 }
             }
         }
-        collectionList.add(scanCollection);
-        collectionList.add(databaseSearchPsmList);
-        collectionList.add(peptideOutputCollection);
-        collectionList.add(matchedIonSeriesCollection);
-        collectionList.add(proteinPeptideList);
-        collectionList.add(proteinPeptideCollection);
-        return collectionList;
-    }
-
-    /**
-     * Creates a collection of MzIdDatabaseSequence objects.
-     *
-     * @param dbSequenceList list of DatabaseSequence objects.
-     * @return collection of MzIdDatabaseSequence objects.
-     */
-    private MzIdDatabaseSequenceCollection createDatabaseSequenceCollection(final List<DBSequence> dbSequenceList) {
-        System.out.println("Creating MzIdDatabaseSequence object collection...");
-        MzIdDatabaseSequenceCollection databaseSequenceCollection = new MzIdDatabaseSequenceCollection();
-        for (int index = 0; index < dbSequenceList.size() - 1; index++) {
-            DBSequence databaseSequence = dbSequenceList.get(index);
-            String id = databaseSequence.getId();
-            String proteinAccession = databaseSequence.getAccession();
-            String databaseReference = databaseSequence.getSearchDatabaseRef();
-            String description = "";
-            String reversedDescription = "";
-            String paramValue = databaseSequence.getCvParam().get(0).getValue();
-            if (paramValue != null) {
-                description = paramValue;
-            }
-            index++;
-            DBSequence reveresedDatabaseSequence = dbSequenceList.get(index);
-            String reversedProteinAccession = reveresedDatabaseSequence.getAccession();
-            paramValue = databaseSequence.getCvParam().get(0).getValue();
-            if (paramValue != null) {
-                reversedDescription = paramValue;
-            }
-            description = description.replaceAll(",", ".");
-            reversedDescription = reversedDescription.replaceAll(",", ".");
-            MzIdDatabaseSequence mzidDatabaseSequence = new MzIdDatabaseSequence(id, proteinAccession, reversedProteinAccession, databaseReference, description, reversedDescription);
-            databaseSequenceCollection.addDatabaseSequence(mzidDatabaseSequence);
-        }
-        return databaseSequenceCollection;
-    }
-
-    /**
-     * Creates a SingleDatabaseReferenceCollection containing data of single entry hits.
-     * 
-     * @param peptideEvidenceList list of PeptideEvidence objects.
-     * @param peptideCollection list of MzIdPeptide objects.
-     * @return collection of SingleDatabaseReference objects.
-     */
-    private SingleDatabaseReferenceCollection createSingleDatabaseReferenceCollection(final List<PeptideEvidence> peptideEvidenceList, final MzIdPeptideCollection peptideCollection) {
-        System.out.println("Creating SequenceDatabaseReference object collection...");
-        SingleDatabaseReferenceCollection sequenceDatabaseReferenceCollection = new SingleDatabaseReferenceCollection();
-        Collections.sort(peptideEvidenceList, new SortPeptideEvidenceCollectionOnSequence());
-        peptideCollection.sortOnPeptideSequence();
-        for (PeptideEvidence peptideEvidence : peptideEvidenceList) {
-            if (!peptideEvidence.isIsDecoy()) {
-                ArrayList<MzIdPeptide> removeablePeptideEntries = new ArrayList<>();
-                String proteinAccession = peptideEvidence.getDBSequenceRef();
-                Integer start = peptideEvidence.getStart();
-                Integer end = peptideEvidence.getEnd();
-                String peptideSequence = peptideEvidence.getPeptideRef();
-                String pre = peptideEvidence.getPre();
-                String post = peptideEvidence.getPost();
-                String id = peptideEvidence.getId().split("_")[1];
-                Integer evidenceId = Integer.parseInt(id);
-                MzIdPeptide newEntry = null;
-                ArrayList<String> modifications = new ArrayList<>();
-                for (MzIdPeptide entry: peptideCollection.getPeptides()) {
-                    if (entry.getModifications().isEmpty() && entry.getSubstituteModifications().isEmpty()) {
-                        removeablePeptideEntries.add(entry);
-                    } else if (entry.getPeptideSequence().equals(peptideSequence)) {
-                        newEntry = entry;
-                        for (MzIdModification modification: entry.getModifications()) {
-                            for (String name: modification.getNames()) {
-                                if (!modifications.contains(name)) {
-                                    modifications.add(name);
-                                }
-                            }
-                        }
-                    }
-                }
-                removeablePeptideEntries.add(newEntry);
-                for (MzIdPeptide x: removeablePeptideEntries) {
-                    peptideCollection.getPeptides().remove(x);
-                }
-                SingleDatabaseReference sequenceDatabaseReference = new SingleDatabaseReference(proteinAccession, evidenceId, peptideSequence, start, end, pre, post, modifications);
-                sequenceDatabaseReferenceCollection.addDatabaseReference(sequenceDatabaseReference);
-            }
-        }
-        return sequenceDatabaseReferenceCollection;
-    }
-    
-    /**
-     * Creates a collection of CombinedPeptideEntry objects.
-     * 
-     * @param singleDatabaseReferenceCollection collection of SingleDatabaseReference objects.
-     * @return collection of CombinedPeptideEntry objects.
-     */
-    private CombinedPeptideEntryCollection createCombinedPeptideCollection(final SingleDatabaseReferenceCollection singleDatabaseReferenceCollection) {
-        System.out.println("Creating list for peptide data objects.");
-        //Determine if a sequence is unique to one accession.
-        CombinedPeptideEntryCollection combinedPeptideCollection = new CombinedPeptideEntryCollection();
-        //Sort collections on sequence. This causes UniquePeptideEntry list to be sorted on sequence as well.
-        singleDatabaseReferenceCollection.sortOnPeptideSequence();
-        //Get first entry sequence.
-        ArrayList<String> accessionList = new ArrayList<>();
-        String targetSequence = singleDatabaseReferenceCollection.getDatabaseSequenceReferenceList().get(0).getPeptideSequence();
-        for (SingleDatabaseReference databaseReference: singleDatabaseReferenceCollection.getDatabaseSequenceReferenceList()) {
-            //Check if current sequence matches the targetSequence and add accession to given sequence.
-            if (databaseReference.getPeptideSequence().equals(targetSequence)) {
-                //if accession is not present add it to the list. Duplicate accessions are not necessary.
-                if (!accessionList.contains(databaseReference.getProteinAccession())) {
-                    accessionList.add(databaseReference.getProteinAccession());
-                }
-                if (!accessionList.contains(databaseReference.getProteinAccession())) {
-                    accessionList.add(databaseReference.getProteinAccession());
-                }
-            } else {
-                //UniquePeptideAccessionCount object is created that contains the target sequence and the list of accession ids.
-                Collections.sort(accessionList);
-                CombinedPeptideEntry combinedPeptide = new CombinedPeptideEntry(targetSequence, accessionList);
-                combinedPeptideCollection.addCombinedPeptideEntry(combinedPeptide);
-                accessionList = new ArrayList<>();
-                accessionList.add(databaseReference.getProteinAccession());
-                targetSequence = databaseReference.getPeptideSequence();
-            }
-        }
-        return combinedPeptideCollection;
-    }
-
-    /**
-     * Determines the spectra count per peptide sequence by coutning the peptide evidences per peptide sequence.
-     *
-     * @param peptideEvidenceList determines the amount of peptide spectra of each peptide sequence.
-     * @return HashMap with peptide sequence as key and count as value.
-     */
-    private HashMap<String, Integer> determineSpectraCounts(final List<PeptideEvidence> peptideEvidenceList) {
-        System.out.println("Creating spectra count map...");
-        HashMap<String, Integer> spectraCountMap = new HashMap<>();
-        //Loops through list of PeptideEvidence objects.
-        for (PeptideEvidence peptideEvidence : peptideEvidenceList) {
-            String peptideRef = peptideEvidence.getPeptideRef();
-            if (!spectraCountMap.isEmpty() && spectraCountMap.containsKey(peptideRef)) {
-                Integer spectraCount = spectraCountMap.get(peptideRef) + 1;
-                spectraCountMap.put(peptideRef, spectraCount);
-            } else {
-                spectraCountMap.put(peptideRef, 1);
-            }
-        }
-        return spectraCountMap;
-    }
-
-    /**
-     * Creates a collection of MzIdPeptide objects.
-     *
-     * @param peptides list of PeptideItem objects.
-     * @return collection of MzIdPeptide objects.
-     */
-    private MzIdPeptideCollection createPeptideCollection(final List<Peptide> peptides) {
-        System.out.println("Creating MzIdPeptide object collection...");
-        MzIdPeptideCollection newPeptideCollection = new MzIdPeptideCollection();
-        //Loops through list of all PeptideItem objects.
-        for (Peptide peptide : peptides) {
-            String id = peptide.getId();
-            String sequence = peptide.getPeptideSequence();
-            List<Modification> mods = peptide.getModification();
-            List<SubstitutionModification> subMods = peptide.getSubstitutionModification();
-            ArrayList<MzIdSubstituteModification> subModificationList = new ArrayList<>();
-            ArrayList<MzIdModification> modificationList = new ArrayList<>();
-            //Create list of Modification objects.
-            for (Modification modification : mods) {
-                Integer location = modification.getLocation();
-                ArrayList<String> nameList = new ArrayList<>();
-                for (CvParam param : modification.getCvParam()) {
-                    String name = param.getName();
-                    nameList.add(name);
-                }
-                Double monoMassDelta = modification.getMonoisotopicMassDelta();
-                List<String> modResidues = modification.getResidues();
-                ArrayList<String> residueList = new ArrayList<>();
-                for (String residue : modResidues) {
-                    residueList.add(residue);
-                }
-                //Stores data in new Modification object.
-                MzIdModification modificationObject = new MzIdModification(monoMassDelta, location, residueList, nameList);
-                //Adds objects to the list.
-                modificationList.add(modificationObject);
-            }
-            //Create list of SubstituteModification objects.
-            for (SubstitutionModification subModification : subMods) {
-                Double monoMassDelta = subModification.getMonoisotopicMassDelta();
-                Integer location = subModification.getLocation();
-                String originalResidue = subModification.getOriginalResidue();
-                String replacedResidue = subModification.getReplacementResidue();
-                //Stores data in new SubstituteModification object.
-                MzIdSubstituteModification subModificationObject = new MzIdSubstituteModification(monoMassDelta, location, originalResidue, replacedResidue);
-                //Adds objects to the list.
-                subModificationList.add(subModificationObject);
-            }
-            //Stores data in new PeptideItem object.
-            MzIdPeptide peptideObject = new MzIdPeptide(id, sequence, modificationList, subModificationList);
-            //Adds objects to the MzIdPeptideCollection.
-            newPeptideCollection.addPeptide(peptideObject);
-        }
-        return newPeptideCollection;
     }
 
     /**
@@ -632,7 +515,7 @@ public class MzIdFileReader implements Callable {
      * @param hypothesisList list of PeptideHypothesis parameters from the MzIdentML data.
      * @return list of MzIdPeptideHypothesis objects.
      */
-    private MzIdProteinDetectionHypothesisCollection createProteinHypothesisCollection(final ProteinDetectionList proteinHypothesisList) {
+    private static MzIdProteinDetectionHypothesisCollection createProteinHypothesisCollection(final ProteinDetectionList proteinHypothesisList) {
         System.out.println("Creating MzIdProteinDetectionHypothesis object collection...");
         MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection = new MzIdProteinDetectionHypothesisCollection();
         //Loops throughe list of ProteinDetectionHypothesis objects.
@@ -686,13 +569,14 @@ public class MzIdFileReader implements Callable {
     }
 
     /**
-     * Creates and adds a ScanID object to the ScanIdCollection.
+     * Creates a ScanID object with the sequence and score at the current dataset index.
      *
      * @param scanID ID of the scan.
      * @param sequence peptide amino acid sequence.
      * @param psmScore peptide score (-10LogP).
+     * @return ScanIdOutput object.
      */
-    public final void addEntryToScanCollection(final String scanID, final String sequence, final Double psmScore) {
+    private ScanIdOutput createScanIdEntry(final String scanID, final String sequence, final Double psmScore) {
         ArrayList<String> sequences = new ArrayList(maximumIndex);
         ArrayList<Double> psmScores = new ArrayList(maximumIndex);
         ArrayList<String> databaseFlags = new ArrayList<>(maximumIndex);
@@ -707,26 +591,7 @@ public class MzIdFileReader implements Callable {
                 databaseFlags.add("");
             }
         }
-        Boolean newScanID = true;
-        if (!scanCollection.getScanIdEntryList().isEmpty()) {
-            //Loop through entries of the HashMap.
-            if (currentIndex != 0) {
-                for (ScanIdOutput object : scanCollection.getScanIdEntryList()) {
-                    //Check for duplicates.
-                    if (object.getScanId().equals(scanID)) {
-                        object.getPeptideSequenceList().set(currentIndex, sequence);
-                        object.getPsmScoreList().set(currentIndex, psmScore);
-                        newScanID = false;
-                        break;
-                    }
-                }
-            }
-        }
-        //Add a new entry to the collection.
-        if (newScanID) {
-            ScanIdOutput scanObject = new ScanIdOutput(scanID, sequences, psmScores, databaseFlags);
-            scanCollection.addScanIdEntry(scanObject);
-        }
+        return new ScanIdOutput(scanID, sequences, psmScores, databaseFlags);
     }
 
     /**
@@ -736,199 +601,122 @@ public class MzIdFileReader implements Callable {
      * @return EvidenceData with a list of accessions and uniqueness flag.
      */
     public final ProteinPeptideEntry matchProteinPeptideData(final String sequence) {
-        String accessions = "";
-        String unique = "N";
-        for (CombinedPeptideEntry peptide : combinedPeptideEntryCollection.getUniquePeptideList()) {
-            if (peptide.getSequence().equals(sequence)) {
-                if (peptide.getAccessionList().size() == 1) {
-                    unique = "Y";
-                }
-                for (String accession : peptide.getAccessionList()) {
-                    if (accessions.isEmpty()) {
-                        accessions += accession;
-                    } else {
-                        accessions += ":" + accession;
-                    }
-                }
-                break;
-            }
+        ProteinPeptideEntry matchedProteinPeptide = combinedPeptideEntryIndex.getProteinPeptideEntry(sequence);
+        //Sequences without a non-decoy peptide evidence have no accessions.
+        if (matchedProteinPeptide == null) {
+            matchedProteinPeptide = new ProteinPeptideEntry(sequence, "", "N");
         }
-        ProteinPeptideEntry matchedProteinPeptide = new ProteinPeptideEntry(sequence, accessions, unique);
         return matchedProteinPeptide;
     }
 
     /**
-     * Creates a list of peptide ion fragments and the covered ion indices.
+     * Determines the ion series that are covered by the ion fragments of a peptide spectrum match.
      *
-     * @param spectrumItemData contains SpectrumItemData.
-     * @param sequence peptide sequence.
-     * @return IndexItemData consisting of a list of ion fragment indices and the given ionSerieFlag.
+     * @param spectrumIdentificationResult SpectrumIdentificationResult of the spectrum item.
+     * @param spectrumItem SpectrumIdentificationItem with fragmentation data.
+     * @param userIntensityThreshold user specified intensity threshold.
+     * @param peptideSequence peptide sequence.
+     * @param peptideScore score of the peptide.
+     * @param accessions protein accessions of the peptide.
+     * @return MatchedIonSeries consisting of the covered ion indices and the ionSerieFlag.
      */
     private MatchedIonSeries createFragmentIndexList(final SpectrumIdentificationResult spectrumIdentificationResult, final SpectrumIdentificationItem spectrumItem, Double userIntensityThreshold, final String peptideSequence, final Double peptideScore, final String accessions) {
-        ArrayList<MzIdIonFragment> ionFragmentList = new ArrayList<>();
-        List<IonType> fragmentList = spectrumItem.getFragmentation().getIonType();
+        int sequenceLength = peptideSequence.length();
+        IonSeriesIndexSet bIonIndices = new IonSeriesIndexSet(sequenceLength);
+        IonSeriesIndexSet yIonIndices = new IonSeriesIndexSet(sequenceLength);
+        IonSeriesIndexSet combinedIonIndices = new IonSeriesIndexSet(sequenceLength);
+        IonSeriesIndexSet combinedAllIonIndices = new IonSeriesIndexSet(sequenceLength);
+        //Set standard threshold to 5%.
+        double standardThreshold = 0.05;
+        if (userIntensityThreshold >= standardThreshold) {
+            standardThreshold = userIntensityThreshold;
+        }
         //Process all ion fragments of the given peptide amino acid sequence.
-        for (IonType ionType : fragmentList) {
-            List<Integer> indexList = ionType.getIndex();
-            ArrayList<Double> measuredMassToChargeValues = new ArrayList<>();
-            ArrayList<Boolean> passedIntensityThreshold = new ArrayList<>();
-            FragmentArray fragmentArray = ionType.getFragmentArray().get(0);
-            //Gathers measured mass to charge values of each fragment array.
-            for (float fragmentValue : fragmentArray.getValues()) {
-                double measuredMassToCharge = fragmentValue;
-                measuredMassToChargeValues.add(measuredMassToCharge);
+        for (IonType ionType : spectrumItem.getFragmentation().getIonType()) {
+            int ionTypeValue = ION_TYPE_MAP.getIonType(ionType.getCvParam());
+            if (ionTypeValue == FragmentIonTypeMap.OTHER_ION) {
+                continue;
             }
-            //Set standard threshold to 5%.
-            Double standardThreshold = 0.05;
-            // Calculate the user defined intensity threshold value per peptide sequence.
-            FragmentArray measureIntensity = ionType.getFragmentArray().get(1);
-            if (userIntensityThreshold >= standardThreshold) {
-                standardThreshold = userIntensityThreshold;
+            List<Integer> indexList = ionType.getIndex();
+            //Only the intensities are needed, the measured m/z values are not decoded.
+            float[] intensityValues = EncodedFragmentArray.getValueArray(ionType.getFragmentArray().get(1));
+            //Removes hits with different index and intensity counts. (size should be the same to process data.
+            if (intensityValues.length != indexList.size()) {
+                continue;
             }
-            Double highestPeakIntensity = 0.0;
-            //Test peakIntensity versus the specified threshold.
-            for (Float intensityValue : measureIntensity.getValues()) {
-                double intensity = intensityValue;
-                Double peakIntensity = intensity * standardThreshold;
-                if (peakIntensity > highestPeakIntensity) {
-                    highestPeakIntensity = peakIntensity;
+            //The user defined intensity threshold is a fraction of the highest peak intensity.
+            float highestIntensity = 0.0f;
+            for (float intensity : intensityValues) {
+                if (intensity > highestIntensity) {
+                    highestIntensity = intensity;
                 }
             }
-            //Test if ion intensity passes the user specified threshold.
-            for (Float intensityValue : measureIntensity.getValues()) {
-                double intensity = intensityValue;
-                if (intensity >= highestPeakIntensity) {
-                    passedIntensityThreshold.add(true);
-                } else {
-                    passedIntensityThreshold.add(false);
+            double highestPeakIntensity = highestIntensity * standardThreshold;
+            for (int i = 0; i < intensityValues.length; i++) {
+                if (intensityValues[i] < highestPeakIntensity) {
+                    continue;
                 }
-            }
-            //Create MzIdIonFragment object containing the name, indices, m/z values and a true/false list for passing the intensity threshold.
-            String name = ionType.getCvParam().getName();
-            MzIdIonFragment fragment = new MzIdIonFragment(name, indexList, measuredMassToChargeValues, passedIntensityThreshold);
-            ionFragmentList.add(fragment);
-        }
-        Integer sequenceLength = peptideSequence.length();
-        ArrayList<Integer> bIonIndices = new ArrayList<>(sequenceLength);
-        ArrayList<Integer> yIonIndices = new ArrayList<>(sequenceLength);
-        ArrayList<Integer> combinedIonIndices = new ArrayList<>(sequenceLength);
-        ArrayList<Integer> combinedAllIonIndices = new ArrayList<>();
-        ArrayList<Integer> finalIndexList = new ArrayList<>();
-        for (MzIdIonFragment ionFragment : ionFragmentList) {
-            String name = ionFragment.getName();
-            List<Integer> indexList = ionFragment.getIndexList();
-            ArrayList<Boolean> intensityValues = ionFragment.getItensityValues();
-            //Removes hits with different index and intensity counts. (size should be the same to process data.
-           if (intensityValues.size() == indexList.size()) {
-                for (int i = 0; i < indexList.size(); i++) {
-                    Integer listIndex = indexList.get(i);
-                    Integer sequenceIndex = listIndex;
-                    if (intensityValues.get(i)) {
-                        if (name.matches("frag: y ion")) {
-                            if (!yIonIndices.contains(sequenceIndex)) {
-                                yIonIndices.add(sequenceIndex);
-                            }
-                            if (!combinedAllIonIndices.contains(sequenceIndex)) {
-                                combinedAllIonIndices.add(sequenceIndex);
-                            }
-                        } else if (name.matches("(frag: y ion -).*")) {
-                            if (!combinedIonIndices.contains(sequenceIndex)) {
-                                combinedIonIndices.add(sequenceIndex);
-                            }
-                            if (!combinedAllIonIndices.contains(sequenceIndex)) {
-                                combinedAllIonIndices.add(sequenceIndex);
-                            }
-                        } else if (name.matches("frag: b ion")) {
-                            sequenceIndex = sequenceLength - listIndex;
-                            if (!bIonIndices.contains(sequenceIndex)) {
-                                bIonIndices.add(sequenceIndex);
-                            }
-                            if (!combinedAllIonIndices.contains(sequenceIndex)) {
-                                combinedAllIonIndices.add(sequenceIndex);
-                            }
-                        } else if (name.matches("(frag: b ion -).*")) {
-                            if (!combinedIonIndices.contains(sequenceIndex)) {
-                                combinedIonIndices.add(sequenceIndex);
-                            }
-                            if (!combinedAllIonIndices.contains(sequenceIndex)) {
-                                combinedAllIonIndices.add(sequenceIndex);
-                            }
-                        } else if (name.contains("immonium")) {
-                            if (!combinedIonIndices.contains(sequenceIndex)) {
-                                combinedIonIndices.add(sequenceIndex);
-                            }
-                            if (!combinedAllIonIndices.contains(sequenceIndex)) {
-                                combinedAllIonIndices.add(sequenceIndex);
-                            }
-                        }
-                    }
+                int sequenceIndex = indexList.get(i);
+                if (ionTypeValue == FragmentIonTypeMap.B_ION) {
+                    sequenceIndex = sequenceLength - sequenceIndex;
+                }
+                if (ionTypeValue == FragmentIonTypeMap.Y_ION) {
+                    yIonIndices.add(sequenceIndex);
+                } else if (ionTypeValue == FragmentIonTypeMap.B_ION) {
+                    bIonIndices.add(sequenceIndex);
+                } else {
+                    combinedIonIndices.add(sequenceIndex);
                 }
+                combinedAllIonIndices.add(sequenceIndex);
             }
         }
         //Flag 0 for incomplete ion serie, flag 1 for complete b ion serie, flag 2 for complete y ion serie, flag 3 for combined ion series (includes immonium)
         Integer ionSerieFlag = 0;
+        IonSeriesIndexSet finalIndices = new IonSeriesIndexSet(0);
         sequenceLength--;
         if (sequenceLength == bIonIndices.size()) {
             ionSerieFlag = 1;
-            finalIndexList = bIonIndices;
+            finalIndices = bIonIndices;
         } else if (sequenceLength == yIonIndices.size()) {
             ionSerieFlag = 2;
-            finalIndexList = yIonIndices;
+            finalIndices = yIonIndices;
         } else if (sequenceLength == combinedIonIndices.size()) {
             ionSerieFlag = 3;
-            finalIndexList = combinedIonIndices;
+            finalIndices = combinedIonIndices;
         } else if (sequenceLength == combinedAllIonIndices.size()) {
             ionSerieFlag = 4;
-            finalIndexList = combinedAllIonIndices;
+            finalIndices = combinedAllIonIndices;
         }
-        Collections.sort(finalIndexList);
-        MatchedIonSeries ionSeries = new MatchedIonSeries(peptideSequence, peptideScore, accessions, combinedIonIndices, bIonIndices, yIonIndices, combinedAllIonIndices, finalIndexList, ionSerieFlag);
+        MatchedIonSeries ionSeries = new MatchedIonSeries(peptideSequence, peptideScore, accessions, combinedIonIndices.toIndexList(), bIonIndices.toIndexList(),
+                yIonIndices.toIndexList(), combinedAllIonIndices.toIndexList(), finalIndices.toIndexList(), ionSerieFlag);
         return ionSeries;
     }
 
     /**
-     * Generates a list of BestSpectrumEntry objects that define the highest scoring peptide spectrum per peptide sequence.
+     * Generates an index of BestSpectrumEntry objects that define the highest scoring peptide spectrum per peptide sequence.
+     * The first SpectrumIdentificationItem with the highest score is used as best spectrum, so the selection does not depend on processing order.
      *
-     * @param spectrumIdList list of SpectrumIdentificationResult items.
-     * @return returns a list containing BestSpectrumEntry objects.
+     * @param spectrumResults stream of SpectrumIdentificationResult items.
+     * @return returns a BestSpectrumEntryIndex with the peptide sequence as key.
      */
-    private ArrayList<BestSpectrumEntry> generateBestSpectrumList(SpectrumIdentificationList spectrumIdList) {
+    private static BestSpectrumEntryIndex generateBestSpectrumIndex(final Iterable<SpectrumIdentificationResult> spectrumResults) {
         System.out.println("Generating spectrum ID map");
-        ArrayList<BestSpectrumEntry> spectrumScoreList = new ArrayList<>();
-        for (SpectrumIdentificationResult spectrumIdResult : spectrumIdList.getSpectrumIdentificationResult()) {
+        BestSpectrumEntryIndex spectrumIndex = new BestSpectrumEntryIndex();
+        for (SpectrumIdentificationResult spectrumIdResult : spectrumResults) {
             for (SpectrumIdentificationItem spectrumIdentificationItem : spectrumIdResult.getSpectrumIdentificationItem()) {
-                Boolean isPassThreshold = spectrumIdentificationItem.isPassThreshold();
-                //If an item passes the threshol the call() function is executed by a thread from the threadpool
-                Double psmScore = 0.0;
-                if (isPassThreshold) {
-                    String peptideSequence = spectrumIdentificationItem.getPeptideRef();
-                    Boolean newReference = true;
-                    List<CvParam> paramList = spectrumIdentificationItem.getCvParam();
-                    for (CvParam param : paramList) {
+                //Only items that pass the threshold are processed by the call() function.
+                if (spectrumIdentificationItem.isPassThreshold()) {
+                    double psmScore = 0.0;
+                    for (CvParam param : spectrumIdentificationItem.getCvParam()) {
                         if (param.getName().contains("PSM score")) {
                             psmScore = Double.parseDouble(param.getValue());
                         }
                     }
-                    for (BestSpectrumEntry spectrum : spectrumScoreList) {
-                        if (spectrum.getSequence().equals(peptideSequence)) {
-                            if (spectrum.getScore() > psmScore) {
-                                spectrumScoreList.remove(spectrum);
-                                spectrum.setScore(psmScore);
-                                spectrum.setFlag(false);
-                                spectrumScoreList.add(spectrum);
-                            }
-                            break;
-                        }
-                    }
-                    //New peptide sequence and highest score.
-                    if (newReference) {
-                        BestSpectrumEntry spectrum = new BestSpectrumEntry(peptideSequence, psmScore, false);
-                        spectrumScoreList.add(spectrum);
-                    }
+                    spectrumIndex.addSpectrum(spectrumIdentificationItem.getPeptideRef(), spectrumIdentificationItem.getId(), psmScore);
                 }
             }
         }
-        return spectrumScoreList;
+        return spectrumIndex;
     }
 
     /**
@@ -938,7 +726,7 @@ public class MzIdFileReader implements Callable {
      * @param mzIdProteinHypothesisCollection collection of MzIdProteinHypothesis objects.
      * @return MzIdProteinPeptideCollection containing MzIdProteinPeptide objects.
      */
-    public final MzIdProteinPeptideCollection combineProteinHypothesisWithPeptideEvidence(MzIdPeptideEvidenceCollection mzIdPeptideEvidenceCollection, MzIdProteinDetectionHypothesisCollection mzIdProteinHypothesisCollection) {
+    public static MzIdProteinPeptideCollection combineProteinHypothesisWithPeptideEvidence(MzIdPeptideEvidenceCollection mzIdPeptideEvidenceCollection, MzIdProteinDetectionHypothesisCollection mzIdProteinHypothesisCollection) {
         System.out.println("combining protein hypothesis data with peptide evidence data...");
         MzIdProteinPeptideCollection mzidProteinPeptideCollection = new MzIdProteinPeptideCollection();
         for (MzIdProteinDetectionHypothesis mzIdProteinDetectionHypothesis : mzIdProteinHypothesisCollection.getProteinDetectionHypothesisList()) {
@@ -962,38 +750,13 @@ public class MzIdFileReader implements Callable {
         return mzidProteinPeptideCollection;
     }
 
-    /**
-     * Creates a collection of MzIdPeptideEvidence objects using the PeptideEvidence list of the mzid file.
-     * 
-     * @param peptideEvidenceList list of PeptideEvidence objects.
-     * @return returns the MzIdPeptideEvidenceCollection.
-     */
-    private MzIdPeptideEvidenceCollection createPeptideEvidenceCollection(List<PeptideEvidence> peptideEvidenceList) {
-        System.out.println("Creating peptide evidence collection...");
-        MzIdPeptideEvidenceCollection mzIdPeptideEvidenceCollection = new MzIdPeptideEvidenceCollection();
-        for (PeptideEvidence peptideEvidence: peptideEvidenceList) {
-            String id = peptideEvidence.getId().split("_")[1];
-            Integer isAsInteger = Integer.parseInt(id);
-            Boolean isDecoySequence = peptideEvidence.isIsDecoy();
-            String proteinAccession = peptideEvidence.getDBSequenceRef();
-            Integer startIndex = peptideEvidence.getStart();
-            Integer endIndex = peptideEvidence.getEnd();
-            String preAminoAcid = peptideEvidence.getPre();
-            String postAminoAcid = peptideEvidence.getPost();
-            String peptideSequence = peptideEvidence.getPeptideRef();
-            MzIdPeptideEvidence mzIdPeptideEvidence = new MzIdPeptideEvidence(isAsInteger, proteinAccession, peptideSequence, isDecoySequence, startIndex, endIndex, preAminoAcid, postAminoAcid);
-            mzIdPeptideEvidenceCollection.addPeptideEvidence(mzIdPeptideEvidence);
-        }
-        return mzIdPeptideEvidenceCollection;
-    }
-    
     /**
      * Removes MzIdProteinPeptide entries that do not pass the threshold
      * 
      * @param mzIdProteinPeptideCollection collection of MzIdProteinPeptide objects.
      * @return returns the filtered MzIdProteinPeptideCollection.
      */
-    private MzIdProteinPeptideCollection removeLowThresholdSequences(MzIdProteinPeptideCollection mzIdProteinPeptideCollection) {
+    private static MzIdProteinPeptideCollection removeLowThresholdSequences(MzIdProteinPeptideCollection mzIdProteinPeptideCollection) {
         System.out.println("Removing low threshold and decoy sequences...");
         MzIdProteinPeptideCollection filteredMzIdProteinPeptideCollection = new MzIdProteinPeptideCollection();
         for (MzIdProteinPeptide proteinPeptide: mzIdProteinPeptideCollection.getProteinPeptideList()) {
@@ -1011,7 +774,7 @@ public class MzIdFileReader implements Callable {
      * @param mzIdProteinPeptideCollection collection of MzIdProteinPeptide objects.
      * @return returns the filtered MzIdProteinPeptideCollection.
      */
-    private MzIdProteinPeptideCollection removeDecoySequences(MzIdProteinPeptideCollection mzIdProteinPeptideCollection) {
+    private static MzIdProteinPeptideCollection removeDecoySequences(MzIdProteinPeptideCollection mzIdProteinPeptideCollection) {
         System.out.println("Removing low threshold and decoy sequences...");
         MzIdProteinPeptideCollection filteredMzIdProteinPeptideCollection = new MzIdProteinPeptideCollection();
         for (MzIdProteinPeptide proteinPeptide: mzIdProteinPeptideCollection.getProteinPeptideList()) {
@@ -0,0 +1,369 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.filereader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import nl.eriba.mzidentml.identification.collections.general.CombinedDatabaseReferenceCollection;
+import nl.eriba.mzidentml.identification.collections.general.CombinedPeptideEntryCollection;
+import nl.eriba.mzidentml.identification.collections.general.CombinedPeptideEntryIndex;
+import nl.eriba.mzidentml.identification.collections.general.SingleDatabaseReferenceCollection;
+import nl.eriba.mzidentml.identification.collections.general.SymbolTable;
+import nl.eriba.mzidentml.identification.collections.mzid.MzIdDatabaseSequenceCollection;
+import nl.eriba.mzidentml.identification.collections.mzid.MzIdPeptideCollection;
+import nl.eriba.mzidentml.identification.collections.mzid.MzIdPeptideEvidenceCollection;
+import nl.eriba.mzidentml.identification.collections.mzid.MzIdSequenceElementCollection;
+import nl.eriba.mzidentml.identification.dataprocessing.spectra.CombineDatabaseReferenceInformation;
+import nl.eriba.mzidentml.identification.objects.general.CombinedPeptideEntry;
+import nl.eriba.mzidentml.identification.objects.general.SingleDatabaseReference;
+import nl.eriba.mzidentml.identification.objects.mzid.MzIdDatabaseSequence;
+import nl.eriba.mzidentml.identification.objects.mzid.MzIdModification;
+import nl.eriba.mzidentml.identification.objects.mzid.MzIdPeptide;
+import nl.eriba.mzidentml.identification.objects.mzid.MzIdPeptideEvidence;
+import nl.eriba.mzidentml.identification.objects.mzid.MzIdSubstituteModification;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.DBSequence;
+import uk.ac.ebi.jmzidml.model.mzidml.Modification;
+import uk.ac.ebi.jmzidml.model.mzidml.Peptide;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideEvidence;
+import uk.ac.ebi.jmzidml.model.mzidml.SequenceCollection;
+import uk.ac.ebi.jmzidml.model.mzidml.SubstitutionModification;
+
+/**
+ * Creates the peptide, peptide evidence and database reference collections of a mzid file from its SequenceCollection.
+ * These collections only depend on the SequenceCollection, so they are created as soon as the SequenceCollection has been unmarshalled,
+ * while the SpectrumIdentificationResults and ProteinDetectionList are still being read.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdSequenceCollectionReader implements Callable<MzIdSequenceElementCollection> {
+
+    /**
+     * SequenceCollection of the mzid file, which may still be unmarshalled by another thread.
+     */
+    private final Future<SequenceCollection> sequenceCollection;
+
+    /**
+     * Amount of threads used to combine the database references.
+     */
+    private final Integer threads;
+
+    /**
+     * Creates the reader of the SequenceCollection.
+     *
+     * @param sequenceCollection Future of the SequenceCollection of the mzid file.
+     * @param threads amount of threads used to combine the database references.
+     */
+    public MzIdSequenceCollectionReader(final Future<SequenceCollection> sequenceCollection, final Integer threads) {
+        this.sequenceCollection = sequenceCollection;
+        this.threads = threads;
+    }
+
+    /**
+     * Call function that waits for the SequenceCollection and creates the collections that depend on it.
+     *
+     * @return MzIdSequenceElementCollection with the MzIdPeptideCollection, MzIdPeptideEvidenceCollection, CombinedPeptideEntryIndex,
+     * CombinedDatabaseReferenceCollection and the HashMap with spectra counts per peptide sequence.
+     * @throws InterruptedException process was interrupted while waiting for the SequenceCollection.
+     * @throws ExecutionException the SequenceCollection could not be unmarshalled.
+     */
+    @Override
+    public MzIdSequenceElementCollection call() throws InterruptedException, ExecutionException {
+        SequenceCollection sequences = sequenceCollection.get();
+        //Get peptide data
+        MzIdPeptideCollection peptides = createPeptideCollection(sequences.getPeptide());
+        //Get peptide evidence data
+        List<PeptideEvidence> peptideEvidenceList = sequences.getPeptideEvidence();
+        //Dictionary-encode the peptide references and protein accessions of this file. Grouping and sorting is done on the ids.
+        ArrayList<String> peptideReferences = new ArrayList<>(peptideEvidenceList.size());
+        ArrayList<String> proteinAccessions = new ArrayList<>(peptideEvidenceList.size());
+        for (PeptideEvidence peptideEvidence : peptideEvidenceList) {
+            peptideReferences.add(peptideEvidence.getPeptideRef());
+            proteinAccessions.add(peptideEvidence.getDBSequenceRef());
+        }
+        SymbolTable sequenceSymbols = new SymbolTable(peptideReferences);
+        SymbolTable accessionSymbols = new SymbolTable(proteinAccessions);
+        MzIdPeptideEvidenceCollection evidenceCollection = createPeptideEvidenceCollection(peptideEvidenceList, sequenceSymbols, accessionSymbols);
+        //Group data of database sequence objects into different collections
+        MzIdDatabaseSequenceCollection dbSequenceCollection = createDatabaseSequenceCollection(sequences.getDBSequence());
+        //Create SingleDatabaseReference objects that are used to create the CombinedPeptidEntry and CombinedDatabaseReference collections.
+        SingleDatabaseReferenceCollection singleDatabaseReferenceCollection = createSingleDatabaseReferenceCollection(peptideEvidenceList, peptides, sequenceSymbols, accessionSymbols);
+        CombinedPeptideEntryCollection combinedPeptides = createCombinedPeptideCollection(singleDatabaseReferenceCollection, accessionSymbols);
+        CombinedPeptideEntryIndex combinedPeptideIndex = new CombinedPeptideEntryIndex(combinedPeptides);
+        //Combined SingleDatabaseReference objects to represent all unique protein hits per peptide sequence.
+        CombineDatabaseReferenceInformation combineInformation = new CombineDatabaseReferenceInformation(null, null, null);
+        CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection = combineInformation.combineDatabaseReferenceData(singleDatabaseReferenceCollection, dbSequenceCollection, combinedPeptides, threads);
+        //Create map with spectra counts per sequence
+        HashMap<String, Integer> spectraCountMap = determineSpectraCounts(peptideEvidenceList, sequenceSymbols);
+        return new MzIdSequenceElementCollection(peptides, evidenceCollection, combinedPeptideIndex, combinedDatabaseReferenceCollection, spectraCountMap);
+    }
+
+    /**
+     * Creates a collection of MzIdPeptide objects.
+     *
+     * @param peptides list of PeptideItem objects.
+     * @return collection of MzIdPeptide objects.
+     */
+    private MzIdPeptideCollection createPeptideCollection(final List<Peptide> peptides) {
+        System.out.println("Creating MzIdPeptide object collection...");
+        MzIdPeptideCollection newPeptideCollection = new MzIdPeptideCollection();
+        //Loops through list of all PeptideItem objects.
+        for (Peptide peptide : peptides) {
+            String id = peptide.getId();
+            String sequence = peptide.getPeptideSequence();
+            List<Modification> mods = peptide.getModification();
+            List<SubstitutionModification> subMods = peptide.getSubstitutionModification();
+            ArrayList<MzIdSubstituteModification> subModificationList = new ArrayList<>();
+            ArrayList<MzIdModification> modificationList = new ArrayList<>();
+            //Create list of Modification objects.
+            for (Modification modification : mods) {
+                Integer location = modification.getLocation();
+                ArrayList<String> nameList = new ArrayList<>();
+                for (CvParam param : modification.getCvParam()) {
+                    String name = param.getName();
+                    nameList.add(name);
+                }
+                Double monoMassDelta = modification.getMonoisotopicMassDelta();
+                List<String> modResidues = modification.getResidues();
+                ArrayList<String> residueList = new ArrayList<>();
+                for (String residue : modResidues) {
+                    residueList.add(residue);
+                }
+                //Stores data in new Modification object.
+                MzIdModification modificationObject = new MzIdModification(monoMassDelta, location, residueList, nameList);
+                //Adds objects to the list.
+                modificationList.add(modificationObject);
+            }
+            //Create list of SubstituteModification objects.
+            for (SubstitutionModification subModification : subMods) {
+                Double monoMassDelta = subModification.getMonoisotopicMassDelta();
+                Integer location = subModification.getLocation();
+                String originalResidue = subModification.getOriginalResidue();
+                String replacedResidue = subModification.getReplacementResidue();
+                //Stores data in new SubstituteModification object.
+                MzIdSubstituteModification subModificationObject = new MzIdSubstituteModification(monoMassDelta, location, originalResidue, replacedResidue);
+                //Adds objects to the list.
+                subModificationList.add(subModificationObject);
+            }
+            //Stores data in new PeptideItem object.
+            MzIdPeptide peptideObject = new MzIdPeptide(id, sequence, modificationList, subModificationList);
+            //Adds objects to the MzIdPeptideCollection.
+            newPeptideCollection.addPeptide(peptideObject);
+        }
+        return newPeptideCollection;
+    }
+
+    /**
+     * Creates a collection of MzIdPeptideEvidence objects using the PeptideEvidence list of the mzid file.
+     * 
+     * @param peptideEvidenceList list of PeptideEvidence objects.
+     * @param sequenceSymbols SymbolTable of the peptide references.
+     * @param accessionSymbols SymbolTable of the protein accessions.
+     * @return returns the MzIdPeptideEvidenceCollection.
+     */
+    private MzIdPeptideEvidenceCollection createPeptideEvidenceCollection(final List<PeptideEvidence> peptideEvidenceList, final SymbolTable sequenceSymbols, final SymbolTable accessionSymbols) {
+        System.out.println("Creating peptide evidence collection...");
+        MzIdPeptideEvidenceCollection mzIdPeptideEvidenceCollection = new MzIdPeptideEvidenceCollection();
+        for (PeptideEvidence peptideEvidence: peptideEvidenceList) {
+            String id = peptideEvidence.getId().split("_")[1];
+            Integer isAsInteger = Integer.parseInt(id);
+            Boolean isDecoySequence = peptideEvidence.isIsDecoy();
+            String proteinAccession = accessionSymbols.intern(peptideEvidence.getDBSequenceRef());
+            Integer startIndex = peptideEvidence.getStart();
+            Integer endIndex = peptideEvidence.getEnd();
+            String preAminoAcid = peptideEvidence.getPre();
+            String postAminoAcid = peptideEvidence.getPost();
+            String peptideSequence = sequenceSymbols.intern(peptideEvidence.getPeptideRef());
+            MzIdPeptideEvidence mzIdPeptideEvidence = new MzIdPeptideEvidence(isAsInteger, proteinAccession, peptideSequence, isDecoySequence, startIndex, endIndex, preAminoAcid, postAminoAcid);
+            mzIdPeptideEvidenceCollection.addPeptideEvidence(mzIdPeptideEvidence);
+        }
+        return mzIdPeptideEvidenceCollection;
+    }
+
+    /**
+     * Creates a collection of MzIdDatabaseSequence objects.
+     *
+     * @param dbSequenceList list of DatabaseSequence objects.
+     * @return collection of MzIdDatabaseSequence objects.
+     */
+    private MzIdDatabaseSequenceCollection createDatabaseSequenceCollection(final List<DBSequence> dbSequenceList) {
+        System.out.println("Creating MzIdDatabaseSequence object collection...");
+        MzIdDatabaseSequenceCollection databaseSequenceCollection = new MzIdDatabaseSequenceCollection();
+        for (int index = 0; index < dbSequenceList.size() - 1; index++) {
+            DBSequence databaseSequence = dbSequenceList.get(index);
+            String id = databaseSequence.getId();
+            String proteinAccession = databaseSequence.getAccession();
+            String databaseReference = databaseSequence.getSearchDatabaseRef();
+            String description = "";
+            String reversedDescription = "";
+            String paramValue = databaseSequence.getCvParam().get(0).getValue();
+            if (paramValue != null) {
+                description = paramValue;
+            }
+            index++;
+            DBSequence reveresedDatabaseSequence = dbSequenceList.get(index);
+            String reversedProteinAccession = reveresedDatabaseSequence.getAccession();
+            paramValue = databaseSequence.getCvParam().get(0).getValue();
+            if (paramValue != null) {
+                reversedDescription = paramValue;
+            }
+            description = description.replaceAll(",", ".");
+            reversedDescription = reversedDescription.replaceAll(",", ".");
+            MzIdDatabaseSequence mzidDatabaseSequence = new MzIdDatabaseSequence(id, proteinAccession, reversedProteinAccession, databaseReference, description, reversedDescription);
+            databaseSequenceCollection.addDatabaseSequence(mzidDatabaseSequence);
+        }
+        return databaseSequenceCollection;
+    }
+
+    /**
+     * Creates a SingleDatabaseReferenceCollection containing data of single entry hits.
+     * Modification names are gathered once per peptide sequence and joined to the PeptideEvidence objects on the peptide reference.
+     * Neither the PeptideEvidence list nor the MzIdPeptideCollection is changed.
+     * 
+     * @param peptideEvidenceList list of PeptideEvidence objects.
+     * @param peptideCollection list of MzIdPeptide objects.
+     * @param sequenceSymbols SymbolTable of the peptide references.
+     * @param accessionSymbols SymbolTable of the protein accessions.
+     * @return collection of SingleDatabaseReference objects.
+     */
+    private SingleDatabaseReferenceCollection createSingleDatabaseReferenceCollection(final List<PeptideEvidence> peptideEvidenceList, final MzIdPeptideCollection peptideCollection,
+            final SymbolTable sequenceSymbols, final SymbolTable accessionSymbols) {
+        System.out.println("Creating SequenceDatabaseReference object collection...");
+        SingleDatabaseReferenceCollection sequenceDatabaseReferenceCollection = new SingleDatabaseReferenceCollection();
+        //Gather the unique modification names of all modified peptides per peptide sequence.
+        HashMap<String, ArrayList<String>> modificationMap = new HashMap<>();
+        for (MzIdPeptide entry: peptideCollection.getPeptides()) {
+            if (!entry.getModifications().isEmpty() || !entry.getSubstituteModifications().isEmpty()) {
+                ArrayList<String> modifications = modificationMap.get(entry.getPeptideSequence());
+                if (modifications == null) {
+                    modifications = new ArrayList<>();
+                    modificationMap.put(entry.getPeptideSequence(), modifications);
+                }
+                for (MzIdModification modification: entry.getModifications()) {
+                    for (String name: modification.getNames()) {
+                        if (!modifications.contains(name)) {
+                            modifications.add(name);
+                        }
+                    }
+                }
+            }
+        }
+        //Order the evidence on peptide reference id with a stable counting sort. The input list stays unchanged.
+        int[] sequenceIds = new int[peptideEvidenceList.size()];
+        int[] sequenceOffsets = new int[sequenceSymbols.size() + 1];
+        for (int index = 0; index < sequenceIds.length; index++) {
+            sequenceIds[index] = sequenceSymbols.getId(peptideEvidenceList.get(index).getPeptideRef());
+            sequenceOffsets[sequenceIds[index] + 1]++;
+        }
+        for (int id = 0; id < sequenceSymbols.size(); id++) {
+            sequenceOffsets[id + 1] += sequenceOffsets[id];
+        }
+        int[] sortedIndices = new int[sequenceIds.length];
+        for (int index = 0; index < sequenceIds.length; index++) {
+            sortedIndices[sequenceOffsets[sequenceIds[index]]++] = index;
+        }
+        for (int evidenceIndex : sortedIndices) {
+            PeptideEvidence peptideEvidence = peptideEvidenceList.get(evidenceIndex);
+            if (!peptideEvidence.isIsDecoy()) {
+                int proteinAccessionId = accessionSymbols.getId(peptideEvidence.getDBSequenceRef());
+                String proteinAccession = accessionSymbols.getSymbol(proteinAccessionId);
+                Integer start = peptideEvidence.getStart();
+                Integer end = peptideEvidence.getEnd();
+                int peptideSequenceId = sequenceIds[evidenceIndex];
+                String peptideSequence = sequenceSymbols.getSymbol(peptideSequenceId);
+                String pre = peptideEvidence.getPre();
+                String post = peptideEvidence.getPost();
+                String id = peptideEvidence.getId().split("_")[1];
+                Integer evidenceId = Integer.parseInt(id);
+                ArrayList<String> modifications = new ArrayList<>();
+                if (modificationMap.containsKey(peptideSequence)) {
+                    modifications.addAll(modificationMap.get(peptideSequence));
+                }
+                SingleDatabaseReference sequenceDatabaseReference = new SingleDatabaseReference(proteinAccession, proteinAccessionId, evidenceId, peptideSequence, peptideSequenceId,
+                        start, end, pre, post, modifications);
+                sequenceDatabaseReferenceCollection.addDatabaseReference(sequenceDatabaseReference);
+            }
+        }
+        return sequenceDatabaseReferenceCollection;
+    }
+
+    /**
+     * Creates a collection of CombinedPeptideEntry objects.
+     * 
+     * @param singleDatabaseReferenceCollection collection of SingleDatabaseReference objects.
+     * @param accessionSymbols SymbolTable of the protein accessions.
+     * @return collection of CombinedPeptideEntry objects.
+     */
+    private CombinedPeptideEntryCollection createCombinedPeptideCollection(final SingleDatabaseReferenceCollection singleDatabaseReferenceCollection, final SymbolTable accessionSymbols) {
+        System.out.println("Creating list for peptide data objects.");
+        //Determine if a sequence is unique to one accession.
+        CombinedPeptideEntryCollection combinedPeptideCollection = new CombinedPeptideEntryCollection();
+        //Sort collections on sequence. This causes UniquePeptideEntry list to be sorted on sequence as well.
+        singleDatabaseReferenceCollection.sortOnPeptideSequence();
+        //Get first entry sequence.
+        int[] accessionIds = new int[16];
+        int accessionCount = 0;
+        SingleDatabaseReference targetReference = singleDatabaseReferenceCollection.getDatabaseSequenceReferenceList().get(0);
+        String targetSequence = targetReference.getPeptideSequence();
+        int targetSequenceId = targetReference.getPeptideSequenceId();
+        for (SingleDatabaseReference databaseReference: singleDatabaseReferenceCollection.getDatabaseSequenceReferenceList()) {
+            //Check if current sequence matches the targetSequence and add accession to given sequence.
+            if (databaseReference.getPeptideSequenceId() == targetSequenceId) {
+                //if accession is not present add it to the list. Duplicate accessions are not necessary.
+                boolean present = false;
+                for (int index = 0; index < accessionCount && !present; index++) {
+                    present = accessionIds[index] == databaseReference.getProteinAccessionId();
+                }
+                if (!present) {
+                    if (accessionCount == accessionIds.length) {
+                        accessionIds = Arrays.copyOf(accessionIds, accessionCount * 2);
+                    }
+                    accessionIds[accessionCount++] = databaseReference.getProteinAccessionId();
+                }
+            } else {
+                //UniquePeptideAccessionCount object is created that contains the target sequence and the list of accession ids.
+                //Ids follow the order of the accessions, so the decoded list is sorted on accession.
+                Arrays.sort(accessionIds, 0, accessionCount);
+                ArrayList<String> accessionList = new ArrayList<>(accessionCount);
+                for (int index = 0; index < accessionCount; index++) {
+                    accessionList.add(accessionSymbols.getSymbol(accessionIds[index]));
+                }
+                CombinedPeptideEntry combinedPeptide = new CombinedPeptideEntry(targetSequence, accessionList);
+                combinedPeptideCollection.addCombinedPeptideEntry(combinedPeptide);
+                accessionIds[0] = databaseReference.getProteinAccessionId();
+                accessionCount = 1;
+                targetSequence = databaseReference.getPeptideSequence();
+                targetSequenceId = databaseReference.getPeptideSequenceId();
+            }
+        }
+        return combinedPeptideCollection;
+    }
+
+    /**
+     * Determines the spectra count per peptide sequence by coutning the peptide evidences per peptide sequence.
+     *
+     * @param peptideEvidenceList determines the amount of peptide spectra of each peptide sequence.
+     * @param sequenceSymbols SymbolTable of the peptide references.
+     * @return HashMap with peptide sequence as key and count as value.
+     */
+    private HashMap<String, Integer> determineSpectraCounts(final List<PeptideEvidence> peptideEvidenceList, final SymbolTable sequenceSymbols) {
+        System.out.println("Creating spectra count map...");
+        //Count on peptide reference id and decode each reference once.
+        int[] spectraCounts = new int[sequenceSymbols.size()];
+        for (PeptideEvidence peptideEvidence : peptideEvidenceList) {
+            spectraCounts[sequenceSymbols.getId(peptideEvidence.getPeptideRef())]++;
+        }
+        HashMap<String, Integer> spectraCountMap = new HashMap<>(spectraCounts.length * 4 / 3 + 1);
+        for (int id = 0; id < spectraCounts.length; id++) {
+            spectraCountMap.put(sequenceSymbols.getSymbol(id), spectraCounts[id]);
+        }
+        return spectraCountMap;
+    }
+}
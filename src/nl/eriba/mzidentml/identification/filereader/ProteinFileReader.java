@@ -6,31 +6,100 @@ package nl.eriba.mzidentml.identification.filereader;
 
 import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
 import nl.eriba.mzidentml.identification.collections.general.ProteinDatabaseSequenceCollection;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.zip.GZIPInputStream;
-import nl.eriba.mzidentml.tools.CalculationTools;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 /**
  * Creates a collection of protein objects.
+ * Uncompressed fasta files are memory-mapped and split into parts that are parsed by multiple threads. Compressed fasta files are decompressed
+ * on a dedicated thread and parsed in blocks by multiple threads. The residues of each part or block are packed into a ProteinResidueArena,
+ * so no String is created per protein sequence.
  *
  * @author vnijenhuis
  */
-public class ProteinFileReader {
+public class ProteinFileReader implements Callable<ArrayList<ProteinDatabaseSequence>> {
 
     /**
-     * Buffered reader for file reading.
+     * Maximum size of a file part in bytes. Keeps each part below the size limit of a memory-mapped buffer and a residue array.
      */
-    private BufferedReader dbReader;
+    private static final long MAXIMUM_PART_SIZE = 1L << 29;
 
     /**
-     * Reads proteins.fasta files or database file such as the uniprot-database.fasta.gz and creates a protein collection.
+     * File channel of the fasta file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Size of the fasta file in bytes.
+     */
+    private final long fileSize;
+
+    /**
+     * Start of the file part in bytes. The part is extended to the first protein record that starts at or after this position.
+     */
+    private final long partStart;
+
+    /**
+     * End of the file part in bytes. The part is extended to the first protein record that starts at or after this position.
+     */
+    private final long partEnd;
+
+    /**
+     * Decompressed block of a fasta file that starts at a protein record, or null if a part of a memory-mapped file is read.
+     */
+    private final byte[] recordBlock;
+
+    /**
+     * Creates a protein file reader.
+     */
+    public ProteinFileReader() {
+        this(null, 0L, 0L, 0L);
+    }
+
+    /**
+     * Creates a protein file reader for a decompressed block of protein records.
+     *
+     * @param recordBlock block of complete protein records.
+     */
+    public ProteinFileReader(final byte[] recordBlock) {
+        this.channel = null;
+        this.fileSize = 0L;
+        this.partStart = 0L;
+        this.partEnd = 0L;
+        this.recordBlock = recordBlock;
+    }
+
+    /**
+     * Creates a protein file reader for a part of a fasta file.
+     *
+     * @param channel file channel of the fasta file.
+     * @param fileSize size of the fasta file in bytes.
+     * @param partStart start of the part in bytes.
+     * @param partEnd end of the part in bytes.
+     */
+    public ProteinFileReader(final FileChannel channel, final long fileSize, final long partStart, final long partEnd) {
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.partStart = partStart;
+        this.partEnd = partEnd;
+        this.recordBlock = null;
+    }
+
+    /**
+     * Reads proteins.fasta files or database file such as the uniprot-database.fasta.gz and creates a protein collection with a single thread.
      *
      * @param database database file.
      * @param proteins protein collection.
@@ -38,49 +107,28 @@ public class ProteinFileReader {
      */
     public final ProteinDatabaseSequenceCollection createCollection(final String database,
             final ProteinDatabaseSequenceCollection proteins) {
-        CalculationTools tools = new CalculationTools();
+        return createCollection(database, proteins, 1);
+    }
+
+    /**
+     * Reads proteins.fasta files or database file such as the uniprot-database.fasta.gz and creates a protein collection.
+     *
+     * @param database database file.
+     * @param proteins protein collection.
+     * @param threads amount of threads used to decompress and parse the fasta file.
+     * @return returns a collection of proteins.
+     */
+    public final ProteinDatabaseSequenceCollection createCollection(final String database,
+            final ProteinDatabaseSequenceCollection proteins, final Integer threads) {
         try {
             System.out.println("Loading database proteins from " + database);
-            File file = new File(database);
             //Read database files. Can read .fasta and .fasta.gz files.
             if (database.matches(".*\\.fa(sta){0,1}\\.gz")) {
-                InputStream fileStream = new FileInputStream(file);
-                InputStream gzipStream = new GZIPInputStream(fileStream);
-                Reader decoder = new InputStreamReader(gzipStream, "US-ASCII");
-                dbReader = new BufferedReader(decoder);
+                readCompressedFile(database, proteins, threads);
             } else if (database.matches(".*\\.fa(sta){0,1}")) {
-                FileReader fr = new FileReader(file);
-                dbReader = new BufferedReader(fr);
-            }
-            String line;
-            boolean firstLine = true;
-            String proteinSequence = "";
-            String proteinAccession = "";
-            //Create protein objects with a sequence and a protein accession.
-            while ((line = dbReader.readLine()) != null) {
-                if (line.startsWith(">") && firstLine) {
-                    String id = line.split(" ")[0].replace(">", "");
-                    if (id.contains("|")) {
-                        proteinAccession = id.split("\\|")[1];
-                    } else {
-                        proteinAccession = id;
-                    }
-                    firstLine = false;
-                } else if (line.startsWith(">")) {
-                    //Calculate protein mass.
-                    Double proteinMass = tools.calculateProteinMass(proteinSequence);
-                    ProteinDatabaseSequence protein = new ProteinDatabaseSequence(proteinSequence, proteinAccession, proteinMass);
-                    proteins.addProtein(protein);
-                    String id = line.split(" ")[0].replace(">", "");
-                    if (id.contains("|")) {
-                        proteinAccession = id.split("\\|")[1];
-                    } else {
-                        proteinAccession = id;
-                    }
-                    proteinSequence = "";
-                } else {
-                    proteinSequence += line.trim();
-                }
+                readMappedFile(database, proteins, threads);
+            } else {
+                System.out.println("File " + database + " is not a .fasta or .fasta.gz file.");
             }
         } catch (FileNotFoundException ex) {
             System.out.println("File nout found: " + database + ".\nError: " + ex.getMessage());
@@ -88,10 +136,226 @@ public class ProteinFileReader {
         } catch (IOException ex) {
             System.out.println("Encountered IO Exception for file " + database + " ; " + ex.getMessage());
             System.exit(0);
+        } catch (InterruptedException | ExecutionException ex) {
+            System.out.println("Could not read file " + database + " ; " + ex.getMessage());
+            System.exit(0);
         }
         proteins.sortOnProteinAccession();
         //Return the protein collection.
         System.out.println("Loaded " + proteins.getProteinCollection().size() + " proteins from " + database);
         return proteins;
     }
+
+    /**
+     * Reads a gzip compressed fasta file. A GzipBlockReader decompresses the file on a dedicated thread, the decompressed blocks are cut
+     * at the last protein record they contain and the complete records are parsed by multiple threads.
+     *
+     * @param database database file.
+     * @param proteins protein collection.
+     * @param threads amount of threads used to decompress and parse the file.
+     * @throws IOException could not read the file.
+     * @throws InterruptedException process was interrupted.
+     * @throws ExecutionException could not execute the process.
+     */
+    private void readCompressedFile(final String database, final ProteinDatabaseSequenceCollection proteins, final Integer threads)
+            throws IOException, InterruptedException, ExecutionException {
+        ArrayBlockingQueue<Future<byte[]>> blockQueue = new ArrayBlockingQueue<>(threads * 2 + 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ExecutorService decompressor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> blockCount = decompressor.submit(new GzipBlockReader(database, blockQueue, executor));
+            ArrayDeque<Future<ArrayList<ProteinDatabaseSequence>>> futures = new ArrayDeque<>();
+            byte[] remainder = new byte[0];
+            byte[] block;
+            //An empty block marks the end of the file.
+            while ((block = blockQueue.take().get()).length > 0) {
+                byte[] combined = Arrays.copyOf(remainder, remainder.length + block.length);
+                System.arraycopy(block, 0, combined, remainder.length, block.length);
+                int recordStart = findLastRecordStart(combined);
+                if (recordStart > 0) {
+                    futures.add(executor.submit(new ProteinFileReader(Arrays.copyOf(combined, recordStart))));
+                    remainder = Arrays.copyOfRange(combined, recordStart, combined.length);
+                } else {
+                    remainder = combined;
+                }
+                //Limit the amount of blocks that wait to be parsed.
+                while (futures.size() > threads * 2) {
+                    addProteins(proteins, futures.poll().get());
+                }
+            }
+            //Rethrows an exception of the decompressing thread.
+            blockCount.get();
+            futures.add(executor.submit(new ProteinFileReader(remainder)));
+            while (!futures.isEmpty()) {
+                addProteins(proteins, futures.poll().get());
+            }
+        } finally {
+            decompressor.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Finds the start of the last protein record in a block.
+     *
+     * @param block decompressed block of the fasta file.
+     * @return start of the last record, or 0 if the block contains no record start after its first byte.
+     */
+    private int findLastRecordStart(final byte[] block) {
+        for (int i = block.length - 1; i > 0; i--) {
+            if (block[i] == '>' && block[i - 1] == '\n') {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds a list of proteins to the protein collection.
+     *
+     * @param proteins protein collection.
+     * @param partProteins list of proteins.
+     */
+    private void addProteins(final ProteinDatabaseSequenceCollection proteins, final ArrayList<ProteinDatabaseSequence> partProteins) {
+        for (ProteinDatabaseSequence protein : partProteins) {
+            proteins.addProtein(protein);
+        }
+    }
+
+    /**
+     * Memory-maps an uncompressed fasta file and parses its parts with multiple threads.
+     * There are at least as many parts as threads, and no part is larger than MAXIMUM_PART_SIZE.
+     *
+     * @param database database file.
+     * @param proteins protein collection.
+     * @param threads amount of threads.
+     * @throws IOException could not read the file.
+     * @throws InterruptedException process was interrupted.
+     * @throws ExecutionException could not execute the process.
+     */
+    private void readMappedFile(final String database, final ProteinDatabaseSequenceCollection proteins, final Integer threads)
+            throws IOException, InterruptedException, ExecutionException {
+        try (RandomAccessFile file = new RandomAccessFile(database, "r"); FileChannel fileChannel = file.getChannel()) {
+            long size = fileChannel.size();
+            long partCount = Math.max(threads, (size + MAXIMUM_PART_SIZE - 1) / MAXIMUM_PART_SIZE);
+            long partSize = Math.max((size + partCount - 1) / partCount, 1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                ArrayList<Future<ArrayList<ProteinDatabaseSequence>>> futures = new ArrayList<>();
+                for (long start = 0; start < size; start += partSize) {
+                    ProteinFileReader partReader = new ProteinFileReader(fileChannel, size, start, Math.min(start + partSize, size));
+                    futures.add(executor.submit(partReader));
+                }
+                //Parts are added in file order.
+                for (Future<ArrayList<ProteinDatabaseSequence>> future : futures) {
+                    addProteins(proteins, future.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Call function which parses the protein records of a decompressed block or of a part of the fasta file.
+     *
+     * @return returns a list of the proteins in this block or part of the file.
+     * @throws IOException could not read the file.
+     */
+    @Override
+    public ArrayList<ProteinDatabaseSequence> call() throws IOException {
+        if (recordBlock != null) {
+            return parseRecords(ByteBuffer.wrap(recordBlock), recordBlock.length);
+        }
+        long start = findRecordStart(partStart);
+        long end = findRecordStart(partEnd);
+        if (start >= end) {
+            return new ArrayList<>();
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        return parseRecords(buffer, (int) (end - start));
+    }
+
+    /**
+     * Parses the protein records of a buffer. Bytes before the first record are skipped.
+     *
+     * @param buffer buffer that contains protein records.
+     * @param limit amount of bytes to parse.
+     * @return list of the proteins in the buffer.
+     */
+    private ArrayList<ProteinDatabaseSequence> parseRecords(final ByteBuffer buffer, final int limit) {
+        ArrayList<ProteinDatabaseSequence> partProteins = new ArrayList<>();
+        //The residues of a buffer are never larger than the buffer itself.
+        ProteinResidueArena arena = new ProteinResidueArena(limit);
+        int position = 0;
+        while (position < limit && !(buffer.get(position) == '>' && (position == 0 || buffer.get(position - 1) == '\n'))) {
+            position++;
+        }
+        while (position < limit) {
+            //Each iteration starts at the '>' of a header line.
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            byte[] header = new byte[lineEnd - position];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = buffer.get(position + i);
+            }
+            String proteinAccession = getProteinAccession(new String(header, StandardCharsets.UTF_8));
+            position = lineEnd + 1;
+            arena.startProtein();
+            while (position < limit && !(buffer.get(position) == '>' && buffer.get(position - 1) == '\n')) {
+                byte residue = buffer.get(position);
+                if (residue > ' ') {
+                    arena.addResidue(residue);
+                }
+                position++;
+            }
+            partProteins.add(arena.finishProtein(proteinAccession));
+        }
+        return partProteins;
+    }
+
+    /**
+     * Finds the first protein record that starts at or after the given position. A record starts with a '>' at the start of a line.
+     *
+     * @param position position in the file.
+     * @return start of the record, or the file size if there are no more records.
+     * @throws IOException could not read the file.
+     */
+    private long findRecordStart(final long position) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(1 << 16);
+        long offset = Math.max(position - 1, 0);
+        byte previous = '\n';
+        while (offset < fileSize) {
+            window.clear();
+            int read = channel.read(window, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte current = window.get(i);
+                if (offset + i >= position && current == '>' && previous == '\n') {
+                    return offset + i;
+                }
+                previous = current;
+            }
+            offset += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Returns the protein accession of a fasta header line.
+     *
+     * @param line header line that starts with '>'.
+     * @return protein accession as String.
+     */
+    private String getProteinAccession(final String line) {
+        String id = line.trim().split(" ")[0].replace(">", "");
+        if (id.contains("|")) {
+            return id.split("\\|")[1];
+        }
+        return id;
+    }
 }
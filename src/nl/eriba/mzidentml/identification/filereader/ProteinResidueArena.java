@@ -0,0 +1,100 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.filereader;
+
+import nl.eriba.mzidentml.identification.objects.general.ProteinDatabaseSequence;
+import nl.eriba.mzidentml.tools.CalculationTools;
+
+/**
+ * Packs the amino acid sequences of many proteins into large byte arrays. Each protein is created as a view of one of these arrays,
+ * so a protein database does not need a separate String object for each protein sequence.
+ * A protein is never split over two arrays: if an array is full, the residues of the current protein are moved to a new array.
+ *
+ * @author vnijenhuis
+ */
+public class ProteinResidueArena {
+
+    /**
+     * Minimum size of a new residue array.
+     */
+    private final int chunkSize;
+
+    /**
+     * Tools to calculate the protein mass.
+     */
+    private final CalculationTools tools;
+
+    /**
+     * Residue array that is currently filled.
+     */
+    private byte[] chunk;
+
+    /**
+     * Next free position of the current residue array.
+     */
+    private int position;
+
+    /**
+     * Start of the current protein in the current residue array.
+     */
+    private int proteinStart;
+
+    /**
+     * Creates a new residue arena.
+     *
+     * @param chunkSize minimum size of each residue array. Should be close to the expected amount of residues to avoid unused space.
+     */
+    public ProteinResidueArena(final int chunkSize) {
+        this.chunkSize = Math.max(chunkSize, 16);
+        this.tools = new CalculationTools();
+        this.chunk = new byte[this.chunkSize];
+        this.position = 0;
+        this.proteinStart = 0;
+    }
+
+    /**
+     * Starts the sequence of a new protein.
+     */
+    public final void startProtein() {
+        this.proteinStart = this.position;
+    }
+
+    /**
+     * Adds a residue to the sequence of the current protein.
+     *
+     * @param residue amino acid character.
+     */
+    public final void addResidue(final byte residue) {
+        if (this.position == this.chunk.length) {
+            moveProtein();
+        }
+        this.chunk[this.position] = residue;
+        this.position++;
+    }
+
+    /**
+     * Moves the residues of the current protein to a new residue array.
+     */
+    private void moveProtein() {
+        int length = this.position - this.proteinStart;
+        byte[] newChunk = new byte[(int) Math.min(Math.max((long) this.chunkSize, length * 2L), Integer.MAX_VALUE - 8)];
+        System.arraycopy(this.chunk, this.proteinStart, newChunk, 0, length);
+        this.chunk = newChunk;
+        this.proteinStart = 0;
+        this.position = length;
+    }
+
+    /**
+     * Finishes the sequence of the current protein and creates the protein object.
+     *
+     * @param proteinAccession protein accession id.
+     * @return protein object that refers to the residues of this arena.
+     */
+    public final ProteinDatabaseSequence finishProtein(final String proteinAccession) {
+        int length = this.position - this.proteinStart;
+        Double proteinMass = tools.calculateProteinMass(this.chunk, this.proteinStart, length);
+        return new ProteinDatabaseSequence(this.chunk, this.proteinStart, length, proteinAccession, proteinMass);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.filereader;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationResult;
+
+/**
+ * Parsing stage of the spectrum processing. Reads the spectrum results in batches, submits each batch to the enrichment executor and adds the
+ * future of the batch to a bounded queue. The queue is read in order by the output stage, so reading stops while the queue is full.
+ *
+ * @author vnijenhuis
+ */
+public class SpectrumBatchProducer implements Callable<Integer> {
+
+    /**
+     * Spectrum results of the mzid file.
+     */
+    private final Iterable<SpectrumIdentificationResult> spectrumResults;
+
+    /**
+     * Reader with the shared collections that creates the reader of each batch.
+     */
+    private final MzIdFileReader batchReaderTemplate;
+
+    /**
+     * Amount of SpectrumIdentificationResult objects per batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Executor that processes the batches.
+     */
+    private final ExecutorService enrichmentExecutor;
+
+    /**
+     * Futures of the submitted batches in reading order.
+     */
+    private final BlockingQueue<Future<ArrayList<Object>>> batchQueue;
+
+    /**
+     * Future that marks the end of the batches.
+     */
+    private final Future<ArrayList<Object>> endOfBatches;
+
+    /**
+     * Creates the parsing stage.
+     *
+     * @param spectrumResults spectrum results of the mzid file.
+     * @param batchReaderTemplate reader with the shared collections that creates the reader of each batch.
+     * @param batchSize amount of SpectrumIdentificationResult objects per batch.
+     * @param enrichmentExecutor executor that processes the batches.
+     * @param batchQueue bounded queue for the futures of the submitted batches.
+     * @param endOfBatches future that is added to the queue after the last batch.
+     */
+    public SpectrumBatchProducer(final Iterable<SpectrumIdentificationResult> spectrumResults, final MzIdFileReader batchReaderTemplate, final int batchSize,
+            final ExecutorService enrichmentExecutor, final BlockingQueue<Future<ArrayList<Object>>> batchQueue, final Future<ArrayList<Object>> endOfBatches) {
+        this.spectrumResults = spectrumResults;
+        this.batchReaderTemplate = batchReaderTemplate;
+        this.batchSize = batchSize;
+        this.enrichmentExecutor = enrichmentExecutor;
+        this.batchQueue = batchQueue;
+        this.endOfBatches = endOfBatches;
+    }
+
+    /**
+     * Reads and submits all batches. The end of the batches is also marked if reading fails, so the output stage does not keep waiting.
+     *
+     * @return amount of SpectrumIdentificationResult objects that were read.
+     * @throws InterruptedException the output stage stopped while this stage was waiting for space in the queue.
+     */
+    @Override
+    public Integer call() throws InterruptedException {
+        Integer count = 0;
+        boolean interrupted = false;
+        try {
+            ArrayList<SpectrumIdentificationResult> spectrumResultBatch = new ArrayList<>(batchSize);
+            for (SpectrumIdentificationResult spectrumIdResult : spectrumResults) {
+                count++;
+                spectrumResultBatch.add(spectrumIdResult);
+                if (spectrumResultBatch.size() == batchSize) {
+                    submitBatch(spectrumResultBatch);
+                    spectrumResultBatch = new ArrayList<>(batchSize);
+                }
+                if (count % 2000 == 0) {
+                    System.out.println("Matched data for " + count + " entries.");
+                }
+            }
+            if (!spectrumResultBatch.isEmpty()) {
+                submitBatch(spectrumResultBatch);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            throw e;
+        } finally {
+            //After an interrupt the output stage has stopped reading the queue.
+            if (!interrupted) {
+                batchQueue.put(endOfBatches);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Submits a batch to the enrichment executor and adds its future to the queue. Blocks while the queue is full.
+     *
+     * @param spectrumResultBatch batch of SpectrumIdentificationResult objects.
+     * @throws InterruptedException the output stage stopped while waiting for space in the queue.
+     */
+    private void submitBatch(final ArrayList<SpectrumIdentificationResult> spectrumResultBatch) throws InterruptedException {
+        Callable<ArrayList<Object>> callable = batchReaderTemplate.createBatchReader(spectrumResultBatch);
+        batchQueue.put(enrichmentExecutor.submit(callable));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.filereader;
+
+/**
+ * Worker counts and queue sizes of the stages that process the spectrum results of a mzid file.
+ * Spectrum results are parsed by a single thread, enriched by a pool of worker threads and written by one thread per output file.
+ * Each stage blocks when the queue to the next stage is full, so a slow stage limits the memory used by the faster stages.
+ *
+ * @author vnijenhuis
+ */
+public class SpectrumPipelineSettings {
+
+    /**
+     * Default maximum amount of batches that are queued per output file.
+     */
+    public static final int DEFAULT_WRITER_QUEUE_SIZE = 16;
+
+    /**
+     * Amount of threads that process the spectrum batches.
+     */
+    private final Integer enrichmentThreads;
+
+    /**
+     * Maximum amount of batches that have been parsed but have not been passed to the output yet.
+     */
+    private final Integer batchQueueSize;
+
+    /**
+     * Maximum amount of batches that are queued per output file.
+     */
+    private final Integer writerQueueSize;
+
+    /**
+     * Creates the default settings for the given amount of threads.
+     *
+     * @param threads amount of threads that process the spectrum batches.
+     */
+    public SpectrumPipelineSettings(final Integer threads) {
+        this(threads, threads * 2, DEFAULT_WRITER_QUEUE_SIZE);
+    }
+
+    /**
+     * Creates the settings of the spectrum processing stages.
+     *
+     * @param enrichmentThreads amount of threads that process the spectrum batches.
+     * @param batchQueueSize maximum amount of batches that have been parsed but have not been passed to the output yet.
+     * @param writerQueueSize maximum amount of batches that are queued per output file.
+     */
+    public SpectrumPipelineSettings(final Integer enrichmentThreads, final Integer batchQueueSize, final Integer writerQueueSize) {
+        this.enrichmentThreads = Math.max(enrichmentThreads, 1);
+        this.batchQueueSize = Math.max(batchQueueSize, 1);
+        this.writerQueueSize = Math.max(writerQueueSize, 1);
+    }
+
+    /**
+     * Returns the amount of threads that process the spectrum batches.
+     *
+     * @return amount of threads as Integer.
+     */
+    public final Integer getEnrichmentThreads() {
+        return enrichmentThreads;
+    }
+
+    /**
+     * Returns the maximum amount of batches that have been parsed but have not been passed to the output yet.
+     *
+     * @return amount of batches as Integer.
+     */
+    public final Integer getBatchQueueSize() {
+        return batchQueueSize;
+    }
+
+    /**
+     * Returns the maximum amount of batches that are queued per output file.
+     *
+     * @return amount of batches as Integer.
+     */
+    public final Integer getWriterQueueSize() {
+        return writerQueueSize;
+    }
+
+    /**
+     * Returns the settings of a single file when the given amount of files is processed at the same time. The enrichment threads and the
+     * batch queue are divided over the files, the writer queue belongs to the output files of a single mzid file and is not divided.
+     *
+     * @param files amount of files that are processed at the same time.
+     * @return SpectrumPipelineSettings of a single file.
+     */
+    public final SpectrumPipelineSettings splitOver(final Integer files) {
+        if (files <= 1) {
+            return this;
+        }
+        return new SpectrumPipelineSettings(enrichmentThreads / files, batchQueueSize / files, writerQueueSize);
+    }
+}
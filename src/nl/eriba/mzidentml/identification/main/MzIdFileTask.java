@@ -0,0 +1,121 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.main;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import nl.eriba.mzidentml.identification.collections.output.ScanIdOutputCollection;
+import nl.eriba.mzidentml.identification.dataprocessing.database.ProteinDatabaseCache;
+
+/**
+ * Processes a single mzid file of a sample and writes its output files. The scan IDs are collected in a collection of this file only, which is
+ * merged into the scan ID collection of the sample when all files of the sample are done.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdFileTask implements Callable<ScanIdOutputCollection> {
+
+    /**
+     * Driver that processes the file.
+     */
+    private final PeptideMzIdentMLIdentification identification;
+
+    /**
+     * Scheduler that reserves the memory of the file.
+     */
+    private final MzIdSampleScheduler scheduler;
+
+    /**
+     * Path to the mzid file.
+     */
+    private final String file;
+
+    /**
+     * Path to write the output files to.
+     */
+    private final String outputDirectory;
+
+    /**
+     * Input numbers that determine which output files are written.
+     */
+    private final ArrayList<Integer> inputFileFlags;
+
+    /**
+     * Index of the sample.
+     */
+    private final Integer currentSampleIndex;
+
+    /**
+     * Index of the database of the file.
+     */
+    private final Integer currentIndex;
+
+    /**
+     * Highest database index.
+     */
+    private final Integer maximumIndex;
+
+    /**
+     * Amount of threads used for this file.
+     */
+    private final Integer threads;
+
+    /**
+     * Cache of the protein databases, or null if no databases were given.
+     */
+    private final ProteinDatabaseCache proteinDatabaseCache;
+
+    /**
+     * Names of the databases in index order.
+     */
+    private final ArrayList<String> rnaSeqDatabaseKeys;
+
+    /**
+     * Creates the task of a single mzid file.
+     *
+     * @param identification driver that processes the file.
+     * @param scheduler scheduler that reserves the memory of the file.
+     * @param file path to the mzid file.
+     * @param outputDirectory path to write the output files to.
+     * @param inputFileFlags input numbers that determine which output files are written.
+     * @param currentSampleIndex index of the sample.
+     * @param currentIndex index of the database of the file.
+     * @param maximumIndex highest database index.
+     * @param threads amount of threads used for this file.
+     * @param proteinDatabaseCache cache of the protein databases, or null if no databases were given.
+     * @param rnaSeqDatabaseKeys names of the databases in index order.
+     */
+    public MzIdFileTask(final PeptideMzIdentMLIdentification identification, final MzIdSampleScheduler scheduler, final String file, final String outputDirectory,
+            final ArrayList<Integer> inputFileFlags, final Integer currentSampleIndex, final Integer currentIndex, final Integer maximumIndex, final Integer threads,
+            final ProteinDatabaseCache proteinDatabaseCache, final ArrayList<String> rnaSeqDatabaseKeys) {
+        this.identification = identification;
+        this.scheduler = scheduler;
+        this.file = file;
+        this.outputDirectory = outputDirectory;
+        this.inputFileFlags = inputFileFlags;
+        this.currentSampleIndex = currentSampleIndex;
+        this.currentIndex = currentIndex;
+        this.maximumIndex = maximumIndex;
+        this.threads = threads;
+        this.proteinDatabaseCache = proteinDatabaseCache;
+        this.rnaSeqDatabaseKeys = rnaSeqDatabaseKeys;
+    }
+
+    /**
+     * Processes the mzid file once its estimated memory usage fits in the memory budget.
+     *
+     * @return ScanIdOutputCollection with the scan IDs of this file.
+     * @throws Exception the file could not be processed.
+     */
+    @Override
+    public ScanIdOutputCollection call() throws Exception {
+        int reservedMemory = scheduler.reserveMemory(file);
+        try {
+            return identification.processMzIdFile(file, outputDirectory, inputFileFlags, currentSampleIndex, currentIndex, maximumIndex, threads, proteinDatabaseCache, rnaSeqDatabaseKeys);
+        } finally {
+            scheduler.releaseMemory(reservedMemory);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.main;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import nl.eriba.mzidentml.identification.collections.output.ScanIdOutputCollection;
+
+/**
+ * Runs the mzid files of all samples and databases on a fixed amount of threads. A file is only started when its estimated memory usage fits
+ * in the memory budget next to the files that are already running. A file that is larger than the budget is started when no other file runs.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdSampleScheduler {
+
+    /**
+     * Estimated memory usage of a mzid file relative to its file size.
+     */
+    private static final long MZID_MEMORY_FACTOR = 4;
+
+    /**
+     * Amount of mzid files that are processed at the same time.
+     */
+    private final Integer parallelFiles;
+
+    /**
+     * Executor that runs the mzid files.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Memory budget in MB that is not used by running mzid files.
+     */
+    private final Semaphore availableMemory;
+
+    /**
+     * Memory budget in MB.
+     */
+    private final int memoryBudget;
+
+    /**
+     * Creates a scheduler for mzid files.
+     *
+     * @param parallelFiles amount of mzid files that are processed at the same time.
+     * @param memoryBudget maximum estimated memory usage of the running mzid files in bytes.
+     */
+    public MzIdSampleScheduler(final Integer parallelFiles, final long memoryBudget) {
+        this.parallelFiles = Math.max(parallelFiles, 1);
+        this.executor = Executors.newFixedThreadPool(this.parallelFiles);
+        this.memoryBudget = (int) Math.max(Math.min(memoryBudget / (1024 * 1024), Integer.MAX_VALUE), 1);
+        //Fair ordering keeps large files from waiting for smaller files that were submitted later.
+        this.availableMemory = new Semaphore(this.memoryBudget, true);
+    }
+
+    /**
+     * Returns the amount of mzid files that are processed at the same time.
+     *
+     * @return amount of files as Integer.
+     */
+    public final Integer getParallelFiles() {
+        return parallelFiles;
+    }
+
+    /**
+     * Submits a mzid file.
+     *
+     * @param task task that processes the mzid file.
+     * @return Future of the scan ID collection of the mzid file.
+     */
+    public final Future<ScanIdOutputCollection> submitFile(final MzIdFileTask task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Waits until the estimated memory usage of a mzid file fits in the memory budget and reserves it.
+     *
+     * @param mzIdFile path to the mzid file.
+     * @return reserved memory in MB, which has to be released when the file has been processed.
+     * @throws InterruptedException process was interrupted while waiting for memory.
+     */
+    public final int reserveMemory(final String mzIdFile) throws InterruptedException {
+        long estimate = new File(mzIdFile).length() * MZID_MEMORY_FACTOR / (1024 * 1024);
+        int reserved = (int) Math.max(Math.min(estimate, memoryBudget), 1);
+        availableMemory.acquire(reserved);
+        return reserved;
+    }
+
+    /**
+     * Releases the memory that was reserved for a mzid file.
+     *
+     * @param reserved reserved memory in MB.
+     */
+    public final void releaseMemory(final int reserved) {
+        availableMemory.release(reserved);
+    }
+
+    /**
+     * Stops accepting files. Files that have been submitted are still processed.
+     */
+    public final void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Stops all files that have not been processed yet.
+     */
+    public final void shutdownNow() {
+        executor.shutdownNow();
+    }
+}
@@ -10,11 +10,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import nl.eriba.mzidentml.identification.collections.output.DatabaseSearchPsmOutputCollection;
@@ -26,9 +25,11 @@ import nl.eriba.mzidentml.identification.collections.output.ScanIdOutputCollecti
 import nl.eriba.mzidentml.identification.collections.general.CombinedDatabaseReferenceCollection;
 import nl.eriba.mzidentml.identification.collections.general.MatchedIonSeriesCollection;
 import nl.eriba.mzidentml.identification.collections.mzid.MzIdProteinDetectionHypothesisCollection;
+import nl.eriba.mzidentml.identification.objects.output.ScanIdOutput;
 import nl.eriba.mzidentml.tools.InputTools;
+import nl.eriba.mzidentml.identification.dataprocessing.database.ProteinDatabaseCache;
+import nl.eriba.mzidentml.identification.dataprocessing.spectra.MzIdUnmarshaller;
 import nl.eriba.mzidentml.identification.dataprocessing.database.ProteinSequenceDatabaseMap;
-import nl.eriba.mzidentml.identification.dataprocessing.database.ProteinEntryDatabaseMatcher;
 import nl.eriba.mzidentml.identification.dataprocessing.database.ProteinEntryMatcher;
 import nl.eriba.mzidentml.identification.dataprocessing.spectra.ScanIdCollectionFlagger;
 import nl.eriba.mzidentml.identification.dataprocessing.spectra.ScanIdCollectionSeparator;
@@ -36,8 +37,10 @@ import nl.eriba.mzidentml.identification.dataprocessing.database.ScanIdDatabaseM
 import nl.eriba.mzidentml.identification.writer.csv.DBSearchPsmCsvWriter;
 import nl.eriba.mzidentml.identification.filereader.EntryFileReader;
 import nl.eriba.mzidentml.identification.writer.csv.MzIdCsvWriter;
+import nl.eriba.mzidentml.identification.writer.csv.MzIdStreamingOutput;
 import nl.eriba.mzidentml.identification.writer.csv.PeptideCsvWriter;
 import nl.eriba.mzidentml.identification.filereader.MzIdFileReader;
+import nl.eriba.mzidentml.identification.filereader.SpectrumPipelineSettings;
 import nl.eriba.mzidentml.identification.writer.csv.IonSeriesCsvWriter;
 import nl.eriba.mzidentml.identification.writer.csv.ProteinCsvWriter;
 import nl.eriba.mzidentml.identification.writer.csv.ProteinPeptideCsvWriter;
@@ -87,6 +90,46 @@ public class PeptideMzIdentMLIdentification {
      * Threshold for peak intensity.
      */
     private Double intensityThreshold;
+
+    /**
+     * Maximum estimated memory usage of the protein database cache in bytes.
+     */
+    private long cacheMemoryBudget;
+
+    /**
+     * Writes a snapshot of each parsed database file and mzid file if true.
+     */
+    private Boolean writeSnapshots;
+
+    /**
+     * Writes the psm, peptide, ion series and protein-peptide output while the mzid files are processed if true.
+     */
+    private Boolean streamOutput;
+
+    /**
+     * Sorts the streamed output like the collected output if true, otherwise rows are written in processing order.
+     */
+    private Boolean sortStreamedOutput;
+
+    /**
+     * Maximum amount of output objects per streamed file that are kept in memory while sorting.
+     */
+    private Integer sortBufferSize;
+
+    /**
+     * Worker counts and queue sizes of the spectrum processing stages.
+     */
+    private SpectrumPipelineSettings pipelineSettings;
+
+    /**
+     * Amount of mzid files that are processed at the same time.
+     */
+    private Integer parallelFiles;
+
+    /**
+     * Maximum estimated memory usage of the mzid files that are processed at the same time in bytes.
+     */
+    private long sampleMemoryBudget;
     
     /**
      * Provides acess to functions for general testing purposes.
@@ -142,6 +185,62 @@ public class PeptideMzIdentMLIdentification {
                 .desc("Requires integers(s) as input to determine the output files of MzIdentification.")
                 .build();
         commandlineOptions.addOption(intensity);
+        Option index = Option.builder("index")
+                .hasArg(false)
+                .desc("Creates a protein sequence index next to each database file of the -databases master file and an element index next to each mzid file of the -mzid master file, and exits. The protein sequence index is used instead of the database file in following runs.")
+                .build();
+        commandlineOptions.addOption(index);
+        Option cacheMemory = Option.builder("cacheMemory")
+                .hasArg()
+                .desc("Maximum memory in MB used to keep protein databases loaded. Least recently used databases are removed when the limit is reached. (DEFAULT: half of the maximum heap size)")
+                .build();
+        commandlineOptions.addOption(cacheMemory);
+        Option snapshot = Option.builder("snapshot")
+                .hasArg(false)
+                .desc("Writes a binary snapshot next to each database file and mzid file that is parsed. The snapshot is used instead of the parsed file in following runs. Ion fragments are only decoded when they are needed if "
+                        + "an existing snapshot is read, so the memory saving applies from the second run on.")
+                .build();
+        commandlineOptions.addOption(snapshot);
+        Option stream = Option.builder("stream")
+                .hasArg(false)
+                .desc("Writes the DB search psm, peptide, ion series and protein-peptide output while the mzid files are processed instead of collecting all output first.")
+                .build();
+        commandlineOptions.addOption(stream);
+        Option sortBuffer = Option.builder("sortBuffer")
+                .hasArg()
+                .desc("Maximum amount of rows per streamed output file that are kept in memory while sorting. Larger files are sorted on disk. (DEFAULT: 100000)")
+                .build();
+        commandlineOptions.addOption(sortBuffer);
+        Option unsorted = Option.builder("unsorted")
+                .hasArg(false)
+                .desc("Writes streamed output in processing order instead of sorting it on score, protein group or sequence.")
+                .build();
+        commandlineOptions.addOption(unsorted);
+        Option enrichThreads = Option.builder("enrichThreads")
+                .hasArg()
+                .desc("Amount of threads that process the spectrum results of a mzid file. (DEFAULT: -threads)")
+                .build();
+        commandlineOptions.addOption(enrichThreads);
+        Option batchQueue = Option.builder("batchQueue")
+                .hasArg()
+                .desc("Maximum amount of spectrum batches that are read ahead of the output. Reading waits while this amount is reached. (DEFAULT: 2 * -enrichThreads)")
+                .build();
+        commandlineOptions.addOption(batchQueue);
+        Option writerQueue = Option.builder("writerQueue")
+                .hasArg()
+                .desc("Maximum amount of spectrum batches per streamed output file that are waiting to be written. (DEFAULT: " + SpectrumPipelineSettings.DEFAULT_WRITER_QUEUE_SIZE + ")")
+                .build();
+        commandlineOptions.addOption(writerQueue);
+        Option parallelFilesOption = Option.builder("parallelFiles")
+                .hasArg()
+                .desc("Amount of mzid files that are processed at the same time. The -threads are divided over these files. (DEFAULT: 1)")
+                .build();
+        commandlineOptions.addOption(parallelFilesOption);
+        Option sampleMemory = Option.builder("sampleMemory")
+                .hasArg()
+                .desc("Maximum estimated memory in MB used by the mzid files that are processed at the same time. A file waits until its estimate fits. (DEFAULT: maximum heap size minus -cacheMemory)")
+                .build();
+        commandlineOptions.addOption(sampleMemory);
         //Implements the MzIdCsvWriter class.
         mzidScanIdCsvWriter = new MzIdCsvWriter();
         //Implements the input tools class.
@@ -198,6 +297,25 @@ public class PeptideMzIdentMLIdentification {
                 matchToDatabases = true;
             }
             EntryFileReader reader = new EntryFileReader();
+            if (cmd.hasOption("index")) {
+                if (!matchToDatabases && inputFile == null) {
+                    System.out.println("WARNING: -index requires a databases master file given with -databases or a mzid master file given with -mzid.");
+                    return;
+                }
+                separator = getSeparator();
+                if (matchToDatabases) {
+                    ArrayList<String> databaseList = reader.readMainTextFile(databaseTextFile);
+                    LinkedHashMap<String, ArrayList<String>> databaseEntryMap = reader.createDatabaseHashMap(databaseList, separator);
+                    ProteinSequenceDatabaseMap databaseMap = new ProteinSequenceDatabaseMap();
+                    databaseMap.createProteinSequenceIndices(databaseEntryMap, getThreads(cmd));
+                }
+                if (inputFile != null && inputTools.isTxtFile(inputFile)) {
+                    ArrayList<String> entryFileList = reader.readMainTextFile(inputFile);
+                    LinkedHashMap<String, ArrayList<String>> mzidEntryMap = reader.createMzIdHashMap(entryFileList, separator);
+                    new MzIdUnmarshaller().createElementIndices(mzidEntryMap);
+                }
+                return;
+            }
             String outputDirectory = cmd.getOptionValue("output");
             String[] outputType = cmd.getOptionValues("outputFiles");
             ArrayList<Integer> inputFileFlags = new ArrayList<>();
@@ -213,6 +331,14 @@ public class PeptideMzIdentMLIdentification {
             Integer threads = getThreads(cmd);
             //Set the standard threshold value to 5% (0.05).
             intensityThreshold = generalTools.getIntensityThreshold(cmd);
+            cacheMemoryBudget = getCacheMemoryBudget(cmd);
+            writeSnapshots = cmd.hasOption("snapshot");
+            streamOutput = cmd.hasOption("stream");
+            sortStreamedOutput = !cmd.hasOption("unsorted");
+            sortBufferSize = getSortBufferSize(cmd);
+            pipelineSettings = getPipelineSettings(cmd, threads);
+            parallelFiles = Math.max(getIntegerOption(cmd, "parallelFiles", 1), 1);
+            sampleMemoryBudget = getSampleMemoryBudget(cmd);
             //Determine path separator.
             inputTools.isDirectory(outputDirectory);
             separator = getSeparator();
@@ -259,11 +385,8 @@ public class PeptideMzIdentMLIdentification {
             throws IOException, InterruptedException, ExecutionException, SAXException, ParserConfigurationException {
         System.out.println("Starting identification of PeptideShaker mzid data...");
         long startTime = System.currentTimeMillis() / 1000;
-        HashMap<String, HashMap<Integer, ProteinDatabaseSequenceCollection>> proteinSequenceDatabaseMap = new HashMap<>();
-        if (matchToDatabases) {
-            ProteinSequenceDatabaseMap databaseMap = new ProteinSequenceDatabaseMap();
-            proteinSequenceDatabaseMap = databaseMap.createProteinSequenceDatabaseMap(databaseEntryMap);
-        }
+        //Databases are loaded when they are used for the first time.
+        ProteinDatabaseCache proteinDatabaseCache = new ProteinDatabaseCache(databaseEntryMap, cacheMemoryBudget, writeSnapshots, threads);
         ArrayList<String> rnaSeqDatabaseKeys = new ArrayList<>();
         Integer maximumIndex = mzidEntryMap.keySet().size() - 1;
         for (String rnaSeq : databaseEntryMap.keySet()) {
@@ -276,84 +399,54 @@ public class PeptideMzIdentMLIdentification {
             }
         }
         sampleSize = 1;
-        for (Integer currentSampleIndex = 0; currentSampleIndex < sampleSize; currentSampleIndex++) {
-            ScanIdOutputCollection scanIdOutputCollection = new ScanIdOutputCollection();
-            for (int currentIndex = 0; currentIndex < rnaSeqDatabaseKeys.size(); currentIndex++) {
-                String database = rnaSeqDatabaseKeys.get(currentIndex);
-                ArrayList<String> list = mzidEntryMap.get(rnaSeqDatabaseKeys.get(currentIndex));
-                String file = list.get(currentSampleIndex);
-                //Get correct file.
-                String sampleOutputDirectory = generateOutputDirectory(file, outputDirectory);
-                //Process the mzid files.
-                mzidFormatFileReader = new MzIdFileReader(null, null, null, null, scanIdOutputCollection, null, null, null, inputFileFlags, currentIndex, maximumIndex, intensityThreshold);
-                ArrayList<Object> collections = mzidFormatFileReader.collectPeptideShakerScanIDs(file, scanIdOutputCollection, inputFileFlags, currentIndex, maximumIndex, threads, intensityThreshold);
-                //Get data from returned collection and write data to corresponding files.
-                System.out.println("Processin data from sample " + file + " " + database);
-                int index = 0;
-                if (matchToDatabases) {
-                    ScanIdOutputCollection collection = (ScanIdOutputCollection) collections.get(index);
-                    scanIdOutputCollection.getScanIdEntryList().addAll(collection.getScanIdEntryList());
+        MzIdSampleScheduler scheduler = new MzIdSampleScheduler(parallelFiles, sampleMemoryBudget);
+        try {
+            //The files of the next sample are processed while the current sample is matched. Samples are not submitted further ahead, because the
+            //scan IDs of processed files are kept in memory until their sample is merged and do not count towards the memory budget.
+            ArrayList<Future<ScanIdOutputCollection>> nextSampleFutures = submitSampleFiles(scheduler, outputDirectory, mzidEntryMap, rnaSeqDatabaseKeys, 0,
+                    inputFileFlags, maximumIndex, threads, proteinDatabaseCache);
+            for (Integer currentSampleIndex = 0; currentSampleIndex < sampleSize; currentSampleIndex++) {
+                ArrayList<Future<ScanIdOutputCollection>> sampleFutures = nextSampleFutures;
+                if (currentSampleIndex + 1 < sampleSize) {
+                    nextSampleFutures = submitSampleFiles(scheduler, outputDirectory, mzidEntryMap, rnaSeqDatabaseKeys, currentSampleIndex + 1, inputFileFlags, maximumIndex,
+                            threads, proteinDatabaseCache);
                 }
-                index++;
-                for (Integer num : inputFileFlags) {
-                    switch (num) {
-                        case 1:
-                            DatabaseSearchPsmOutputCollection psmCollection = (DatabaseSearchPsmOutputCollection) collections.get(index);
-                            createDatabaseSearchOutput(psmCollection, sampleOutputDirectory);
-                            break;
-                        case 2:
-                            PeptideOutputCollection peptideCollection = (PeptideOutputCollection) collections.get(index);
-                            index++;
-                            MatchedIonSeriesCollection ionSeriesCollection = (MatchedIonSeriesCollection) collections.get(index);
-                            createPeptideOutput(peptideCollection, ionSeriesCollection, sampleOutputDirectory);
-                            break;
-                        case 3:
-                            ProteinPeptideOutputCollection proteinPeptideCollection = (ProteinPeptideOutputCollection) collections.get(index);
-                            createProteinPeptideOutput(proteinPeptideCollection, sampleOutputDirectory);
-                            break;
-                        case 4:
-                            MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection = (MzIdProteinDetectionHypothesisCollection) collections.get(index);
-                            index++;
-                            CombinedDatabaseReferenceCollection combinedReferenceCollection = (CombinedDatabaseReferenceCollection) collections.get(index);
-                            ProteinDatabaseSequenceCollection proteinDatabase = getProteinDatabase(currentSampleIndex, currentIndex, proteinSequenceDatabaseMap, rnaSeqDatabaseKeys);
-                            createProteinOutputWithDatabase(proteinHypothesisCollection, combinedReferenceCollection, proteinDatabase, sampleOutputDirectory, threads);
-                            break;
-                        default:
-                            break;
-                    }
-                    index++;
-                }
-            }
-            if (matchToDatabases) {
-                //Set ScanID flag depending on sequence status.
-                ScanIdCollectionFlagger flagger = new ScanIdCollectionFlagger();
-                ScanIdOutputCollection finalScanCollection = flagger.setFlags(scanIdOutputCollection, maximumIndex);
-                //Separate ScanID objects depending on the given flag.
-                ScanIdCollectionSeparator scanIdEntrySeparator = new ScanIdCollectionSeparator();
-                ArrayList<ScanIdOutputCollection> scanIdEntryCollectionList = scanIdEntrySeparator.separateScanEntries(finalScanCollection);
-                //Use database matching on the flagged ScanIds.
-                ScanIdOutputCollection flaggedCollection = scanIdEntryCollectionList.get(1);
-                int entryCount = 0;
-                for (Map.Entry<String, HashMap<Integer, ProteinDatabaseSequenceCollection>> mapEntry : proteinSequenceDatabaseMap.entrySet()) {
+                ScanIdOutputCollection scanIdOutputCollection = mergeScanIdCollections(sampleFutures);
+                if (matchToDatabases) {
+                    //Set ScanID flag depending on sequence status.
+                    ScanIdCollectionFlagger flagger = new ScanIdCollectionFlagger();
+                    ScanIdOutputCollection finalScanCollection = flagger.setFlags(scanIdOutputCollection, maximumIndex);
+                    //Separate ScanID objects depending on the given flag.
+                    ScanIdCollectionSeparator scanIdEntrySeparator = new ScanIdCollectionSeparator();
+                    ArrayList<ScanIdOutputCollection> scanIdEntryCollectionList = scanIdEntrySeparator.separateScanEntries(finalScanCollection);
+                    //Use database matching on the flagged ScanIds.
+                    ScanIdOutputCollection flaggedCollection = scanIdEntryCollectionList.get(1);
+                    //The databases of this sample are loaded concurrently. Single database files are matched to all samples.
+                    LinkedHashMap<String, ProteinDatabaseSequenceCollection> proteinDatabases = new LinkedHashMap<>();
                     if (!flaggedCollection.getScanIdEntryList().isEmpty()) {
-                        for (Map.Entry<Integer, ProteinDatabaseSequenceCollection> proteinEntry : mapEntry.getValue().entrySet()) {
-                            //Match key to the current index of the size. -1 for single database files.
-                            if (Objects.equals(proteinEntry.getKey(), currentSampleIndex) || proteinEntry.getKey() == -1) {
-                                ScanIdDatabaseMatcher matcher = new ScanIdDatabaseMatcher(null, null, rnaSeqDatabaseKeys.get(entryCount), proteinEntry.getValue());
-                                flaggedCollection = matcher.matchSequencesToDatabase(flaggedCollection, rnaSeqDatabaseKeys.get(entryCount), proteinEntry.getValue(), threads);
+                        proteinDatabases = proteinDatabaseCache.getProteinDatabases(rnaSeqDatabaseKeys, currentSampleIndex);
+                    }
+                    for (String databaseName : rnaSeqDatabaseKeys) {
+                        if (!flaggedCollection.getScanIdEntryList().isEmpty()) {
+                            ProteinDatabaseSequenceCollection proteinDatabase = proteinDatabases.get(databaseName);
+                            if (proteinDatabase != null) {
+                                ScanIdDatabaseMatcher matcher = new ScanIdDatabaseMatcher(null, null);
+                                flaggedCollection = matcher.matchSequencesToDatabase(flaggedCollection, databaseName, proteinDatabase, threads);
                                 scanIdEntryCollectionList.set(1, flaggedCollection);
                             }
+                        } else {
+                            System.out.println("WARNING: No scan IDs available in the flagged scan ID collection.");
                         }
-                    } else {
-                        System.out.println("WARNING: No scan IDs available in the flagged scan ID collection.");
                     }
-                    entryCount++;
+                    String directory = outputDirectory + method + "_mzid_non_flagged_scanIDs.csv";
+                    mzidScanIdCsvWriter.writeCsv(directory, scanIdEntryCollectionList.get(0), rnaSeqDatabaseKeys);
+                    directory = outputDirectory + method + "_mzid_flagged_scanIDs.csv";
+                    mzidScanIdCsvWriter.writeCsv(directory, scanIdEntryCollectionList.get(1), rnaSeqDatabaseKeys);
                 }
-                String directory = outputDirectory + method + "_mzid_non_flagged_scanIDs.csv";
-                mzidScanIdCsvWriter.writeCsv(directory, scanIdEntryCollectionList.get(0), rnaSeqDatabaseKeys);
-                directory = outputDirectory + method + "_mzid_flagged_scanIDs.csv";
-                mzidScanIdCsvWriter.writeCsv(directory, scanIdEntryCollectionList.get(1), rnaSeqDatabaseKeys);
             }
+        } finally {
+            //Stops the remaining files if a file could not be processed.
+            scheduler.shutdownNow();
         }
         long endTime = System.currentTimeMillis() / 1000;
         System.out.println("Process took " + (endTime - startTime) + " seconds.");
@@ -388,48 +481,143 @@ public class PeptideMzIdentMLIdentification {
                 sampleSize = entry.getValue().size();
             }
         }
-        for (Integer currentSampleIndex = 0; currentSampleIndex < sampleSize; currentSampleIndex++) {
-            ScanIdOutputCollection scanIdOutputCollection = new ScanIdOutputCollection();
-            for (int currentIndex = 0; currentIndex < rnaSeqDatabaseKeys.size(); currentIndex++) {
-                String database = rnaSeqDatabaseKeys.get(currentIndex);
-                ArrayList<String> list = mzidEntryMap.get(rnaSeqDatabaseKeys.get(currentIndex));
-                String file = list.get(currentSampleIndex);
-                String sampleOutputDirectory = generateOutputDirectory(file, outputDirectory);
-                mzidFormatFileReader = new MzIdFileReader(null, null, null, null, scanIdOutputCollection, null, null, null, inputFileFlags, currentIndex, maximumIndex, intensityThreshold);
-                ArrayList<Object> collections = mzidFormatFileReader.collectPeptideShakerScanIDs(file, scanIdOutputCollection, inputFileFlags, currentIndex, maximumIndex, threads, intensityThreshold);
-                System.out.println("Processin data from sample " + currentSampleIndex + " " + database);
-                //Start index at one because first index (index 0) contains scan id collection.
-                int index = 1;
-                for (Integer num : inputFileFlags) {
-                    switch (num) {
-                        case 1:
-                            DatabaseSearchPsmOutputCollection psmCollection = (DatabaseSearchPsmOutputCollection) collections.get(index);
-                            createDatabaseSearchOutput(psmCollection, sampleOutputDirectory);
-                            break;
-                        case 2:
-                            PeptideOutputCollection peptideCollection = (PeptideOutputCollection) collections.get(index);
-                            index++;
-                            createPeptideOutput(peptideCollection, (MatchedIonSeriesCollection) collections.get(index), sampleOutputDirectory);
-                            break;
-                        case 3:
-                            ProteinPeptideOutputCollection proteinPeptideCollection = (ProteinPeptideOutputCollection) collections.get(index);
-                            createProteinPeptideOutput(proteinPeptideCollection, sampleOutputDirectory);
-                            break;
-                        case 4:
-                            MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection = (MzIdProteinDetectionHypothesisCollection) collections.get(index);
-                            index++;
-                            CombinedDatabaseReferenceCollection combinedReferenceCollection = (CombinedDatabaseReferenceCollection) collections.get(index);
-                            createProteinOutputNoDatabase(proteinHypothesisCollection, combinedReferenceCollection, sampleOutputDirectory, threads);
-                            break;
-                        default:
-                            break;
+        MzIdSampleScheduler scheduler = new MzIdSampleScheduler(parallelFiles, sampleMemoryBudget);
+        try {
+            //Only the files of the next sample are submitted ahead, so the scan IDs of at most two samples are kept in memory.
+            ArrayList<Future<ScanIdOutputCollection>> nextSampleFutures = submitSampleFiles(scheduler, outputDirectory, mzidEntryMap, rnaSeqDatabaseKeys, 0,
+                    inputFileFlags, maximumIndex, threads, null);
+            for (Integer currentSampleIndex = 0; currentSampleIndex < sampleSize; currentSampleIndex++) {
+                ArrayList<Future<ScanIdOutputCollection>> sampleFutures = nextSampleFutures;
+                if (currentSampleIndex + 1 < sampleSize) {
+                    nextSampleFutures = submitSampleFiles(scheduler, outputDirectory, mzidEntryMap, rnaSeqDatabaseKeys, currentSampleIndex + 1, inputFileFlags, maximumIndex,
+                            threads, null);
+                }
+                mergeScanIdCollections(sampleFutures);
+                long endTime = System.currentTimeMillis() / 1000;
+                System.out.println("Process took " + (endTime - startTime) + " seconds.");
+            }
+        } finally {
+            //Stops the remaining files if a file could not be processed.
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits the mzid files of a single sample to the scheduler. Threads are divided over the files that are processed at the same time.
+     *
+     * @param scheduler scheduler that runs the mzid files.
+     * @param outputDirectory path to write the output files to.
+     * @param mzidEntryMap LinkedHashMap with database as key and ArrayList of mzid files as value.
+     * @param rnaSeqDatabaseKeys names of the databases in index order.
+     * @param currentSampleIndex index of the sample.
+     * @param inputFileFlags input numbers that determine which output files are written.
+     * @param maximumIndex highest database index.
+     * @param threads amount of threads used for this program.
+     * @param proteinDatabaseCache cache of the protein databases, or null if no databases were given.
+     * @return futures of the scan ID collections of the sample in database order.
+     */
+    private ArrayList<Future<ScanIdOutputCollection>> submitSampleFiles(final MzIdSampleScheduler scheduler, final String outputDirectory,
+            final LinkedHashMap<String, ArrayList<String>> mzidEntryMap, final ArrayList<String> rnaSeqDatabaseKeys, final Integer currentSampleIndex, final ArrayList<Integer> inputFileFlags,
+            final Integer maximumIndex, final Integer threads, final ProteinDatabaseCache proteinDatabaseCache) {
+        Integer fileThreads = Math.max(threads / scheduler.getParallelFiles(), 1);
+        ArrayList<Future<ScanIdOutputCollection>> fileFutures = new ArrayList<>();
+        for (int currentIndex = 0; currentIndex < rnaSeqDatabaseKeys.size(); currentIndex++) {
+            String file = mzidEntryMap.get(rnaSeqDatabaseKeys.get(currentIndex)).get(currentSampleIndex);
+            fileFutures.add(scheduler.submitFile(new MzIdFileTask(this, scheduler, file, outputDirectory, inputFileFlags, currentSampleIndex, currentIndex, maximumIndex,
+                    fileThreads, proteinDatabaseCache, rnaSeqDatabaseKeys)));
+        }
+        return fileFutures;
+    }
+
+    /**
+     * Merges the scan ID collections of the files of a sample in database order, which gives the same collection as processing the files one by one.
+     *
+     * @param fileFutures futures of the scan ID collections in database order.
+     * @return ScanIdOutputCollection of the sample.
+     * @throws InterruptedException process was interrupted while waiting for a file.
+     * @throws ExecutionException a file could not be processed.
+     */
+    private ScanIdOutputCollection mergeScanIdCollections(final ArrayList<Future<ScanIdOutputCollection>> fileFutures) throws InterruptedException, ExecutionException {
+        ScanIdOutputCollection scanIdOutputCollection = new ScanIdOutputCollection();
+        for (int currentIndex = 0; currentIndex < fileFutures.size(); currentIndex++) {
+            for (ScanIdOutput scanIdEntry : fileFutures.get(currentIndex).get().getScanIdEntryList()) {
+                scanIdOutputCollection.mergeScanIdEntry(scanIdEntry, currentIndex);
+            }
+        }
+        return scanIdOutputCollection;
+    }
+
+    /**
+     * Processes a single mzid file and writes its output files.
+     *
+     * @param file path to the mzid file.
+     * @param outputDirectory path to write the output files to.
+     * @param inputFileFlags input numbers that determine which output files are written.
+     * @param currentSampleIndex index of the sample.
+     * @param currentIndex index of the database of the file.
+     * @param maximumIndex highest database index.
+     * @param threads amount of threads used for this file.
+     * @param proteinDatabaseCache cache of the protein databases, or null if no databases were given.
+     * @param rnaSeqDatabaseKeys names of the databases in index order.
+     * @return ScanIdOutputCollection with the scan IDs of this file.
+     * @throws IOException could not find or open the file specified.
+     * @throws InterruptedException process was interrupted by another process.
+     * @throws ExecutionException could not execute the process.
+     */
+    final ScanIdOutputCollection processMzIdFile(final String file, final String outputDirectory, final ArrayList<Integer> inputFileFlags, final Integer currentSampleIndex,
+            final Integer currentIndex, final Integer maximumIndex, final Integer threads, final ProteinDatabaseCache proteinDatabaseCache, final ArrayList<String> rnaSeqDatabaseKeys)
+            throws IOException, InterruptedException, ExecutionException {
+        String database = rnaSeqDatabaseKeys.get(currentIndex);
+        //Get correct file.
+        String sampleOutputDirectory = generateOutputDirectory(file, outputDirectory);
+        //Scan IDs of this file are merged into the sample collection when all files of the sample are done.
+        ScanIdOutputCollection scanIdOutputCollection = new ScanIdOutputCollection();
+        //Process the mzid files.
+        ArrayList<Object> collections = MzIdFileReader.collectPeptideShakerScanIDs(file, scanIdOutputCollection, inputFileFlags, currentIndex, maximumIndex, threads, intensityThreshold,
+                createStreamingOutput(sampleOutputDirectory, inputFileFlags), writeSnapshots, pipelineSettings.splitOver(parallelFiles));
+        //Get data from returned collection and write data to corresponding files.
+        System.out.println("Processin data from sample " + file + " " + database);
+        //Start index at one because first index (index 0) contains scan id collection.
+        int index = 1;
+        for (Integer num : inputFileFlags) {
+            switch (num) {
+                case 1:
+                    DatabaseSearchPsmOutputCollection psmCollection = (DatabaseSearchPsmOutputCollection) collections.get(index);
+                    if (!streamOutput) {
+                        createDatabaseSearchOutput(psmCollection, sampleOutputDirectory);
                     }
+                    break;
+                case 2:
+                    PeptideOutputCollection peptideCollection = (PeptideOutputCollection) collections.get(index);
                     index++;
-                }
+                    MatchedIonSeriesCollection ionSeriesCollection = (MatchedIonSeriesCollection) collections.get(index);
+                    if (!streamOutput) {
+                        createPeptideOutput(peptideCollection, ionSeriesCollection, sampleOutputDirectory);
+                    }
+                    break;
+                case 3:
+                    ProteinPeptideOutputCollection proteinPeptideCollection = (ProteinPeptideOutputCollection) collections.get(index);
+                    if (!streamOutput) {
+                        createProteinPeptideOutput(proteinPeptideCollection, sampleOutputDirectory);
+                    }
+                    break;
+                case 4:
+                    MzIdProteinDetectionHypothesisCollection proteinHypothesisCollection = (MzIdProteinDetectionHypothesisCollection) collections.get(index);
+                    index++;
+                    CombinedDatabaseReferenceCollection combinedReferenceCollection = (CombinedDatabaseReferenceCollection) collections.get(index);
+                    if (proteinDatabaseCache != null) {
+                        ProteinDatabaseSequenceCollection proteinDatabase = getProteinDatabase(currentSampleIndex, currentIndex, proteinDatabaseCache, rnaSeqDatabaseKeys);
+                        createProteinOutputWithDatabase(proteinHypothesisCollection, combinedReferenceCollection, proteinDatabase, sampleOutputDirectory, threads);
+                    } else {
+                        createProteinOutputNoDatabase(proteinHypothesisCollection, combinedReferenceCollection, sampleOutputDirectory, threads);
+                    }
+                    break;
+                default:
+                    break;
             }
-            long endTime = System.currentTimeMillis() / 1000;
-            System.out.println("Process took " + (endTime - startTime) + " seconds.");
+            index++;
         }
+        return scanIdOutputCollection;
     }
 
     /**
@@ -451,6 +639,112 @@ public class PeptideMzIdentMLIdentification {
         return threads;
     }
 
+    /**
+     * Returns the memory budget of the protein database cache.
+     *
+     * @param cmd commandline arguments.
+     * @return memory budget in bytes.
+     */
+    private long getCacheMemoryBudget(CommandLine cmd) {
+        long budget = Runtime.getRuntime().maxMemory() / 2;
+        if (cmd.hasOption("cacheMemory")) {
+            try {
+                budget = Long.parseLong(cmd.getOptionValue("cacheMemory")) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a number as input instead of " + cmd.getOptionValue("cacheMemory")
+                        + ".\nCurrent input results in error: " + e.getMessage());
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * Returns the maximum amount of rows per streamed output file that are kept in memory while sorting.
+     *
+     * @param cmd commandline arguments.
+     * @return amount of rows as Integer.
+     */
+    private Integer getSortBufferSize(CommandLine cmd) {
+        Integer size = 100000;
+        if (cmd.hasOption("sortBuffer")) {
+            try {
+                size = Integer.parseInt(cmd.getOptionValue("sortBuffer"));
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a number as input instead of " + cmd.getOptionValue("sortBuffer")
+                        + ".\nCurrent input results in error: " + e.getMessage());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the memory budget of the mzid files that are processed at the same time.
+     *
+     * @param cmd commandline arguments.
+     * @return memory budget in bytes.
+     */
+    private long getSampleMemoryBudget(CommandLine cmd) {
+        long budget = Math.max(Runtime.getRuntime().maxMemory() - cacheMemoryBudget, 1024 * 1024);
+        if (cmd.hasOption("sampleMemory")) {
+            try {
+                budget = Long.parseLong(cmd.getOptionValue("sampleMemory")) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a number as input instead of " + cmd.getOptionValue("sampleMemory")
+                        + ".\nCurrent input results in error: " + e.getMessage());
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * Returns the worker count and queue sizes of the spectrum processing stages.
+     *
+     * @param cmd commandline arguments.
+     * @param threads amount of threads used for this program.
+     * @return SpectrumPipelineSettings object.
+     */
+    private SpectrumPipelineSettings getPipelineSettings(CommandLine cmd, Integer threads) {
+        Integer enrichmentThreads = getIntegerOption(cmd, "enrichThreads", threads);
+        Integer batchQueueSize = getIntegerOption(cmd, "batchQueue", enrichmentThreads * 2);
+        Integer writerQueueSize = getIntegerOption(cmd, "writerQueue", SpectrumPipelineSettings.DEFAULT_WRITER_QUEUE_SIZE);
+        return new SpectrumPipelineSettings(enrichmentThreads, batchQueueSize, writerQueueSize);
+    }
+
+    /**
+     * Returns the number of an option, or the default value if the option is not given or is not a number.
+     *
+     * @param cmd commandline arguments.
+     * @param option name of the option.
+     * @param defaultValue value if the option is not given.
+     * @return number as Integer.
+     */
+    private Integer getIntegerOption(CommandLine cmd, String option, Integer defaultValue) {
+        Integer value = defaultValue;
+        if (cmd.hasOption(option)) {
+            try {
+                value = Integer.parseInt(cmd.getOptionValue(option));
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a number as input instead of " + cmd.getOptionValue(option)
+                        + ".\nCurrent input results in error: " + e.getMessage());
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Creates the writers of the streamed output files of a single mzid file.
+     *
+     * @param sampleOutputDirectory directory to write the files to.
+     * @param inputFileFlags input numbers that determine which files should be written.
+     * @return MzIdStreamingOutput object, or null if the output is not streamed.
+     */
+    private MzIdStreamingOutput createStreamingOutput(final String sampleOutputDirectory, final ArrayList<Integer> inputFileFlags) {
+        if (!streamOutput) {
+            return null;
+        }
+        return new MzIdStreamingOutput(sampleOutputDirectory, inputFileFlags, sortStreamedOutput, sortBufferSize, pipelineSettings.getWriterQueueSize());
+    }
+
     /**
      * Returns the folder separator based on the system environment.
      * 
@@ -494,25 +788,21 @@ public class PeptideMzIdentMLIdentification {
     }
 
     /**
+     * Returns the protein database of the current sample and database.
      * 
-     * 
-     * @param currentSample
-     * @param currentIndex
-     * @param proteinDataMap
-     * @param rnaSeqDatabaseKeys
-     * @return 
-     */
-    private ProteinDatabaseSequenceCollection getProteinDatabase(final int currentSample, final int currentIndex, final HashMap<String, HashMap<Integer, ProteinDatabaseSequenceCollection>> proteinDataMap, final ArrayList<String> rnaSeqDatabaseKeys) {
-        ProteinDatabaseSequenceCollection proteinDatabase = new ProteinDatabaseSequenceCollection();
-        for (Map.Entry<String, HashMap<Integer, ProteinDatabaseSequenceCollection>> mapEntry : proteinDataMap.entrySet()) {
-            if (mapEntry.getKey().equals(rnaSeqDatabaseKeys.get(currentIndex))) {
-                for (Map.Entry<Integer, ProteinDatabaseSequenceCollection> proteinEntry : mapEntry.getValue().entrySet()) {
-                    //Match key to the current index of the size. -1 for single database files.
-                    if (proteinEntry.getKey() == currentSample || proteinEntry.getKey() == -1) {
-                        proteinDatabase = proteinEntry.getValue();
-                    }
-                }
-            }
+     * @param currentSample index of the current sample.
+     * @param currentIndex index of the current database.
+     * @param proteinDatabaseCache cache of the protein databases.
+     * @param rnaSeqDatabaseKeys list of database names.
+     * @return ProteinDatabaseSequenceCollection, which is empty if the database has no file for this sample.
+     * @throws InterruptedException process was interrupted while waiting for the database.
+     * @throws ExecutionException could not load the database file.
+     */
+    private ProteinDatabaseSequenceCollection getProteinDatabase(final int currentSample, final int currentIndex, final ProteinDatabaseCache proteinDatabaseCache, final ArrayList<String> rnaSeqDatabaseKeys)
+            throws InterruptedException, ExecutionException {
+        ProteinDatabaseSequenceCollection proteinDatabase = proteinDatabaseCache.getProteinDatabase(rnaSeqDatabaseKeys.get(currentIndex), currentSample);
+        if (proteinDatabase == null) {
+            proteinDatabase = new ProteinDatabaseSequenceCollection();
         }
         return proteinDatabase;
     }
@@ -560,7 +850,7 @@ public class PeptideMzIdentMLIdentification {
      */
     private void createProteinOutputWithDatabase(final MzIdProteinDetectionHypothesisCollection mzIdProteinDetectionHypothesisCollection, final CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection,
             final ProteinDatabaseSequenceCollection proteinDatabase, final String sampleOutputDirectory, final Integer threads) throws IOException, InterruptedException, ExecutionException {
-        ProteinEntryDatabaseMatcher proteinEntryMatcher = new ProteinEntryDatabaseMatcher(null, null, null, null);
+        ProteinEntryMatcher proteinEntryMatcher = new ProteinEntryMatcher(null, null, null);
         ProteinOutputCollection proteinOutputCollection = proteinEntryMatcher.createProteinEntryCollection(proteinDatabase, mzIdProteinDetectionHypothesisCollection, combinedDatabaseReferenceCollection, threads);
         ProteinCsvWriter proteinWriter = new ProteinCsvWriter();
         proteinWriter.writeProteinCsv(sampleOutputDirectory, proteinOutputCollection);
@@ -575,7 +865,7 @@ public class PeptideMzIdentMLIdentification {
     private void createProteinOutputNoDatabase(final MzIdProteinDetectionHypothesisCollection mzIdProteinDetectionHypothesisCollection, final CombinedDatabaseReferenceCollection combinedDatabaseReferenceCollection,
             final String sampleOutputDirectory, final Integer threads) throws ExecutionException, InterruptedException, IOException {
         ProteinEntryMatcher proteinEntryMatcher = new ProteinEntryMatcher(null, null, null);
-        ProteinOutputCollection proteinOutputCollection = proteinEntryMatcher.createProteinEntryCollection(mzIdProteinDetectionHypothesisCollection, combinedDatabaseReferenceCollection, threads);
+        ProteinOutputCollection proteinOutputCollection = proteinEntryMatcher.createProteinEntryCollection(null, mzIdProteinDetectionHypothesisCollection, combinedDatabaseReferenceCollection, threads);
         ProteinCsvWriter proteinWriter = new ProteinCsvWriter();
         proteinWriter.writeProteinCsv(sampleOutputDirectory, proteinOutputCollection);
     }
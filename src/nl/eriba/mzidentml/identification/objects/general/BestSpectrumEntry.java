@@ -1,9 +1,11 @@
 /*
  * @author Vikthor Nijenhuis
- * @project Peptide mzIdentML Identfication Module * 
+ * @project Peptide mzIdentML Identfication Module *
  */
 package nl.eriba.mzidentml.identification.objects.general;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Object to define the best spectrum score per peptide sequence.
  *
@@ -16,27 +18,33 @@ public class BestSpectrumEntry {
      */
     private final String sequence;
 
+    /**
+     * Id of the SpectrumIdentificationItem with the highest score.
+     */
+    private String spectrumItemId;
+
     /**
      * Peptide sequence score.
      */
-    private Double score;
+    private double score;
 
     /**
-     * Flag used to see if the highest scoring peptide has been found.
+     * Flag used to see if the highest scoring peptide has been found. Can be claimed by one thread only.
      */
-    private Boolean flag;
+    private final AtomicBoolean claimed;
 
     /**
      * Defines a SpectrumSequenceScoreFlag object.
      *
      * @param sequence peptide sequence.
+     * @param spectrumItemId id of the SpectrumIdentificationItem.
      * @param score peptide sequence score.
-     * @param flag peptide flag.
      */
-    public BestSpectrumEntry(final String sequence, final Double score, final Boolean flag) {
+    public BestSpectrumEntry(final String sequence, final String spectrumItemId, final double score) {
         this.sequence = sequence;
+        this.spectrumItemId = spectrumItemId;
         this.score = score;
-        this.flag = flag;
+        this.claimed = new AtomicBoolean(false);
     }
 
     /**
@@ -48,40 +56,51 @@ public class BestSpectrumEntry {
         return this.sequence;
     }
 
+    /**
+     * Returns the id of the SpectrumIdentificationItem with the highest score.
+     *
+     * @return SpectrumIdentificationItem id as String.
+     */
+    public final String getSpectrumItemId() {
+        return this.spectrumItemId;
+    }
+
     /**
      * Returns the peptide sequence score.
      *
-     * @return peptide score as Double.
+     * @return peptide score as double.
      */
-    public final Double getScore() {
+    public final double getScore() {
         return this.score;
     }
 
     /**
-     * Returns the peptide flag.
+     * Replaces the best spectrum by a higher scoring SpectrumIdentificationItem.
      *
-     * @return peptide flag as Boolean.
+     * @param spectrumItemId id of the SpectrumIdentificationItem.
+     * @param psmScore peptide score as double.
      */
-    public final Boolean getFlag() {
-        return this.flag;
+    public final void setBestSpectrum(final String spectrumItemId, final double psmScore) {
+        this.spectrumItemId = spectrumItemId;
+        this.score = psmScore;
     }
 
     /**
-     * Sets the flag to a new value.
+     * Returns the peptide flag.
      *
-     * @param newFlag Boolean.
+     * @return true if the best spectrum has been claimed, otherwise false.
      */
-    public final void setFlag(Boolean newFlag) {
-        this.flag = newFlag;
+    public final Boolean isClaimed() {
+        return this.claimed.get();
     }
 
     /**
-     * Sets the score to a new value.
+     * Sets the flag if it was not set yet.
      *
-     * @param psmScore Double.
+     * @return true if this call set the flag, false if it was already claimed.
      */
-    public void setScore(Double psmScore) {
-        this.score = psmScore;
+    public final Boolean claim() {
+        return this.claimed.compareAndSet(false, true);
     }
 
     /**
@@ -91,6 +110,6 @@ public class BestSpectrumEntry {
      */
     @Override
     public String toString() {
-        return "BestSpectrumScore{Peptide sequence: " + this.getSequence() + ", Spectrum match score: " + this.getScore() + ", Flag: " + this.getFlag() + "}";
+        return "BestSpectrumScore{Peptide sequence: " + this.getSequence() + ", Spectrum item: " + this.getSpectrumItemId() + ", Spectrum match score: " + this.getScore() + ", Flag: " + this.isClaimed() + "}";
     }
 }
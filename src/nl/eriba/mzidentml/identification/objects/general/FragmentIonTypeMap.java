@@ -0,0 +1,101 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.objects.general;
+
+import java.util.concurrent.ConcurrentHashMap;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+
+/**
+ * Defines a map of fragment ion CV accessions and the ion series they belong to.
+ * The ion type name is only matched the first time an accession is seen.
+ *
+ * @author vnijenhuis
+ */
+public class FragmentIonTypeMap {
+
+    /**
+     * Ion type that is not used for ion series.
+     */
+    public static final int OTHER_ION = 0;
+
+    /**
+     * Ion type "frag: y ion".
+     */
+    public static final int Y_ION = 1;
+
+    /**
+     * Ion types "frag: y ion - ..." such as neutral losses.
+     */
+    public static final int Y_ION_LOSS = 2;
+
+    /**
+     * Ion type "frag: b ion".
+     */
+    public static final int B_ION = 3;
+
+    /**
+     * Ion types "frag: b ion - ..." such as neutral losses.
+     */
+    public static final int B_ION_LOSS = 4;
+
+    /**
+     * Ion types that contain "immonium".
+     */
+    public static final int IMMONIUM_ION = 5;
+
+    /**
+     * Map of CV accessions and their ion type.
+     */
+    private final ConcurrentHashMap<String, Integer> ionTypeMap;
+
+    /**
+     * Creates an empty map of fragment ion types.
+     */
+    public FragmentIonTypeMap() {
+        this.ionTypeMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the ion type of the CvParam of an IonType.
+     *
+     * @param cvParam CvParam of the IonType.
+     * @return ion type constant of this class.
+     */
+    public final int getIonType(final CvParam cvParam) {
+        String accession = cvParam.getAccession();
+        if (accession == null) {
+            return matchIonType(cvParam.getName());
+        }
+        Integer ionType = ionTypeMap.get(accession);
+        if (ionType == null) {
+            ionType = matchIonType(cvParam.getName());
+            ionTypeMap.put(accession, ionType);
+        }
+        return ionType;
+    }
+
+    /**
+     * Matches the name of a fragment ion to an ion type.
+     *
+     * @param name name of the fragment ion.
+     * @return ion type constant of this class.
+     */
+    private static int matchIonType(final String name) {
+        if (name == null) {
+            return OTHER_ION;
+        } else if (name.equals("frag: y ion")) {
+            return Y_ION;
+        } else if (name.startsWith("frag: y ion -")) {
+            return Y_ION_LOSS;
+        } else if (name.equals("frag: b ion")) {
+            return B_ION;
+        } else if (name.startsWith("frag: b ion -")) {
+            return B_ION_LOSS;
+        } else if (name.contains("immonium")) {
+            return IMMONIUM_ION;
+        }
+        return OTHER_ION;
+    }
+}
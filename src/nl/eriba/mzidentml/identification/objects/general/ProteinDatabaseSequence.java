@@ -4,17 +4,25 @@
  */
 package nl.eriba.mzidentml.identification.objects.general;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Defines a protein object.
+ * The amino acid sequence is a view of a byte array that can contain the residues of many proteins.
  *
  * @author vnijenhuis
  */
 public class ProteinDatabaseSequence {
 
     /**
-     * Amino acid sequence of the protein.
+     * Byte array that contains the amino acid sequence of the protein.
+     */
+    private final byte[] residues;
+
+    /**
+     * Start of the amino acid sequence in the residue array.
      */
-    private final String proteinSequence;
+    private final int residueOffset;
 
     /**
      * ProteinDatabaseSequence Accession ID.
@@ -39,19 +47,51 @@ public class ProteinDatabaseSequence {
      * @param mass sequence mass.
      */
     public ProteinDatabaseSequence(final String proteinSequence, final String proteinAccession, final Double mass) {
-        this.proteinSequence = proteinSequence;
+        this(proteinSequence.getBytes(StandardCharsets.US_ASCII), 0, proteinSequence.length(), proteinAccession, mass);
+    }
+
+    /**
+     * Creates a protein object as a view of a residue array.
+     *
+     * @param residues byte array that contains the amino acid sequence.
+     * @param residueOffset start of the sequence in the residue array.
+     * @param sequenceLength length of the sequence.
+     * @param proteinAccession protein accession id.
+     * @param mass sequence mass.
+     */
+    public ProteinDatabaseSequence(final byte[] residues, final int residueOffset, final int sequenceLength, final String proteinAccession, final Double mass) {
+        this.residues = residues;
+        this.residueOffset = residueOffset;
+        this.sequenceLength = sequenceLength;
         this.proteinAccession = proteinAccession;
         this.averageMass = mass;
-        this.sequenceLength = proteinSequence.length();
     }
 
     /**
-     * Returns the amino acid sequence.
+     * Returns the amino acid sequence. A new String is created for each call, use getResidues() to read the sequence without copying it.
      *
      * @return amino acid sequence as String.
      */
     public final String getProteinSequence() {
-        return this.proteinSequence;
+        return new String(this.residues, this.residueOffset, this.sequenceLength, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the byte array that contains the amino acid sequence, starting at getResidueOffset().
+     *
+     * @return residue array. Should not be changed.
+     */
+    public final byte[] getResidues() {
+        return this.residues;
+    }
+
+    /**
+     * Returns the start of the amino acid sequence in the residue array.
+     *
+     * @return start index as int.
+     */
+    public final int getResidueOffset() {
+        return this.residueOffset;
     }
 
     /**
@@ -24,11 +24,21 @@ public class SingleDatabaseReference {
      */
     private final String proteinAccession;
 
+    /**
+     * Id of the protein accession in the SymbolTable of the mzid file.
+     */
+    private final int proteinAccessionId;
+
     /**
      * Peptide Reference. Refers to the Peptide Object id.
      */
     private final String peptideSequence;
 
+    /**
+     * Id of the peptide reference in the SymbolTable of the mzid file.
+     */
+    private final int peptideSequenceId;
+
     /**
      * Peptide start index.
      */
@@ -68,20 +78,24 @@ public class SingleDatabaseReference {
      * Defines a SequenceDatabaseReference object.
      *
      * @param proteinAccession the protein accession as String.
+     * @param proteinAccessionId id of the protein accession in the SymbolTable of the mzid file.
      * @param evidenceId peptide evidence id as Integer.
      * @param peptideSequence peptide sequence as String.
+     * @param peptideSequenceId id of the peptide sequence in the SymbolTable of the mzid file.
      * @param startIndex start position as Integer.
      * @param endIndex end position as Integer.
      * @param preAminoAcid pre amino acid as String.
      * @param postAminoAcid post amino acid as String.
      * @param postTransModificationList list of post-translational modifications.
      */
-    public SingleDatabaseReference(final String proteinAccession, final Integer evidenceId, final String peptideSequence, final Integer startIndex,
-            final Integer endIndex, final String preAminoAcid, final String postAminoAcid, final ArrayList<String> postTransModificationList) {
+    public SingleDatabaseReference(final String proteinAccession, final int proteinAccessionId, final Integer evidenceId, final String peptideSequence,
+            final int peptideSequenceId, final Integer startIndex, final Integer endIndex, final String preAminoAcid, final String postAminoAcid, final ArrayList<String> postTransModificationList) {
         this.objectName = "SingleDatabaseReference";
         this.evidenceId = evidenceId;
         this.proteinAccession = proteinAccession;
+        this.proteinAccessionId = proteinAccessionId;
         this.peptideSequence = peptideSequence;
+        this.peptideSequenceId = peptideSequenceId;
         this.startIndex = startIndex;
         this.endIndex = endIndex;
         this.preAminoAcid = preAminoAcid;
@@ -99,6 +113,15 @@ public class SingleDatabaseReference {
         return proteinAccession;
     }
 
+    /**
+     * Provides the id of the protein accession. Ids follow the order of the accessions.
+     *
+     * @return id of the protein accession as int.
+     */
+    public int getProteinAccessionId() {
+        return proteinAccessionId;
+    }
+
     /**
      * Provides a peptide amino acid sequence.
      *
@@ -108,6 +131,15 @@ public class SingleDatabaseReference {
         return peptideSequence;
     }
 
+    /**
+     * Provides the id of the peptide sequence. Ids follow the order of the sequences.
+     *
+     * @return id of the peptide sequence as int.
+     */
+    public int getPeptideSequenceId() {
+        return peptideSequenceId;
+    }
+
     /**
      * Returns the of start position as Integer.
      *
@@ -0,0 +1,49 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.writer.csv;
+
+import java.io.IOException;
+
+/**
+ * Defines the header, rows and sort order of a csv file with one row per output object.
+ *
+ * @author vnijenhuis
+ * @param <T> type of the output objects.
+ */
+public interface CsvRowFormat<T> {
+
+    /**
+     * Writes the header row of the csv file.
+     *
+     * @param writer csv row writer.
+     * @throws IOException could not write to the file.
+     */
+    void writeHeader(CsvRowWriter writer) throws IOException;
+
+    /**
+     * Writes the row of a single output object.
+     *
+     * @param writer csv row writer.
+     * @param entry output object.
+     * @throws IOException could not write to the file.
+     */
+    void writeRow(CsvRowWriter writer, T entry) throws IOException;
+
+    /**
+     * Returns the value that the rows of the csv file are sorted on.
+     *
+     * @param entry output object.
+     * @return Double, Integer or String value.
+     */
+    Comparable<?> getSortKey(T entry);
+
+    /**
+     * Returns the value that rows with equal sort keys are sorted on.
+     *
+     * @param entry output object.
+     * @return Double, Integer or String value, or null if rows with equal sort keys keep the order in which they were added.
+     */
+    Comparable<?> getSecondarySortKey(T entry);
+}
@@ -0,0 +1,411 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.writer.csv;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes csv rows into a reusable byte buffer that is written to the file channel when it is full.
+ * Numbers are written as digits without creating a String where possible. Fields that contain the delimiter, a quote or a line ending are quoted.
+ *
+ * @author vnijenhuis
+ */
+public class CsvRowWriter implements Closeable {
+
+    /**
+     * Size of the output buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Delimiter between the fields of a row.
+     */
+    private static final byte DELIMITER = ',';
+
+    /**
+     * Line ending of each row.
+     */
+    private static final byte LINE_ENDING = '\n';
+
+    /**
+     * Quote character used for fields that contain special characters.
+     */
+    private static final byte QUOTE = '"';
+
+    /**
+     * Powers of ten used to write doubles with a few decimals.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6};
+
+    /**
+     * File channel of the csv file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Output buffer.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Buffer used to write integer digits in reversed order.
+     */
+    private final byte[] digits;
+
+    /**
+     * Amount of bytes in the output buffer.
+     */
+    private int position;
+
+    /**
+     * True if the next field is the first field of a row.
+     */
+    private boolean rowStart;
+
+    /**
+     * Amount of bytes that have been written to the file.
+     */
+    private long flushedBytes;
+
+    /**
+     * Opens a csv file.
+     *
+     * @param file path to the csv file.
+     * @param append appends the rows to the existing file if true, otherwise the file is replaced.
+     * @throws IOException could not open the file.
+     */
+    public CsvRowWriter(final String file, final boolean append) throws IOException {
+        this.channel = new FileOutputStream(file, append).getChannel();
+        this.buffer = new byte[BUFFER_SIZE];
+        this.digits = new byte[20];
+        this.position = 0;
+        this.rowStart = true;
+        this.flushedBytes = 0;
+    }
+
+    /**
+     * Adds a text field to the current row.
+     *
+     * @param value field value. Null values are written as null.
+     * @throws IOException could not write to the file.
+     */
+    public final void addField(final String value) throws IOException {
+        startField();
+        writeText(String.valueOf(value));
+    }
+
+    /**
+     * Adds a field with the String value of an object to the current row.
+     *
+     * @param value field value. Null values are written as null.
+     * @throws IOException could not write to the file.
+     */
+    public final void addField(final Object value) throws IOException {
+        addField(String.valueOf(value));
+    }
+
+    /**
+     * Adds an integer field to the current row.
+     *
+     * @param value field value. Null values are written as null.
+     * @throws IOException could not write to the file.
+     */
+    public final void addField(final Integer value) throws IOException {
+        if (value == null) {
+            addField((String) null);
+        } else {
+            addField(value.longValue());
+        }
+    }
+
+    /**
+     * Adds an integer field to the current row.
+     *
+     * @param value field value.
+     * @throws IOException could not write to the file.
+     */
+    public final void addField(final long value) throws IOException {
+        startField();
+        writeLong(value);
+    }
+
+    /**
+     * Adds a double field to the current row.
+     *
+     * @param value field value. Null values are written as null.
+     * @throws IOException could not write to the file.
+     */
+    public final void addField(final Double value) throws IOException {
+        if (value == null) {
+            addField((String) null);
+        } else {
+            addField(value.doubleValue());
+        }
+    }
+
+    /**
+     * Adds a double field to the current row. The value is written exactly like Double.toString() writes it.
+     *
+     * @param value field value.
+     * @throws IOException could not write to the file.
+     */
+    public final void addField(final double value) throws IOException {
+        startField();
+        writeDouble(value);
+    }
+
+    /**
+     * Adds a field that contains all values of a list separated by the given separator.
+     *
+     * @param values list of values.
+     * @param separator separator between the values.
+     * @throws IOException could not write to the file.
+     */
+    public final void addJoinedField(final List<?> values, final String separator) throws IOException {
+        startField();
+        boolean quoted = needsQuotes(separator);
+        for (int i = 0; i < values.size() && !quoted; i++) {
+            quoted = needsQuotes(String.valueOf(values.get(i)));
+        }
+        if (quoted) {
+            writeByte(QUOTE);
+        }
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writeCharacters(separator, quoted);
+            }
+            writeCharacters(String.valueOf(values.get(i)), quoted);
+        }
+        if (quoted) {
+            writeByte(QUOTE);
+        }
+    }
+
+    /**
+     * Ends the current row.
+     *
+     * @throws IOException could not write to the file.
+     */
+    public final void endRow() throws IOException {
+        writeByte(LINE_ENDING);
+        rowStart = true;
+    }
+
+    /**
+     * Adds a row that has been encoded by another CsvRowWriter, including its line ending.
+     *
+     * @param row byte array that contains the encoded row.
+     * @param length length of the encoded row.
+     * @throws IOException could not write to the file.
+     */
+    public final void addEncodedRow(final byte[] row, final int length) throws IOException {
+        if (position + length > buffer.length) {
+            flush();
+        }
+        if (length > buffer.length) {
+            ByteBuffer output = ByteBuffer.wrap(row, 0, length);
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+            flushedBytes += length;
+        } else {
+            System.arraycopy(row, 0, buffer, position, length);
+            position += length;
+        }
+    }
+
+    /**
+     * Returns the amount of bytes written so far, including the bytes that are still in the output buffer.
+     *
+     * @return amount of bytes as long.
+     */
+    public final long getWrittenBytes() {
+        return flushedBytes + position;
+    }
+
+    /**
+     * Writes the delimiter if the field is not the first field of the row.
+     *
+     * @throws IOException could not write to the file.
+     */
+    private void startField() throws IOException {
+        if (!rowStart) {
+            writeByte(DELIMITER);
+        }
+        rowStart = false;
+    }
+
+    /**
+     * Checks if a text value has to be quoted.
+     *
+     * @param value text value.
+     * @return true if the value contains the delimiter, a quote or a line ending.
+     */
+    private boolean needsQuotes(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == DELIMITER || character == QUOTE || character == LINE_ENDING || character == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a text value and quotes it if needed.
+     *
+     * @param value text value.
+     * @throws IOException could not write to the file.
+     */
+    private void writeText(final String value) throws IOException {
+        if (needsQuotes(value)) {
+            writeByte(QUOTE);
+            writeCharacters(value, true);
+            writeByte(QUOTE);
+        } else {
+            writeCharacters(value, false);
+        }
+    }
+
+    /**
+     * Writes the characters of a text value as UTF-8.
+     *
+     * @param value text value.
+     * @param quoted doubles each quote if true.
+     * @throws IOException could not write to the file.
+     */
+    private void writeCharacters(final String value, final boolean quoted) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character >= 128) {
+                //Text with other characters than ASCII is encoded by the String class.
+                byte[] encoded = value.substring(i).getBytes(StandardCharsets.UTF_8);
+                for (byte encodedByte : encoded) {
+                    if (quoted && encodedByte == QUOTE) {
+                        writeByte(QUOTE);
+                    }
+                    writeByte(encodedByte);
+                }
+                return;
+            }
+            if (quoted && character == QUOTE) {
+                writeByte(QUOTE);
+            }
+            writeByte((byte) character);
+        }
+    }
+
+    /**
+     * Writes the digits of an integer value.
+     *
+     * @param value integer value.
+     * @throws IOException could not write to the file.
+     */
+    private void writeLong(final long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeCharacters(Long.toString(value), false);
+            return;
+        }
+        long remaining = value;
+        if (remaining < 0) {
+            writeByte((byte) '-');
+            remaining = -remaining;
+        }
+        int count = 0;
+        do {
+            digits[count] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+            count++;
+        } while (remaining != 0);
+        while (count > 0) {
+            count--;
+            writeByte(digits[count]);
+        }
+    }
+
+    /**
+     * Writes a double value in the format of Double.toString(). Values between 0.001 and 10^7 with at most 6 decimals are written as digits,
+     * all other values are written by Double.toString().
+     *
+     * @param value double value.
+     * @throws IOException could not write to the file.
+     */
+    private void writeDouble(final double value) throws IOException {
+        double magnitude = Math.abs(value);
+        if (magnitude >= 1e-3 && magnitude < 1e7) {
+            for (int decimals = 1; decimals < POWERS_OF_TEN.length; decimals++) {
+                double scaled = Math.rint(magnitude * POWERS_OF_TEN[decimals]);
+                //The value is written with the smallest amount of decimals that gives back the same double.
+                if (scaled / POWERS_OF_TEN[decimals] == magnitude) {
+                    long scaledDigits = (long) scaled;
+                    long integerPart = scaledDigits / (long) POWERS_OF_TEN[decimals];
+                    long fraction = scaledDigits % (long) POWERS_OF_TEN[decimals];
+                    if (value < 0) {
+                        writeByte((byte) '-');
+                    }
+                    writeLong(integerPart);
+                    writeByte((byte) '.');
+                    if (fraction == 0) {
+                        writeByte((byte) '0');
+                    } else {
+                        for (long divisor = (long) POWERS_OF_TEN[decimals - 1]; divisor > 0; divisor /= 10) {
+                            writeByte((byte) ('0' + fraction / divisor % 10));
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+        writeCharacters(Double.toString(value), false);
+    }
+
+    /**
+     * Writes a single byte to the output buffer.
+     *
+     * @param value byte value.
+     * @throws IOException could not write to the file.
+     */
+    private void writeByte(final byte value) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position] = value;
+        position++;
+    }
+
+    /**
+     * Writes the output buffer to the file.
+     *
+     * @throws IOException could not write to the file.
+     */
+    public final void flush() throws IOException {
+        ByteBuffer output = ByteBuffer.wrap(buffer, 0, position);
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        flushedBytes += position;
+        position = 0;
+    }
+
+    /**
+     * Writes the output buffer to the file and closes the file.
+     *
+     * @throws IOException could not write to the file.
+     */
+    @Override
+    public final void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -4,20 +4,21 @@
  */
 package nl.eriba.mzidentml.identification.writer.csv;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import nl.eriba.mzidentml.identification.collections.output.DatabaseSearchPsmCursor;
 import nl.eriba.mzidentml.identification.collections.output.DatabaseSearchPsmOutputCollection;
 import nl.eriba.mzidentml.identification.objects.output.DatabaseSearchPsmOutput;
 
 /**
  * Writes a DB search psm.csv file.
+ * Rows are encoded by a CsvRowWriter.
  *
  * @author vnijenhuis
  */
-public class DBSearchPsmCsvWriter {
+public class DBSearchPsmCsvWriter implements CsvRowFormat<DatabaseSearchPsmOutput> {
 
     /**
-     * Writes a DB search psm.csv file.
+     * Writes a DB search psm.csv file. Rows are read with a cursor over the columns of the collection.
      *
      * @param directory target directory and file to write the data to.
      * @param databaseSearchCollection collections of DatabaseSearchPsmOutput objects to write to each row.
@@ -26,66 +27,117 @@ public class DBSearchPsmCsvWriter {
     public final void writeDatabaseSearchPsmCsv(final String directory, DatabaseSearchPsmOutputCollection databaseSearchCollection) throws IOException {
         String output = directory + "DB search psm.csv";
         System.out.println("Writing output to " + output);
-        try (FileWriter writer = new FileWriter(output)) {
-            String lineEnding = "\n";
-            String delimiter = ",";
-            String header = writeHeader(delimiter, lineEnding);
-            writer.write(header);
-            for (DatabaseSearchPsmOutput databaseSearchPsmEntry : databaseSearchCollection.getDatabaseSearchPsmEntryList()) {
-                String row = writeRow(delimiter, lineEnding, databaseSearchPsmEntry);
-                writer.write(row);
+        try (CsvRowWriter writer = new CsvRowWriter(output, false)) {
+            writeHeader(writer);
+            DatabaseSearchPsmCursor cursor = databaseSearchCollection.getRowCursor();
+            while (cursor.next()) {
+                writeRow(writer, cursor);
             }
-            writer.flush();
-            writer.close();
         }
     }
 
     /**
      * Writes the header for the DB search psm.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
-     * @return header for a DB search psm.csv file.
+     * @param writer csv row writer.
+     * @throws IOException could not write to the file.
      */
-    private String writeHeader(String delimiter, String lineEnding) {
-        String header = "";
-        header += "Peptide Sequence" + delimiter;
-        header += "Score (-10lgP)" + delimiter;
-        header += "Mass" + delimiter;
-        header += "Length" + delimiter;
-        header += "ppm" + delimiter;
-        header += "m/z" + delimiter;
-        header += "RT" + delimiter;
-        header += "Scan" + delimiter;
-        header += "Accession" + delimiter;
-        header += "PTM" + delimiter;
-        header += "AScore" + delimiter;
-        header += "Evidence Count" + lineEnding;
-        return header;
+    @Override
+    public final void writeHeader(final CsvRowWriter writer) throws IOException {
+        writer.addField("Peptide Sequence");
+        writer.addField("Score (-10lgP)");
+        writer.addField("Mass");
+        writer.addField("Length");
+        writer.addField("ppm");
+        writer.addField("m/z");
+        writer.addField("RT");
+        writer.addField("Scan");
+        writer.addField("Accession");
+        writer.addField("PTM");
+        writer.addField("AScore");
+        writer.addField("Evidence Count");
+        writer.endRow();
     }
 
     /**
      * Writes the rows for the DB search psm.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
+     * @param writer csv row writer.
      * @param databaseSearchPsmEntry DatabaseSearchPsmOutput object.
-     * @return row containing DatabaseSearchPsmOutput data.
+     * @throws IOException could not write to the file.
      */
-    private String writeRow(String delimiter, String lineEnding, DatabaseSearchPsmOutput databaseSearchPsmEntry) {
-        String row = "";
-        row += databaseSearchPsmEntry.getPeptideSequence() + delimiter;
-        row += databaseSearchPsmEntry.getPeptideScore() + delimiter;
-        row += databaseSearchPsmEntry.getTheoreticalMassToCharge() + delimiter;
-        row += databaseSearchPsmEntry.getSequenceLength() + delimiter;
-        row += databaseSearchPsmEntry.getPartsPerMillion() + delimiter;
-        row += databaseSearchPsmEntry.getCalculatedMassToCharge() + delimiter;
-        row += databaseSearchPsmEntry.getRetentionTime() + delimiter;
-        row += databaseSearchPsmEntry.getScanNumber() + delimiter;
-        row += databaseSearchPsmEntry.getProteinAccession() + delimiter;
-        row += databaseSearchPsmEntry.getPostTranslationalModification() + delimiter;
-        row += databaseSearchPsmEntry.getAScore() + delimiter;
-        row += databaseSearchPsmEntry.getEvidenceCount() + lineEnding;
-        return row;
+    @Override
+    public final void writeRow(final CsvRowWriter writer, DatabaseSearchPsmOutput databaseSearchPsmEntry) throws IOException {
+        writer.addField(databaseSearchPsmEntry.getPeptideSequence());
+        writer.addField(databaseSearchPsmEntry.getPeptideScore());
+        writer.addField(databaseSearchPsmEntry.getTheoreticalMassToCharge());
+        writer.addField(databaseSearchPsmEntry.getSequenceLength());
+        writer.addField(databaseSearchPsmEntry.getPartsPerMillion());
+        writer.addField(databaseSearchPsmEntry.getCalculatedMassToCharge());
+        writer.addField(databaseSearchPsmEntry.getRetentionTime());
+        writer.addField(databaseSearchPsmEntry.getScanNumber());
+        writer.addField(databaseSearchPsmEntry.getProteinAccession());
+        writer.addField(databaseSearchPsmEntry.getPostTranslationalModification());
+        writer.addField(databaseSearchPsmEntry.getAScore());
+        writer.addField(databaseSearchPsmEntry.getEvidenceCount());
+        writer.endRow();
+    }
+
+    /**
+     * Writes the current row of a cursor for the DB search psm.csv file.
+     *
+     * @param writer csv row writer.
+     * @param cursor cursor positioned on a row of a DatabaseSearchPsmOutputCollection.
+     * @throws IOException could not write to the file.
+     */
+    public final void writeRow(final CsvRowWriter writer, final DatabaseSearchPsmCursor cursor) throws IOException {
+        writer.addField(cursor.getPeptideSequence());
+        writer.addField(cursor.getPeptideScore());
+        writer.addField(cursor.getTheoreticalMassToCharge());
+        writer.addField((long) cursor.getSequenceLength());
+        writer.addField(cursor.getPartsPerMillion());
+        writer.addField(cursor.getCalculatedMassToCharge());
+        writer.addField(cursor.getRetentionTime());
+        writer.addField(cursor.getScanNumber());
+        writer.addField(cursor.getProteinAccession());
+        writer.addField(cursor.getPostTranslationalModification());
+        writer.addField(cursor.getAScore());
+        writer.addField(cursor.getEvidenceCount());
+        writer.endRow();
+    }
+
+    /**
+     * Returns the peptide score that the rows are sorted on.
+     *
+     * @param databaseSearchPsmEntry DatabaseSearchPsmOutput object.
+     * @return peptide score.
+     */
+    @Override
+    public final Comparable<?> getSortKey(final DatabaseSearchPsmOutput databaseSearchPsmEntry) {
+        return databaseSearchPsmEntry.getPeptideScore();
+    }
+
+    /**
+     * Returns the peptide sequence that rows with equal peptide scores are sorted on.
+     *
+     * @param databaseSearchPsmEntry DatabaseSearchPsmOutput object.
+     * @return peptide sequence.
+     */
+    @Override
+    public final Comparable<?> getSecondarySortKey(final DatabaseSearchPsmOutput databaseSearchPsmEntry) {
+        return databaseSearchPsmEntry.getPeptideSequence();
+    }
+
+    /**
+     * Creates a writer that writes the DB search psm.csv file while the DatabaseSearchPsmOutput objects are created.
+     *
+     * @param directory target directory to write the file to.
+     * @param sorted sorts the rows on peptide score if true, otherwise rows are written in the order they were added.
+     * @param sortBufferSize maximum amount of DatabaseSearchPsmOutput objects kept in memory while sorting.
+     * @param queueCapacity maximum amount of batches that are queued before they are written.
+     * @return StreamingCsvWriter that has to be started by an executor.
+     */
+    public final StreamingCsvWriter<DatabaseSearchPsmOutput> createStreamingWriter(final String directory, final boolean sorted, final int sortBufferSize, final int queueCapacity) {
+        return new StreamingCsvWriter<>(directory + "DB search psm.csv", false, this, sorted, sortBufferSize, queueCapacity);
     }
 }
@@ -4,7 +4,6 @@
  */
 package nl.eriba.mzidentml.identification.writer.csv;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import nl.eriba.mzidentml.identification.collections.general.MatchedIonSeriesCollection;
 import nl.eriba.mzidentml.identification.objects.general.MatchedIonSeries;
@@ -15,7 +14,7 @@ import nl.eriba.mzidentml.tools.InputTools;
  *
  * @author vnijenhuis
  */
-public class IonSeriesCsvWriter {
+public class IonSeriesCsvWriter implements CsvRowFormat<MatchedIonSeries> {
 
     /**
      * Writes the output csv file.
@@ -27,67 +26,93 @@ public class IonSeriesCsvWriter {
     public final void writeCsv(String outputDirectory, final MatchedIonSeriesCollection matchedIonSeries) throws IOException {
         String outputFile = outputDirectory + "ion-series.csv";
         InputTools input = new InputTools();
-        FileWriter writer;
-        if (input.isFile(outputFile)) {
-            writer = new FileWriter(outputFile, true);
+        boolean append = input.isFile(outputFile);
+        if (append) {
             System.out.println("WARNING! Writing data to existing file: " + outputFile);
         } else {
-            writer = new FileWriter(outputFile);
             System.out.println("Writing output to " + outputFile);
         }
-        String delimiter = ",";
-        String lineEnding = "\n";
-        String header = generateCsvHeader(lineEnding, delimiter);
-        writer.write(header);
-        for (MatchedIonSeries ionSeries : matchedIonSeries.getMatchedIonSeriesList()) {
-            String row = generateCsvRow(ionSeries, lineEnding, delimiter);
-            writer.write(row);
+        try (CsvRowWriter writer = new CsvRowWriter(outputFile, append)) {
+            writeHeader(writer);
+            for (MatchedIonSeries ionSeries : matchedIonSeries.getMatchedIonSeriesList()) {
+                writeRow(writer, ionSeries);
+            }
         }
-        writer.flush();
-        writer.close();
         System.out.println("Finished writing to " + outputFile);
     }
 
     /**
      * Generates a header row for the csv file.
      *
-     * @param lineEnding line ending for each csv row.
-     * @param delimiter delimiter for each csv column.
-     * @return header of the csv file as String.
+     * @param writer csv row writer.
+     * @throws IOException could not write to the file.
      */
-    private String generateCsvHeader(final String lineEnding, final String delimiter) {
-        String header = "";
-        header += "Peptide Sequence" + delimiter;
-        header += "Peptide Score" + delimiter;
-        header += "Complete Ion Series" + delimiter;
-        header += "Ion Series Flag" + delimiter;
-        header += "Protein Acessions" + lineEnding;
-        return header;
+    @Override
+    public final void writeHeader(final CsvRowWriter writer) throws IOException {
+        writer.addField("Peptide Sequence");
+        writer.addField("Peptide Score");
+        writer.addField("Complete Ion Series");
+        writer.addField("Ion Series Flag");
+        writer.addField("Protein Acessions");
+        writer.endRow();
     }
 
     /**
      * Generates a data row for the csv file.
      *
+     * @param writer csv row writer.
      * @param matchedIonSeries MatchedIonSeries object with mzid ion series data.
-     * @param lineEnding line ending for each csv row.
-     * @param delimiter delimiter for each csv column.
-     * @return ScanID data row as String.
+     * @throws IOException could not write to the file.
      */
-    private String generateCsvRow(final MatchedIonSeries matchedIonSeries, final String lineEnding, final String delimiter) {
-        String row = "";
-        row += matchedIonSeries.getPeptideSequence() + delimiter;
-        row += matchedIonSeries.getPeptideScore() + delimiter;
+    @Override
+    public final void writeRow(final CsvRowWriter writer, final MatchedIonSeries matchedIonSeries) throws IOException {
+        writer.addField(matchedIonSeries.getPeptideSequence());
+        writer.addField(matchedIonSeries.getPeptideScore());
         //Each index of the ion series is added and separated by a :
-        for (int i = 0; i < matchedIonSeries.getFinalIonSeries().size(); i++) {
-            if (i == 0) {
-                row += matchedIonSeries.getFinalIonSeries().get(i);
-            } else {
-                row += ":" + matchedIonSeries.getFinalIonSeries().get(i);
-            }
+        writer.addJoinedField(matchedIonSeries.getFinalIonSeries(), ":");
+        writer.addField(matchedIonSeries.getIonSeriesFlag());
+        writer.addField(matchedIonSeries.getProteinAccessions());
+        writer.endRow();
+    }
+
+    /**
+     * Returns the peptide sequence that the rows are sorted on.
+     *
+     * @param matchedIonSeries MatchedIonSeries object.
+     * @return peptide sequence.
+     */
+    @Override
+    public final Comparable<?> getSortKey(final MatchedIonSeries matchedIonSeries) {
+        return matchedIonSeries.getPeptideSequence();
+    }
+
+    /**
+     * Returns the peptide score that rows with equal peptide sequences are sorted on.
+     *
+     * @param matchedIonSeries MatchedIonSeries object.
+     * @return peptide score.
+     */
+    @Override
+    public final Comparable<?> getSecondarySortKey(final MatchedIonSeries matchedIonSeries) {
+        return matchedIonSeries.getPeptideScore();
+    }
+
+    /**
+     * Creates a writer that writes the ion-series.csv file while the MatchedIonSeries objects are created. Rows are appended if the file already exists.
+     *
+     * @param directory target directory to write the file to.
+     * @param sorted sorts the rows on peptide sequence and peptide score if true, otherwise rows are written in the order they were added.
+     * @param sortBufferSize maximum amount of MatchedIonSeries objects kept in memory while sorting.
+     * @param queueCapacity maximum amount of batches that are queued before they are written.
+     * @return StreamingCsvWriter that has to be started by an executor.
+     */
+    public final StreamingCsvWriter<MatchedIonSeries> createStreamingWriter(final String directory, final boolean sorted, final int sortBufferSize, final int queueCapacity) {
+        String outputFile = directory + "ion-series.csv";
+        InputTools input = new InputTools();
+        boolean append = input.isFile(outputFile);
+        if (append) {
+            System.out.println("WARNING! Writing data to existing file: " + outputFile);
         }
-        row += delimiter;
-        row += matchedIonSeries.getIonSeriesFlag() + delimiter;
-        row += matchedIonSeries.getProteinAccessions() + lineEnding;
-        return row;
+        return new StreamingCsvWriter<>(outputFile, append, this, sorted, sortBufferSize, queueCapacity);
     }
 }
@@ -4,7 +4,6 @@
  */
 package nl.eriba.mzidentml.identification.writer.csv;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import nl.eriba.mzidentml.identification.collections.output.ScanIdOutputCollection;
@@ -29,76 +28,67 @@ public class MzIdCsvWriter {
     public final void writeCsv(String outputDirectory, final ScanIdOutputCollection scanIdEntryCollection,
             final ArrayList<String> datasets) throws IOException {
         InputTools test = new InputTools();
-        FileWriter writer;
-        if (test.isFile(outputDirectory)) {
-            writer = new FileWriter(outputDirectory, true);
+        boolean append = test.isFile(outputDirectory);
+        if (append) {
             System.out.println("Writing data to existing file: " + outputDirectory);
         } else {
-            writer = new FileWriter(outputDirectory);
             System.out.println("Writing output to " + outputDirectory);
         }
-        String delimiter = ",";
-        String lineEnding = "\n";
-        String header = generateCsvHeader(scanIdEntryCollection.getScanIdEntryList().get(0), lineEnding, delimiter, datasets);
-        writer.append(header);
-        for (ScanIdOutput scanObject : scanIdEntryCollection.getScanIdEntryList()) {
-            String row = generateCsvRow(scanObject, lineEnding, delimiter);
-            writer.append(row);
+        try (CsvRowWriter writer = new CsvRowWriter(outputDirectory, append)) {
+            generateCsvHeader(writer, scanIdEntryCollection.getScanIdEntryList().get(0), datasets);
+            for (ScanIdOutput scanObject : scanIdEntryCollection.getScanIdEntryList()) {
+                generateCsvRow(writer, scanObject);
+            }
         }
-        writer.flush();
-        writer.close();
         System.out.println("Finished writing to " + outputDirectory);
     }
 
     /**
      * Generates a header row for the csv file.
      *
+     * @param writer csv row writer.
      * @param scanObject ScanID object with mzid data.
-     * @param lineEnding line ending for each csv row.
-     * @param delimiter delimiter for each csv column.
-     * @return header of the csv file as String.
+     * @param datasets list of dataset names.
+     * @throws IOException could not write to the file.
      */
-    private String generateCsvHeader(final ScanIdOutput scanObject, final String lineEnding, final String delimiter, final ArrayList<String> datasets) {
-        String header = "";
-        header += "Scan ID" + delimiter;
+    private void generateCsvHeader(final CsvRowWriter writer, final ScanIdOutput scanObject, final ArrayList<String> datasets) throws IOException {
+        writer.addField("Scan ID");
         for (String dataset : datasets) {
-            header += dataset + "Peptide Sequence" + delimiter;
+            writer.addField(dataset + "Peptide Sequence");
         }
         for (String dataset : datasets) {
-            header += dataset + " PSM -10lgP" + delimiter;
+            writer.addField(dataset + " PSM -10lgP");
         }
         if (scanObject.getEntryFlag() > 0) {
             for (String dataset : datasets) {
-                header += dataset + " Database Flag" + delimiter;
+                writer.addField(dataset + " Database Flag");
             }
         }
-        header += "Flag" + lineEnding;
-        return header;
+        writer.addField("Flag");
+        writer.endRow();
     }
 
     /**
      * Generates a data row for the csv file.
      *
+     * @param writer csv row writer.
      * @param scanObject ScanID object with mzid data.
-     * @param lineEnding line ending for each csv row.
-     * @param delimiter delimiter for each csv column.
-     * @return ScanID data row as String.
+     * @throws IOException could not write to the file.
      */
-    private String generateCsvRow(final ScanIdOutput scanObject, final String lineEnding, final String delimiter) {
-        String row = "";
-        row += scanObject.getScanId() + delimiter;
+    private void generateCsvRow(final CsvRowWriter writer, final ScanIdOutput scanObject) throws IOException {
+        writer.addField(scanObject.getScanId());
         for (String sequence : scanObject.getPeptideSequenceList()) {
-            row += sequence + delimiter;
+            writer.addField(sequence);
         }
         for (int i = 0; i < scanObject.getPsmScoreList().size(); i++) {
-            row += scanObject.getPsmScoreList().get(i) + delimiter;
+            writer.addField(scanObject.getPsmScoreList().get(i));
         }
         if (scanObject.getEntryFlag() > 0) {
             for (String flag : scanObject.getDatabaseFlagList()) {
-                row += flag + delimiter;
+                writer.addField(flag);
             }
         }
-        row += scanObject.getEntryFlag() + lineEnding;
-        return row;
+        writer.addField(scanObject.getEntryFlag());
+        writer.endRow();
     }
 }
@@ -0,0 +1,163 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.writer.csv;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import nl.eriba.mzidentml.identification.collections.general.MatchedIonSeriesCollection;
+import nl.eriba.mzidentml.identification.collections.output.DatabaseSearchPsmOutputCollection;
+import nl.eriba.mzidentml.identification.collections.output.PeptideOutputCollection;
+import nl.eriba.mzidentml.identification.collections.output.ProteinPeptideOutputCollection;
+import nl.eriba.mzidentml.identification.objects.general.MatchedIonSeries;
+import nl.eriba.mzidentml.identification.objects.output.DatabaseSearchPsmOutput;
+import nl.eriba.mzidentml.identification.objects.output.PeptideOutput;
+import nl.eriba.mzidentml.identification.objects.output.ProteinPeptideOutput;
+
+/**
+ * Writes the DB search psm, peptides, ion-series and protein-peptides csv files of a single mzid file while the spectrum batches are processed.
+ * Each file is written by its own StreamingCsvWriter thread, so the output objects of a batch are released once they have been written.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdStreamingOutput {
+
+    /**
+     * Writer of the DB search psm.csv file, or null if the file was not requested.
+     */
+    private final StreamingCsvWriter<DatabaseSearchPsmOutput> psmWriter;
+
+    /**
+     * Writer of the peptides.csv file, or null if the file was not requested.
+     */
+    private final StreamingCsvWriter<PeptideOutput> peptideWriter;
+
+    /**
+     * Writer of the ion-series.csv file, or null if the file was not requested.
+     */
+    private final StreamingCsvWriter<MatchedIonSeries> ionSeriesWriter;
+
+    /**
+     * Writer of the protein-peptides.csv file, or null if the file was not requested.
+     */
+    private final StreamingCsvWriter<ProteinPeptideOutput> proteinPeptideWriter;
+
+    /**
+     * Futures of the started writers.
+     */
+    private final ArrayList<Future<Integer>> writerFutures;
+
+    /**
+     * Executor that runs the writers.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Creates the writers of the requested output files.
+     *
+     * @param directory target directory to write the files to.
+     * @param inputNumbers input numbers that determine which files should be written.
+     * @param sorted sorts the rows of each file like the collections of the mzid file reader if true.
+     * @param sortBufferSize maximum amount of output objects per file kept in memory while sorting.
+     * @param queueCapacity maximum amount of batches per file that are queued before they are written.
+     */
+    public MzIdStreamingOutput(final String directory, final ArrayList<Integer> inputNumbers, final boolean sorted, final int sortBufferSize, final int queueCapacity) {
+        StreamingCsvWriter<DatabaseSearchPsmOutput> psmCsvWriter = null;
+        StreamingCsvWriter<PeptideOutput> peptideCsvWriter = null;
+        StreamingCsvWriter<MatchedIonSeries> ionSeriesCsvWriter = null;
+        StreamingCsvWriter<ProteinPeptideOutput> proteinPeptideCsvWriter = null;
+        for (Integer number : inputNumbers) {
+            if (number != null) {
+                switch (number) {
+                    case 1:
+                        psmCsvWriter = new DBSearchPsmCsvWriter().createStreamingWriter(directory, sorted, sortBufferSize, queueCapacity);
+                        break;
+                    case 2:
+                        peptideCsvWriter = new PeptideCsvWriter().createStreamingWriter(directory, sorted, sortBufferSize, queueCapacity);
+                        ionSeriesCsvWriter = new IonSeriesCsvWriter().createStreamingWriter(directory, sorted, sortBufferSize, queueCapacity);
+                        break;
+                    case 3:
+                        proteinPeptideCsvWriter = new ProteinPeptideCsvWriter().createStreamingWriter(directory, sorted, sortBufferSize, queueCapacity);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        this.psmWriter = psmCsvWriter;
+        this.peptideWriter = peptideCsvWriter;
+        this.ionSeriesWriter = ionSeriesCsvWriter;
+        this.proteinPeptideWriter = proteinPeptideCsvWriter;
+        this.writerFutures = new ArrayList<>();
+    }
+
+    /**
+     * Returns the writers of the requested output files.
+     *
+     * @return ArrayList of StreamingCsvWriter objects.
+     */
+    private ArrayList<StreamingCsvWriter<?>> getWriters() {
+        ArrayList<StreamingCsvWriter<?>> writers = new ArrayList<>();
+        for (StreamingCsvWriter<?> writer : new StreamingCsvWriter<?>[]{psmWriter, peptideWriter, ionSeriesWriter, proteinPeptideWriter}) {
+            if (writer != null) {
+                writers.add(writer);
+            }
+        }
+        return writers;
+    }
+
+    /**
+     * Starts a thread for each writer.
+     */
+    public final void start() {
+        ArrayList<StreamingCsvWriter<?>> writers = getWriters();
+        executor = Executors.newFixedThreadPool(Math.max(writers.size(), 1));
+        for (StreamingCsvWriter<?> writer : writers) {
+            writerFutures.add(executor.submit(writer));
+        }
+    }
+
+    /**
+     * Adds the output of a processed spectrum batch to the writers. Blocks while the queue of a writer is full.
+     *
+     * @param batchOutput collections returned by the call function of MzIdFileReader.
+     * @throws InterruptedException process was interrupted while waiting for a writer.
+     */
+    public final void addBatchOutput(final ArrayList<Object> batchOutput) throws InterruptedException {
+        if (psmWriter != null) {
+            psmWriter.addEntries(((DatabaseSearchPsmOutputCollection) batchOutput.get(1)).getDatabaseSearchPsmEntryList());
+        }
+        if (peptideWriter != null) {
+            peptideWriter.addEntries(((PeptideOutputCollection) batchOutput.get(2)).getPeptideEntryList());
+        }
+        if (ionSeriesWriter != null) {
+            ionSeriesWriter.addEntries(((MatchedIonSeriesCollection) batchOutput.get(3)).getMatchedIonSeriesList());
+        }
+        if (proteinPeptideWriter != null) {
+            proteinPeptideWriter.addEntries(((ProteinPeptideOutputCollection) batchOutput.get(4)).getProteinPeptideEntryList());
+        }
+    }
+
+    /**
+     * Marks the end of the output and waits until all files have been written.
+     *
+     * @throws InterruptedException process was interrupted while waiting for a writer.
+     * @throws ExecutionException a writer could not write its file.
+     */
+    public final void finish() throws InterruptedException, ExecutionException {
+        try {
+            for (StreamingCsvWriter<?> writer : getWriters()) {
+                writer.finish();
+            }
+            for (Future<Integer> future : writerFutures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
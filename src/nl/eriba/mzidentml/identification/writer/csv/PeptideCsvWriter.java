@@ -4,17 +4,17 @@
  */
 package nl.eriba.mzidentml.identification.writer.csv;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import nl.eriba.mzidentml.identification.collections.output.PeptideOutputCollection;
 import nl.eriba.mzidentml.identification.objects.output.PeptideOutput;
 
 /**
  * Writes a peptides.csv file.
+ * Rows are encoded by a CsvRowWriter.
  *
  * @author vnijenhuis
  */
-public class PeptideCsvWriter {
+public class PeptideCsvWriter implements CsvRowFormat<PeptideOutput> {
 
     /**
      * Writes a peptides.csv file.
@@ -26,68 +26,95 @@ public class PeptideCsvWriter {
     public final void writePeptideCsv(String directory, PeptideOutputCollection peptideEntryCollection) throws IOException {
         String outputDirectory = directory + "peptides.csv";
         System.out.println("Writing data to " + outputDirectory);
-        try (FileWriter writer = new FileWriter(outputDirectory)) {
-            String lineEnding = "\n";
-            String delimiter = ",";
-            String header = writeHeader(delimiter, lineEnding);
-            writer.write(header);
+        try (CsvRowWriter writer = new CsvRowWriter(outputDirectory, false)) {
+            writeHeader(writer);
             for (PeptideOutput peptideEntry : peptideEntryCollection.getPeptideEntryList()) {
-                String row = writeRow(delimiter, lineEnding, peptideEntry);
-                writer.write(row);
+                writeRow(writer, peptideEntry);
             }
-            writer.flush();
-            writer.close();
         }
     }
 
     /**
      * Writes the header for the peptides.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
-     * @return header for a peptides.csv file.
+     * @param writer csv row writer.
+     * @throws IOException could not write to the file.
      */
-    private String writeHeader(String delimiter, String lineEnding) {
-        String header = "";
-        header += "Peptide Sequence" + delimiter;
-        header += "Score (-10lgP)" + delimiter;
-        header += "Mass" + delimiter;
-        header += "Length" + delimiter;
-        header += "ppm" + delimiter;
-        header += "m/z" + delimiter;
-        header += "RT" + delimiter;
-        header += "Scan" + delimiter;
-        header += "Spectra Count" + delimiter;
-        header += "Accession" + delimiter;
-        header += "PTM" + delimiter;
-        header += "AScore" + delimiter;
-        header += "Ion Serie Flag" + delimiter;
-        header += "Covered Indices" + lineEnding;
-        return header;
+    @Override
+    public final void writeHeader(final CsvRowWriter writer) throws IOException {
+        writer.addField("Peptide Sequence");
+        writer.addField("Score (-10lgP)");
+        writer.addField("Mass");
+        writer.addField("Length");
+        writer.addField("ppm");
+        writer.addField("m/z");
+        writer.addField("RT");
+        writer.addField("Scan");
+        writer.addField("Spectra Count");
+        writer.addField("Accession");
+        writer.addField("PTM");
+        writer.addField("AScore");
+        writer.addField("Ion Serie Flag");
+        writer.addField("Covered Indices");
+        writer.endRow();
     }
 
     /**
      * Writes the rows for the peptides.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
+     * @param writer csv row writer.
      * @param peptideEntry PeptideOutput object.
-     * @return row containing PeptideOutput data.
+     * @throws IOException could not write to the file.
      */
-    private String writeRow(String delimiter, String lineEnding, PeptideOutput peptideEntry) {
-        String row = "";
-        row += peptideEntry.getPeptideSequence() + delimiter;
-        row += peptideEntry.getPeptideScore() + delimiter;
-        row += peptideEntry.getTheoreticalMassToCharge() + delimiter;
-        row += peptideEntry.getSequenceLength() + delimiter;
-        row += peptideEntry.getPartsPerMillion() + delimiter;
-        row += peptideEntry.getCalculatedMassToCharge() + delimiter;
-        row += peptideEntry.getRetentionTime() + delimiter;
-        row += peptideEntry.getScanNumber() + delimiter;
-        row += peptideEntry.getSpectraCount() + delimiter;
-        row += peptideEntry.getProteinAccession() + delimiter;
-        row += peptideEntry.getPostTranslationalModification() + delimiter;
-        row += peptideEntry.getAScore() + lineEnding;
-        return row;
+    @Override
+    public final void writeRow(final CsvRowWriter writer, PeptideOutput peptideEntry) throws IOException {
+        writer.addField(peptideEntry.getPeptideSequence());
+        writer.addField(peptideEntry.getPeptideScore());
+        writer.addField(peptideEntry.getTheoreticalMassToCharge());
+        writer.addField(peptideEntry.getSequenceLength());
+        writer.addField(peptideEntry.getPartsPerMillion());
+        writer.addField(peptideEntry.getCalculatedMassToCharge());
+        writer.addField(peptideEntry.getRetentionTime());
+        writer.addField(peptideEntry.getScanNumber());
+        writer.addField(peptideEntry.getSpectraCount());
+        writer.addField(peptideEntry.getProteinAccession());
+        writer.addField(peptideEntry.getPostTranslationalModification());
+        writer.addField(peptideEntry.getAScore());
+        writer.endRow();
+    }
+
+    /**
+     * Returns the peptide score that the rows are sorted on.
+     *
+     * @param peptideEntry PeptideOutput object.
+     * @return peptide score.
+     */
+    @Override
+    public final Comparable<?> getSortKey(final PeptideOutput peptideEntry) {
+        return peptideEntry.getPeptideScore();
+    }
+
+    /**
+     * Returns the peptide sequence that rows with equal peptide scores are sorted on.
+     *
+     * @param peptideEntry PeptideOutput object.
+     * @return peptide sequence.
+     */
+    @Override
+    public final Comparable<?> getSecondarySortKey(final PeptideOutput peptideEntry) {
+        return peptideEntry.getPeptideSequence();
+    }
+
+    /**
+     * Creates a writer that writes the peptides.csv file while the PeptideOutput objects are created.
+     *
+     * @param directory target directory to write the file to.
+     * @param sorted sorts the rows on peptide score if true, otherwise rows are written in the order they were added.
+     * @param sortBufferSize maximum amount of PeptideOutput objects kept in memory while sorting.
+     * @param queueCapacity maximum amount of batches that are queued before they are written.
+     * @return StreamingCsvWriter that has to be started by an executor.
+     */
+    public final StreamingCsvWriter<PeptideOutput> createStreamingWriter(final String directory, final boolean sorted, final int sortBufferSize, final int queueCapacity) {
+        return new StreamingCsvWriter<>(directory + "peptides.csv", false, this, sorted, sortBufferSize, queueCapacity);
     }
 }
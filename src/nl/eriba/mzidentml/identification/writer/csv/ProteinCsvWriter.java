@@ -4,13 +4,13 @@
  */
 package nl.eriba.mzidentml.identification.writer.csv;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import nl.eriba.mzidentml.identification.collections.output.ProteinOutputCollection;
 import nl.eriba.mzidentml.identification.objects.output.ProteinOutput;
 
 /**
  * Writes a proteins.csv file.
+ * Rows are encoded by a CsvRowWriter.
  *
  * @author vnijenhuis
  */
@@ -26,62 +26,52 @@ public class ProteinCsvWriter {
     public final void writeProteinCsv(final String directory, ProteinOutputCollection proteinEntryCollection) throws IOException {
         String output = directory + "proteins.csv";
         System.out.println("Writing output to " + output);
-        try (FileWriter writer = new FileWriter(output)) {
-            String lineEnding = "\n";
-            String delimiter = ",";
-            String header = writeHeader(delimiter, lineEnding);
-            writer.write(header);
+        try (CsvRowWriter writer = new CsvRowWriter(output, false)) {
+            writeHeader(writer);
             for (ProteinOutput proteinEntry : proteinEntryCollection.getProteinEntryList()) {
-                String row = writeRow(delimiter, lineEnding, proteinEntry);
-                writer.write(row);
+                writeRow(writer, proteinEntry);
             }
-            writer.flush();
-            writer.close();
         }
     }
 
     /**
      * Writes the header for the proteins.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
-     * @return header for a proteins.csv file.
+     * @param writer csv row writer.
+     * @throws IOException could not write to the file.
      */
-    private String writeHeader(String delimiter, String lineEnding) {
-        String header = "";
-        header += "Protein Group" + delimiter;
-        header += "Protein ID" + delimiter;
-        header += "Accession" + delimiter;
-        header += "-10lgP" + delimiter;
-        header += "Coverage (%)" + delimiter;
-        header += "#Peptides" + delimiter;
-        header += "#Unique" + delimiter;
-        header += "PTM" + delimiter;
-        header += "Avg. Mass" + delimiter;
-        header += "Description" + lineEnding;
-        return header;
+    private void writeHeader(final CsvRowWriter writer) throws IOException {
+        writer.addField("Protein Group");
+        writer.addField("Protein ID");
+        writer.addField("Accession");
+        writer.addField("-10lgP");
+        writer.addField("Coverage (%)");
+        writer.addField("#Peptides");
+        writer.addField("#Unique");
+        writer.addField("PTM");
+        writer.addField("Avg. Mass");
+        writer.addField("Description");
+        writer.endRow();
     }
 
     /**
      * Writes the rows for the proteins.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
+     * @param writer csv row writer.
      * @param proteinEntry ProteinOutput object.
-     * @return row containing DatabaseSearchPsmEntry data.
+     * @throws IOException could not write to the file.
      */
-    private String writeRow(String delimiter, String lineEnding, ProteinOutput proteinEntry) {
-        String row = "";
-        row += proteinEntry.getProteinGroup() + delimiter;
-        row += proteinEntry.getProteinId() + delimiter;
-        row += proteinEntry.getProteinAccession() + delimiter;
-        row += proteinEntry.getTotalScore() + delimiter;
-        row += proteinEntry.getProteinCoverage() + delimiter;
-        row += proteinEntry.getPeptideCount() + delimiter;
-        row += proteinEntry.getUniquePeptideCount() + delimiter;
-        row += proteinEntry.getPostTranslationalModification() + delimiter;
-        row += proteinEntry.getAverageSequenceMass() + delimiter;
-        row += proteinEntry.getProteinDescription() + lineEnding;
-        return row;
+    private void writeRow(final CsvRowWriter writer, ProteinOutput proteinEntry) throws IOException {
+        writer.addField(proteinEntry.getProteinGroup());
+        writer.addField(proteinEntry.getProteinId());
+        writer.addField(proteinEntry.getProteinAccession());
+        writer.addField(proteinEntry.getTotalScore());
+        writer.addField(proteinEntry.getProteinCoverage());
+        writer.addField(proteinEntry.getPeptideCount());
+        writer.addField(proteinEntry.getUniquePeptideCount());
+        writer.addField(proteinEntry.getPostTranslationalModification());
+        writer.addField(proteinEntry.getAverageSequenceMass());
+        writer.addField(proteinEntry.getProteinDescription());
+        writer.endRow();
     }
 }
@@ -4,17 +4,17 @@
  */
 package nl.eriba.mzidentml.identification.writer.csv;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import nl.eriba.mzidentml.identification.collections.output.ProteinPeptideOutputCollection;
 import nl.eriba.mzidentml.identification.objects.output.ProteinPeptideOutput;
 
 /**
  * Writes a protein-peptides.csv file.
+ * Rows are encoded by a CsvRowWriter.
  *
  * @author vnijenhuis
  */
-public class ProteinPeptideCsvWriter {
+public class ProteinPeptideCsvWriter implements CsvRowFormat<ProteinPeptideOutput> {
 
     /**
      * Writes a protein-peptides.csv file.
@@ -26,78 +26,103 @@ public class ProteinPeptideCsvWriter {
     public final void writeProteinPeptideCsv(final String directory, ProteinPeptideOutputCollection proteinPeptideEntryCollection) throws IOException {
         String outputDirectory = directory + "protein-peptides.csv";
         System.out.println("Writing output to " + outputDirectory);
-        try (FileWriter writer = new FileWriter(outputDirectory)) {
-            String lineEnding = "\n";
-            String delimiter = ",";
-            String header = writeHeader(delimiter, lineEnding);
-            writer.write(header);
-            int count = 0;
+        try (CsvRowWriter writer = new CsvRowWriter(outputDirectory, false)) {
+            writeHeader(writer);
             for (ProteinPeptideOutput proteinPeptideEntry : proteinPeptideEntryCollection.getProteinPeptideEntryList()) {
-                String row = writeRow(delimiter, lineEnding, proteinPeptideEntry);
-                writer.write(row);
-                count++;
+                writeRow(writer, proteinPeptideEntry);
             }
-            writer.flush();
-            writer.close();
         }
     }
 
     /**
      * Writes the header for the protein-peptides.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
-     * @return header for a protein-peptides.csv file.
+     * @param writer csv row writer.
+     * @throws IOException could not write to the file.
      */
-    private String writeHeader(String delimiter, String lineEnding) {
-        String header = "";
-        header += "Protein Group" + delimiter;
-        header += "Protein ID" + delimiter;
-        header += "Protein Accession" + delimiter;
-        header += "Peptide Sequence" + delimiter;
-        header += "Unique" + delimiter;
-        header += "Score (-10lgP)" + delimiter;
-        header += "Mass" + delimiter;
-        header += "Length" + delimiter;
-        header += "ppm" + delimiter;
-        header += "m/z" + delimiter;
-        header += "RT" + delimiter;
-        header += "Scan" + delimiter;
-        header += "#Spec" + delimiter;
-        header += "Start" + delimiter;
-        header += "End" + delimiter;
-        header += "PTM" + delimiter;
-        header += "AScore" + lineEnding;
-        return header;
+    @Override
+    public final void writeHeader(final CsvRowWriter writer) throws IOException {
+        writer.addField("Protein Group");
+        writer.addField("Protein ID");
+        writer.addField("Protein Accession");
+        writer.addField("Peptide Sequence");
+        writer.addField("Unique");
+        writer.addField("Score (-10lgP)");
+        writer.addField("Mass");
+        writer.addField("Length");
+        writer.addField("ppm");
+        writer.addField("m/z");
+        writer.addField("RT");
+        writer.addField("Scan");
+        writer.addField("#Spec");
+        writer.addField("Start");
+        writer.addField("End");
+        writer.addField("PTM");
+        writer.addField("AScore");
+        writer.endRow();
     }
 
     /**
      * Writes the rows for the protein-peptides.csv file.
      *
-     * @param delimiter delimiter used to define the row separator.
-     * @param lineEnding lineEnding for end of each row.
+     * @param writer csv row writer.
      * @param databaseSearchPsmEntry DatabaseSearchPsmEntry object.
-     * @return row containing DatabaseSearchPsmEntry data.
+     * @throws IOException could not write to the file.
      */
-    private String writeRow(String delimiter, String lineEnding, ProteinPeptideOutput proteinPeptideEntry) {
-        String row = "";
-        row += proteinPeptideEntry.getProteinGroup() + delimiter;
-        row += proteinPeptideEntry.getProteinId() + delimiter;
-        row += proteinPeptideEntry.getProteinAccession() + delimiter;
-        row += proteinPeptideEntry.getPeptideSequence() + delimiter;
-        row += proteinPeptideEntry.getUniqueness() + delimiter;
-        row += proteinPeptideEntry.getPeptideScore() + delimiter;
-        row += proteinPeptideEntry.getTheoreticalMassToCharge() + delimiter;
-        row += proteinPeptideEntry.getSequenceLength() + delimiter;
-        row += proteinPeptideEntry.getPartsPerMillion() + delimiter;
-        row += proteinPeptideEntry.getCalculatedMassToCharge() + delimiter;
-        row += proteinPeptideEntry.getRetentionTime() + delimiter;
-        row += proteinPeptideEntry.getScanNumber() + delimiter;
-        row += proteinPeptideEntry.getSpectraCount() + delimiter;
-        row += proteinPeptideEntry.getStartIndex() + delimiter;
-        row += proteinPeptideEntry.getEndIndex() + delimiter;
-        row += proteinPeptideEntry.getPostTranslationalModification() + delimiter;
-        row += proteinPeptideEntry.getAScore() + lineEnding;
-        return row;
+    @Override
+    public final void writeRow(final CsvRowWriter writer, ProteinPeptideOutput proteinPeptideEntry) throws IOException {
+        writer.addField(proteinPeptideEntry.getProteinGroup());
+        writer.addField(proteinPeptideEntry.getProteinId());
+        writer.addField(proteinPeptideEntry.getProteinAccession());
+        writer.addField(proteinPeptideEntry.getPeptideSequence());
+        writer.addField(proteinPeptideEntry.getUniqueness());
+        writer.addField(proteinPeptideEntry.getPeptideScore());
+        writer.addField(proteinPeptideEntry.getTheoreticalMassToCharge());
+        writer.addField(proteinPeptideEntry.getSequenceLength());
+        writer.addField(proteinPeptideEntry.getPartsPerMillion());
+        writer.addField(proteinPeptideEntry.getCalculatedMassToCharge());
+        writer.addField(proteinPeptideEntry.getRetentionTime());
+        writer.addField(proteinPeptideEntry.getScanNumber());
+        writer.addField(proteinPeptideEntry.getSpectraCount());
+        writer.addField(proteinPeptideEntry.getStartIndex());
+        writer.addField(proteinPeptideEntry.getEndIndex());
+        writer.addField(proteinPeptideEntry.getPostTranslationalModification());
+        writer.addField(proteinPeptideEntry.getAScore());
+        writer.endRow();
+    }
+
+    /**
+     * Returns the protein group that the rows are sorted on.
+     *
+     * @param proteinPeptideEntry ProteinPeptideOutput object.
+     * @return protein group.
+     */
+    @Override
+    public final Comparable<?> getSortKey(final ProteinPeptideOutput proteinPeptideEntry) {
+        return proteinPeptideEntry.getProteinGroup();
+    }
+
+    /**
+     * Returns the peptide sequence that rows with equal protein groups are sorted on.
+     *
+     * @param proteinPeptideEntry ProteinPeptideOutput object.
+     * @return peptide sequence.
+     */
+    @Override
+    public final Comparable<?> getSecondarySortKey(final ProteinPeptideOutput proteinPeptideEntry) {
+        return proteinPeptideEntry.getPeptideSequence();
+    }
+
+    /**
+     * Creates a writer that writes the protein-peptides.csv file while the ProteinPeptideOutput objects are created.
+     *
+     * @param directory target directory to write the file to.
+     * @param sorted sorts the rows on protein group and peptide sequence if true, otherwise rows are written in the order they were added.
+     * @param sortBufferSize maximum amount of ProteinPeptideOutput objects kept in memory while sorting.
+     * @param queueCapacity maximum amount of batches that are queued before they are written.
+     * @return StreamingCsvWriter that has to be started by an executor.
+     */
+    public final StreamingCsvWriter<ProteinPeptideOutput> createStreamingWriter(final String directory, final boolean sorted, final int sortBufferSize, final int queueCapacity) {
+        return new StreamingCsvWriter<>(directory + "protein-peptides.csv", false, this, sorted, sortBufferSize, queueCapacity);
     }
 }
@@ -0,0 +1,416 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.writer.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes a csv file while the output objects are still being created.
+ * Batches of output objects are added to a bounded queue that is drained by the thread that runs this writer. Sorted files are written with an
+ * external merge sort: sorted runs of at most sortBufferSize objects are spilled to disk and merged when the last batch has been added. Objects
+ * with equal sort keys are sorted on their secondary sort key and otherwise keep the order in which they were added, so the output is the same as
+ * sorting the complete collection.
+ *
+ * @author vnijenhuis
+ * @param <T> type of the output objects.
+ */
+public class StreamingCsvWriter<T> implements Callable<Integer> {
+
+    /**
+     * Size of the buffers of the spilled runs that are read during the merge.
+     */
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Tag of a null sort key in a spilled run.
+     */
+    private static final byte NULL_KEY = 0;
+
+    /**
+     * Tag of a Double sort key in a spilled run.
+     */
+    private static final byte DOUBLE_KEY = 1;
+
+    /**
+     * Tag of an Integer sort key in a spilled run.
+     */
+    private static final byte INTEGER_KEY = 2;
+
+    /**
+     * Tag of a String sort key in a spilled run.
+     */
+    private static final byte STRING_KEY = 3;
+
+    /**
+     * Path to the csv file.
+     */
+    private final String file;
+
+    /**
+     * Appends the rows to the existing file if true.
+     */
+    private final boolean append;
+
+    /**
+     * Header, rows and sort key of the csv file.
+     */
+    private final CsvRowFormat<T> format;
+
+    /**
+     * Sorts the rows on the sort key of the format if true, otherwise rows are written in the order they were added.
+     */
+    private final boolean sorted;
+
+    /**
+     * Maximum amount of output objects that are kept in memory before a sorted run is spilled to disk.
+     */
+    private final int sortBufferSize;
+
+    /**
+     * Queue of batches that have not been written yet. Adding a batch blocks when the queue is full.
+     */
+    private final BlockingQueue<List<T>> queue;
+
+    /**
+     * Empty batch that marks the end of the output.
+     */
+    private final List<T> endOfStream;
+
+    /**
+     * Creates a streaming writer. The file is opened when the writer is started.
+     *
+     * @param file path to the csv file.
+     * @param append appends the rows to the existing file if true, otherwise the file is replaced.
+     * @param format header, rows and sort key of the csv file.
+     * @param sorted sorts the rows on the sort key of the format if true.
+     * @param sortBufferSize maximum amount of output objects kept in memory while sorting.
+     * @param queueCapacity maximum amount of batches that have been added but have not been written yet.
+     */
+    public StreamingCsvWriter(final String file, final boolean append, final CsvRowFormat<T> format, final boolean sorted, final int sortBufferSize, final int queueCapacity) {
+        this.file = file;
+        this.append = append;
+        this.format = format;
+        this.sorted = sorted;
+        this.sortBufferSize = Math.max(sortBufferSize, 1);
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        this.endOfStream = new ArrayList<>(0);
+    }
+
+    /**
+     * Adds a batch of output objects. Blocks while the queue is full.
+     *
+     * @param entries output objects. The list should not be changed after it has been added.
+     * @throws InterruptedException process was interrupted while waiting for space in the queue.
+     */
+    public final void addEntries(final List<T> entries) throws InterruptedException {
+        if (!entries.isEmpty()) {
+            queue.put(entries);
+        }
+    }
+
+    /**
+     * Marks the end of the output. Has to be called once after the last batch, also if the producer failed.
+     *
+     * @throws InterruptedException process was interrupted while waiting for space in the queue.
+     */
+    public final void finish() throws InterruptedException {
+        queue.put(endOfStream);
+    }
+
+    /**
+     * Writes the batches in the queue until the end of the output is reached.
+     * If writing fails the queue is still drained, so the producer is never blocked by a writer that stopped.
+     *
+     * @return amount of rows written.
+     * @throws IOException could not write to the csv file or a spilled run.
+     * @throws InterruptedException process was interrupted while waiting for a batch.
+     */
+    @Override
+    public Integer call() throws IOException, InterruptedException {
+        System.out.println("Writing output to " + file);
+        ArrayList<File> runs = new ArrayList<>();
+        boolean finished = false;
+        try (CsvRowWriter writer = new CsvRowWriter(file, append)) {
+            format.writeHeader(writer);
+            Integer rowCount = 0;
+            ArrayList<T> sortBuffer = new ArrayList<>();
+            List<T> entries = queue.take();
+            while (entries != endOfStream) {
+                for (T entry : entries) {
+                    if (sorted) {
+                        sortBuffer.add(entry);
+                        if (sortBuffer.size() >= sortBufferSize) {
+                            runs.add(writeSortedRun(sortBuffer));
+                            sortBuffer.clear();
+                        }
+                    } else {
+                        format.writeRow(writer, entry);
+                    }
+                    rowCount++;
+                }
+                entries = queue.take();
+            }
+            finished = true;
+            if (runs.isEmpty()) {
+                //All objects fit in memory, so they are sorted and written directly.
+                sortEntries(sortBuffer);
+                for (T entry : sortBuffer) {
+                    format.writeRow(writer, entry);
+                }
+            } else {
+                if (!sortBuffer.isEmpty()) {
+                    runs.add(writeSortedRun(sortBuffer));
+                }
+                sortBuffer = null;
+                System.out.println("Merging " + runs.size() + " sorted runs of " + file);
+                mergeSortedRuns(writer, runs);
+            }
+            System.out.println("Finished writing " + rowCount + " rows to " + file);
+            return rowCount;
+        } catch (InterruptedException e) {
+            finished = true;
+            throw e;
+        } finally {
+            if (!finished) {
+                drainQueue();
+            }
+            for (File run : runs) {
+                getKeyFile(run).delete();
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * Takes batches from the queue until the end of the output is reached.
+     *
+     * @throws InterruptedException process was interrupted while waiting for a batch.
+     */
+    private void drainQueue() throws InterruptedException {
+        List<T> entries = queue.take();
+        while (entries != endOfStream) {
+            entries = queue.take();
+        }
+    }
+
+    /**
+     * Sorts output objects on their sort key and secondary sort key. Objects with equal sort keys keep their order.
+     *
+     * @param entries output objects.
+     */
+    private void sortEntries(final ArrayList<T> entries) {
+        if (sorted) {
+            Collections.sort(entries, new Comparator<T>() {
+                @Override
+                public int compare(T o1, T o2) {
+                    int keyComparison = compareKeys(format.getSortKey(o1), format.getSortKey(o2));
+                    if (keyComparison != 0) {
+                        return keyComparison;
+                    }
+                    return compareKeys(format.getSecondarySortKey(o1), format.getSecondarySortKey(o2));
+                }
+            });
+        }
+    }
+
+    /**
+     * Compares two sort keys. Null keys are placed before all other keys.
+     *
+     * @param key first sort key.
+     * @param otherKey second sort key.
+     * @return negative, zero or positive value like Comparable.compareTo().
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareKeys(final Comparable<?> key, final Comparable<?> otherKey) {
+        if (key == null || otherKey == null) {
+            return Boolean.compare(key != null, otherKey != null);
+        }
+        return ((Comparable<Object>) key).compareTo(otherKey);
+    }
+
+    /**
+     * Sorts the output objects and writes them to a temporary run next to the csv file.
+     * The encoded rows are written to the run file and the sort keys and row length of each row to a separate key file.
+     *
+     * @param entries output objects.
+     * @return run file.
+     * @throws IOException could not write the run.
+     */
+    private File writeSortedRun(final ArrayList<T> entries) throws IOException {
+        sortEntries(entries);
+        File directory = new File(file).getAbsoluteFile().getParentFile();
+        File run = File.createTempFile("csv-run", ".tmp", directory);
+        run.deleteOnExit();
+        getKeyFile(run).deleteOnExit();
+        try (CsvRowWriter rowWriter = new CsvRowWriter(run.getPath(), false);
+                DataOutputStream keyOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getKeyFile(run)), RUN_BUFFER_SIZE))) {
+            for (T entry : entries) {
+                long rowStart = rowWriter.getWrittenBytes();
+                format.writeRow(rowWriter, entry);
+                writeSortKey(keyOutput, format.getSortKey(entry));
+                writeSortKey(keyOutput, format.getSecondarySortKey(entry));
+                keyOutput.writeInt((int) (rowWriter.getWrittenBytes() - rowStart));
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Returns the key file of a run file.
+     *
+     * @param run run file.
+     * @return key file.
+     */
+    private File getKeyFile(final File run) {
+        return new File(run.getPath() + ".keys");
+    }
+
+    /**
+     * Writes a tagged sort key.
+     *
+     * @param output key file output.
+     * @param key Double, Integer or String sort key.
+     * @throws IOException could not write the key.
+     */
+    private void writeSortKey(final DataOutputStream output, final Comparable<?> key) throws IOException {
+        if (key == null) {
+            output.writeByte(NULL_KEY);
+        } else if (key instanceof Double) {
+            output.writeByte(DOUBLE_KEY);
+            output.writeDouble((Double) key);
+        } else if (key instanceof Integer) {
+            output.writeByte(INTEGER_KEY);
+            output.writeInt((Integer) key);
+        } else if (key instanceof String) {
+            output.writeByte(STRING_KEY);
+            output.writeUTF((String) key);
+        } else {
+            throw new IllegalArgumentException("Sort keys of type " + key.getClass().getSimpleName() + " can not be written to a sorted run.");
+        }
+    }
+
+    /**
+     * Reads a tagged sort key.
+     *
+     * @param input key file input.
+     * @return sort key.
+     * @throws IOException could not read the key.
+     */
+    private Comparable<?> readSortKey(final DataInputStream input) throws IOException {
+        byte tag = input.readByte();
+        switch (tag) {
+            case NULL_KEY:
+                return null;
+            case DOUBLE_KEY:
+                return input.readDouble();
+            case INTEGER_KEY:
+                return input.readInt();
+            case STRING_KEY:
+                return input.readUTF();
+            default:
+                throw new IOException("Unknown sort key tag " + tag + " in a sorted run of " + file);
+        }
+    }
+
+    /**
+     * Merges the sorted runs into the csv file. Rows with equal sort keys are taken from the earliest run first, which keeps the order in which they
+     * were added.
+     *
+     * @param writer csv row writer of the csv file.
+     * @param runs sorted runs in the order they were written.
+     * @throws IOException could not read a run or write to the csv file.
+     */
+    private void mergeSortedRuns(final CsvRowWriter writer, final ArrayList<File> runs) throws IOException {
+        final int runCount = runs.size();
+        final DataInputStream[] keyInputs = new DataInputStream[runCount];
+        final DataInputStream[] rowInputs = new DataInputStream[runCount];
+        final Comparable<?>[] keys = new Comparable<?>[runCount];
+        final Comparable<?>[] secondaryKeys = new Comparable<?>[runCount];
+        final int[] rowLengths = new int[runCount];
+        byte[] row = new byte[1024];
+        try {
+            PriorityQueue<Integer> heads = new PriorityQueue<>(runCount, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int keyComparison = compareKeys(keys[o1], keys[o2]);
+                    if (keyComparison != 0) {
+                        return keyComparison;
+                    }
+                    keyComparison = compareKeys(secondaryKeys[o1], secondaryKeys[o2]);
+                    if (keyComparison != 0) {
+                        return keyComparison;
+                    }
+                    return o1.compareTo(o2);
+                }
+            });
+            for (int i = 0; i < runCount; i++) {
+                keyInputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(getKeyFile(runs.get(i))), RUN_BUFFER_SIZE));
+                rowInputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)), RUN_BUFFER_SIZE));
+                if (readRunHead(keyInputs[i], keys, secondaryKeys, rowLengths, i)) {
+                    heads.add(i);
+                }
+            }
+            while (!heads.isEmpty()) {
+                int run = heads.poll();
+                if (row.length < rowLengths[run]) {
+                    row = new byte[Math.max(rowLengths[run], row.length * 2)];
+                }
+                rowInputs[run].readFully(row, 0, rowLengths[run]);
+                writer.addEncodedRow(row, rowLengths[run]);
+                if (readRunHead(keyInputs[run], keys, secondaryKeys, rowLengths, run)) {
+                    heads.add(run);
+                }
+            }
+        } finally {
+            for (int i = 0; i < runCount; i++) {
+                if (keyInputs[i] != null) {
+                    keyInputs[i].close();
+                }
+                if (rowInputs[i] != null) {
+                    rowInputs[i].close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the sort keys and row length of the next row of a run.
+     *
+     * @param keyInput key file input of the run.
+     * @param keys sort key of the current row per run.
+     * @param secondaryKeys secondary sort key of the current row per run.
+     * @param rowLengths row length of the current row per run.
+     * @param run index of the run.
+     * @return false if the run has no rows left.
+     * @throws IOException could not read the key file.
+     */
+    private boolean readRunHead(final DataInputStream keyInput, final Comparable<?>[] keys, final Comparable<?>[] secondaryKeys, final int[] rowLengths,
+            final int run) throws IOException {
+        try {
+            keys[run] = readSortKey(keyInput);
+        } catch (EOFException e) {
+            return false;
+        }
+        secondaryKeys[run] = readSortKey(keyInput);
+        rowLengths[run] = keyInput.readInt();
+        return true;
+    }
+}
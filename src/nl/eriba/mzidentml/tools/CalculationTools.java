@@ -7,6 +7,8 @@ package nl.eriba.mzidentml.tools;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 import nl.eriba.mzidentml.identification.objects.general.AminoAcidMassMap;
 
 /**
@@ -16,6 +18,25 @@ import nl.eriba.mzidentml.identification.objects.general.AminoAcidMassMap;
  */
 public class CalculationTools {
 
+    /**
+     * Mass of each amino acid character of the AminoAcidMassMap. Characters that are not in the map have a NaN mass.
+     */
+    private static final double[] RESIDUE_MASSES = createResidueMasses();
+
+    /**
+     * Creates the residue mass array from the AminoAcidMassMap.
+     *
+     * @return array with the mass of each amino acid character.
+     */
+    private static double[] createResidueMasses() {
+        double[] residueMasses = new double[128];
+        Arrays.fill(residueMasses, Double.NaN);
+        for (Map.Entry<String, Double> aminoAcid : new AminoAcidMassMap().getAminoAcidMap().entrySet()) {
+            residueMasses[aminoAcid.getKey().charAt(0)] = aminoAcid.getValue();
+        }
+        return residueMasses;
+    }
+
     /**
      * Can round Double values.
      *
@@ -89,11 +110,35 @@ public class CalculationTools {
      * @return protein mass as Double.
      */
     public Double calculateProteinMass(final String proteinSequence) {
+        byte[] residues = new byte[proteinSequence.length()];
+        for (int i = 0; i < residues.length; i++) {
+            char aminoAcid = proteinSequence.charAt(i);
+            if (aminoAcid >= 128) {
+                throw new IllegalArgumentException("Unknown amino acid " + aminoAcid + " in protein sequence.");
+            }
+            residues[i] = (byte) aminoAcid;
+        }
+        return calculateProteinMass(residues, 0, residues.length);
+    }
+
+    /**
+     * Calculate the mass of a protein amino acid sequence based on the values in the AminoAcidMassMap.
+     * 
+     * @param residues byte array that contains the protein amino acid sequence.
+     * @param offset start of the sequence in the array.
+     * @param length length of the sequence.
+     * @return protein mass as Double.
+     */
+    public Double calculateProteinMass(final byte[] residues, final int offset, final int length) {
         double proteinMass = 0.0;
-        String[] sequenceArray = proteinSequence.split("(?!^)");
-        AminoAcidMassMap aminoAcidMap = new AminoAcidMassMap();
-        for (String aminoAcid: sequenceArray) {
-            double mass = aminoAcidMap.getAminoAcidMap().get(aminoAcid);
+        for (int i = offset; i < offset + length; i++) {
+            double mass = Double.NaN;
+            if (residues[i] >= 0) {
+                mass = RESIDUE_MASSES[residues[i]];
+            }
+            if (Double.isNaN(mass)) {
+                throw new IllegalArgumentException("Unknown amino acid " + (char) (residues[i] & 0xff) + " in protein sequence.");
+            }
             proteinMass += mass;
         }
         proteinMass = roundDouble(proteinMass, 2);
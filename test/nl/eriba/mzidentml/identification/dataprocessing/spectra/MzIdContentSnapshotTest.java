@@ -0,0 +1,315 @@
+/*
+ * @author Vikthor Nijenhuis
+ * @project Peptide mzIdentML Identfication Module *
+ */
+package nl.eriba.mzidentml.identification.dataprocessing.spectra;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.DBSequence;
+import uk.ac.ebi.jmzidml.model.mzidml.FragmentArray;
+import uk.ac.ebi.jmzidml.model.mzidml.Fragmentation;
+import uk.ac.ebi.jmzidml.model.mzidml.IonType;
+import uk.ac.ebi.jmzidml.model.mzidml.Peptide;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideEvidence;
+import uk.ac.ebi.jmzidml.model.mzidml.PeptideHypothesis;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinAmbiguityGroup;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionHypothesis;
+import uk.ac.ebi.jmzidml.model.mzidml.ProteinDetectionList;
+import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabase;
+import uk.ac.ebi.jmzidml.model.mzidml.SequenceCollection;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItem;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationItemRef;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationResult;
+
+/**
+ * Tests that a mzid content snapshot written by MzIdContentSnapshotWriter is read back by MzIdContentSnapshot and SnapshotColumnReader
+ * with the same content.
+ *
+ * @author vnijenhuis
+ */
+public class MzIdContentSnapshotTest {
+
+    /**
+     * Minimal mzid file. The snapshot only depends on the size, modification time and checksum of the file.
+     */
+    private File mzIdFile;
+
+    /**
+     * SequenceCollection of the minimal mzid file.
+     */
+    private SequenceCollection sequenceCollection;
+
+    /**
+     * ProteinDetectionList of the minimal mzid file.
+     */
+    private ProteinDetectionList proteinDetectionList;
+
+    /**
+     * SpectrumIdentificationResults of the minimal mzid file.
+     */
+    private List<SpectrumIdentificationResult> spectrumResults;
+
+    /**
+     * Creates the minimal mzid file and the elements that would be unmarshalled from it.
+     *
+     * @throws IOException could not write the mzid file.
+     */
+    @Before
+    public final void setUp() throws IOException {
+        mzIdFile = File.createTempFile("snapshot-test", ".mzid");
+        try (FileWriter writer = new FileWriter(mzIdFile)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<MzIdentML id=\"test\" version=\"1.1.0\"></MzIdentML>\n");
+        }
+        SearchDatabase searchDatabase = new SearchDatabase();
+        searchDatabase.setId("SDB_1");
+        DBSequence databaseSequence = new DBSequence();
+        databaseSequence.setId("DBSeq_1");
+        databaseSequence.setAccession("P12345");
+        databaseSequence.setSearchDatabase(searchDatabase);
+        databaseSequence.getCvParam().add(createCvParam("protein description", "MS:1001088", "Test protein"));
+        Peptide peptide = new Peptide();
+        peptide.setId("PEPTIDEK");
+        peptide.setPeptideSequence("PEPTIDEK");
+        PeptideEvidence evidence = new PeptideEvidence();
+        evidence.setId("PepEv_1");
+        evidence.setIsDecoy(false);
+        evidence.setDBSequence(databaseSequence);
+        evidence.setPeptide(peptide);
+        evidence.setStart(4);
+        evidence.setEnd(11);
+        evidence.setPre("K");
+        evidence.setPost("A");
+        sequenceCollection = new SequenceCollection();
+        sequenceCollection.getDBSequence().add(databaseSequence);
+        sequenceCollection.getPeptide().add(peptide);
+        sequenceCollection.getPeptideEvidence().add(evidence);
+        spectrumResults = new ArrayList<>();
+        //Result with fragmentation and a result without fragmentation or calculated mass-to-charge ratio.
+        SpectrumIdentificationItem fragmentedItem = createItem("SII_1", peptide, 453.72, 453.73);
+        IonType ionType = new IonType();
+        ionType.setCvParam(createCvParam("frag: b ion", "MS:1001224", null));
+        ionType.getIndex().addAll(Arrays.asList(2, 3));
+        FragmentArray massArray = new FragmentArray();
+        massArray.getValues().addAll(Arrays.asList(227.1f, 342.13f));
+        FragmentArray intensityArray = new FragmentArray();
+        intensityArray.getValues().addAll(Arrays.asList(1250.5f, 80.25f));
+        ionType.getFragmentArray().add(massArray);
+        ionType.getFragmentArray().add(intensityArray);
+        Fragmentation fragmentation = new Fragmentation();
+        fragmentation.getIonType().add(ionType);
+        fragmentedItem.setFragmentation(fragmentation);
+        spectrumResults.add(createResult("index=0", "1", fragmentedItem));
+        SpectrumIdentificationItem unfragmentedItem = createItem("SII_2", peptide, null, 302.15);
+        unfragmentedItem.setPassThreshold(false);
+        spectrumResults.add(createResult("index=1", "2", unfragmentedItem));
+        ProteinDetectionHypothesis proteinHypothesis = new ProteinDetectionHypothesis();
+        proteinHypothesis.setId("PDH_1");
+        proteinHypothesis.setDBSequence(databaseSequence);
+        proteinHypothesis.setPassThreshold(true);
+        PeptideHypothesis peptideHypothesis = new PeptideHypothesis();
+        peptideHypothesis.setPeptideEvidence(evidence);
+        SpectrumIdentificationItemRef itemRef = new SpectrumIdentificationItemRef();
+        itemRef.setSpectrumIdentificationItem(fragmentedItem);
+        peptideHypothesis.getSpectrumIdentificationItemRef().add(itemRef);
+        proteinHypothesis.getPeptideHypothesis().add(peptideHypothesis);
+        ProteinAmbiguityGroup group = new ProteinAmbiguityGroup();
+        group.setId("PAG_1");
+        group.getProteinDetectionHypothesis().add(proteinHypothesis);
+        proteinDetectionList = new ProteinDetectionList();
+        proteinDetectionList.getProteinAmbiguityGroup().add(group);
+    }
+
+    /**
+     * Removes the mzid file and its snapshot.
+     */
+    @After
+    public final void tearDown() {
+        new File(MzIdContentSnapshot.getSnapshotFile(mzIdFile.getPath())).delete();
+        mzIdFile.delete();
+    }
+
+    /**
+     * Tests that the SpectrumIdentificationResults, SequenceCollection and ProteinDetectionList are restored from the snapshot.
+     *
+     * @throws IOException could not write or read the snapshot.
+     */
+    @Test
+    public final void testSnapshotRoundTrip() throws IOException {
+        writeSnapshot();
+        MzIdContentSnapshot snapshot = MzIdContentSnapshot.readSnapshot(mzIdFile.getPath());
+        assertNotNull(snapshot);
+        assertEquals(spectrumResults.size(), snapshot.getResultCount());
+        //Every pass over the snapshot restores the same results.
+        for (int pass = 0; pass < 2; pass++) {
+            Iterator<SpectrumIdentificationResult> restoredResults = snapshot.resultIterator();
+            for (SpectrumIdentificationResult result : spectrumResults) {
+                assertResultEquals(result, restoredResults.next());
+            }
+            assertFalse(restoredResults.hasNext());
+        }
+        SequenceCollection restoredSequences = snapshot.getSequenceCollection();
+        assertEquals("P12345", restoredSequences.getDBSequence().get(0).getAccession());
+        assertEquals("SDB_1", restoredSequences.getDBSequence().get(0).getSearchDatabaseRef());
+        assertEquals("PEPTIDEK", restoredSequences.getPeptide().get(0).getPeptideSequence());
+        PeptideEvidence restoredEvidence = restoredSequences.getPeptideEvidence().get(0);
+        assertEquals("PepEv_1", restoredEvidence.getId());
+        assertEquals("DBSeq_1", restoredEvidence.getDBSequenceRef());
+        assertEquals("PEPTIDEK", restoredEvidence.getPeptideRef());
+        assertEquals(Integer.valueOf(4), restoredEvidence.getStart());
+        assertEquals(Integer.valueOf(11), restoredEvidence.getEnd());
+        ProteinDetectionHypothesis restoredHypothesis = snapshot.getProteinDetectionList().getProteinAmbiguityGroup().get(0).getProteinDetectionHypothesis().get(0);
+        assertEquals("DBSeq_1", restoredHypothesis.getDBSequenceRef());
+        assertEquals("PepEv_1", restoredHypothesis.getPeptideHypothesis().get(0).getPeptideEvidenceRef());
+        assertEquals("SII_1", restoredHypothesis.getPeptideHypothesis().get(0).getSpectrumIdentificationItemRef().get(0).getSpectrumIdentificationItemRef());
+        snapshot.close();
+    }
+
+    /**
+     * Tests that a snapshot is ignored once the mzid file has changed.
+     *
+     * @throws IOException could not write the snapshot or change the mzid file.
+     */
+    @Test
+    public final void testChangedMzIdFileIgnoresSnapshot() throws IOException {
+        writeSnapshot();
+        try (FileWriter writer = new FileWriter(mzIdFile, true)) {
+            writer.write("<!-- changed -->\n");
+        }
+        assertNull(MzIdContentSnapshot.readSnapshot(mzIdFile.getPath()));
+    }
+
+    /**
+     * Writes the snapshot of the minimal mzid file.
+     *
+     * @throws IOException could not write the snapshot.
+     */
+    private void writeSnapshot() throws IOException {
+        MzIdContentSnapshotWriter snapshotWriter = new MzIdContentSnapshotWriter(mzIdFile.getPath(), CompletableFuture.completedFuture(sequenceCollection),
+                CompletableFuture.completedFuture(proteinDetectionList));
+        for (SpectrumIdentificationResult result : spectrumResults) {
+            snapshotWriter.addResult(result);
+        }
+        snapshotWriter.finish();
+    }
+
+    /**
+     * Compares the fields and fragment arrays of an original and a restored SpectrumIdentificationResult.
+     *
+     * @param expected original SpectrumIdentificationResult.
+     * @param actual restored SpectrumIdentificationResult.
+     */
+    private void assertResultEquals(final SpectrumIdentificationResult expected, final SpectrumIdentificationResult actual) {
+        assertEquals(expected.getSpectrumID(), actual.getSpectrumID());
+        assertCvParamsEqual(expected.getCvParam(), actual.getCvParam());
+        assertEquals(expected.getSpectrumIdentificationItem().size(), actual.getSpectrumIdentificationItem().size());
+        for (int index = 0; index < expected.getSpectrumIdentificationItem().size(); index++) {
+            SpectrumIdentificationItem expectedItem = expected.getSpectrumIdentificationItem().get(index);
+            SpectrumIdentificationItem actualItem = actual.getSpectrumIdentificationItem().get(index);
+            assertEquals(expectedItem.getId(), actualItem.getId());
+            assertEquals(expectedItem.isPassThreshold(), actualItem.isPassThreshold());
+            assertEquals(expectedItem.getPeptideRef(), actualItem.getPeptideRef());
+            assertEquals(expectedItem.getCalculatedMassToCharge(), actualItem.getCalculatedMassToCharge());
+            assertEquals(expectedItem.getExperimentalMassToCharge(), actualItem.getExperimentalMassToCharge());
+            assertCvParamsEqual(expectedItem.getCvParam(), actualItem.getCvParam());
+            if (expectedItem.getFragmentation() == null) {
+                assertNull(actualItem.getFragmentation());
+            } else {
+                List<IonType> expectedIonTypes = expectedItem.getFragmentation().getIonType();
+                List<IonType> actualIonTypes = actualItem.getFragmentation().getIonType();
+                assertEquals(expectedIonTypes.size(), actualIonTypes.size());
+                for (int ionIndex = 0; ionIndex < expectedIonTypes.size(); ionIndex++) {
+                    IonType expectedIonType = expectedIonTypes.get(ionIndex);
+                    IonType actualIonType = actualIonTypes.get(ionIndex);
+                    assertCvParamsEqual(Arrays.asList(expectedIonType.getCvParam()), Arrays.asList(actualIonType.getCvParam()));
+                    assertEquals(expectedIonType.getIndex(), actualIonType.getIndex());
+                    assertEquals(expectedIonType.getFragmentArray().size(), actualIonType.getFragmentArray().size());
+                    for (int arrayIndex = 0; arrayIndex < expectedIonType.getFragmentArray().size(); arrayIndex++) {
+                        assertEquals(expectedIonType.getFragmentArray().get(arrayIndex).getValues(), actualIonType.getFragmentArray().get(arrayIndex).getValues());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the name, accession and value of CvParams.
+     *
+     * @param expected original CvParams.
+     * @param actual restored CvParams.
+     */
+    private void assertCvParamsEqual(final List<CvParam> expected, final List<CvParam> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int index = 0; index < expected.size(); index++) {
+            assertEquals(expected.get(index).getName(), actual.get(index).getName());
+            assertEquals(expected.get(index).getAccession(), actual.get(index).getAccession());
+            assertEquals(expected.get(index).getValue(), actual.get(index).getValue());
+        }
+    }
+
+    /**
+     * Creates a CvParam.
+     *
+     * @param name name of the CvParam.
+     * @param accession accession of the CvParam.
+     * @param value value of the CvParam, may be null.
+     * @return CvParam object.
+     */
+    private CvParam createCvParam(final String name, final String accession, final String value) {
+        CvParam param = new CvParam();
+        param.setName(name);
+        param.setAccession(accession);
+        param.setValue(value);
+        return param;
+    }
+
+    /**
+     * Creates a SpectrumIdentificationItem that passes the threshold.
+     *
+     * @param id id of the item.
+     * @param peptide identified peptide.
+     * @param calculatedMassToCharge calculated mass-to-charge ratio, may be null.
+     * @param experimentalMassToCharge experimental mass-to-charge ratio.
+     * @return SpectrumIdentificationItem object.
+     */
+    private SpectrumIdentificationItem createItem(final String id, final Peptide peptide, final Double calculatedMassToCharge, final double experimentalMassToCharge) {
+        SpectrumIdentificationItem item = new SpectrumIdentificationItem();
+        item.setId(id);
+        item.setPassThreshold(true);
+        item.setPeptide(peptide);
+        item.setCalculatedMassToCharge(calculatedMassToCharge);
+        item.setExperimentalMassToCharge(experimentalMassToCharge);
+        item.getCvParam().add(createCvParam("PeptideShaker PSM score", "MS:1002466", "100.0"));
+        return item;
+    }
+
+    /**
+     * Creates a SpectrumIdentificationResult with a single SpectrumIdentificationItem.
+     *
+     * @param spectrumId spectrum id of the result.
+     * @param scanNumber scan number of the result.
+     * @param item SpectrumIdentificationItem of the result.
+     * @return SpectrumIdentificationResult object.
+     */
+    private SpectrumIdentificationResult createResult(final String spectrumId, final String scanNumber, final SpectrumIdentificationItem item) {
+        SpectrumIdentificationResult result = new SpectrumIdentificationResult();
+        result.setSpectrumID(spectrumId);
+        result.getCvParam().add(createCvParam("scan number(s)", "MS:1001115", scanNumber));
+        result.getSpectrumIdentificationItem().add(item);
+        return result;
+    }
+}